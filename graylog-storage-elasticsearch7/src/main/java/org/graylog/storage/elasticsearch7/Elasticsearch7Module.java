@@ -32,6 +32,7 @@ import org.graylog2.indexer.counts.CountsAdapter;
 import org.graylog2.indexer.fieldtypes.IndexFieldTypePollerAdapter;
 import org.graylog2.indexer.indices.IndicesAdapter;
 import org.graylog2.indexer.messages.MessagesAdapter;
+import org.graylog2.indexer.rollup.RollupAdapter;
 import org.graylog2.indexer.searches.SearchesAdapter;
 import org.graylog2.migrations.V20170607164210_MigrateReopenedIndicesToAliases;
 import org.graylog2.plugin.VersionAwareModule;
@@ -49,6 +50,7 @@ public class Elasticsearch7Module extends VersionAwareModule {
         bindForSupportedVersion(MessagesAdapter.class).to(MessagesAdapterES7.class);
         bindForSupportedVersion(MoreSearchAdapter.class).to(MoreSearchAdapterES7.class);
         bindForSupportedVersion(NodeAdapter.class).to(NodeAdapterES7.class);
+        bindForSupportedVersion(RollupAdapter.class).to(RollupAdapterES7.class);
         bindForSupportedVersion(SearchesAdapter.class).to(SearchesAdapterES7.class);
         bindForSupportedVersion(V20170607164210_MigrateReopenedIndicesToAliases.ClusterState.class)
                 .to(V20170607164210_MigrateReopenedIndicesToAliasesClusterStateES7.class);
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.bulk.BulkRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.bulk.BulkResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.index.IndexRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.support.IndicesOptions;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.client.indices.CreateIndexRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.client.indices.GetIndexRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuilders;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.script.Script;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.Aggregations;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.composite.DateHistogramValuesSourceBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.Max;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.Min;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.Sum;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.ValueCount;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.graylog2.indexer.ElasticsearchException;
+import org.graylog2.indexer.rollup.RollupAdapter;
+import org.graylog2.indexer.rollup.RollupConfig;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_COUNT;
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_MAX;
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_MIN;
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_SUM;
+import static org.graylog2.indexer.rollup.RollupConfig.metricField;
+
+public class RollupAdapterES7 implements RollupAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(RollupAdapterES7.class);
+    private static final String ES_DATE_FORMAT = "uuuu-MM-dd HH:mm:ss.SSS";
+    private static final String AGG_NAME = "rollup";
+    private static final String STREAMS_SEPARATOR = ",";
+    private static final int PAGE_SIZE = 1000;
+
+    private final ElasticsearchClient client;
+
+    @Inject
+    public RollupAdapterES7(ElasticsearchClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void ensureRollupIndex(String rollupIndex, RollupConfig config, int shards, int replicas) {
+        final GetIndexRequest existsRequest = new GetIndexRequest(rollupIndex);
+        final boolean exists = client.execute((c, requestOptions) -> c.indices().exists(existsRequest, requestOptions),
+                "Unable to check if rollup index " + rollupIndex + " exists");
+        if (exists) {
+            return;
+        }
+
+        final CreateIndexRequest request = new CreateIndexRequest(rollupIndex)
+                .settings(ImmutableMap.of(
+                        "number_of_shards", shards,
+                        "number_of_replicas", replicas))
+                .mapping(mapping(config));
+
+        client.execute((c, requestOptions) -> c.indices().create(request, requestOptions),
+                "Unable to create rollup index " + rollupIndex);
+        LOG.info("Created rollup index <{}>", rollupIndex);
+    }
+
+    private Map<String, Object> mapping(RollupConfig config) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put(Message.FIELD_TIMESTAMP, ImmutableMap.of("type", "date", "format", ES_DATE_FORMAT));
+        properties.put(Message.FIELD_STREAMS, ImmutableMap.of("type", "keyword"));
+        properties.put(RollupConfig.FIELD_COUNT, ImmutableMap.of("type", "long"));
+        for (String field : config.metrics()) {
+            properties.put(metricField(field, FUNCTION_SUM), ImmutableMap.of("type", "double"));
+            properties.put(metricField(field, FUNCTION_MIN), ImmutableMap.of("type", "double"));
+            properties.put(metricField(field, FUNCTION_MAX), ImmutableMap.of("type", "double"));
+            properties.put(metricField(field, FUNCTION_COUNT), ImmutableMap.of("type", "long"));
+        }
+
+        // Group-by fields keep their values, strings are stored as keywords just like in the message indices
+        final Map<String, Object> stringsAsKeywords = ImmutableMap.of("strings_as_keywords", ImmutableMap.of(
+                "match_mapping_type", "string",
+                "mapping", ImmutableMap.of("type", "keyword")));
+
+        return ImmutableMap.of(
+                "dynamic_templates", Arrays.asList(stringsAsKeywords),
+                "properties", properties);
+    }
+
+    @Override
+    public void deleteRollupIndex(String rollupIndex) {
+        final DeleteIndexRequest request = new DeleteIndexRequest(rollupIndex)
+                .indicesOptions(IndicesOptions.lenientExpandOpen());
+
+        client.execute((c, requestOptions) -> c.indices().delete(request, requestOptions),
+                "Unable to delete rollup index " + rollupIndex);
+    }
+
+    @Override
+    public long deleteRolledUpBefore(String rollupIndex, DateTime before) {
+        final DeleteByQueryRequest request = new DeleteByQueryRequest(rollupIndex)
+                .setQuery(QueryBuilders.rangeQuery(Message.FIELD_TIMESTAMP).lt(Tools.buildElasticSearchTimeFormat(before)))
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                .setConflicts("proceed");
+
+        final BulkByScrollResponse response = client.execute((c, requestOptions) -> c.deleteByQuery(request, requestOptions),
+                "Unable to delete old documents from rollup index " + rollupIndex);
+        return response.getDeleted();
+    }
+
+    @Override
+    public long rollup(RollupConfig config, Set<String> sourceIndices, String rollupIndex, DateTime from, DateTime to) {
+        final List<CompositeValuesSourceBuilder<?>> sources = new ArrayList<>();
+        sources.add(new DateHistogramValuesSourceBuilder(Message.FIELD_TIMESTAMP)
+                .field(Message.FIELD_TIMESTAMP)
+                .fixedInterval(new DateHistogramInterval(config.interval().getMillis() + "ms")));
+        // Messages can be routed into several streams. Grouping by the complete set of streams makes sure every
+        // message is only counted once, no matter how many of its streams are searched.
+        sources.add(new TermsValuesSourceBuilder(Message.FIELD_STREAMS)
+                .script(new Script("String.join('" + STREAMS_SEPARATOR + "', doc['" + Message.FIELD_STREAMS + "'])")));
+        for (String field : config.groupBy()) {
+            sources.add(new TermsValuesSourceBuilder(field).field(field).missingBucket(true));
+        }
+
+        final CompositeAggregationBuilder aggregation = AggregationBuilders.composite(AGG_NAME, sources).size(PAGE_SIZE);
+        for (String field : config.metrics()) {
+            aggregation.subAggregation(AggregationBuilders.sum(metricField(field, FUNCTION_SUM)).field(field));
+            aggregation.subAggregation(AggregationBuilders.min(metricField(field, FUNCTION_MIN)).field(field));
+            aggregation.subAggregation(AggregationBuilders.max(metricField(field, FUNCTION_MAX)).field(field));
+            aggregation.subAggregation(AggregationBuilders.count(metricField(field, FUNCTION_COUNT)).field(field));
+        }
+
+        final SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.rangeQuery(Message.FIELD_TIMESTAMP)
+                        .gte(Tools.buildElasticSearchTimeFormat(from))
+                        .lt(Tools.buildElasticSearchTimeFormat(to)))
+                .size(0)
+                .aggregation(aggregation);
+
+        long written = 0;
+        Map<String, Object> afterKey = null;
+        do {
+            aggregation.aggregateAfter(afterKey);
+            final SearchRequest request = new SearchRequest(sourceIndices.toArray(new String[0]))
+                    .source(source)
+                    .indicesOptions(IndicesOptions.fromOptions(false, false, true, false));
+            final SearchResponse response = client.search(request, "Unable to aggregate messages for rollup index " + rollupIndex);
+            final CompositeAggregation result = response.getAggregations().get(AGG_NAME);
+            if (result.getBuckets().isEmpty()) {
+                break;
+            }
+
+            final BulkRequest bulkRequest = new BulkRequest();
+            for (CompositeAggregation.Bucket bucket : result.getBuckets()) {
+                bulkRequest.add(new IndexRequest(rollupIndex)
+                        .id(documentId(bucket.getKey()))
+                        .source(rollupDocument(config, bucket)));
+            }
+            final BulkResponse bulkResponse = client.execute((c, requestOptions) -> c.bulk(bulkRequest, requestOptions),
+                    "Unable to write to rollup index " + rollupIndex);
+            if (bulkResponse.hasFailures()) {
+                throw new ElasticsearchException("Unable to write to rollup index " + rollupIndex + ": " + bulkResponse.buildFailureMessage());
+            }
+
+            written += result.getBuckets().size();
+            afterKey = result.afterKey();
+        } while (afterKey != null);
+
+        return written;
+    }
+
+    private static String documentId(Map<String, Object> key) {
+        return Hashing.murmur3_128().hashString(key.toString(), StandardCharsets.UTF_8).toString();
+    }
+
+    private static Map<String, Object> rollupDocument(RollupConfig config, CompositeAggregation.Bucket bucket) {
+        final Map<String, Object> key = bucket.getKey();
+        final Map<String, Object> document = new HashMap<>();
+        final long timestamp = ((Number) key.get(Message.FIELD_TIMESTAMP)).longValue();
+        document.put(Message.FIELD_TIMESTAMP, Tools.buildElasticSearchTimeFormat(new DateTime(timestamp, DateTimeZone.UTC)));
+        document.put(Message.FIELD_STREAMS, Arrays.asList(((String) key.get(Message.FIELD_STREAMS)).split(STREAMS_SEPARATOR)));
+        document.put(RollupConfig.FIELD_COUNT, bucket.getDocCount());
+        for (String field : config.groupBy()) {
+            final Object value = key.get(field);
+            if (value != null) {
+                document.put(field, value);
+            }
+        }
+
+        final Aggregations aggregations = bucket.getAggregations();
+        for (String field : config.metrics()) {
+            final long count = ((ValueCount) aggregations.get(metricField(field, FUNCTION_COUNT))).getValue();
+            document.put(metricField(field, FUNCTION_COUNT), count);
+            document.put(metricField(field, FUNCTION_SUM), ((Sum) aggregations.get(metricField(field, FUNCTION_SUM))).getValue());
+            // Minimum and maximum are infinite if there are no values
+            if (count > 0) {
+                document.put(metricField(field, FUNCTION_MIN), ((Min) aggregations.get(metricField(field, FUNCTION_MIN))).getValue());
+                document.put(metricField(field, FUNCTION_MAX), ((Max) aggregations.get(metricField(field, FUNCTION_MAX))).getValue());
+            }
+        }
+        return document;
+    }
+}
@@ -38,6 +38,7 @@ import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.A
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.builder.SearchSourceBuilder;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -46,6 +47,7 @@ public class ESGeneratedQueryContext implements GeneratedQueryContext {
 
     private final ElasticsearchBackend elasticsearchBackend;
     private final Map<String, SearchSourceBuilder> searchTypeQueries = Maps.newHashMap();
+    private final Map<String, Set<String>> searchTypeIndices = Maps.newHashMap();
     private Map<Object, Object> contextMap = Maps.newHashMap();
     private final UniqueNamer uniqueNamer = new UniqueNamer("agg-");
     private Set<SearchError> errors = Sets.newHashSet();
@@ -97,6 +99,17 @@ public class ESGeneratedQueryContext implements GeneratedQueryContext {
         return this.searchTypeQueries;
     }
 
+    /**
+     * Adds indices which should be searched by the given search type in addition to the ones containing its streams.
+     */
+    public void addSearchTypeIndices(String searchTypeId, Collection<String> indices) {
+        this.searchTypeIndices.computeIfAbsent(searchTypeId, (ignored) -> Sets.newHashSet()).addAll(indices);
+    }
+
+    Set<String> searchTypeIndices(String searchTypeId) {
+        return this.searchTypeIndices.getOrDefault(searchTypeId, Collections.emptySet());
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -16,7 +16,9 @@
  */
 package org.graylog.storage.elasticsearch7.views;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.name.Named;
 import org.graylog.plugins.views.search.Filter;
 import org.graylog.plugins.views.search.GlobalOverride;
@@ -34,6 +36,8 @@ import org.graylog.plugins.views.search.filter.AndFilter;
 import org.graylog.plugins.views.search.filter.OrFilter;
 import org.graylog.plugins.views.search.filter.QueryStringFilter;
 import org.graylog.plugins.views.search.filter.StreamFilter;
+import org.graylog.plugins.views.search.searchtypes.MessageList;
+import org.graylog.plugins.views.search.searchtypes.Sort;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.ShardOperationFailedException;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.MultiSearchResponse;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchRequest;
@@ -45,9 +49,11 @@ import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuil
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.graylog.storage.elasticsearch7.ElasticsearchClient;
 import org.graylog.storage.elasticsearch7.TimeRangeQueryFactory;
+import org.graylog.storage.elasticsearch7.views.searchtypes.ESMessageList;
 import org.graylog.storage.elasticsearch7.views.searchtypes.ESSearchTypeHandler;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.indexer.FieldTypeException;
+import org.graylog2.indexer.ranges.IndexRange;
 import org.graylog2.plugin.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,6 +81,7 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
     private final QueryStringDecorators queryStringDecorators;
     private final ESGeneratedQueryContext.Factory queryContextFactory;
     private final boolean allowLeadingWildcard;
+    private final int progressiveIndexBatchSize;
 
     @Inject
     public ElasticsearchBackend(Map<String, Provider<ESSearchTypeHandler<? extends SearchType>>> elasticsearchSearchTypeHandlers,
@@ -82,7 +89,8 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
                                 IndexLookup indexLookup,
                                 QueryStringDecorators queryStringDecorators,
                                 ESGeneratedQueryContext.Factory queryContextFactory,
-                                @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard) {
+                                @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard,
+                                @Named("search_progressive_index_batch_size") int progressiveIndexBatchSize) {
         this.elasticsearchSearchTypeHandlers = elasticsearchSearchTypeHandlers;
         this.client = client;
         this.indexLookup = indexLookup;
@@ -90,6 +98,7 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
         this.queryStringDecorators = queryStringDecorators;
         this.queryContextFactory = queryContextFactory;
         this.allowLeadingWildcard = allowLeadingWildcard;
+        this.progressiveIndexBatchSize = progressiveIndexBatchSize;
     }
 
     private QueryBuilder normalizeQueryString(String queryString) {
@@ -205,10 +214,21 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
         LOG.debug("Running query {} for job {}", query.id(), job.getId());
         final HashMap<String, SearchType.Result> resultsMap = Maps.newHashMap();
 
+        // message lists are searched newest indices first, so we can stop as soon as their page is filled
+        final Set<String> progressiveSearchTypeIds = new HashSet<>();
+        for (SearchType searchType : query.searchTypes()) {
+            if (canRunProgressively(searchType, queryContext)) {
+                progressiveSearchTypeIds.add(searchType.id());
+                runProgressively(job, query, (MessageList) searchType, queryContext, resultsMap);
+            }
+        }
+
         final Set<String> affectedIndices = indexLookup.indexNamesForStreamsInTimeRange(query.usedStreamIds(), query.timerange());
 
         final Map<String, SearchSourceBuilder> searchTypeQueries = queryContext.searchTypeQueries();
-        final List<String> searchTypeIds = new ArrayList<>(searchTypeQueries.keySet());
+        final List<String> searchTypeIds = searchTypeQueries.keySet().stream()
+                .filter(searchTypeId -> !progressiveSearchTypeIds.contains(searchTypeId))
+                .collect(Collectors.toList());
         final List<SearchRequest> searches = searchTypeIds
                 .stream()
                 .map(searchTypeId -> {
@@ -227,8 +247,9 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
                                 return Optional.of(indexLookup.indexNamesForStreamsInTimeRange(usedStreamIds, query.effectiveTimeRange(searchType)));
                             })
                             .orElse(affectedIndices);
+                    final Set<String> indicesForSearchType = Sets.union(affectedIndicesForSearchType, queryContext.searchTypeIndices(searchTypeId));
 
-                    Set<String> indices = affectedIndicesForSearchType.isEmpty() ? Collections.singleton("") : affectedIndicesForSearchType;
+                    Set<String> indices = indicesForSearchType.isEmpty() ? Collections.singleton("") : indicesForSearchType;
                     return new SearchRequest()
                             .source(searchTypeQueries.get(searchTypeId))
                             .indices(indices.toArray(new String[0]))
@@ -236,10 +257,15 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
                 })
                 .collect(Collectors.toList());
 
-        final List<MultiSearchResponse.Item> results = client.msearch(searches, "Unable to perform search query: ");
+        final List<MultiSearchResponse.Item> results = searches.isEmpty()
+                ? Collections.emptyList()
+                : client.msearch(searches, "Unable to perform search query: ");
 
         for (SearchType searchType : query.searchTypes()) {
             final String searchTypeId = searchType.id();
+            if (progressiveSearchTypeIds.contains(searchTypeId)) {
+                continue;
+            }
             final Provider<ESSearchTypeHandler<? extends SearchType>> handlerProvider = elasticsearchSearchTypeHandlers.get(searchType.type());
             if (handlerProvider == null) {
                 LOG.error("Unknown search type '{}', cannot convert query result.", searchType.type());
@@ -273,6 +299,108 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
                 .build();
     }
 
+    private boolean canRunProgressively(SearchType searchType, ESGeneratedQueryContext queryContext) {
+        if (progressiveIndexBatchSize <= 0 || !(searchType instanceof MessageList)) {
+            return false;
+        }
+        final MessageList messageList = (MessageList) searchType;
+        final List<Sort> sorts = messageList.sort();
+        final boolean sortedNewestFirst = sorts == null || (sorts.size() == 1
+                && Message.FIELD_TIMESTAMP.equals(sorts.get(0).field())
+                && sorts.get(0).order() == Sort.Order.DESC);
+        final Provider<ESSearchTypeHandler<? extends SearchType>> handlerProvider = elasticsearchSearchTypeHandlers.get(MessageList.NAME);
+
+        return sortedNewestFirst
+                && messageList.limit() > 0
+                && queryContext.searchTypeQueries().containsKey(messageList.id())
+                && handlerProvider != null
+                && handlerProvider.get() instanceof ESMessageList;
+    }
+
+    private void runProgressively(SearchJob job, Query query, MessageList messageList, ESGeneratedQueryContext queryContext, Map<String, SearchType.Result> resultsMap) {
+        final ESMessageList handler = (ESMessageList) elasticsearchSearchTypeHandlers.get(MessageList.NAME).get();
+        final Set<String> usedStreamIds = messageList.effectiveStreams().isEmpty()
+                ? query.usedStreamIds()
+                : messageList.effectiveStreams();
+        final List<IndexRange> indexRanges = indexLookup.indexRangesForStreamsInTimeRange(usedStreamIds, query.effectiveTimeRange(messageList))
+                .stream()
+                .sorted(ProgressiveHitCollector.NEWEST_INDICES_FIRST)
+                .collect(Collectors.toList());
+        // indices added by the search type itself have no known range, so they are searched with the first batch
+        final Set<String> rangeIndexNames = indexRanges.stream().map(IndexRange::indexName).collect(Collectors.toSet());
+        List<String> additionalIndices = queryContext.searchTypeIndices(messageList.id()).stream()
+                .filter(indexName -> !rangeIndexNames.contains(indexName))
+                .collect(Collectors.toList());
+
+        final SearchSourceBuilder searchTypeSource = queryContext.searchTypeQueries().get(messageList.id());
+        final int pageEnd = messageList.offset() + messageList.limit();
+        // every batch needs to return all hits up to the end of the page, as we don't know yet which of them will be skipped
+        final SearchSourceBuilder batchSource = searchTypeSource.shallowCopy()
+                .from(0)
+                .size(pageEnd);
+        final ProgressiveHitCollector collector = new ProgressiveHitCollector(pageEnd);
+
+        int searched = 0;
+        while (!additionalIndices.isEmpty() || (searched < indexRanges.size() && !collector.canSkip(indexRanges.get(searched)))) {
+            final List<IndexRange> batch = indexRanges.subList(searched, Math.min(searched + progressiveIndexBatchSize, indexRanges.size()));
+            searched += batch.size();
+            final List<String> batchIndices = new ArrayList<>(additionalIndices);
+            batch.forEach(indexRange -> batchIndices.add(indexRange.indexName()));
+            additionalIndices = Collections.emptyList();
+
+            final Optional<SearchResponse> response = searchIndices(query, messageList.id(), batchSource, batchIndices, queryContext);
+            if (!response.isPresent()) {
+                resultsMap.remove(messageList.id());
+                return;
+            }
+            collector.add(response.get().getHits());
+
+            if (searched < indexRanges.size()) {
+                resultsMap.put(messageList.id(), handler.extractResult(job, query, messageList, collector.page(messageList.offset()), collector.totalHits()));
+                job.publishPartialResult(query.id(), QueryResult.builder()
+                        .query(query)
+                        .searchTypes(ImmutableMap.copyOf(resultsMap))
+                        .state(QueryResult.State.INCOMPLETE)
+                        .build());
+            }
+        }
+
+        if (searched < indexRanges.size()) {
+            LOG.debug("Page of message list {} filled after searching {} of {} indices, counting remaining matches only",
+                    messageList.id(), searched, indexRanges.size());
+            final SearchSourceBuilder countSource = new SearchSourceBuilder()
+                    .query(searchTypeSource.query())
+                    .size(0)
+                    .trackTotalHits(true);
+            final List<String> remainingIndices = indexRanges.subList(searched, indexRanges.size()).stream()
+                    .map(IndexRange::indexName)
+                    .collect(Collectors.toList());
+            final Optional<SearchResponse> response = searchIndices(query, messageList.id(), countSource, remainingIndices, queryContext);
+            if (!response.isPresent()) {
+                resultsMap.remove(messageList.id());
+                return;
+            }
+            collector.addTotalHits(response.get().getHits().getTotalHits().value);
+        }
+
+        resultsMap.put(messageList.id(), handler.extractResult(job, query, messageList, collector.page(messageList.offset()), collector.totalHits()));
+    }
+
+    private Optional<SearchResponse> searchIndices(Query query, String searchTypeId, SearchSourceBuilder source, List<String> indices, ESGeneratedQueryContext queryContext) {
+        final SearchRequest searchRequest = new SearchRequest()
+                .source(source)
+                .indices(indices.toArray(new String[0]))
+                .indicesOptions(IndicesOptions.fromOptions(false, false, true, false));
+        final MultiSearchResponse.Item result = client.msearch(Collections.singletonList(searchRequest), "Unable to perform search query: ").get(0);
+
+        final Optional<ElasticsearchException> failure = checkForFailedShards(result);
+        if (failure.isPresent()) {
+            queryContext.addError(SearchTypeErrorParser.parse(query, searchTypeId, failure.get()));
+            return Optional.empty();
+        }
+        return Optional.of(result.getResponse());
+    }
+
     private Optional<ElasticsearchException> checkForFailedShards(MultiSearchResponse.Item multiSearchResponse) {
         if (multiSearchResponse.isFailure()) {
             return Optional.of(new ElasticsearchException(multiSearchResponse.getFailureMessage(), multiSearchResponse.getFailure()));
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views;
+
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHit;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHits;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects the newest search hits of a message list which is searched in batches of indices, newest indices first.
+ * <p>
+ * All hits are expected to be sorted by timestamp in descending order, with the timestamp being the first sort value.
+ */
+class ProgressiveHitCollector {
+    private static final Comparator<SearchHit> NEWEST_FIRST = Comparator.comparingLong(ProgressiveHitCollector::timestamp).reversed();
+
+    /**
+     * Orders index ranges newest-first by their end. Index ranges without a known end (e.g. the current write index,
+     * whose range is only calculated after rotation) are considered to contain the newest messages and come first.
+     */
+    static final Comparator<IndexRange> NEWEST_INDICES_FIRST = Comparator
+            .comparing(ProgressiveHitCollector::hasUnknownEnd).reversed()
+            .thenComparing(IndexRange::end, Comparator.<DateTime>nullsFirst(Comparator.reverseOrder()));
+
+    private final int capacity;
+    private final List<SearchHit> hits = new ArrayList<>();
+    private long totalHits = 0;
+
+    ProgressiveHitCollector(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    void add(SearchHits searchHits) {
+        searchHits.forEach(hits::add);
+        hits.sort(NEWEST_FIRST);
+        if (hits.size() > capacity) {
+            hits.subList(capacity, hits.size()).clear();
+        }
+        if (searchHits.getTotalHits() != null) {
+            totalHits += searchHits.getTotalHits().value;
+        }
+    }
+
+    void addTotalHits(long count) {
+        totalHits += count;
+    }
+
+    boolean isFull() {
+        return hits.size() >= capacity;
+    }
+
+    /**
+     * Checks if the given index range and all index ranges ending before it can be skipped, because none of their
+     * messages would make it into the collected hits anymore.
+     *
+     * @param indexRange the newest of the index ranges which have not been searched yet
+     */
+    boolean canSkip(IndexRange indexRange) {
+        if (!isFull() || hasUnknownEnd(indexRange)) {
+            return false;
+        }
+        return indexRange.end().getMillis() < timestamp(hits.get(hits.size() - 1));
+    }
+
+    List<SearchHit> page(int offset) {
+        if (offset >= hits.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(hits.subList(offset, hits.size()));
+    }
+
+    long totalHits() {
+        return totalHits;
+    }
+
+    /**
+     * Unknown index ranges are created with begin and end set to the epoch, see
+     * {@link org.graylog2.indexer.ranges.IndexRangeService#createUnknownRange(String)}.
+     */
+    static boolean hasUnknownEnd(IndexRange indexRange) {
+        return indexRange.end() == null || indexRange.end().getMillis() <= 0L;
+    }
+
+    private static long timestamp(SearchHit hit) {
+        final Object[] sortValues = hit.getSortValues();
+        if (sortValues.length == 0 || !(sortValues[0] instanceof Number)) {
+            throw new IllegalStateException("Search hit " + hit.getId() + " has no numeric timestamp sort value");
+        }
+        return ((Number) sortValues[0]).longValue();
+    }
+}
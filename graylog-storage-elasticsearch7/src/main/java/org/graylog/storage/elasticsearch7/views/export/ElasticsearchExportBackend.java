@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
@@ -58,16 +59,26 @@ public class ElasticsearchExportBackend implements ExportBackend {
     private final IndexLookup indexLookup;
     private final RequestStrategy requestStrategy;
     private final boolean allowLeadingWildcard;
+    private final SlicedScrollExport slicedScrollExport;
 
     @Inject
-    public ElasticsearchExportBackend(IndexLookup indexLookup, RequestStrategy requestStrategy, @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard) {
+    public ElasticsearchExportBackend(IndexLookup indexLookup,
+                                      RequestStrategy requestStrategy,
+                                      @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard,
+                                      SlicedScrollExport slicedScrollExport) {
         this.indexLookup = indexLookup;
         this.requestStrategy = requestStrategy;
         this.allowLeadingWildcard = allowLeadingWildcard;
+        this.slicedScrollExport = slicedScrollExport;
     }
 
     @Override
     public void run(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkCollector) {
+        if (!command.ordered()) {
+            runUnordered(command, chunkCollector);
+            return;
+        }
+
         boolean isFirstChunk = true;
         int totalCount = 0;
 
@@ -93,6 +104,13 @@ public class ElasticsearchExportBackend implements ExportBackend {
         }
     }
 
+    private void runUnordered(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkCollector) {
+        final AtomicBoolean isFirstChunk = new AtomicBoolean(true);
+
+        slicedScrollExport.run(queryFrom(command), indicesFor(command), command.chunkSize(), command.limit(),
+                hits -> publishChunk(chunkCollector, hits, command.fieldsInOrder(), isFirstChunk.getAndSet(false)));
+    }
+
     private List<SearchHit> search(ExportMessagesCommand command) {
         SearchRequest search = prepareSearchRequest(command);
 
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views.export;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.name.Named;
+import org.graylog.plugins.views.search.export.ExportException;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.ClearScrollRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchScrollRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.support.IndicesOptions;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.common.unit.TimeValue;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHit;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.slice.SliceBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.sort.FieldSortBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Exports messages by running sliced scroll requests against every affected index in parallel.
+ * <p>
+ * Hits of the different slices are returned interleaved in arbitrary order, so this should only be used for exports
+ * which don't need to be sorted. All exports share one pool of {@code export_parallelism} threads, which only run
+ * the search requests. The chunks are written by the thread running the export, so a slow client only delays its own
+ * export. Every export has at most {@code export_parallelism} requests in flight or chunks waiting to be written.
+ */
+@Singleton
+public class SlicedScrollExport {
+    private static final Logger LOG = LoggerFactory.getLogger(SlicedScrollExport.class);
+    private static final TimeValue SCROLL_TIME = TimeValue.timeValueMinutes(1);
+    // Number of exports whose requests can wait for a thread of the pool at the same time
+    private static final int MAX_WAITING_EXPORTS = 16;
+
+    private final ExportClient client;
+    private final int parallelism;
+    private final Meter exportedMessages;
+    private final Timer sliceTime;
+    private final ExecutorService executor;
+
+    @Inject
+    public SlicedScrollExport(ExportClient client,
+                              MetricRegistry metricRegistry,
+                              @Named("export_parallelism") int parallelism) {
+        this.client = client;
+        this.parallelism = parallelism;
+        this.exportedMessages = metricRegistry.meter(name(SlicedScrollExport.class, "exportedMessages"));
+        this.sliceTime = metricRegistry.timer(name(SlicedScrollExport.class, "sliceTime"));
+        this.executor = createExecutor(parallelism);
+    }
+
+    private static ExecutorService createExecutor(int parallelism) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(parallelism * MAX_WAITING_EXPORTS),
+                new ThreadFactoryBuilder().setNameFormat("export-slice-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the export and hands every chunk of hits to the given consumer. The consumer is only called by the thread
+     * running the export.
+     *
+     * @param query         the query selecting the exported messages
+     * @param indices       the indices to export messages from
+     * @param chunkSize     the maximum number of hits per chunk
+     * @param limit         the optional maximum number of exported messages
+     * @param chunkConsumer receives the chunks, returns {@code false} to stop the export
+     */
+    public void run(QueryBuilder query, Set<String> indices, int chunkSize, OptionalInt limit, Predicate<List<SearchHit>> chunkConsumer) {
+        if (indices.isEmpty()) {
+            return;
+        }
+
+        // Use slices only if there are fewer indices than concurrent requests, every index is a natural slice anyway
+        final int slicesPerIndex = Math.max(1, (parallelism + indices.size() - 1) / indices.size());
+        final Deque<Slice> pendingSlices = new ArrayDeque<>(indices.size() * slicesPerIndex);
+        for (String index : indices) {
+            for (int sliceId = 0; sliceId < slicesPerIndex; sliceId++) {
+                pendingSlices.add(new Slice(query, index, sliceId, slicesPerIndex, chunkSize));
+            }
+        }
+        final int maxInFlight = Math.min(parallelism, pendingSlices.size());
+        // Requests of this export whose chunks haven't been written yet, never more than maxInFlight
+        final CompletionService<Slice> completionService = new ExecutorCompletionService<>(executor, new ArrayBlockingQueue<>(maxInFlight));
+        final Set<Future<Slice>> inFlight = new HashSet<>(maxInFlight);
+
+        LOG.debug("Exporting messages from {} indices with {} slices each, using up to {} concurrent requests",
+                indices.size(), slicesPerIndex, maxInFlight);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        int exported = 0;
+        boolean completed = false;
+        try {
+            while (inFlight.size() < maxInFlight && !pendingSlices.isEmpty()) {
+                submit(completionService, inFlight, pendingSlices.poll());
+            }
+            while (!inFlight.isEmpty()) {
+                final Future<Slice> future = completionService.take();
+                inFlight.remove(future);
+                final Slice slice = future.get();
+
+                if (slice.hits.isEmpty()) {
+                    finish(slice);
+                    LOG.debug("Finished slice {}/{} of index <{}>, {} messages exported so far",
+                            slice.sliceId + 1, slice.maxSlices, slice.index, exported);
+                    if (!pendingSlices.isEmpty()) {
+                        submit(completionService, inFlight, pendingSlices.poll());
+                    }
+                    continue;
+                }
+
+                final List<SearchHit> chunk = limit.isPresent() && exported + slice.hits.size() > limit.getAsInt()
+                        ? slice.hits.subList(0, limit.getAsInt() - exported)
+                        : slice.hits;
+                if (!chunkConsumer.test(chunk)) {
+                    finish(slice);
+                    break;
+                }
+                exported += chunk.size();
+                exportedMessages.mark(chunk.size());
+                if (limit.isPresent() && exported >= limit.getAsInt()) {
+                    LOG.info("Limit of {} reached. Stopping message retrieval.", limit.getAsInt());
+                    finish(slice);
+                    break;
+                }
+                submit(completionService, inFlight, slice);
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExportException("Export was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ExportException("Unable to complete export: ", e);
+        } finally {
+            if (completed) {
+                // The export stopped early, wait for the remaining requests to clear their scrolls
+                finishInFlight(completionService, inFlight);
+            } else {
+                inFlight.forEach(future -> future.cancel(true));
+            }
+        }
+
+        final long elapsedMillis = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        LOG.info("Exported {} messages from {} indices in {}ms ({} messages/s)",
+                exported, indices.size(), elapsedMillis, exported * 1000L / elapsedMillis);
+    }
+
+    private void submit(CompletionService<Slice> completionService, Set<Future<Slice>> inFlight, Slice slice) {
+        try {
+            inFlight.add(completionService.submit(() -> fetchNextChunk(slice)));
+        } catch (RejectedExecutionException e) {
+            throw new ExportException("Too many concurrent exports, please try again later", e);
+        }
+    }
+
+    private void finishInFlight(CompletionService<Slice> completionService, Set<Future<Slice>> inFlight) {
+        try {
+            while (!inFlight.isEmpty()) {
+                final Future<Slice> future = completionService.take();
+                inFlight.remove(future);
+                try {
+                    finish(future.get());
+                } catch (ExecutionException e) {
+                    LOG.debug("Request of stopped export failed", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private Slice fetchNextChunk(Slice slice) {
+        final SearchResponse response;
+        if (slice.scrollId == null) {
+            slice.startNanos = System.nanoTime();
+            response = client.search(slice.request(), "Unable to start sliced export");
+        } else {
+            final SearchScrollRequest scrollRequest = new SearchScrollRequest(slice.scrollId).scroll(SCROLL_TIME);
+            response = client.execute((c, requestOptions) -> c.scroll(scrollRequest, requestOptions),
+                    "Unable to retrieve next chunk of sliced export");
+        }
+        slice.scrollId = response.getScrollId();
+        slice.hits = Arrays.asList(response.getHits().getHits());
+        return slice;
+    }
+
+    private void finish(Slice slice) {
+        sliceTime.update(System.nanoTime() - slice.startNanos, TimeUnit.NANOSECONDS);
+        if (slice.scrollId == null) {
+            return;
+        }
+        final ClearScrollRequest request = new ClearScrollRequest();
+        request.addScrollId(slice.scrollId);
+        try {
+            client.execute((c, requestOptions) -> c.clearScroll(request, requestOptions), "Unable to clear scroll");
+        } catch (ExportException e) {
+            LOG.warn("Unable to clear scroll of sliced export, it will time out after {}", SCROLL_TIME, e);
+        }
+    }
+
+    /**
+     * The scroll of one slice of an index. It's only used by one thread at a time, the requests are handed over
+     * between the pool and the thread running the export through futures.
+     */
+    private static class Slice {
+        private final QueryBuilder query;
+        private final String index;
+        private final int sliceId;
+        private final int maxSlices;
+        private final int chunkSize;
+        private long startNanos;
+        private String scrollId;
+        private List<SearchHit> hits = Collections.emptyList();
+
+        Slice(QueryBuilder query, String index, int sliceId, int maxSlices, int chunkSize) {
+            this.query = query;
+            this.index = index;
+            this.sliceId = sliceId;
+            this.maxSlices = maxSlices;
+            this.chunkSize = chunkSize;
+        }
+
+        SearchRequest request() {
+            final SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(query)
+                    .size(chunkSize)
+                    .sort(FieldSortBuilder.DOC_FIELD_NAME, SortOrder.ASC);
+            if (maxSlices > 1) {
+                source.slice(new SliceBuilder(sliceId, maxSlices));
+            }
+            return new SearchRequest(index)
+                    .source(source)
+                    .scroll(SCROLL_TIME)
+                    .indicesOptions(IndicesOptions.fromOptions(false, false, true, false));
+        }
+    }
+}
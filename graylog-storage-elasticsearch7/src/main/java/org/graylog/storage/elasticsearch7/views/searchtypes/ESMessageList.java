@@ -141,7 +141,15 @@ public class ESMessageList implements ESSearchTypeHandler<MessageList> {
 
     @Override
     public SearchType.Result doExtractResult(SearchJob job, Query query, MessageList searchType, org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchResponse result, Aggregations aggregations, ESGeneratedQueryContext queryContext) {
-        final List<ResultMessageSummary> messages = StreamSupport.stream(result.getHits().spliterator(), false)
+        return extractResult(job, query, searchType, result.getHits(), result.getHits().getTotalHits().value);
+    }
+
+    /**
+     * Builds the message list result out of search hits which have been collected across several search requests,
+     * e. g. when searching indices progressively.
+     */
+    public SearchType.Result extractResult(SearchJob job, Query query, MessageList searchType, Iterable<SearchHit> hits, long totalHits) {
+        final List<ResultMessageSummary> messages = StreamSupport.stream(hits.spliterator(), false)
                 .map(ESMessageList::resultMessageFromSearchHit)
                 .map((resultMessage) -> ResultMessageSummary.create(resultMessage.highlightRanges, resultMessage.getMessage().getFields(), resultMessage.getIndex()))
                 .collect(Collectors.toList());
@@ -159,7 +167,7 @@ public class ESMessageList implements ESSearchTypeHandler<MessageList> {
                 messages,
                 Collections.emptySet(),
                 0,
-                result.getHits().getTotalHits().value,
+                totalHits,
                 from,
                 to
         );
@@ -16,6 +16,7 @@
  */
 package org.graylog.storage.elasticsearch7.views.searchtypes.pivot;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import one.util.streamex.EntryStream;
@@ -28,11 +29,16 @@ import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
 import org.graylog.plugins.views.search.searchtypes.pivot.PivotSpec;
 import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuilders;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.Aggregation;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.Aggregations;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.HasAggregations;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.ExtendedStats;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.Max;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.MaxAggregationBuilder;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.Min;
@@ -40,6 +46,7 @@ import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.m
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.graylog.storage.elasticsearch7.views.ESGeneratedQueryContext;
 import org.graylog.storage.elasticsearch7.views.searchtypes.ESSearchTypeHandler;
+import org.graylog2.indexer.rollup.RollupService;
 import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.plugin.indexer.searches.timeranges.InvalidRangeParametersException;
 import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
@@ -52,19 +59,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.ArrayDeque;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 public class ESPivot implements ESSearchTypeHandler<Pivot> {
     private static final Logger LOG = LoggerFactory.getLogger(ESPivot.class);
     private final Map<String, ESPivotBucketSpecHandler<? extends BucketSpec, ? extends Aggregation>> bucketHandlers;
     private final Map<String, ESPivotSeriesSpecHandler<? extends SeriesSpec, ? extends Aggregation>> seriesHandlers;
+    private final Optional<RollupService> rollupService;
+    private final double approximateSampleProbability;
     private static final TimeRange ALL_MESSAGES_TIMERANGE = allMessagesTimeRange();
+    private static final double DEFAULT_APPROXIMATE_SAMPLE_PROBABILITY = 0.05;
 
     private static TimeRange allMessagesTimeRange() {
         try {
@@ -75,11 +88,31 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
         return null;
     }
 
-    @Inject
+    /**
+     * Creates a pivot handler which never reads from rollup indices.
+     */
+    @VisibleForTesting
     public ESPivot(Map<String, ESPivotBucketSpecHandler<? extends BucketSpec, ? extends Aggregation>> bucketHandlers,
                    Map<String, ESPivotSeriesSpecHandler<? extends SeriesSpec, ? extends Aggregation>> seriesHandlers) {
+        this(bucketHandlers, seriesHandlers, Optional.empty(), DEFAULT_APPROXIMATE_SAMPLE_PROBABILITY);
+    }
+
+    @Inject
+    public ESPivot(Map<String, ESPivotBucketSpecHandler<? extends BucketSpec, ? extends Aggregation>> bucketHandlers,
+                   Map<String, ESPivotSeriesSpecHandler<? extends SeriesSpec, ? extends Aggregation>> seriesHandlers,
+                   RollupService rollupService,
+                   @Named("approximate_pivot_sample_probability") double approximateSampleProbability) {
+        this(bucketHandlers, seriesHandlers, Optional.of(rollupService), approximateSampleProbability);
+    }
+
+    private ESPivot(Map<String, ESPivotBucketSpecHandler<? extends BucketSpec, ? extends Aggregation>> bucketHandlers,
+                    Map<String, ESPivotSeriesSpecHandler<? extends SeriesSpec, ? extends Aggregation>> seriesHandlers,
+                    Optional<RollupService> rollupService,
+                    double approximateSampleProbability) {
         this.bucketHandlers = bucketHandlers;
         this.seriesHandlers = seriesHandlers;
+        this.rollupService = rollupService;
+        this.approximateSampleProbability = approximateSampleProbability;
     }
 
     @Override
@@ -91,6 +124,30 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
         final AggTypes aggTypes = new AggTypes();
         contextMap.put(pivot.id(), aggTypes);
 
+        // read rolled up time ranges from the rollup indices if the pivot can be answered from them
+        final Optional<ESPivotRollup> rollup = rollupFor(query, pivot);
+        rollup.ifPresent(r -> {
+            LOG.debug("Reading rolled up messages for {} from {}", pivot.id(), r.rollupIndices());
+            contextMap.put(rollupKey(pivot), r);
+            searchSourceBuilder.query(QueryBuilders.boolQuery().must(searchSourceBuilder.query()).filter(r.filter()));
+            searchSourceBuilder.aggregation(ESPivotRollup.countAggregation(ESPivotRollup.TOTAL_COUNT));
+            queryContext.addSearchTypeIndices(pivot.id(), r.rollupIndices());
+        });
+
+        // approximate pivots put all bucket and series aggregations below a sample aggregation. rollups are cheap
+        // enough to be read completely, and their documents can't be sampled like raw messages anyway
+        final Consumer<AggregationBuilder> topLevelAggregations;
+        if (pivot.approximate() && !rollup.isPresent()) {
+            LOG.debug("Sampling messages with probability {} for approximate pivot {}", approximateSampleProbability, pivot.id());
+            final FilterAggregationBuilder sample = ESPivotSampling.sampleAggregation(approximateSampleProbability);
+            searchSourceBuilder.aggregation(sample);
+            searchSourceBuilder.aggregation(ESPivotSampling.unsampledAggregation());
+            contextMap.put(samplingKey(pivot), Boolean.TRUE);
+            topLevelAggregations = sample::subAggregation;
+        } else {
+            topLevelAggregations = searchSourceBuilder::aggregation;
+        }
+
         // holds the initial level aggregation to be added to the query
         AggregationBuilder topLevelAggregation = null;
         // holds the last complete bucket aggregation into which subsequent buckets get added
@@ -98,8 +155,8 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
 
         // add global rollup series if those were requested
         if (pivot.rollup()) {
-            seriesStream(pivot, queryContext, "global rollup")
-                    .forEach(searchSourceBuilder::aggregation);
+            seriesStream(pivot, queryContext, rollup, "global rollup")
+                    .forEach(topLevelAggregations);
         }
 
         final Iterator<BucketSpec> rowBuckets = pivot.rowGroups().iterator();
@@ -115,18 +172,21 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
             final Optional<AggregationBuilder> generatedAggregation = handler.createAggregation(name, pivot, bucketSpec, this, queryContext, query);
             if (generatedAggregation.isPresent()) {
                 final AggregationBuilder aggregationBuilder = generatedAggregation.get();
+                if (rollup.isPresent() && aggregationBuilder instanceof TermsAggregationBuilder) {
+                    rollup.get().orderByCount((TermsAggregationBuilder) aggregationBuilder, pivot);
+                }
                 if (topLevelAggregation == null) {
                     topLevelAggregation = aggregationBuilder;
                 }
                 // always insert the series for the final row group, or for each one if explicit rollup was requested
                 if (!rowBuckets.hasNext() || pivot.rollup()) {
-                    seriesStream(pivot, queryContext, !rowBuckets.hasNext() ? "leaf row" : "row rollup")
+                    seriesStream(pivot, queryContext, rollup, !rowBuckets.hasNext() ? "leaf row" : "row rollup")
                             .forEach(aggregationBuilder::subAggregation);
                 }
                 if (previousAggregation != null) {
                     previousAggregation.subAggregation(aggregationBuilder);
                 } else {
-                    searchSourceBuilder.aggregation(aggregationBuilder);
+                    topLevelAggregations.accept(aggregationBuilder);
                 }
                 previousAggregation = aggregationBuilder;
             }
@@ -144,15 +204,18 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
             final Optional<AggregationBuilder> generatedAggregation = handler.createAggregation(name, pivot, bucketSpec, this, queryContext, query);
             if (generatedAggregation.isPresent()) {
                 final AggregationBuilder aggregationBuilder = generatedAggregation.get();
+                if (rollup.isPresent() && aggregationBuilder instanceof TermsAggregationBuilder) {
+                    rollup.get().orderByCount((TermsAggregationBuilder) aggregationBuilder, pivot);
+                }
                 // always insert the series for the final row group, or for each one if explicit rollup was requested
                 if (!colBuckets.hasNext() || pivot.rollup()) {
-                    seriesStream(pivot, queryContext, !colBuckets.hasNext() ? "leaf column" : "column rollup")
+                    seriesStream(pivot, queryContext, rollup, !colBuckets.hasNext() ? "leaf column" : "column rollup")
                             .forEach(aggregationBuilder::subAggregation);
                 }
                 if (previousAggregation != null) {
                     previousAggregation.subAggregation(aggregationBuilder);
                 } else {
-                    searchSourceBuilder.aggregation(aggregationBuilder);
+                    topLevelAggregations.accept(aggregationBuilder);
                 }
                 previousAggregation = aggregationBuilder;
             }
@@ -169,7 +232,30 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
         }
     }
 
-    private Stream<AggregationBuilder> seriesStream(Pivot pivot, ESGeneratedQueryContext queryContext, String reason) {
+    private Optional<ESPivotRollup> rollupFor(Query query, Pivot pivot) {
+        final Set<String> streamIds = pivot.effectiveStreams().isEmpty() ? query.usedStreamIds() : pivot.effectiveStreams();
+        return rollupService.flatMap(service -> service.coverageFor(streamIds))
+                .flatMap(coverage -> ESPivotRollup.forPivot(coverage, query, pivot));
+    }
+
+    private static String rollupKey(Pivot pivot) {
+        return "gl2-rollup-" + pivot.id();
+    }
+
+    private static String samplingKey(Pivot pivot) {
+        return "gl2-sampling-" + pivot.id();
+    }
+
+    private Stream<AggregationBuilder> seriesStream(Pivot pivot, ESGeneratedQueryContext queryContext, Optional<ESPivotRollup> rollup, String reason) {
+        if (rollup.isPresent()) {
+            return pivot.series().stream()
+                    .flatMap(seriesSpec -> {
+                        final String seriesName = queryContext.seriesName(seriesSpec, pivot);
+                        LOG.debug("Adding {} rollup series '{}' with name '{}'", reason, seriesSpec.type(), seriesName);
+                        return rollup.get().seriesAggregations(seriesName, seriesSpec).stream();
+                    });
+        }
+        final boolean sampled = queryContext.contextMap().containsKey(samplingKey(pivot));
         return EntryStream.of(pivot.series())
                 .mapKeyValue((integer, seriesSpec) -> {
                     final String seriesName = queryContext.seriesName(seriesSpec, pivot);
@@ -178,10 +264,16 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
                     if (esPivotSeriesSpecHandler == null) {
                         throw new IllegalArgumentException("No series handler registered for: " + seriesSpec.type());
                     }
-                    return esPivotSeriesSpecHandler.createAggregation(seriesName, pivot, seriesSpec, this, queryContext);
+                    final Optional<AggregationBuilder> aggregation = esPivotSeriesSpecHandler.createAggregation(seriesName, pivot, seriesSpec, this, queryContext);
+                    if (!sampled) {
+                        return aggregation.map(Stream::of).orElseGet(Stream::empty);
+                    }
+                    // extrapolated series of approximate pivots need additional statistics for their error bounds
+                    return Stream.of(aggregation, ESPivotSampling.samplingStatsAggregation(seriesName, seriesSpec))
+                            .filter(Optional::isPresent)
+                            .map(Optional::get);
                 })
-                .filter(Optional::isPresent)
-                .map(Optional::get);
+                .flatMap(aggregations -> aggregations);
     }
 
     private boolean isAllMessagesTimeRange(TimeRange timeRange) {
@@ -221,18 +313,31 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
         // first we iterate over all row groups (whose values generate a "key array", corresponding to the nesting level)
         // once we exhaust the row groups, we descend into the columns, which get added as values to their corresponding rows
         // on each nesting level and combination we have to check for series which we also add as values to the containing row
-        final HasAggregations initialResult = createInitialResult(queryResult);
+        final HasAggregations initialResult = createInitialResult(queryResult, pivot, resultBuilder, queryContext);
 
         processRows(resultBuilder, queryResult, queryContext, pivot, pivot.rowGroups(), new ArrayDeque<>(), initialResult);
 
         return pivot.name().map(resultBuilder::name).orElse(resultBuilder).build();
     }
 
-    private HasAggregations createInitialResult(SearchResponse queryResult) {
+    private HasAggregations createInitialResult(SearchResponse queryResult, Pivot pivot, PivotResult.Builder resultBuilder, ESGeneratedQueryContext queryContext) {
+        if (queryContext.contextMap().containsKey(samplingKey(pivot))) {
+            // all bucket and series aggregations of approximate pivots are nested in the sample aggregation
+            final Filter sample = queryResult.getAggregations().get(ESPivotSampling.SAMPLE_AGGREGATION);
+            final Filter unsampled = queryResult.getAggregations().get(ESPivotSampling.UNSAMPLED_AGGREGATION);
+            final PivotResult.Sampling sampling = PivotResult.Sampling.create(sample.getDocCount(),
+                    extractDocumentCount(queryResult, pivot, queryContext), unsampled.getDocCount());
+            queryContext.contextMap().put(samplingKey(pivot), sampling);
+            resultBuilder.sampling(sampling);
+            return sample;
+        }
         return InitialBucket.create(queryResult);
     }
 
     private long extractDocumentCount(SearchResponse queryResult, Pivot pivot, ESGeneratedQueryContext queryContext) {
+        if (queryContext.contextMap().containsKey(rollupKey(pivot))) {
+            return ESPivotRollup.totalCount(InitialBucket.create(queryResult));
+        }
         return queryResult.getHits().getTotalHits().value;
     }
 
@@ -343,13 +448,28 @@ public class ESPivot implements ESSearchTypeHandler<Pivot> {
                                HasAggregations aggregation,
                                boolean rollup,
                                String source) {
+        final ESPivotRollup rollupPlan = (ESPivotRollup) queryContext.contextMap().get(rollupKey(pivot));
+        if (rollupPlan != null) {
+            pivot.series().forEach(seriesSpec -> {
+                final Object value = rollupPlan.seriesValue(queryContext.seriesName(seriesSpec, pivot), seriesSpec, aggregation);
+                columnKeys.addLast(seriesSpec.id());
+                rowBuilder.addValue(PivotResult.Value.create(columnKeys, value, rollup, source));
+                columnKeys.removeLast();
+            });
+            return;
+        }
+        final Object sampling = queryContext.contextMap().get(samplingKey(pivot));
         pivot.series().forEach(seriesSpec -> {
             final ESPivotSeriesSpecHandler<? extends SeriesSpec, ? extends Aggregation> seriesHandler = seriesHandlers.get(seriesSpec.type());
             final Aggregation series = seriesHandler.extractAggregationFromResult(pivot, seriesSpec, aggregation, queryContext);
             seriesHandler.handleResult(pivot, seriesSpec, searchResult, series, this, queryContext)
                     .map(value -> {
                         columnKeys.addLast(value.id());
-                        final PivotResult.Value v = PivotResult.Value.create(columnKeys, value.value(), rollup, source);
+                        final PivotResult.Value v = sampling instanceof PivotResult.Sampling
+                                ? ESPivotSampling.approximateValue(columnKeys, value.value(), seriesSpec, (PivotResult.Sampling) sampling,
+                                        ESPivotSampling.samplingStats(queryContext.seriesName(seriesSpec, pivot), aggregation).map(ExtendedStats::getSumOfSquares),
+                                        rollup, source)
+                                : PivotResult.Value.create(columnKeys, value.value(), rollup, source);
                         columnKeys.removeLast();
                         return v;
                     })
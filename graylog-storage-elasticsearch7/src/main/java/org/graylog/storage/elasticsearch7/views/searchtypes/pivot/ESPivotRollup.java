@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views.searchtypes.pivot;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog.plugins.views.search.Filter;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.engine.BackendQuery;
+import org.graylog.plugins.views.search.filter.AndFilter;
+import org.graylog.plugins.views.search.filter.OrFilter;
+import org.graylog.plugins.views.search.filter.StreamFilter;
+import org.graylog.plugins.views.search.searchtypes.pivot.BucketSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotSort;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.DateInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Values;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Min;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuilders;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.BucketOrder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.HasAggregations;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
+import org.graylog2.indexer.rollup.RollupConfig;
+import org.graylog2.indexer.rollup.RollupCoverage;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_COUNT;
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_MAX;
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_MIN;
+import static org.graylog2.indexer.rollup.RollupConfig.FUNCTION_SUM;
+import static org.graylog2.indexer.rollup.RollupConfig.metricField;
+
+/**
+ * Answers a pivot from a mix of raw messages and rollup documents.
+ * <p>
+ * Rollup documents replace the raw messages of every complete rollup interval in the pivot's time range which has
+ * been rolled up already; the raw messages are used for the rest. Every series is calculated from separate
+ * aggregations for the raw and the rollup fields, which are combined when extracting the result. Raw fields don't
+ * exist in rollup documents and vice versa, so each of these aggregations only sees one kind of document.
+ */
+class ESPivotRollup {
+    static final String TOTAL_COUNT = "gl2-rollup-total";
+    static final String BUCKET_COUNT = "gl2-rollup-count";
+
+    private static final String RAW = "-raw";
+    private static final String ROLLUP = "-rollup";
+
+    private final RollupCoverage coverage;
+    private final DateTime from;
+    private final DateTime to;
+
+    private ESPivotRollup(RollupCoverage coverage, DateTime from, DateTime to) {
+        this.coverage = coverage;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Checks if the pivot can be answered using the given rollups.
+     *
+     * @return filled optional if the rollups cover the pivot, empty optional otherwise
+     */
+    static Optional<ESPivotRollup> forPivot(RollupCoverage coverage, Query query, Pivot pivot) {
+        if (!isEmpty(query.query())
+                || !pivot.query().map(ESPivotRollup::isEmpty).orElse(true)
+                || pivot.filter() != null
+                || !isStreamFilter(query.filter())) {
+            return Optional.empty();
+        }
+        if (pivot.sort().stream().anyMatch(sortSpec -> !(sortSpec instanceof PivotSort))) {
+            return Optional.empty();
+        }
+        final boolean bucketsCovered = ImmutableList.<BucketSpec>builder().addAll(pivot.rowGroups()).addAll(pivot.columnGroups()).build()
+                .stream()
+                .allMatch(bucketSpec -> isCovered(coverage, bucketSpec, query.effectiveTimeRange(pivot)));
+        if (!bucketsCovered || !pivot.series().stream().allMatch(seriesSpec -> isCovered(coverage, seriesSpec))) {
+            return Optional.empty();
+        }
+
+        // Only complete rollup intervals within the time range can be used
+        final TimeRange timeRange = query.effectiveTimeRange(pivot);
+        final long interval = coverage.interval().getMillis();
+        final DateTime from = max(coverage.rolledUpFrom(), alignDown(timeRange.getFrom().plus(interval - 1), interval));
+        final DateTime to = min(coverage.rolledUpUntil(), alignDown(timeRange.getTo().plusMillis(1), interval));
+
+        return to.isAfter(from) ? Optional.of(new ESPivotRollup(coverage, from, to)) : Optional.empty();
+    }
+
+    private static boolean isEmpty(BackendQuery query) {
+        return query instanceof ElasticsearchQueryString && ((ElasticsearchQueryString) query).isEmpty();
+    }
+
+    private static boolean isStreamFilter(Filter filter) {
+        if (filter == null || filter instanceof StreamFilter) {
+            return true;
+        }
+        if (filter instanceof AndFilter || filter instanceof OrFilter) {
+            return filter.filters().stream().allMatch(ESPivotRollup::isStreamFilter);
+        }
+        return false;
+    }
+
+    private static boolean isCovered(RollupCoverage coverage, BucketSpec bucketSpec, TimeRange timeRange) {
+        if (bucketSpec instanceof Values) {
+            final String field = ((Values) bucketSpec).field();
+            return Message.FIELD_STREAMS.equals(field) || coverage.groupBy().contains(field);
+        }
+        if (bucketSpec instanceof Time) {
+            final Time time = (Time) bucketSpec;
+            return Message.FIELD_TIMESTAMP.equals(time.field())
+                    && isMultipleOf(time.interval().toDateInterval(timeRange), coverage.interval().getMillis());
+        }
+        return false;
+    }
+
+    private static boolean isMultipleOf(DateInterval dateInterval, long interval) {
+        final double quantity = dateInterval.getQuantity().doubleValue();
+        switch (dateInterval.getUnit()) {
+            case "s":
+                return isMultipleOf(quantity * TimeUnit.SECONDS.toMillis(1), interval);
+            case "m":
+                return isMultipleOf(quantity * TimeUnit.MINUTES.toMillis(1), interval);
+            case "h":
+                return isMultipleOf(quantity * TimeUnit.HOURS.toMillis(1), interval);
+            case "d":
+            case "w":
+            case "M":
+                // Rollup intervals evenly divide a day, so they fit into calendar days, weeks and months
+                return quantity == Math.rint(quantity) && quantity >= 1;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isMultipleOf(double millis, long interval) {
+        return millis == Math.rint(millis) && millis >= interval && ((long) millis) % interval == 0;
+    }
+
+    private static boolean isCovered(RollupCoverage coverage, SeriesSpec seriesSpec) {
+        switch (seriesSpec.type()) {
+            case Count.NAME:
+                final String countField = ((Count) seriesSpec).field();
+                return countField == null || coverage.metrics().contains(countField);
+            case Sum.NAME:
+                return coverage.metrics().contains(((Sum) seriesSpec).field());
+            case Min.NAME:
+                return coverage.metrics().contains(((Min) seriesSpec).field());
+            case Max.NAME:
+                return coverage.metrics().contains(((Max) seriesSpec).field());
+            case Average.NAME:
+                return coverage.metrics().contains(((Average) seriesSpec).field());
+            default:
+                return false;
+        }
+    }
+
+    List<String> rollupIndices() {
+        return coverage.rollupIndices().asList();
+    }
+
+    /**
+     * Returns the filter which selects rollup documents for the rolled up part of the time range and raw messages
+     * for the rest of it.
+     */
+    QueryBuilder filter() {
+        final QueryBuilder rollupIndices = QueryBuilders.termsQuery("_index", coverage.rollupIndices());
+        final QueryBuilder rolledUpRange = QueryBuilders.rangeQuery(Message.FIELD_TIMESTAMP)
+                .gte(Tools.buildElasticSearchTimeFormat(from))
+                .lt(Tools.buildElasticSearchTimeFormat(to));
+
+        return QueryBuilders.boolQuery()
+                .should(QueryBuilders.boolQuery().mustNot(rollupIndices).mustNot(rolledUpRange))
+                .should(QueryBuilders.boolQuery().filter(rollupIndices).filter(rolledUpRange))
+                .minimumShouldMatch(1);
+    }
+
+    /**
+     * Creates an aggregation counting the messages, no matter if they are raw messages or have been rolled up.
+     */
+    static AggregationBuilder countAggregation(String name) {
+        // Raw messages don't have the rollup count field and are counted as a single message
+        return AggregationBuilders.sum(name).field(RollupConfig.FIELD_COUNT).missing(1);
+    }
+
+    /**
+     * Orders terms buckets by the number of messages, because the document count of a bucket only counts the rollup
+     * documents instead of the messages they contain.
+     */
+    void orderByCount(TermsAggregationBuilder terms, Pivot pivot) {
+        final boolean sortedByKey = pivot.sort().stream().anyMatch(sortSpec -> sortSpec.field().equals(terms.field()));
+        if (!sortedByKey) {
+            terms.order(BucketOrder.aggregation(BUCKET_COUNT, false));
+        }
+        terms.subAggregation(countAggregation(BUCKET_COUNT));
+    }
+
+    List<AggregationBuilder> seriesAggregations(String name, SeriesSpec seriesSpec) {
+        switch (seriesSpec.type()) {
+            case Count.NAME:
+                final String countField = ((Count) seriesSpec).field();
+                if (countField == null) {
+                    return ImmutableList.of(countAggregation(name));
+                }
+                return ImmutableList.of(
+                        AggregationBuilders.count(name + RAW).field(countField),
+                        AggregationBuilders.sum(name + ROLLUP).field(metricField(countField, FUNCTION_COUNT)));
+            case Sum.NAME:
+                final String sumField = ((Sum) seriesSpec).field();
+                return ImmutableList.of(
+                        AggregationBuilders.sum(name + RAW).field(sumField),
+                        AggregationBuilders.sum(name + ROLLUP).field(metricField(sumField, FUNCTION_SUM)));
+            case Min.NAME:
+                final String minField = ((Min) seriesSpec).field();
+                return ImmutableList.of(
+                        AggregationBuilders.min(name + RAW).field(minField),
+                        AggregationBuilders.min(name + ROLLUP).field(metricField(minField, FUNCTION_MIN)));
+            case Max.NAME:
+                final String maxField = ((Max) seriesSpec).field();
+                return ImmutableList.of(
+                        AggregationBuilders.max(name + RAW).field(maxField),
+                        AggregationBuilders.max(name + ROLLUP).field(metricField(maxField, FUNCTION_MAX)));
+            case Average.NAME:
+                final String avgField = ((Average) seriesSpec).field();
+                return ImmutableList.of(
+                        AggregationBuilders.sum(name + RAW + "-sum").field(avgField),
+                        AggregationBuilders.count(name + RAW + "-count").field(avgField),
+                        AggregationBuilders.sum(name + ROLLUP + "-sum").field(metricField(avgField, FUNCTION_SUM)),
+                        AggregationBuilders.sum(name + ROLLUP + "-count").field(metricField(avgField, FUNCTION_COUNT)));
+            default:
+                throw new IllegalArgumentException("Series type " + seriesSpec.type() + " isn't supported for rollups");
+        }
+    }
+
+    Object seriesValue(String name, SeriesSpec seriesSpec, HasAggregations aggregations) {
+        switch (seriesSpec.type()) {
+            case Count.NAME:
+                if (((Count) seriesSpec).field() == null) {
+                    return (long) value(aggregations, name, 0);
+                }
+                return (long) (value(aggregations, name + RAW, 0) + value(aggregations, name + ROLLUP, 0));
+            case Sum.NAME:
+                return value(aggregations, name + RAW, 0) + value(aggregations, name + ROLLUP, 0);
+            case Min.NAME:
+                return Math.min(value(aggregations, name + RAW, Double.POSITIVE_INFINITY),
+                        value(aggregations, name + ROLLUP, Double.POSITIVE_INFINITY));
+            case Max.NAME:
+                return Math.max(value(aggregations, name + RAW, Double.NEGATIVE_INFINITY),
+                        value(aggregations, name + ROLLUP, Double.NEGATIVE_INFINITY));
+            case Average.NAME:
+                final double count = value(aggregations, name + RAW + "-count", 0) + value(aggregations, name + ROLLUP + "-count", 0);
+                if (count == 0) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                return (value(aggregations, name + RAW + "-sum", 0) + value(aggregations, name + ROLLUP + "-sum", 0)) / count;
+            default:
+                throw new IllegalArgumentException("Series type " + seriesSpec.type() + " isn't supported for rollups");
+        }
+    }
+
+    static long totalCount(HasAggregations aggregations) {
+        return (long) value(aggregations, TOTAL_COUNT, 0);
+    }
+
+    private static double value(HasAggregations aggregations, String name, double defaultValue) {
+        if (aggregations.getAggregations() == null) {
+            return defaultValue;
+        }
+        final NumericMetricsAggregation.SingleValue aggregation = aggregations.getAggregations().get(name);
+        return aggregation == null ? defaultValue : aggregation.value();
+    }
+
+    private static DateTime alignDown(DateTime timestamp, long interval) {
+        final long millis = timestamp.getMillis();
+        return new DateTime(millis - Math.floorMod(millis, interval), DateTimeZone.UTC);
+    }
+
+    private static DateTime max(DateTime a, DateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static DateTime min(DateTime a, DateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
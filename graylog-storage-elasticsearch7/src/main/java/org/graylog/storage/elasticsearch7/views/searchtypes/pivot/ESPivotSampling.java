@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views.searchtypes.pivot;
+
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuilders;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.HasAggregations;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.ExtendedStats;
+import org.graylog2.plugin.Message;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Calculates approximate pivots from a random sample of the matching messages.
+ * <p>
+ * Every message gets a sample key when it is indexed, which is derived from a hash of its id and uniformly distributed
+ * over {@code [0, Message.SAMPLE_KEY_RANGE)}. A filter aggregation only passes the messages whose key is below the
+ * share of the key range given by the sample probability on to the bucket and series aggregations. This is a plain
+ * range filter on an indexed field, so nothing is scored and no count is needed up front, and every message is sampled
+ * with the same probability, no matter how the matching messages are distributed across shards.
+ * <p>
+ * Counts and sums are extrapolated to all matching messages and carry the bound of their 95% confidence interval. All
+ * other series are reported as calculated for the sample and are only marked as approximate, e.g. averages and
+ * percentiles are estimates, minimums and maximums are bounds and cardinalities are lower bounds. Messages indexed
+ * before the sample key existed are never sampled, they are counted separately and left out of the extrapolation.
+ */
+class ESPivotSampling {
+    static final String SAMPLE_AGGREGATION = "gl2-sample";
+    static final String UNSAMPLED_AGGREGATION = "gl2-unsampled";
+
+    // z-score of the two-sided 95% confidence interval
+    private static final double Z_95 = 1.96;
+    private static final String SAMPLING_STATS_SUFFIX = "-sampling-stats";
+
+    private ESPivotSampling() {
+    }
+
+    static FilterAggregationBuilder sampleAggregation(double probability) {
+        return AggregationBuilders.filter(SAMPLE_AGGREGATION,
+                QueryBuilders.rangeQuery(Message.FIELD_GL2_SAMPLE_KEY).lt(sampleKeyLimit(probability)));
+    }
+
+    /**
+     * Counts the matching messages which have been indexed without a sample key and can't be part of the sample.
+     */
+    static FilterAggregationBuilder unsampledAggregation() {
+        return AggregationBuilders.filter(UNSAMPLED_AGGREGATION,
+                QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery(Message.FIELD_GL2_SAMPLE_KEY)));
+    }
+
+    static long sampleKeyLimit(double probability) {
+        return Math.round(Math.min(1.0, Math.max(0.0, probability)) * Message.SAMPLE_KEY_RANGE);
+    }
+
+    /**
+     * Returns the additional aggregation which collects the sum of squares needed for the error bound of a series, if
+     * the series is extrapolated.
+     */
+    static Optional<AggregationBuilder> samplingStatsAggregation(String seriesName, SeriesSpec seriesSpec) {
+        if (seriesSpec instanceof Sum) {
+            return Optional.of(AggregationBuilders.extendedStats(samplingStatsName(seriesName)).field(((Sum) seriesSpec).field()));
+        }
+        return Optional.empty();
+    }
+
+    static Optional<ExtendedStats> samplingStats(String seriesName, HasAggregations aggregation) {
+        return Optional.ofNullable(aggregation.getAggregations().get(samplingStatsName(seriesName)));
+    }
+
+    private static String samplingStatsName(String seriesName) {
+        return seriesName + SAMPLING_STATS_SUFFIX;
+    }
+
+    /**
+     * Extrapolates a series value calculated from the sample to all matching messages.
+     *
+     * @param sumOfSquares the sum of the squared values in the sample, only needed for sums
+     */
+    static PivotResult.Value approximateValue(Collection<String> key, Object value, SeriesSpec seriesSpec,
+                                              PivotResult.Sampling sampling, Optional<Double> sumOfSquares,
+                                              boolean rollup, String source) {
+        if (!(value instanceof Number)) {
+            return PivotResult.Value.approximate(key, value, rollup, source, null);
+        }
+        final Number sampleValue = (Number) value;
+        switch (seriesSpec.type()) {
+            case Count.NAME:
+                // every message contributes 1 to a count, so its sum of squares is the count itself
+                final long count = sampleValue.longValue();
+                return PivotResult.Value.approximate(key, Math.round(count * sampling.scaleFactor()),
+                        rollup, source, totalError(count, count, sampling));
+            case Sum.NAME:
+                final double sum = sampleValue.doubleValue();
+                return PivotResult.Value.approximate(key, sum * sampling.scaleFactor(),
+                        rollup, source, sumOfSquares.map(squares -> totalError(sum, squares, sampling)).orElse(null));
+            default:
+                return PivotResult.Value.approximate(key, value, rollup, source, null);
+        }
+    }
+
+    /**
+     * Returns the bound of the 95% confidence interval of an extrapolated total, treating the sample as a simple
+     * random sample drawn without replacement from all sampled messages. Messages which don't contribute to the
+     * total, e.g. because they belong to another bucket, count as zero.
+     */
+    static double totalError(double sampleSum, double sampleSumOfSquares, PivotResult.Sampling sampling) {
+        final double sampled = sampling.sampledDocuments();
+        final double population = sampling.sampledPopulation();
+        if (sampled <= 1 || sampled >= population) {
+            return 0.0;
+        }
+        final double variance = Math.max(0.0, (sampleSumOfSquares - sampleSum * sampleSum / sampled) / (sampled - 1));
+        final double finitePopulationCorrection = (population - sampled) / (population - 1);
+        final double standardError = population * Math.sqrt(variance / sampled * finitePopulationCorrection);
+        return Z_95 * standardError;
+    }
+}
@@ -95,7 +95,7 @@ public class ElasticsearchBackendGeneratedRequestTestBase {
                 indexLookup,
                 new QueryStringDecorators.Fake(),
                 (elasticsearchBackend, ssb, job, query, results) -> new ESGeneratedQueryContext(elasticsearchBackend, ssb, job, query, results, fieldTypesLookup),
-                false);
+                false, 0);
     }
 
     SearchJob searchJobForQuery(Query query) {
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.elasticsearch.FieldTypesLookup;
+import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
+import org.graylog.plugins.views.search.elasticsearch.QueryStringDecorators;
+import org.graylog.plugins.views.search.searchtypes.MessageList;
+import org.graylog.shaded.elasticsearch7.org.apache.lucene.search.TotalHits;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.OriginalIndices;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.MultiSearchResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.common.bytes.BytesArray;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.common.text.Text;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.shard.ShardId;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.DocValueFormat;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHit;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHits;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchShardTarget;
+import org.graylog.storage.elasticsearch7.ElasticsearchClient;
+import org.graylog.storage.elasticsearch7.views.searchtypes.ESMessageList;
+import org.graylog.storage.elasticsearch7.views.searchtypes.ESSearchTypeHandler;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import javax.inject.Provider;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog.storage.elasticsearch7.views.ViewsUtils.indicesOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ElasticsearchBackendProgressiveSearchTest {
+    private static final DateTime NOW = new DateTime(2020, 1, 3, 12, 0, DateTimeZone.UTC);
+
+    private static final Map<String, Provider<ESSearchTypeHandler<? extends SearchType>>> handlers = ImmutableMap.of(
+            MessageList.NAME, () -> new ESMessageList(new QueryStringDecorators.Fake())
+    );
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Mock
+    private IndexLookup indexLookup;
+
+    @Mock
+    private ElasticsearchClient client;
+
+    @Captor
+    private ArgumentCaptor<List<SearchRequest>> clientRequestCaptor;
+
+    private ElasticsearchBackend backend;
+
+    @Before
+    public void setUp() {
+        final FieldTypesLookup fieldTypesLookup = mock(FieldTypesLookup.class);
+        this.backend = new ElasticsearchBackend(handlers,
+                client,
+                indexLookup,
+                new QueryStringDecorators.Fake(),
+                (elasticsearchBackend, ssb, job, query, results) -> new ESGeneratedQueryContext(elasticsearchBackend, ssb, job, query, results, fieldTypesLookup),
+                false,
+                1);
+    }
+
+    @Test
+    public void searchesWriteIndexWithUnknownRangeFirst() {
+        final IndexRange olderIndex = indexRange("graylog_1", NOW.minusDays(2));
+        final IndexRange newerIndex = indexRange("graylog_2", NOW.minusDays(1));
+        // the range of the current write index is only calculated after rotation
+        final IndexRange writeIndex = indexRange("graylog_3", new DateTime(0L, DateTimeZone.UTC));
+        when(indexLookup.indexRangesForStreamsInTimeRange(any(), any())).thenReturn(ImmutableList.of(newerIndex, olderIndex, writeIndex));
+
+        when(client.msearch(any(), any()))
+                .thenReturn(response(searchHits(10, hit("graylog_3", "newest", NOW.minusMinutes(1)), hit("graylog_3", "newer", NOW.minusMinutes(2)))))
+                .thenReturn(response(searchHits(20)));
+
+        final QueryResult result = run(messageList(2));
+
+        verify(client, times(2)).msearch(clientRequestCaptor.capture(), any());
+        final List<List<SearchRequest>> requests = clientRequestCaptor.getAllValues();
+        assertThat(indicesOf(requests.get(0))).containsExactly("graylog_3");
+        // the page is filled by the write index, the older indices are only counted
+        assertThat(indicesOf(requests.get(1))).containsExactly("graylog_2,graylog_1");
+
+        final MessageList.Result messageListResult = (MessageList.Result) result.searchTypes().get("messages");
+        assertThat(messageListResult.totalResults()).isEqualTo(30);
+        assertThat(messageListResult.messages()).extracting(message -> message.message().get("_id"))
+                .containsExactly("newest", "newer");
+    }
+
+    private QueryResult run(MessageList messageList) {
+        final Query query = Query.builder()
+                .id("query1")
+                .timerange(RelativeRange.create(600))
+                .query(ElasticsearchQueryString.builder().queryString("*").build())
+                .searchTypes(ImmutableSet.of(messageList))
+                .build();
+        final Search search = Search.builder()
+                .id("search1")
+                .queries(ImmutableSet.of(query))
+                .build();
+        final SearchJob job = new SearchJob("job1", search, "admin");
+        final ESGeneratedQueryContext context = backend.generate(job, query, Collections.emptySet());
+
+        return backend.doRun(job, query, context, Collections.emptySet());
+    }
+
+    private MessageList messageList(int limit) {
+        return MessageList.builder()
+                .id("messages")
+                .limit(limit)
+                .offset(0)
+                .build();
+    }
+
+    private IndexRange indexRange(String indexName, DateTime end) {
+        final IndexRange indexRange = mock(IndexRange.class);
+        when(indexRange.indexName()).thenReturn(indexName);
+        when(indexRange.end()).thenReturn(end);
+        return indexRange;
+    }
+
+    private List<MultiSearchResponse.Item> response(SearchHits searchHits) {
+        final SearchResponse searchResponse = mock(SearchResponse.class);
+        when(searchResponse.getHits()).thenReturn(searchHits);
+        return Collections.singletonList(new MultiSearchResponse.Item(searchResponse, null));
+    }
+
+    private SearchHits searchHits(long totalCount, SearchHit... hits) {
+        return new SearchHits(hits, new TotalHits(totalCount, TotalHits.Relation.EQUAL_TO), 0.0f);
+    }
+
+    private SearchHit hit(String index, String id, DateTime timestamp) {
+        final SearchHit hit = new SearchHit(0, id, new Text("_doc"), Collections.emptyMap(), Collections.emptyMap());
+        hit.shard(new SearchShardTarget("node-1", new ShardId(index, "uuid", 0), null, OriginalIndices.NONE));
+        hit.sourceRef(new BytesArray("{\"message\":\"message " + id + "\",\"source\":\"source\"}"));
+        hit.sortValues(new Object[]{timestamp.getMillis()}, new DocValueFormat[]{DocValueFormat.RAW});
+        return hit;
+    }
+}
@@ -59,7 +59,7 @@ class ElasticsearchBackendQueryStringDecoratorsTest {
                 mock(IndexLookup.class),
                 new QueryStringDecorators(decorators),
                 (elasticsearchBackend, ssb, job, query, results) -> new ESGeneratedQueryContext(elasticsearchBackend, ssb, job, query, results, fieldTypesLookup),
-                true
+                true, 0
         );
     }
 
@@ -98,7 +98,7 @@ public class ElasticsearchBackendUsingCorrectIndicesTest {
                 indexLookup,
                 new QueryStringDecorators.Fake(),
                 (elasticsearchBackend, ssb, job, query, results) -> new ESGeneratedQueryContext(elasticsearchBackend, ssb, job, query, results, fieldTypesLookup),
-                false);
+                false, 0);
     }
 
     @Before
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views;
+
+import org.graylog.shaded.elasticsearch7.org.apache.lucene.search.TotalHits;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.DocValueFormat;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHit;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHits;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProgressiveHitCollectorTest {
+    @Test
+    public void keepsNewestHitsAcrossBatches() {
+        final ProgressiveHitCollector collector = new ProgressiveHitCollector(3);
+
+        collector.add(searchHits(10, hit(1, 400L), hit(2, 300L)));
+        collector.add(searchHits(5, hit(3, 500L), hit(4, 100L)));
+
+        assertThat(collector.isFull()).isTrue();
+        assertThat(collector.totalHits()).isEqualTo(15);
+        assertThat(collector.page(0)).extracting(SearchHit::docId).containsExactly(3, 1, 2);
+        assertThat(collector.page(1)).extracting(SearchHit::docId).containsExactly(1, 2);
+    }
+
+    @Test
+    public void returnsEmptyPageIfOffsetIsBeyondCollectedHits() {
+        final ProgressiveHitCollector collector = new ProgressiveHitCollector(5);
+
+        collector.add(searchHits(1, hit(1, 400L)));
+
+        assertThat(collector.page(2)).isEmpty();
+    }
+
+    @Test
+    public void doesNotSkipIndicesBeforePageIsFilled() {
+        final ProgressiveHitCollector collector = new ProgressiveHitCollector(3);
+
+        collector.add(searchHits(2, hit(1, 400L), hit(2, 300L)));
+
+        assertThat(collector.canSkip(indexRangeEndingAt(100L))).isFalse();
+    }
+
+    @Test
+    public void skipsIndicesEndingBeforeOldestCollectedHit() {
+        final ProgressiveHitCollector collector = new ProgressiveHitCollector(2);
+
+        collector.add(searchHits(2, hit(1, 400L), hit(2, 300L)));
+
+        assertThat(collector.canSkip(indexRangeEndingAt(299L))).isTrue();
+        assertThat(collector.canSkip(indexRangeEndingAt(300L))).isFalse();
+        assertThat(collector.canSkip(indexRangeEndingAt(350L))).isFalse();
+    }
+
+    @Test
+    public void neverSkipsIndicesWithUnknownRange() {
+        final ProgressiveHitCollector collector = new ProgressiveHitCollector(2);
+
+        collector.add(searchHits(2, hit(1, 400L), hit(2, 300L)));
+
+        assertThat(collector.canSkip(indexRangeEndingAt(0L))).isFalse();
+    }
+
+    @Test
+    public void ordersIndicesWithUnknownRangeFirst() {
+        final IndexRange older = indexRangeEndingAt(100L);
+        final IndexRange newer = indexRangeEndingAt(200L);
+        final IndexRange unknown = indexRangeEndingAt(0L);
+
+        assertThat(Stream.of(older, unknown, newer).sorted(ProgressiveHitCollector.NEWEST_INDICES_FIRST))
+                .containsExactly(unknown, newer, older);
+    }
+
+    @Test
+    public void countsRemainingHits() {
+        final ProgressiveHitCollector collector = new ProgressiveHitCollector(2);
+
+        collector.add(searchHits(2, hit(1, 400L), hit(2, 300L)));
+        collector.addTotalHits(40);
+
+        assertThat(collector.totalHits()).isEqualTo(42);
+    }
+
+    private SearchHit hit(int docId, long timestamp) {
+        final SearchHit hit = new SearchHit(docId);
+        hit.sortValues(new Object[]{timestamp}, new DocValueFormat[]{DocValueFormat.RAW});
+        return hit;
+    }
+
+    private SearchHits searchHits(long totalCount, SearchHit... hits) {
+        return new SearchHits(hits, new TotalHits(totalCount, TotalHits.Relation.EQUAL_TO), 0.0f);
+    }
+
+    private IndexRange indexRangeEndingAt(long timestamp) {
+        final IndexRange indexRange = mock(IndexRange.class);
+        when(indexRange.end()).thenReturn(new DateTime(timestamp, DateTimeZone.UTC));
+        return indexRange;
+    }
+}
@@ -62,7 +62,7 @@ public class QueryPlanTest {
                 mock(IndexLookup.class),
                 new QueryStringDecorators.Fake(),
                 (elasticsearchBackend, ssb, job, query, results) -> new ESGeneratedQueryContext(elasticsearchBackend, ssb, job, query, results, fieldTypesLookup),
-                false);
+                false, 0);
         queryEngine = new QueryEngine(backend, Collections.emptySet(), new QueryParser(queryStringParser));
     }
 
@@ -16,6 +16,7 @@
  */
 package org.graylog.storage.elasticsearch7.views.export;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
@@ -62,12 +63,9 @@ public class ElasticsearchExportBackendIT extends ElasticsearchBaseTest {
     public void setUp() {
         indexLookup = mock(IndexLookup.class);
 
-        sut = new ElasticsearchExportBackend(indexLookup, requestStrategy(), false);
-    }
-
-    private RequestStrategy requestStrategy() {
         final ExportClient exportClient = new ExportClient(elasticsearch.elasticsearchClient());
-        return new SearchAfter(exportClient);
+        sut = new ElasticsearchExportBackend(indexLookup, new SearchAfter(exportClient), false,
+                new SlicedScrollExport(exportClient, new MetricRegistry(), 4));
     }
 
     @Test
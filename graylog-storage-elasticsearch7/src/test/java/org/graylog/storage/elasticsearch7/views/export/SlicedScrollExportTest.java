@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views.export;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.export.ExportException;
+import org.graylog.shaded.elasticsearch7.org.apache.lucene.search.TotalHits;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchRequest;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.common.text.Text;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.index.query.QueryBuilders;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHit;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.SearchHits;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.slice.SliceBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SlicedScrollExportTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private ExportClient client;
+
+    private final List<String> exportedIds = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        // every slice returns its hits with the initial search, the following scroll request returns no more hits
+        when(client.search(any(SearchRequest.class), anyString()))
+                .thenAnswer(invocation -> sliceResponse(invocation.getArgument(0), 2));
+        final SearchResponse emptyResponse = response();
+        when(client.execute(any(), anyString())).thenReturn(emptyResponse);
+    }
+
+    private SlicedScrollExport export(int parallelism) {
+        return new SlicedScrollExport(client, new MetricRegistry(), parallelism);
+    }
+
+    private void run(SlicedScrollExport export, ImmutableSet<String> indices, OptionalInt limit) {
+        export.run(QueryBuilders.matchAllQuery(), indices, 10, limit, hits -> {
+            hits.forEach(hit -> exportedIds.add(hit.getId()));
+            return true;
+        });
+    }
+
+    @Test
+    public void exportsAllSlicesOfAllIndices() {
+        run(export(4), ImmutableSet.of("graylog_0", "graylog_1"), OptionalInt.empty());
+
+        assertThat(exportedIds).containsExactlyInAnyOrder(
+                "graylog_0-0-0", "graylog_0-0-1", "graylog_0-1-0", "graylog_0-1-1",
+                "graylog_1-0-0", "graylog_1-0-1", "graylog_1-1-0", "graylog_1-1-1");
+        // one scroll request and one clear scroll request per slice
+        verify(client, times(4)).search(any(SearchRequest.class), anyString());
+        verify(client, times(8)).execute(any(), anyString());
+    }
+
+    @Test
+    public void usesIndicesAsSlicesIfThereAreEnoughOfThem() {
+        run(export(2), ImmutableSet.of("graylog_0", "graylog_1", "graylog_2"), OptionalInt.empty());
+
+        assertThat(exportedIds).containsExactlyInAnyOrder(
+                "graylog_0-0-0", "graylog_0-0-1", "graylog_1-0-0", "graylog_1-0-1", "graylog_2-0-0", "graylog_2-0-1");
+    }
+
+    @Test
+    public void stopsAtLimit() {
+        run(export(1), ImmutableSet.of("graylog_0", "graylog_1"), OptionalInt.of(1));
+
+        assertThat(exportedIds).containsExactly("graylog_0-0-0");
+        // the second index isn't searched anymore, the scroll of the first one is only cleared
+        verify(client, times(1)).search(any(SearchRequest.class), anyString());
+        verify(client, times(1)).execute(any(), anyString());
+    }
+
+    @Test
+    public void stopsIfConsumerDeclinesChunk() {
+        final AtomicInteger chunks = new AtomicInteger();
+
+        export(1).run(QueryBuilders.matchAllQuery(), ImmutableSet.of("graylog_0", "graylog_1"), 10, OptionalInt.empty(),
+                hits -> chunks.incrementAndGet() < 1);
+
+        assertThat(chunks).hasValue(1);
+        verify(client, times(1)).search(any(SearchRequest.class), anyString());
+    }
+
+    @Test
+    public void failsIfSliceFails() {
+        doThrow(new ExportException("Unable to start sliced export", new RuntimeException("boom")))
+                .when(client).search(any(SearchRequest.class), anyString());
+
+        assertThatThrownBy(() -> run(export(2), ImmutableSet.of("graylog_0"), OptionalInt.empty()))
+                .isInstanceOf(ExportException.class);
+    }
+
+    @Test
+    public void limitsConcurrentSlicesOfAllExports() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                return sliceResponse(invocation.getArgument(0), 1);
+            } finally {
+                running.decrementAndGet();
+            }
+        }).when(client).search(any(SearchRequest.class), anyString());
+        final SlicedScrollExport export = export(2);
+
+        final CompletableFuture<Void> first = CompletableFuture.runAsync(() ->
+                run(export, ImmutableSet.of("graylog_0", "graylog_1", "graylog_2"), OptionalInt.empty()));
+        final CompletableFuture<Void> second = CompletableFuture.runAsync(() ->
+                run(export, ImmutableSet.of("graylog_3", "graylog_4", "graylog_5"), OptionalInt.empty()));
+        CompletableFuture.allOf(first, second).get();
+
+        assertThat(exportedIds).hasSize(6);
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void writesChunksOnCallingThread() {
+        final Set<Thread> writers = Collections.synchronizedSet(new HashSet<>());
+
+        export(4).run(QueryBuilders.matchAllQuery(), ImmutableSet.of("graylog_0", "graylog_1"), 10, OptionalInt.empty(),
+                hits -> {
+                    writers.add(Thread.currentThread());
+                    return true;
+                });
+
+        assertThat(writers).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    public void slowConsumerDoesNotBlockOtherExports() throws Exception {
+        final SlicedScrollExport export = export(2);
+        final CountDownLatch otherExportFinished = new CountDownLatch(1);
+
+        final CompletableFuture<Void> slowExport = CompletableFuture.runAsync(() ->
+                export.run(QueryBuilders.matchAllQuery(), ImmutableSet.of("graylog_0", "graylog_1", "graylog_2"), 10, OptionalInt.empty(),
+                        hits -> {
+                            try {
+                                return otherExportFinished.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return false;
+                            }
+                        }));
+
+        CompletableFuture.runAsync(() -> run(export, ImmutableSet.of("graylog_3", "graylog_4"), OptionalInt.empty()))
+                .get(5, TimeUnit.SECONDS);
+        otherExportFinished.countDown();
+        slowExport.get(5, TimeUnit.SECONDS);
+
+        assertThat(exportedIds).containsExactlyInAnyOrder("graylog_3-0-0", "graylog_3-0-1", "graylog_4-0-0", "graylog_4-0-1");
+    }
+
+    private SearchResponse sliceResponse(SearchRequest request, int hitsPerSlice) {
+        final String index = request.indices()[0];
+        final SliceBuilder slice = request.source().slice();
+        final int sliceId = slice == null ? 0 : slice.getId();
+        final SearchHit[] hits = new SearchHit[hitsPerSlice];
+        for (int i = 0; i < hitsPerSlice; i++) {
+            hits[i] = new SearchHit(i, index + "-" + sliceId + "-" + i, new Text("_doc"), Collections.emptyMap(), Collections.emptyMap());
+        }
+        return response(hits);
+    }
+
+    private SearchResponse response(SearchHit... hits) {
+        final SearchResponse response = mock(SearchResponse.class);
+        when(response.getHits()).thenReturn(new SearchHits(hits, new TotalHits(hits.length, TotalHits.Relation.EQUAL_TO), 0.0f));
+        when(response.getScrollId()).thenReturn("scroll-id");
+        return response;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views.searchtypes.pivot;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Values;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.Aggregations;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.HasAggregations;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
+import org.graylog2.indexer.rollup.RollupCoverage;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ESPivotRollupTest {
+    private static final DateTime ROLLED_UP_FROM = new DateTime(2020, 11, 1, 0, 0, DateTimeZone.UTC);
+    private static final DateTime ROLLED_UP_UNTIL = new DateTime(2020, 11, 10, 0, 0, DateTimeZone.UTC);
+
+    private RollupCoverage coverage;
+    private Query query;
+    private Pivot pivot;
+
+    @Before
+    public void setUp() {
+        coverage = RollupCoverage.create(ImmutableSet.of("graylog-rollup"), Duration.standardMinutes(5),
+                ImmutableSet.of("source"), ImmutableSet.of("took_ms"), ROLLED_UP_FROM, ROLLED_UP_UNTIL);
+        query = mock(Query.class);
+        pivot = mock(Pivot.class);
+        when(query.query()).thenReturn(ElasticsearchQueryString.builder().queryString("*").build());
+        when(query.effectiveTimeRange(pivot)).thenReturn(AbsoluteRange.create(ROLLED_UP_FROM.minusDays(1), ROLLED_UP_UNTIL.plusDays(1)));
+        when(pivot.query()).thenReturn(Optional.empty());
+        when(pivot.rowGroups()).thenReturn(ImmutableList.of(Time.builder().field("timestamp")
+                .interval(TimeUnitInterval.Builder.builder().timeunit("1h").build()).build()));
+        when(pivot.columnGroups()).thenReturn(ImmutableList.of(Values.builder().field("source").limit(10).build()));
+        when(pivot.series()).thenReturn(ImmutableList.of(Count.builder().build(), Sum.builder().field("took_ms").build()));
+    }
+
+    @Test
+    public void usesRollupsForCoveredPivot() {
+        assertThat(ESPivotRollup.forPivot(coverage, query, pivot)).isPresent();
+    }
+
+    @Test
+    public void doesNotUseRollupsForQueryString() {
+        when(query.query()).thenReturn(ElasticsearchQueryString.builder().queryString("source:example.org").build());
+
+        assertThat(ESPivotRollup.forPivot(coverage, query, pivot)).isEmpty();
+    }
+
+    @Test
+    public void doesNotUseRollupsForFieldsWhichAreNotRolledUp() {
+        when(pivot.columnGroups()).thenReturn(ImmutableList.of(Values.builder().field("http_method").limit(10).build()));
+
+        assertThat(ESPivotRollup.forPivot(coverage, query, pivot)).isEmpty();
+    }
+
+    @Test
+    public void doesNotUseRollupsForIntervalsShorterThanRollupInterval() {
+        when(pivot.rowGroups()).thenReturn(ImmutableList.of(Time.builder().field("timestamp")
+                .interval(TimeUnitInterval.Builder.builder().timeunit("1m").build()).build()));
+
+        assertThat(ESPivotRollup.forPivot(coverage, query, pivot)).isEmpty();
+    }
+
+    @Test
+    public void doesNotUseRollupsIfTimeRangeContainsNoCompleteRollupInterval() {
+        when(query.effectiveTimeRange(pivot)).thenReturn(AbsoluteRange.create(ROLLED_UP_FROM.plusMinutes(1), ROLLED_UP_FROM.plusMinutes(6)));
+
+        assertThat(ESPivotRollup.forPivot(coverage, query, pivot)).isEmpty();
+    }
+
+    @Test
+    public void combinesRawAndRolledUpValues() {
+        final ESPivotRollup rollup = ESPivotRollup.forPivot(coverage, query, pivot).orElseThrow(AssertionError::new);
+        final SeriesSpec sum = Sum.builder().field("took_ms").build();
+        final SeriesSpec max = Max.builder().field("took_ms").build();
+        final SeriesSpec avg = Average.builder().field("took_ms").build();
+
+        final HasAggregations aggregations = aggregations(
+                metric("sum-raw", 10.0), metric("sum-rollup", 32.0),
+                metric("max-raw", 7.0), metric("max-rollup", Double.NEGATIVE_INFINITY),
+                metric("avg-raw-sum", 10.0), metric("avg-raw-count", 2.0),
+                metric("avg-rollup-sum", 32.0), metric("avg-rollup-count", 4.0));
+
+        assertThat(rollup.seriesValue("sum", sum, aggregations)).isEqualTo(42.0);
+        assertThat(rollup.seriesValue("max", max, aggregations)).isEqualTo(7.0);
+        assertThat(rollup.seriesValue("avg", avg, aggregations)).isEqualTo(7.0);
+    }
+
+    @Test
+    public void countsRolledUpMessages() {
+        final ESPivotRollup rollup = ESPivotRollup.forPivot(coverage, query, pivot).orElseThrow(AssertionError::new);
+
+        final HasAggregations aggregations = aggregations(metric("count", 4242.0), metric(ESPivotRollup.TOTAL_COUNT, 4242.0));
+
+        assertThat(rollup.seriesValue("count", Count.builder().build(), aggregations)).isEqualTo(4242L);
+        assertThat(ESPivotRollup.totalCount(aggregations)).isEqualTo(4242L);
+    }
+
+    private NumericMetricsAggregation.SingleValue metric(String name, double value) {
+        final NumericMetricsAggregation.SingleValue metric = mock(NumericMetricsAggregation.SingleValue.class);
+        when(metric.getName()).thenReturn(name);
+        when(metric.value()).thenReturn(value);
+        return metric;
+    }
+
+    private HasAggregations aggregations(NumericMetricsAggregation.SingleValue... metrics) {
+        final Aggregations aggregations = new Aggregations(Arrays.asList(metrics));
+        final HasAggregations hasAggregations = mock(HasAggregations.class);
+        when(hasAggregations.getAggregations()).thenReturn(aggregations);
+        return hasAggregations;
+    }
+}
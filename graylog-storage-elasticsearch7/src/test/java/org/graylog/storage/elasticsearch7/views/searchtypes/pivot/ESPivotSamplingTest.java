@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.elasticsearch7.views.searchtypes.pivot;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
+import org.graylog2.plugin.Message;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class ESPivotSamplingTest {
+    private static final ImmutableList<String> KEY = ImmutableList.of("count()");
+
+    @Test
+    public void extrapolatesCountsAndSums() {
+        final PivotResult.Sampling sampling = PivotResult.Sampling.create(10000, 200000, 0);
+
+        final PivotResult.Value count = ESPivotSampling.approximateValue(KEY, 2500L, Count.builder().build(), sampling, Optional.empty(), false, "leaf");
+        final PivotResult.Value sum = ESPivotSampling.approximateValue(KEY, 1500.0, Sum.builder().field("took_ms").build(), sampling, Optional.of(5000.0), false, "leaf");
+
+        assertThat(count.value()).isEqualTo(50000L);
+        assertThat(count.approximate()).isTrue();
+        assertThat(count.error()).isCloseTo(1654.5, within(0.1));
+        assertThat(sum.value()).isEqualTo(30000.0);
+        assertThat(sum.approximate()).isTrue();
+        assertThat(sum.error()).isCloseTo(2640.3, within(0.1));
+    }
+
+    @Test
+    public void marksSeriesWhichAreNotExtrapolatedAsApproximate() {
+        final PivotResult.Sampling sampling = PivotResult.Sampling.create(10000, 200000, 0);
+
+        final PivotResult.Value avg = ESPivotSampling.approximateValue(KEY, 42.0, Average.builder().field("took_ms").build(), sampling, Optional.empty(), false, "leaf");
+
+        assertThat(avg.value()).isEqualTo(42.0);
+        assertThat(avg.approximate()).isTrue();
+        assertThat(avg.error()).isNull();
+    }
+
+    @Test
+    public void countsAreExactIfAllMessagesWereSampled() {
+        final PivotResult.Sampling sampling = PivotResult.Sampling.create(500, 500, 0);
+
+        final PivotResult.Value count = ESPivotSampling.approximateValue(KEY, 123L, Count.builder().build(), sampling, Optional.empty(), false, "leaf");
+
+        assertThat(count.value()).isEqualTo(123L);
+        assertThat(count.error()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void doesNotExtrapolateToUnsampledMessages() {
+        final PivotResult.Sampling sampling = PivotResult.Sampling.create(10000, 210000, 10000);
+
+        final PivotResult.Value count = ESPivotSampling.approximateValue(KEY, 2500L, Count.builder().build(), sampling, Optional.empty(), false, "leaf");
+
+        assertThat(sampling.sampledPopulation()).isEqualTo(200000L);
+        assertThat(sampling.scaleFactor()).isEqualTo(20.0);
+        assertThat(count.value()).isEqualTo(50000L);
+        assertThat(count.error()).isCloseTo(1654.5, within(0.1));
+    }
+
+    @Test
+    public void coversTheSampleProbabilityOfTheSampleKeyRange() {
+        assertThat(ESPivotSampling.sampleKeyLimit(0.05)).isEqualTo(Message.SAMPLE_KEY_RANGE / 20);
+        assertThat(ESPivotSampling.sampleKeyLimit(1.0)).isEqualTo(Message.SAMPLE_KEY_RANGE);
+        assertThat(ESPivotSampling.sampleKeyLimit(2.0)).isEqualTo(Message.SAMPLE_KEY_RANGE);
+    }
+
+    @Test
+    public void extrapolatesCountsOfUnevenShards() {
+        // one large shard only containing messages of host "a" and a small one only containing messages of host "b"
+        final long largeShard = 200000;
+        final long smallShard = 2000;
+        final long limit = ESPivotSampling.sampleKeyLimit(0.05);
+
+        // the sample filter passes the same share of the sample keys on every shard
+        long sampledA = 0;
+        long sampledB = 0;
+        for (long i = 0; i < largeShard; i++) {
+            if (Message.sampleKey("a-" + i) < limit) {
+                sampledA++;
+            }
+        }
+        for (long i = 0; i < smallShard; i++) {
+            if (Message.sampleKey("b-" + i) < limit) {
+                sampledB++;
+            }
+        }
+        final PivotResult.Sampling sampling = PivotResult.Sampling.create(sampledA + sampledB, largeShard + smallShard, 0);
+
+        final PivotResult.Value countA = ESPivotSampling.approximateValue(KEY, sampledA, Count.builder().build(), sampling, Optional.empty(), false, "leaf");
+        final PivotResult.Value countB = ESPivotSampling.approximateValue(KEY, sampledB, Count.builder().build(), sampling, Optional.empty(), false, "leaf");
+
+        // sampling a fixed number of messages per shard would report about the same count for both hosts
+        assertThat((long) countA.value()).isCloseTo(largeShard, within(Math.round(countA.error())));
+        assertThat((long) countB.value()).isCloseTo(smallShard, within(Math.round(countB.error())));
+    }
+}
@@ -39,6 +39,7 @@ import org.graylog.events.notifications.types.EmailEventNotificationConfig;
 import org.graylog.events.notifications.types.HTTPEventNotification;
 import org.graylog.events.notifications.types.HTTPEventNotificationConfig;
 import org.graylog.events.periodicals.EventNotificationStatusCleanUp;
+import org.graylog.events.periodicals.StreamingAggregationFlusher;
 import org.graylog.events.processor.EventProcessorEngine;
 import org.graylog.events.processor.EventProcessorExecutionJob;
 import org.graylog.events.processor.EventProcessorExecutionMetrics;
@@ -47,6 +48,9 @@ import org.graylog.events.processor.aggregation.AggregationEventProcessorConfig;
 import org.graylog.events.processor.aggregation.AggregationEventProcessorParameters;
 import org.graylog.events.processor.aggregation.AggregationSearch;
 import org.graylog.events.processor.aggregation.PivotAggregationSearch;
+import org.graylog.events.processor.aggregation.StreamingAggregationFilter;
+import org.graylog.events.processor.aggregation.StreamingAggregationSearch;
+import org.graylog.events.processor.aggregation.StreamingAwareAggregationSearchFactory;
 import org.graylog.events.processor.storage.EventStorageHandlerEngine;
 import org.graylog.events.processor.storage.PersistToStreamsStorageHandler;
 import org.graylog.scheduler.JobExecutionEngine;
@@ -149,6 +153,11 @@ public class EventsModule extends PluginModule {
         addJobSchedulerSchedule(OnceJobSchedule.TYPE_NAME, OnceJobSchedule.class);
 
         // Change this if another aggregation search implementation should be used
-        install(new FactoryModuleBuilder().implement(AggregationSearch.class, PivotAggregationSearch.class).build(AggregationSearch.Factory.class));
+        install(new FactoryModuleBuilder().build(PivotAggregationSearch.Factory.class));
+        install(new FactoryModuleBuilder().build(StreamingAggregationSearch.Factory.class));
+        bind(AggregationSearch.Factory.class).to(StreamingAwareAggregationSearchFactory.class);
+
+        addMessageFilter(StreamingAggregationFilter.class);
+        addPeriodical(StreamingAggregationFlusher.class);
     }
 }
@@ -16,6 +16,9 @@
  */
 package org.graylog.events.notifications;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -39,6 +42,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,16 +53,23 @@ public class EventNotificationHandler {
     private final DBJobTriggerService jobTriggerService;
     private final DBNotificationService notificationService;
     private final NotificationGracePeriodService notificationGracePeriodService;
+    private final Meter inGracePeriod;
+    private final Meter createdTriggers;
+    private final Histogram triggerBatchSize;
 
     @Inject
     public EventNotificationHandler(DBJobDefinitionService jobDefinitionService,
                                     DBJobTriggerService jobTriggerService,
                                     DBNotificationService notificationService,
-                                    NotificationGracePeriodService notificationGracePeriodService) {
+                                    NotificationGracePeriodService notificationGracePeriodService,
+                                    MetricRegistry metricRegistry) {
         this.jobDefinitionService = jobDefinitionService;
         this.jobTriggerService = jobTriggerService;
         this.notificationService = notificationService;
         this.notificationGracePeriodService = notificationGracePeriodService;
+        this.inGracePeriod = metricRegistry.meter(MetricRegistry.name(getClass(), "events", "in-grace-period"));
+        this.createdTriggers = metricRegistry.meter(MetricRegistry.name(getClass(), "triggers", "created"));
+        this.triggerBatchSize = metricRegistry.histogram(MetricRegistry.name(getClass(), "triggers", "batch-size"));
     }
 
     public void handleEvents(EventDefinition definition, List<EventWithContext> eventsWithContext) {
@@ -79,23 +90,43 @@ public class EventNotificationHandler {
             final EventNotificationConfig notificationConfig = notificationDto.get().config();
             // TODO: The job trigger data needs information about the events and how to re-run the query to create the backlog
 
+            // Events within the grace period of an earlier event with the same key don't get a trigger, this
+            // also coalesces events of the same key within this batch.
+            final List<JobTriggerDto> triggers = new ArrayList<>(eventsWithContext.size());
             for (EventWithContext eventWithContext : eventsWithContext) {
                 final Event event = eventWithContext.event();
                 if (notificationGracePeriodService.inGracePeriod(definition, config.notificationId(), event)) {
+                    inGracePeriod.mark();
                     continue;
                 }
-                try {
-                    final JobTriggerDto trigger = jobTriggerService.create(JobTriggerDto.builder()
-                            .jobDefinitionId(jobDefinition.get().id())
-                            .schedule(OnceJobSchedule.create())
-                            .data(notificationConfig.toJobTriggerData(event.toDto()))
-                            .build());
-                    LOG.debug("Scheduled job <{}> for notification <{}> - event <{}/{}>", trigger.id(), config.notificationId(), event.getId(), event.getMessage());
-                    // TODO: The trigger ID needs to be added to the "triggered_tasks" list of the event
-                } catch (Exception e) {
-                    LOG.error("Couldn't create job trigger for notification <{}> and event: {}", config.notificationId(), event, e);
-                }
+                triggers.add(JobTriggerDto.builder()
+                        .jobDefinitionId(jobDefinition.get().id())
+                        .schedule(OnceJobSchedule.create())
+                        .data(notificationConfig.toJobTriggerData(event.toDto()))
+                        .build());
+            }
+            createTriggers(config.notificationId(), triggers);
+        }
+    }
+
+    private void createTriggers(String notificationId, List<JobTriggerDto> triggers) {
+        if (triggers.isEmpty()) {
+            return;
+        }
+        triggerBatchSize.update(triggers.size());
+        try {
+            // Insert all triggers at once, event bursts would otherwise cause a database round trip per event.
+            // The insert is unordered, so a failing trigger is retried on its own and doesn't drop the others.
+            final List<JobTriggerDto> savedTriggers = jobTriggerService.createAll(triggers);
+            createdTriggers.mark(savedTriggers.size());
+            LOG.debug("Scheduled {} jobs for notification <{}>", savedTriggers.size(), notificationId);
+            if (savedTriggers.size() < triggers.size()) {
+                LOG.error("Couldn't create {} of {} job triggers for notification <{}>",
+                        triggers.size() - savedTriggers.size(), triggers.size(), notificationId);
             }
+            // TODO: The trigger IDs need to be added to the "triggered_tasks" list of the events
+        } catch (Exception e) {
+            LOG.error("Couldn't create {} job triggers for notification <{}>", triggers.size(), notificationId, e);
         }
     }
 
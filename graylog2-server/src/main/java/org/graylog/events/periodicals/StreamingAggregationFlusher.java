@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.periodicals;
+
+import org.graylog.events.processor.aggregation.StreamingAggregationEngine;
+import org.graylog2.plugin.periodical.Periodical;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+
+/**
+ * Periodically stores the panes of streamed aggregation event definitions and picks up changed definitions.
+ */
+public class StreamingAggregationFlusher extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingAggregationFlusher.class);
+
+    private static final int FLUSH_INTERVAL_SECONDS = 5;
+    // Reload the event definitions every 30 seconds
+    private static final int REFRESH_EVERY_RUNS = 6;
+
+    private final StreamingAggregationEngine engine;
+    private int runs = 0;
+
+    @Inject
+    public StreamingAggregationFlusher(StreamingAggregationEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return engine.isEnabled();
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 0;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return FLUSH_INTERVAL_SECONDS;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+
+    @Override
+    public void doRun() {
+        if (runs++ % REFRESH_EVERY_RUNS == 0) {
+            engine.refresh();
+        }
+        engine.flush();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import org.graylog.scheduler.JobSchedulerConfig;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.Semaphore;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Limits the number of event processor executions which are catching up on old data at the same time.
+ * <p>
+ * Catch-up executions run large searches over merged time ranges. Without a limit they can occupy every scheduler
+ * worker after an outage and delay the executions of event processors which are already up to date. The limit is
+ * half of the scheduler worker threads (rounded up), so the remaining workers are always available for live
+ * executions.
+ */
+@Singleton
+public class EventProcessorCatchUpLimiter {
+    private final Semaphore permits;
+    private final Meter throttled;
+
+    @Inject
+    public EventProcessorCatchUpLimiter(JobSchedulerConfig schedulerConfig, MetricRegistry metricRegistry) {
+        this(Math.max(1, (schedulerConfig.numberOfWorkerThreads() + 1) / 2), metricRegistry);
+    }
+
+    @VisibleForTesting
+    public EventProcessorCatchUpLimiter(int maxConcurrentCatchUps, MetricRegistry metricRegistry) {
+        this.permits = new Semaphore(maxConcurrentCatchUps);
+        this.throttled = metricRegistry.meter(name(getClass(), "throttled"));
+        metricRegistry.register(name(getClass(), "running"),
+                (Gauge<Integer>) () -> maxConcurrentCatchUps - permits.availablePermits());
+    }
+
+    /**
+     * Tries to start a catch-up execution. Every successful call must be followed by a call to {@link #release()}.
+     *
+     * @return true if the catch-up execution can run now, false if it should be retried later
+     */
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        throttled.mark();
+        return false;
+    }
+
+    /**
+     * Marks a catch-up execution as finished.
+     */
+    public void release() {
+        permits.release();
+    }
+}
@@ -61,17 +61,20 @@ public class EventProcessorExecutionJob implements Job {
     private final EventProcessorEngine eventProcessorEngine;
     private final Config config;
     private final EventsConfigurationProvider configurationProvider;
+    private final EventProcessorCatchUpLimiter catchUpLimiter;
 
     @Inject
     public EventProcessorExecutionJob(JobScheduleStrategies scheduleStrategies,
                                       JobSchedulerClock clock,
                                       EventProcessorEngine eventProcessorEngine,
                                       EventsConfigurationProvider configurationProvider,
+                                      EventProcessorCatchUpLimiter catchUpLimiter,
                                       @Assisted JobDefinitionDto jobDefinition) {
         this.scheduleStrategies = scheduleStrategies;
         this.clock = clock;
         this.eventProcessorEngine = eventProcessorEngine;
         this.configurationProvider = configurationProvider;
+        this.catchUpLimiter = catchUpLimiter;
         this.config = (Config) jobDefinition.config();
     }
 
@@ -111,6 +114,15 @@ public class EventProcessorExecutionJob implements Job {
             return JobTriggerUpdate.withNextTime(to);
         }
 
+        // If at least one more window has already passed, this execution is catching up on old data. Catch-up
+        // executions are limited so they cannot use all scheduler workers and delay the up to date event processors.
+        final boolean catchingUp = isCatchingUp(to, now);
+        if (catchingUp && !catchUpLimiter.tryAcquire()) {
+            LOG.debug("Too many event processors are catching up on old data, delaying event processor <{}> (retry in {} ms)",
+                    config.eventDefinitionId(), RETRY_INTERVAL);
+            return ctx.jobTriggerUpdates().retryIn(RETRY_INTERVAL, MILLISECONDS);
+        }
+
         try {
             eventProcessorEngine.execute(config.eventDefinitionId(), parameters);
 
@@ -135,15 +147,12 @@ public class EventProcessorExecutionJob implements Job {
             // It's the specific event processors' duty to handle being executed with this larger timerange.
             // If an event processor was configured with a processingHopSize greater than the processingWindowSize
             // we can't use the catchup mode.
-            final long catchUpSize = configurationProvider.get().eventCatchupWindow();
-            if (catchUpSize > 0 && catchUpSize > config.processingWindowSize() && to.plus(catchUpSize).isBefore(now) &&
-                config.processingHopSize() <= config.processingWindowSize()) {
-                final long chunkCount = catchUpSize / config.processingWindowSize();
-
+            final long chunkCount = catchUpChunkCount(to, now);
+            if (chunkCount > 1) {
                 // Align to multiples of the processingWindowSize
                 nextTo = to.plus(config.processingWindowSize() * chunkCount);
-                LOG.info("Event processor <{}> is catching up on old data. Combining {} search windows with catchUpWindowSize={}ms: from={} to={}",
-                        config.eventDefinitionId(), chunkCount, catchUpSize, nextFrom, nextTo);
+                LOG.debug("Event processor <{}> is catching up on old data. Combining {} search windows: from={} to={}",
+                        config.eventDefinitionId(), chunkCount, nextFrom, nextTo);
             }
 
             LOG.trace("Set new timerange of eventproc <{}> in job trigger data: from={} to={} (hopSize={}ms windowSize={}ms)",
@@ -207,7 +216,29 @@ public class EventProcessorExecutionJob implements Job {
             LOG.error("Event processor <{}> failed to execute: parameters={} (retry in {} ms)", config.eventDefinitionId(), parameters, RETRY_INTERVAL, e);
 
             return ctx.jobTriggerUpdates().retryIn(RETRY_INTERVAL, MILLISECONDS);
+        } finally {
+            if (catchingUp) {
+                catchUpLimiter.release();
+            }
+        }
+    }
+
+    private boolean isCatchingUp(DateTime to, DateTime now) {
+        return to.plus(config.processingWindowSize()).isBefore(now);
+    }
+
+    /**
+     * Returns the number of processing windows the next execution should cover. The backlog of complete windows is
+     * merged into one timerange, so a single search replaces one search per window. The merged timerange is capped
+     * at the configured catch-up window to keep the number of buckets per search bounded.
+     */
+    private long catchUpChunkCount(DateTime to, DateTime now) {
+        final long catchUpSize = configurationProvider.get().eventCatchupWindow();
+        if (catchUpSize <= config.processingWindowSize() || config.processingHopSize() > config.processingWindowSize()) {
+            return 1;
         }
+        final long backlog = Math.min(catchUpSize, now.getMillis() - to.getMillis());
+        return Math.max(1, backlog / config.processingWindowSize());
     }
 
     @AutoValue
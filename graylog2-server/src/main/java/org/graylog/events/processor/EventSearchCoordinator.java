@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog.plugins.views.search.Filter;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.db.SearchJobService;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.engine.QueryEngine;
+import org.graylog.plugins.views.search.errors.SearchError;
+import org.graylog.plugins.views.search.errors.SearchTypeError;
+import org.graylog.plugins.views.search.filter.OrFilter;
+import org.graylog.plugins.views.search.filter.StreamFilter;
+import org.graylog.plugins.views.search.rest.PermittedStreams;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Combines the pivot searches of event processors which run at the same time for the same streams and time range
+ * into a single search. Every submitted query becomes a set of search types with their own query string, so the
+ * search backend executes all of them with one multi search request.
+ */
+@Singleton
+public class EventSearchCoordinator {
+    private static final Logger LOG = LoggerFactory.getLogger(EventSearchCoordinator.class);
+
+    // Executions which are due in the same scheduler loop are started within this window
+    public static final long BATCH_WINDOW_MS = 100;
+    private static final int MAX_BATCH_SIZE = 32;
+    private static final String BATCH_QUERY_ID = "event-search-batch";
+    private static final String BATCH_SEARCH_OWNER = "event-search-coordinator";
+
+    private final SearchJobService searchJobService;
+    private final QueryEngine queryEngine;
+    private final PermittedStreams permittedStreams;
+    private final Histogram batchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Map<BatchKey, Batch> openBatches = new HashMap<>();
+
+    @Inject
+    public EventSearchCoordinator(SearchJobService searchJobService,
+                                  QueryEngine queryEngine,
+                                  PermittedStreams permittedStreams,
+                                  MetricRegistry metricRegistry) {
+        this.searchJobService = searchJobService;
+        this.queryEngine = queryEngine;
+        this.permittedStreams = permittedStreams;
+        this.batchSize = metricRegistry.histogram(name(EventSearchCoordinator.class, "batchSize"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("event-search-coordinator-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Submits the given pivots to be searched together with the pivots of other event processors.
+     *
+     * @param streams     the streams to search in, all permitted streams if empty
+     * @param timerange   the time range to search in
+     * @param queryString the query string of the event processor
+     * @param pivots      the pivots to compute, the IDs must be unique within the list
+     * @return the future result, containing the results of the given pivots and the errors affecting them
+     */
+    public CompletableFuture<QueryResult> submit(Set<String> streams, TimeRange timerange, String queryString, List<Pivot> pivots) {
+        final Request request = new Request(queryString, pivots);
+        final BatchKey key = new BatchKey(streams, timerange);
+
+        synchronized (openBatches) {
+            Batch batch = openBatches.get(key);
+            if (batch == null) {
+                batch = new Batch(key);
+                openBatches.put(key, batch);
+                final Batch scheduledBatch = batch;
+                scheduler.schedule(() -> run(scheduledBatch), BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+            batch.requests.add(request);
+            if (batch.requests.size() >= MAX_BATCH_SIZE) {
+                // Later requests start a new batch, this one still runs when its window is over
+                openBatches.remove(key);
+            }
+        }
+        return request.result;
+    }
+
+    private void run(Batch batch) {
+        synchronized (openBatches) {
+            openBatches.remove(batch.key, batch);
+        }
+        batchSize.update(batch.requests.size());
+        LOG.debug("Running {} event searches for streams <{}> and time range <{}> in one search",
+                batch.requests.size(), batch.key.streams, batch.key.timerange);
+
+        final Query query = batchQuery(batch);
+        try {
+            final Search search = Search.builder()
+                    .queries(ImmutableSet.of(query))
+                    .build()
+                    // This adds all streams if none were provided
+                    .addStreamsToQueriesWithoutStreams(() -> permittedStreams.load((streamId) -> true));
+            final SearchJob searchJob = queryEngine.execute(searchJobService.create(search, BATCH_SEARCH_OWNER));
+            searchJob.getResultFuture().whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    batch.requests.forEach(request -> request.result.completeExceptionally(throwable));
+                } else {
+                    distributeResult(batch, searchJob.results().get(BATCH_QUERY_ID));
+                }
+            });
+        } catch (Exception e) {
+            batch.requests.forEach(request -> request.result.completeExceptionally(e));
+        }
+    }
+
+    private Query batchQuery(Batch batch) {
+        final List<SearchType> searchTypes = new ArrayList<>();
+        for (int i = 0; i < batch.requests.size(); i++) {
+            final Request request = batch.requests.get(i);
+            for (Pivot pivot : request.pivots) {
+                searchTypes.add(pivot.toBuilder()
+                        .id(request.prefix(i) + pivot.id())
+                        .query(ElasticsearchQueryString.builder().queryString(request.queryString).build())
+                        .build());
+            }
+        }
+
+        final Query.Builder queryBuilder = Query.builder()
+                .id(BATCH_QUERY_ID)
+                .searchTypes(ImmutableSet.copyOf(searchTypes))
+                .query(ElasticsearchQueryString.empty())
+                .timerange(batch.key.timerange);
+        if (!batch.key.streams.isEmpty()) {
+            queryBuilder.filter(filteringForStreamIds(batch.key.streams));
+        }
+        return queryBuilder.build();
+    }
+
+    private void distributeResult(Batch batch, QueryResult batchResult) {
+        final Map<String, SearchType.Result> searchTypeResults = batchResult.searchTypes() == null
+                ? Collections.emptyMap()
+                : batchResult.searchTypes();
+        final Set<SearchError> errors = batchResult.errors() == null ? Collections.emptySet() : batchResult.errors();
+
+        for (int i = 0; i < batch.requests.size(); i++) {
+            final Request request = batch.requests.get(i);
+            final String prefix = request.prefix(i);
+
+            final Map<String, SearchType.Result> results = new HashMap<>();
+            for (Pivot pivot : request.pivots) {
+                final SearchType.Result result = searchTypeResults.get(prefix + pivot.id());
+                if (result != null) {
+                    results.put(pivot.id(), result);
+                }
+            }
+            // Errors of other search types in the batch must not fail this request
+            final Set<SearchError> requestErrors = new HashSet<>();
+            for (SearchError error : errors) {
+                if (!(error instanceof SearchTypeError) || ((SearchTypeError) error).searchTypeId().startsWith(prefix)) {
+                    requestErrors.add(error);
+                }
+            }
+
+            request.result.complete(batchResult.toBuilder()
+                    .searchTypes(results)
+                    .errors(requestErrors)
+                    .build());
+        }
+    }
+
+    private Filter filteringForStreamIds(Set<String> streamIds) {
+        final Set<Filter> streamFilters = streamIds.stream()
+                .map(StreamFilter::ofId)
+                .collect(toSet());
+        return OrFilter.builder()
+                .filters(streamFilters)
+                .build();
+    }
+
+    private static class Request {
+        private final String queryString;
+        private final List<Pivot> pivots;
+        private final CompletableFuture<QueryResult> result = new CompletableFuture<>();
+
+        Request(String queryString, List<Pivot> pivots) {
+            this.queryString = queryString;
+            this.pivots = ImmutableList.copyOf(pivots);
+        }
+
+        String prefix(int index) {
+            return "request-" + index + "/";
+        }
+    }
+
+    private static class Batch {
+        private final BatchKey key;
+        private final List<Request> requests = new ArrayList<>();
+
+        Batch(BatchKey key) {
+            this.key = key;
+        }
+    }
+
+    private static class BatchKey {
+        private final Set<String> streams;
+        private final TimeRange timerange;
+
+        BatchKey(Set<String> streams, TimeRange timerange) {
+            this.streams = ImmutableSet.copyOf(streams);
+            this.timerange = timerange;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final BatchKey that = (BatchKey) o;
+            return streams.equals(that.streams) && timerange.equals(that.timerange);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(streams, timerange);
+        }
+    }
+}
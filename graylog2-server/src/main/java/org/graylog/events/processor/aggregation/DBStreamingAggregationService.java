@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.mongodb.BasicDBObject;
+import org.bson.types.ObjectId;
+import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.database.MongoDBUpsertRetryer;
+import org.joda.time.DateTime;
+import org.mongojack.DBQuery;
+import org.mongojack.DBUpdate;
+import org.mongojack.JacksonDBCollection;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.graylog.events.processor.aggregation.StreamingAggregationPaneDto.FIELD_CREATED_AT;
+import static org.graylog.events.processor.aggregation.StreamingAggregationPaneDto.FIELD_PANE_START;
+import static org.graylog.events.processor.aggregation.StreamingAggregationWatermarkDto.FIELD_EVENT_DEFINITION_ID;
+import static org.graylog.events.processor.aggregation.StreamingAggregationWatermarkDto.FIELD_FINGERPRINT;
+import static org.graylog.events.processor.aggregation.StreamingAggregationWatermarkDto.FIELD_FLUSHED_UNTIL;
+import static org.graylog.events.processor.aggregation.StreamingAggregationWatermarkDto.FIELD_NODE_ID;
+import static org.graylog.events.processor.aggregation.StreamingAggregationWatermarkDto.FIELD_STREAMING_SINCE;
+import static org.graylog.events.processor.aggregation.StreamingAggregationWatermarkDto.FIELD_UPDATED_AT;
+
+/**
+ * Stores the panes and watermarks of streamed aggregation event definitions.
+ */
+public class DBStreamingAggregationService {
+    private static final String PANES_COLLECTION_NAME = "event_processor_streaming_panes";
+    private static final String WATERMARKS_COLLECTION_NAME = "event_processor_streaming_watermarks";
+
+    // Panes are only needed until the scheduled job processed their time range
+    static final long PANE_RETENTION_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    private final JacksonDBCollection<StreamingAggregationPaneDto, ObjectId> panes;
+    private final JacksonDBCollection<StreamingAggregationWatermarkDto, ObjectId> watermarks;
+
+    @Inject
+    public DBStreamingAggregationService(MongoConnection mongoConnection,
+                                         MongoJackObjectMapperProvider mapper) {
+        this.panes = JacksonDBCollection.wrap(mongoConnection.getDatabase().getCollection(PANES_COLLECTION_NAME),
+                StreamingAggregationPaneDto.class,
+                ObjectId.class,
+                mapper.get());
+        this.watermarks = JacksonDBCollection.wrap(mongoConnection.getDatabase().getCollection(WATERMARKS_COLLECTION_NAME),
+                StreamingAggregationWatermarkDto.class,
+                ObjectId.class,
+                mapper.get());
+
+        panes.createIndex(new BasicDBObject(StreamingAggregationPaneDto.FIELD_EVENT_DEFINITION_ID, 1)
+                .append(StreamingAggregationPaneDto.FIELD_FINGERPRINT, 1)
+                .append(FIELD_PANE_START, 1));
+        panes.createIndex(new BasicDBObject(FIELD_CREATED_AT, 1),
+                new BasicDBObject("expireAfterSeconds", PANE_RETENTION_SECONDS));
+
+        // Every node has one watermark per event definition
+        watermarks.createIndex(new BasicDBObject(FIELD_NODE_ID, 1).append(FIELD_EVENT_DEFINITION_ID, 1),
+                new BasicDBObject("unique", true));
+        watermarks.createIndex(new BasicDBObject(FIELD_UPDATED_AT, 1),
+                new BasicDBObject("expireAfterSeconds", PANE_RETENTION_SECONDS));
+    }
+
+    public void insertPanes(List<StreamingAggregationPaneDto> dtos) {
+        if (!dtos.isEmpty()) {
+            panes.insert(dtos);
+        }
+    }
+
+    /**
+     * Returns all panes of the given event definition version which start within the given time range.
+     *
+     * @param from inclusive start of the time range
+     * @param to   exclusive end of the time range
+     */
+    public List<StreamingAggregationPaneDto> findPanes(String eventDefinitionId, String fingerprint, DateTime from, DateTime to) {
+        final DBQuery.Query query = DBQuery.and(
+                DBQuery.is(StreamingAggregationPaneDto.FIELD_EVENT_DEFINITION_ID, eventDefinitionId),
+                DBQuery.is(StreamingAggregationPaneDto.FIELD_FINGERPRINT, fingerprint),
+                DBQuery.greaterThanEquals(FIELD_PANE_START, from),
+                DBQuery.lessThan(FIELD_PANE_START, to)
+        );
+        return ImmutableList.copyOf(panes.find(query).iterator());
+    }
+
+    public void setWatermark(String nodeId, String eventDefinitionId, String fingerprint,
+                             DateTime streamingSince, DateTime flushedUntil) {
+        final DBUpdate.Builder update = DBUpdate.set(FIELD_NODE_ID, nodeId)
+                .set(FIELD_EVENT_DEFINITION_ID, eventDefinitionId)
+                .set(FIELD_FINGERPRINT, fingerprint)
+                .set(FIELD_STREAMING_SINCE, streamingSince)
+                .set(FIELD_FLUSHED_UNTIL, flushedUntil)
+                .set(FIELD_UPDATED_AT, flushedUntil);
+
+        MongoDBUpsertRetryer.run(() -> watermarks.update(
+                DBQuery.and(DBQuery.is(FIELD_NODE_ID, nodeId), DBQuery.is(FIELD_EVENT_DEFINITION_ID, eventDefinitionId)),
+                update,
+                true,
+                false));
+    }
+
+    /**
+     * Returns the watermarks of all nodes which have been streaming the given event definition since the given time.
+     */
+    public List<StreamingAggregationWatermarkDto> findWatermarks(String eventDefinitionId, DateTime updatedSince) {
+        final DBQuery.Query query = DBQuery.and(
+                DBQuery.is(FIELD_EVENT_DEFINITION_ID, eventDefinitionId),
+                DBQuery.greaterThanEquals(FIELD_UPDATED_AT, updatedSince)
+        );
+        return ImmutableList.copyOf(watermarks.find(query).iterator());
+    }
+}
@@ -18,12 +18,14 @@ package org.graylog.events.processor.aggregation;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.assistedinject.Assisted;
 import org.graylog.events.configuration.EventsConfigurationProvider;
 import org.graylog.events.processor.EventDefinition;
 import org.graylog.events.processor.EventProcessorException;
+import org.graylog.events.processor.EventSearchCoordinator;
 import org.graylog.events.search.MoreSearch;
 import org.graylog.plugins.views.search.Filter;
 import org.graylog.plugins.views.search.Query;
@@ -60,6 +62,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -71,6 +74,13 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static java.util.stream.Collectors.toSet;
 
 public class PivotAggregationSearch implements AggregationSearch {
+    public interface Factory {
+        PivotAggregationSearch create(AggregationEventProcessorConfig config,
+                                      AggregationEventProcessorParameters parameters,
+                                      String searchOwner,
+                                      EventDefinition eventDefinition);
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(PivotAggregationSearch.class);
 
     private static final String QUERY_ID = "query-1";
@@ -88,6 +98,7 @@ public class PivotAggregationSearch implements AggregationSearch {
     private final EventDefinition eventDefinition;
     private final MoreSearch moreSearch;
     private final PermittedStreams permittedStreams;
+    private final EventSearchCoordinator searchCoordinator;
 
     @Inject
     public PivotAggregationSearch(@Assisted AggregationEventProcessorConfig config,
@@ -98,7 +109,8 @@ public class PivotAggregationSearch implements AggregationSearch {
                                   QueryEngine queryEngine,
                                   EventsConfigurationProvider configProvider,
                                   MoreSearch moreSearch,
-                                  PermittedStreams permittedStreams) {
+                                  PermittedStreams permittedStreams,
+                                  EventSearchCoordinator searchCoordinator) {
         this.config = config;
         this.parameters = parameters;
         this.searchOwner = searchOwner;
@@ -108,6 +120,7 @@ public class PivotAggregationSearch implements AggregationSearch {
         this.configurationProvider = configProvider;
         this.moreSearch = moreSearch;
         this.permittedStreams = permittedStreams;
+        this.searchCoordinator = searchCoordinator;
     }
 
     private String metricName(AggregationSeries series) {
@@ -117,9 +130,11 @@ public class PivotAggregationSearch implements AggregationSearch {
 
     @Override
     public AggregationResult doSearch() throws EventProcessorException {
-        final SearchJob searchJob = getSearchJob(parameters, searchOwner, config.searchWithinMs(), config.executeEveryMs());
-        final QueryResult queryResult = searchJob.results().get(QUERY_ID);
-        final QueryResult streamQueryResult = searchJob.results().get(STREAMS_QUERY_ID);
+        final Map<String, QueryResult> results = config.queryParameters().isEmpty()
+                ? getBatchedResults(parameters, config.searchWithinMs(), config.executeEveryMs())
+                : getSearchJob(parameters, searchOwner, config.searchWithinMs(), config.executeEveryMs()).results();
+        final QueryResult queryResult = results.get(QUERY_ID);
+        final QueryResult streamQueryResult = results.get(STREAMS_QUERY_ID);
 
         final Set<SearchError> aggregationErrors = firstNonNull(queryResult.errors(), Collections.emptySet());
         final Set<SearchError> streamErrors = firstNonNull(streamQueryResult.errors(), Collections.emptySet());
@@ -356,6 +371,30 @@ public class PivotAggregationSearch implements AggregationSearch {
         return searchJob;
     }
 
+    /**
+     * Runs both pivots together with the pivots of other event processors searching the same streams and time range.
+     * Only possible without query parameters, because those are resolved for the whole search.
+     */
+    private Map<String, QueryResult> getBatchedResults(AggregationEventProcessorParameters parameters,
+                                                       long searchWithinMs, long executeEveryMs) throws EventProcessorException {
+        final QueryResult result;
+        try {
+            result = Uninterruptibles.getUninterruptibly(
+                    searchCoordinator.submit(getStreams(parameters), parameters.timerange(), config.query(),
+                            ImmutableList.of(getAggregationPivot(parameters, searchWithinMs, executeEveryMs), getSourceStreamsPivot())),
+                    configurationProvider.get().eventsSearchTimeout() + EventSearchCoordinator.BATCH_WINDOW_MS,
+                    TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new EventProcessorException("Error executing search job: " + e.getMessage(), false, eventDefinition, e);
+        } catch (TimeoutException e) {
+            throw new EventProcessorException("Timeout while executing search job.", false, eventDefinition, e);
+        } catch (Exception e) {
+            throw new EventProcessorException("Unhandled exception in search job.", false, eventDefinition, e);
+        }
+        // Both pivots are part of the same query result
+        return ImmutableMap.of(QUERY_ID, result, STREAMS_QUERY_ID, result);
+    }
+
     /**
      * Returns the query to compute the sources streams for the aggregation.
      *
@@ -363,14 +402,7 @@ public class PivotAggregationSearch implements AggregationSearch {
      * @return source streams query
      */
     private Query getSourceStreamsQuery(AggregationEventProcessorParameters parameters) {
-        final Pivot pivot = Pivot.builder()
-            .id(STREAMS_PIVOT_ID)
-            .rollup(true)
-            .rowGroups(ImmutableList.of(Values.builder().limit(Integer.MAX_VALUE).field("streams").build()))
-            .series(ImmutableList.of(Count.builder().id(STREAMS_PIVOT_COUNT_ID).build()))
-            .build();
-
-        final Set<SearchType> searchTypes = Collections.singleton(pivot);
+        final Set<SearchType> searchTypes = Collections.singleton(getSourceStreamsPivot());
         final Query.Builder queryBuilder = Query.builder()
             .id(STREAMS_QUERY_ID)
             .searchTypes(searchTypes)
@@ -385,6 +417,15 @@ public class PivotAggregationSearch implements AggregationSearch {
         return queryBuilder.build();
     }
 
+    private Pivot getSourceStreamsPivot() {
+        return Pivot.builder()
+            .id(STREAMS_PIVOT_ID)
+            .rollup(true)
+            .rowGroups(ImmutableList.of(Values.builder().limit(Integer.MAX_VALUE).field("streams").build()))
+            .series(ImmutableList.of(Count.builder().id(STREAMS_PIVOT_COUNT_ID).build()))
+            .build();
+    }
+
     /**
      * Returns the query to compute the aggregation.
      *
@@ -394,6 +435,23 @@ public class PivotAggregationSearch implements AggregationSearch {
      * @return aggregation query
      */
     private Query getAggregationQuery(AggregationEventProcessorParameters parameters, long searchWithinMs, long executeEveryMs) {
+        final Set<SearchType> searchTypes = Collections.singleton(getAggregationPivot(parameters, searchWithinMs, executeEveryMs));
+
+        final Query.Builder queryBuilder = Query.builder()
+                .id(QUERY_ID)
+                .searchTypes(searchTypes)
+                .query(ElasticsearchQueryString.builder().queryString(config.query()).build())
+                .timerange(parameters.timerange());
+
+        final Set<String> streams = getStreams(parameters);
+        if (!streams.isEmpty()) {
+            queryBuilder.filter(filteringForStreamIds(streams));
+        }
+
+        return queryBuilder.build();
+    }
+
+    private Pivot getAggregationPivot(AggregationEventProcessorParameters parameters, long searchWithinMs, long executeEveryMs) {
         final Pivot.Builder pivotBuilder = Pivot.builder()
                 .id(PIVOT_ID)
                 .rollup(true);
@@ -445,20 +503,7 @@ public class PivotAggregationSearch implements AggregationSearch {
         // We always have row groups because of the date range buckets
         pivotBuilder.rowGroups(groupBy);
 
-        final Set<SearchType> searchTypes = Collections.singleton(pivotBuilder.build());
-
-        final Query.Builder queryBuilder = Query.builder()
-                .id(QUERY_ID)
-                .searchTypes(searchTypes)
-                .query(ElasticsearchQueryString.builder().queryString(config.query()).build())
-                .timerange(parameters.timerange());
-
-        final Set<String> streams = getStreams(parameters);
-        if (!streams.isEmpty()) {
-            queryBuilder.filter(filteringForStreamIds(streams));
-        }
-
-        return queryBuilder.build();
+        return pivotBuilder.build();
     }
 
     private Filter filteringForStreamIds(Set<String> streamIds) {
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Doubles;
+import org.graylog2.plugin.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates a small subset of the Elasticsearch query string syntax against a message: {@code field:value} and
+ * {@code _exists_:field} terms, optionally negated with {@code NOT} and joined with {@code AND}.
+ * <p>
+ * Everything else (free text, wildcards, ranges, {@code OR}, grouping) is rejected by {@link #parse(String)}, because it
+ * can't be evaluated exactly like Elasticsearch would without the index mapping. The same goes for the analyzed
+ * {@code message} and {@code full_message} fields.
+ * </p>
+ */
+class SimpleQueryMatcher {
+    private static final Pattern FIELD_NAME = Pattern.compile("[\\w.@\\-]+");
+    // A leading "-" would negate the term
+    private static final Pattern UNQUOTED_VALUE = Pattern.compile("[^\\s*?~^\\[\\]{}()\\\\/:!\"+&|<>=\\-][^\\s*?~^\\[\\]{}()\\\\/:!\"+&|<>=]*");
+    private static final ImmutableSet<String> ANALYZED_FIELDS = ImmutableSet.of(Message.FIELD_MESSAGE, Message.FIELD_FULL_MESSAGE);
+    private static final String EXISTS = "_exists_";
+
+    private final ImmutableList<Term> terms;
+
+    private SimpleQueryMatcher(List<Term> terms) {
+        this.terms = ImmutableList.copyOf(terms);
+    }
+
+    /**
+     * Parses the given query string.
+     *
+     * @return the matcher or an empty optional if the query uses unsupported syntax
+     */
+    static Optional<SimpleQueryMatcher> parse(String query) {
+        final String trimmed = query == null ? "" : query.trim();
+        if (trimmed.isEmpty() || "*".equals(trimmed)) {
+            return Optional.of(new SimpleQueryMatcher(ImmutableList.of()));
+        }
+        final List<String> tokens = tokenize(trimmed);
+        if (tokens == null) {
+            return Optional.empty();
+        }
+
+        final List<Term> terms = new ArrayList<>();
+        int i = 0;
+        while (i < tokens.size()) {
+            if (!terms.isEmpty()) {
+                if (!"AND".equals(tokens.get(i)) || ++i >= tokens.size()) {
+                    return Optional.empty();
+                }
+            }
+            boolean negated = false;
+            if ("NOT".equals(tokens.get(i))) {
+                negated = true;
+                if (++i >= tokens.size()) {
+                    return Optional.empty();
+                }
+            }
+            final Term term = parseTerm(tokens.get(i++), negated);
+            if (term == null) {
+                return Optional.empty();
+            }
+            terms.add(term);
+        }
+        return Optional.of(new SimpleQueryMatcher(terms));
+    }
+
+    boolean matches(Message message) {
+        for (Term term : terms) {
+            if (term.matches(message) == term.negated) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Splits on whitespace outside of quotes, returns null for unbalanced quotes
+    private static List<String> tokenize(String query) {
+        final List<String> tokens = new ArrayList<>();
+        final StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            final char c = query.charAt(i);
+            if (quoted && c == '\\' && i + 1 < query.length()) {
+                current.append(c).append(query.charAt(++i));
+            } else if (c == '"') {
+                quoted = !quoted;
+                current.append(c);
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private static Term parseTerm(String token, boolean negated) {
+        final int colon = token.indexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        final String field = token.substring(0, colon);
+        final String rawValue = token.substring(colon + 1);
+        if (!FIELD_NAME.matcher(field).matches()) {
+            return null;
+        }
+
+        if (EXISTS.equals(field)) {
+            if (!FIELD_NAME.matcher(rawValue).matches() || ANALYZED_FIELDS.contains(rawValue)) {
+                return null;
+            }
+            return new Term(rawValue, null, negated);
+        }
+        if (ANALYZED_FIELDS.contains(field)) {
+            return null;
+        }
+
+        final String value;
+        if (rawValue.length() >= 2 && rawValue.startsWith("\"") && rawValue.endsWith("\"")) {
+            value = unescape(rawValue.substring(1, rawValue.length() - 1));
+        } else if (UNQUOTED_VALUE.matcher(rawValue).matches()) {
+            value = rawValue;
+        } else {
+            return null;
+        }
+        return new Term(field, value, negated);
+    }
+
+    private static String unescape(String value) {
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                builder.append(value.charAt(++i));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class Term {
+        private final String field;
+        // null for _exists_ terms
+        private final String value;
+        private final Double numericValue;
+        private final boolean negated;
+
+        Term(String field, String value, boolean negated) {
+            this.field = field;
+            this.value = value;
+            this.numericValue = value == null ? null : Doubles.tryParse(value);
+            this.negated = negated;
+        }
+
+        boolean matches(Message message) {
+            final Object fieldValue = message.getField(field);
+            if (fieldValue == null) {
+                return false;
+            }
+            if (value == null) {
+                return true;
+            }
+            if (fieldValue instanceof Number) {
+                return numericValue != null && ((Number) fieldValue).doubleValue() == numericValue;
+            }
+            // The source field is indexed lower case
+            if (Message.FIELD_SOURCE.equals(field)) {
+                return value.equalsIgnoreCase(fieldValue.toString());
+            }
+            return value.equals(fieldValue.toString());
+        }
+    }
+}
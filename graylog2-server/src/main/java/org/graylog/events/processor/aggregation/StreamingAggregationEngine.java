@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.processor.DBEventDefinitionService;
+import org.graylog.events.processor.EventDefinitionDto;
+import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.system.NodeId;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates eligible aggregation event definitions while messages are being processed. The resulting panes are
+ * stored in the database so the scheduled execution of the event definition doesn't have to search for messages.
+ */
+@Singleton
+public class StreamingAggregationEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingAggregationEngine.class);
+
+    static final long MAX_SEARCH_WITHIN_MS = TimeUnit.HOURS.toMillis(12);
+    private static final Set<AggregationFunction> SUPPORTED_FUNCTIONS = ImmutableSet.of(
+            AggregationFunction.COUNT,
+            AggregationFunction.SUM,
+            AggregationFunction.MIN,
+            AggregationFunction.MAX,
+            AggregationFunction.AVG
+    );
+
+    private final boolean enabled;
+    private final DBEventDefinitionService eventDefinitionService;
+    private final DBStreamingAggregationService streamingAggregationService;
+    private final NodeId nodeId;
+    private final JobSchedulerClock clock;
+
+    private volatile List<StreamingAggregator> aggregators = ImmutableList.of();
+
+    @Inject
+    public StreamingAggregationEngine(Configuration configuration,
+                                      DBEventDefinitionService eventDefinitionService,
+                                      DBStreamingAggregationService streamingAggregationService,
+                                      NodeId nodeId,
+                                      JobSchedulerClock clock) {
+        this.enabled = configuration.isEventsStreamingAggregationEnabled();
+        this.eventDefinitionService = eventDefinitionService;
+        this.streamingAggregationService = streamingAggregationService;
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks if the given configuration can be computed from panes. Definitions with query parameters, non-additive
+     * functions, long search windows or queries which cannot be evaluated without the search backend keep using
+     * the search.
+     */
+    static boolean isEligible(AggregationEventProcessorConfig config) {
+        return !config.series().isEmpty()
+                && config.queryParameters().isEmpty()
+                && config.searchWithinMs() <= MAX_SEARCH_WITHIN_MS
+                && config.series().stream().allMatch(series -> SUPPORTED_FUNCTIONS.contains(series.function()))
+                && SimpleQueryMatcher.parse(config.query()).isPresent();
+    }
+
+    public boolean isStreamed(AggregationEventProcessorConfig config) {
+        return enabled && isEligible(config);
+    }
+
+    /**
+     * Aggregates the given message for every streamed event definition.
+     */
+    public void process(Message message) {
+        for (StreamingAggregator aggregator : aggregators) {
+            aggregator.process(message);
+        }
+    }
+
+    /**
+     * Loads the current event definitions. Aggregators of unchanged definitions are kept.
+     */
+    public synchronized void refresh() {
+        final Map<String, StreamingAggregator> existing = aggregators.stream()
+                .collect(Collectors.toMap(StreamingAggregator::eventDefinitionId, aggregator -> aggregator));
+        final Map<String, StreamingAggregator> updated = new HashMap<>();
+        final DateTime now = clock.nowUTC();
+
+        try (Stream<EventDefinitionDto> definitions = eventDefinitionService.streamAll()) {
+            definitions.forEach(definition -> {
+                if (!(definition.config() instanceof AggregationEventProcessorConfig)) {
+                    return;
+                }
+                final AggregationEventProcessorConfig config = (AggregationEventProcessorConfig) definition.config();
+                if (!isEligible(config)) {
+                    return;
+                }
+                final StreamingAggregator current = existing.get(definition.id());
+                if (current != null && current.fingerprint().equals(StreamingAggregator.fingerprint(config))) {
+                    updated.put(definition.id(), current);
+                    return;
+                }
+                final Optional<SimpleQueryMatcher> matcher = SimpleQueryMatcher.parse(config.query());
+                matcher.ifPresent(m -> updated.put(definition.id(), new StreamingAggregator(definition.id(), config, m, now)));
+            });
+        }
+
+        if (!updated.keySet().equals(existing.keySet())) {
+            LOG.debug("Streaming aggregation for {} event definitions", updated.size());
+        }
+        aggregators = ImmutableList.copyOf(updated.values());
+    }
+
+    /**
+     * Writes the panes collected since the last flush and advances the watermark of this node.
+     */
+    public void flush() {
+        // Everything processed before this point in time is part of the drained panes
+        final DateTime flushedUntil = clock.nowUTC();
+        for (StreamingAggregator aggregator : aggregators) {
+            try {
+                streamingAggregationService.insertPanes(aggregator.drain(nodeId.toString(), flushedUntil));
+                streamingAggregationService.setWatermark(nodeId.toString(), aggregator.eventDefinitionId(),
+                        aggregator.fingerprint(), aggregator.streamingSince(), flushedUntil);
+            } catch (Exception e) {
+                // The drained panes are lost, so time ranges before this point must be searched again
+                LOG.warn("Couldn't store streaming aggregation panes for event definition <{}>",
+                        aggregator.eventDefinitionId(), e);
+                aggregator.restartStreaming(flushedUntil);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.filters.MessageFilter;
+
+import javax.inject.Inject;
+
+/**
+ * Hands every processed message to the {@link StreamingAggregationEngine}. Runs after the stream matcher so the
+ * stream assignments are known.
+ */
+public class StreamingAggregationFilter implements MessageFilter {
+    private final StreamingAggregationEngine engine;
+
+    @Inject
+    public StreamingAggregationFilter(StreamingAggregationEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public boolean filter(Message msg) {
+        if (engine.isEnabled()) {
+            engine.process(msg);
+        }
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return "StreamingAggregation";
+    }
+
+    @Override
+    public int getPriority() {
+        return 50;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.mongojack.Id;
+import org.mongojack.ObjectId;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Partial aggregation of the messages one node processed within one second for a streamed event definition.
+ */
+@AutoValue
+@JsonDeserialize(builder = StreamingAggregationPaneDto.Builder.class)
+public abstract class StreamingAggregationPaneDto {
+    private static final String FIELD_ID = "id";
+    static final String FIELD_EVENT_DEFINITION_ID = "event_definition_id";
+    static final String FIELD_FINGERPRINT = "fingerprint";
+    static final String FIELD_NODE_ID = "node_id";
+    static final String FIELD_PANE_START = "pane_start";
+    static final String FIELD_SOURCE_STREAMS = "source_streams";
+    static final String FIELD_GROUPS = "groups";
+    static final String FIELD_CREATED_AT = "created_at";
+
+    @Id
+    @ObjectId
+    @Nullable
+    @JsonProperty(FIELD_ID)
+    public abstract String id();
+
+    @JsonProperty(FIELD_EVENT_DEFINITION_ID)
+    public abstract String eventDefinitionId();
+
+    @JsonProperty(FIELD_FINGERPRINT)
+    public abstract String fingerprint();
+
+    @JsonProperty(FIELD_NODE_ID)
+    public abstract String nodeId();
+
+    @JsonProperty(FIELD_PANE_START)
+    public abstract DateTime paneStart();
+
+    @JsonProperty(FIELD_SOURCE_STREAMS)
+    public abstract ImmutableSet<String> sourceStreams();
+
+    @JsonProperty(FIELD_GROUPS)
+    public abstract ImmutableList<Group> groups();
+
+    @JsonProperty(FIELD_CREATED_AT)
+    public abstract DateTime createdAt();
+
+    public static Builder builder() {
+        return Builder.create();
+    }
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+        @JsonCreator
+        public static Builder create() {
+            return new AutoValue_StreamingAggregationPaneDto.Builder();
+        }
+
+        @Id
+        @ObjectId
+        @JsonProperty(FIELD_ID)
+        public abstract Builder id(String id);
+
+        @JsonProperty(FIELD_EVENT_DEFINITION_ID)
+        public abstract Builder eventDefinitionId(String eventDefinitionId);
+
+        @JsonProperty(FIELD_FINGERPRINT)
+        public abstract Builder fingerprint(String fingerprint);
+
+        @JsonProperty(FIELD_NODE_ID)
+        public abstract Builder nodeId(String nodeId);
+
+        @JsonProperty(FIELD_PANE_START)
+        public abstract Builder paneStart(DateTime paneStart);
+
+        @JsonProperty(FIELD_SOURCE_STREAMS)
+        public abstract Builder sourceStreams(Set<String> sourceStreams);
+
+        @JsonProperty(FIELD_GROUPS)
+        public abstract Builder groups(List<Group> groups);
+
+        @JsonProperty(FIELD_CREATED_AT)
+        public abstract Builder createdAt(DateTime createdAt);
+
+        public abstract StreamingAggregationPaneDto build();
+    }
+
+    @AutoValue
+    @JsonDeserialize(builder = Group.Builder.class)
+    public static abstract class Group {
+        private static final String FIELD_KEY = "key";
+        private static final String FIELD_DOC_COUNT = "doc_count";
+        private static final String FIELD_SERIES = "series";
+
+        @JsonProperty(FIELD_KEY)
+        public abstract ImmutableList<String> key();
+
+        @JsonProperty(FIELD_DOC_COUNT)
+        public abstract long docCount();
+
+        @JsonProperty(FIELD_SERIES)
+        public abstract ImmutableList<SeriesState> series();
+
+        public static Builder builder() {
+            return Builder.create();
+        }
+
+        @AutoValue.Builder
+        public static abstract class Builder {
+            @JsonCreator
+            public static Builder create() {
+                return new AutoValue_StreamingAggregationPaneDto_Group.Builder();
+            }
+
+            @JsonProperty(FIELD_KEY)
+            public abstract Builder key(List<String> key);
+
+            @JsonProperty(FIELD_DOC_COUNT)
+            public abstract Builder docCount(long docCount);
+
+            @JsonProperty(FIELD_SERIES)
+            public abstract Builder series(List<SeriesState> series);
+
+            public abstract Group build();
+        }
+    }
+
+    /**
+     * Mergeable state of a single series. {@code count} is the number of values, min and max are only set if there
+     * has been at least one value.
+     */
+    @AutoValue
+    @JsonDeserialize(builder = SeriesState.Builder.class)
+    public static abstract class SeriesState {
+        private static final String FIELD_SERIES_ID = "series_id";
+        private static final String FIELD_COUNT = "count";
+        private static final String FIELD_SUM = "sum";
+        private static final String FIELD_MIN = "min";
+        private static final String FIELD_MAX = "max";
+
+        @JsonProperty(FIELD_SERIES_ID)
+        public abstract String seriesId();
+
+        @JsonProperty(FIELD_COUNT)
+        public abstract long count();
+
+        @JsonProperty(FIELD_SUM)
+        public abstract double sum();
+
+        @Nullable
+        @JsonProperty(FIELD_MIN)
+        public abstract Double min();
+
+        @Nullable
+        @JsonProperty(FIELD_MAX)
+        public abstract Double max();
+
+        public static Builder builder() {
+            return Builder.create();
+        }
+
+        @AutoValue.Builder
+        public static abstract class Builder {
+            @JsonCreator
+            public static Builder create() {
+                return new AutoValue_StreamingAggregationPaneDto_SeriesState.Builder();
+            }
+
+            @JsonProperty(FIELD_SERIES_ID)
+            public abstract Builder seriesId(String seriesId);
+
+            @JsonProperty(FIELD_COUNT)
+            public abstract Builder count(long count);
+
+            @JsonProperty(FIELD_SUM)
+            public abstract Builder sum(double sum);
+
+            @JsonProperty(FIELD_MIN)
+            public abstract Builder min(@Nullable Double min);
+
+            @JsonProperty(FIELD_MAX)
+            public abstract Builder max(@Nullable Double max);
+
+            public abstract SeriesState build();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.assistedinject.Assisted;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.events.processor.EventProcessorPreconditionException;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.DateRange;
+import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog2.cluster.Node;
+import org.graylog2.cluster.NodeService;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the aggregation result from the panes written by the {@link StreamingAggregationEngine} of every node.
+ * Falls back to the {@link PivotAggregationSearch} if the panes don't cover the complete time range, or if not every
+ * active node streamed the messages it processed within the time range.
+ */
+public class StreamingAggregationSearch implements AggregationSearch {
+    public interface Factory {
+        StreamingAggregationSearch create(AggregationEventProcessorConfig config,
+                                          AggregationEventProcessorParameters parameters,
+                                          String searchOwner,
+                                          EventDefinition eventDefinition);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingAggregationSearch.class);
+
+    // Nodes which didn't write a watermark within this time are considered gone
+    private static final long WATERMARK_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+    // Don't rely on panes which are close to being removed by the TTL index
+    private static final long MAX_PANE_AGE_MS = TimeUnit.SECONDS.toMillis(DBStreamingAggregationService.PANE_RETENTION_SECONDS)
+            - TimeUnit.HOURS.toMillis(1);
+
+    private final AggregationEventProcessorConfig config;
+    private final AggregationEventProcessorParameters parameters;
+    private final String searchOwner;
+    private final EventDefinition eventDefinition;
+    private final DBStreamingAggregationService streamingAggregationService;
+    private final PivotAggregationSearch.Factory pivotSearchFactory;
+    private final JobSchedulerClock clock;
+    private final NodeService nodeService;
+
+    @Inject
+    public StreamingAggregationSearch(@Assisted AggregationEventProcessorConfig config,
+                                      @Assisted AggregationEventProcessorParameters parameters,
+                                      @Assisted String searchOwner,
+                                      @Assisted EventDefinition eventDefinition,
+                                      DBStreamingAggregationService streamingAggregationService,
+                                      PivotAggregationSearch.Factory pivotSearchFactory,
+                                      JobSchedulerClock clock,
+                                      NodeService nodeService) {
+        this.config = config;
+        this.parameters = parameters;
+        this.searchOwner = searchOwner;
+        this.eventDefinition = eventDefinition;
+        this.streamingAggregationService = streamingAggregationService;
+        this.pivotSearchFactory = pivotSearchFactory;
+        this.clock = clock;
+        this.nodeService = nodeService;
+    }
+
+    @Override
+    public AggregationResult doSearch() throws EventProcessorException {
+        final TimeRange timerange = parameters.timerange();
+        final String fingerprint = StreamingAggregator.fingerprint(config);
+
+        if (!panesCoverTimerange(timerange, fingerprint)) {
+            return pivotSearchFactory.create(config, parameters, searchOwner, eventDefinition).doSearch();
+        }
+
+        final List<StreamingAggregationPaneDto> panes = streamingAggregationService.findPanes(
+                eventDefinition.id(), fingerprint, timerange.getFrom(), timerange.getTo());
+
+        return AggregationResult.builder()
+                .keyResults(extractValues(panes, timerange))
+                .effectiveTimerange(AbsoluteRange.create(timerange.getFrom(), timerange.getTo()))
+                .totalAggregatedMessages(panes.stream()
+                        .flatMap(pane -> pane.groups().stream())
+                        .mapToLong(StreamingAggregationPaneDto.Group::docCount)
+                        .sum())
+                .sourceStreams(panes.stream()
+                        .flatMap(pane -> pane.sourceStreams().stream())
+                        .collect(ImmutableSet.toImmutableSet()))
+                .build();
+    }
+
+    private boolean panesCoverTimerange(TimeRange timerange, String fingerprint) throws EventProcessorPreconditionException {
+        if (!parameters.streams().isEmpty() && !parameters.streams().equals(config.streams())) {
+            LOG.debug("Stream override in parameters for event definition <{}>, using search", eventDefinition.id());
+            return false;
+        }
+        final DateTime now = clock.nowUTC();
+        if (timerange.getFrom().isBefore(now.minus(MAX_PANE_AGE_MS))) {
+            LOG.debug("Time range <{}> of event definition <{}> is too old for streaming aggregation, using search",
+                    timerange, eventDefinition.id());
+            return false;
+        }
+
+        // Include the watermarks of nodes which stopped streaming during the time range, their unflushed panes are lost
+        final List<StreamingAggregationWatermarkDto> watermarks = streamingAggregationService.findWatermarks(
+                eventDefinition.id(), timerange.getFrom().minus(WATERMARK_TIMEOUT_MS));
+        final DateTime watermarkTimeout = now.minus(WATERMARK_TIMEOUT_MS);
+        final Set<String> activeNodeIds = nodeService.allActive(Node.Type.SERVER).keySet();
+        if (activeNodeIds.isEmpty()) {
+            return false;
+        }
+        for (String nodeId : activeNodeIds) {
+            // Nodes running with streaming aggregation disabled don't write panes for the messages they process
+            final boolean isStreaming = watermarks.stream()
+                    .anyMatch(watermark -> watermark.nodeId().equals(nodeId) && !watermark.updatedAt().isBefore(watermarkTimeout));
+            if (!isStreaming) {
+                LOG.debug("Active node <{}> doesn't stream event definition <{}>, using search", nodeId, eventDefinition.id());
+                return false;
+            }
+        }
+        for (StreamingAggregationWatermarkDto watermark : watermarks) {
+            if (!activeNodeIds.contains(watermark.nodeId()) || watermark.updatedAt().isBefore(watermarkTimeout)) {
+                LOG.debug("Node <{}> stopped streaming event definition <{}> during time range <{}>, using search",
+                        watermark.nodeId(), eventDefinition.id(), timerange);
+                return false;
+            }
+            // A node which recently started streaming or still uses an old version of the definition doesn't
+            // have panes for the complete time range
+            if (!fingerprint.equals(watermark.fingerprint()) || watermark.streamingSince().isAfter(timerange.getFrom())) {
+                LOG.debug("Node <{}> didn't stream event definition <{}> for time range <{}>, using search",
+                        watermark.nodeId(), eventDefinition.id(), timerange);
+                return false;
+            }
+        }
+        for (StreamingAggregationWatermarkDto watermark : watermarks) {
+            if (watermark.flushedUntil().isBefore(timerange.getTo())) {
+                final String msg = "Couldn't run streaming aggregation <" + eventDefinition.title() + "/" + eventDefinition.id() +
+                        "> for timerange <" + timerange.getFrom() + " to " + timerange.getTo() +
+                        "> because node <" + watermark.nodeId() + "> only stored panes up to <" + watermark.flushedUntil() + ">";
+                throw new EventProcessorPreconditionException(msg, eventDefinition);
+            }
+        }
+        return true;
+    }
+
+    @VisibleForTesting
+    ImmutableList<AggregationKeyResult> extractValues(List<StreamingAggregationPaneDto> panes, TimeRange timerange) {
+        final ImmutableList.Builder<AggregationKeyResult> results = ImmutableList.builder();
+        final List<DateRange> ranges = PivotAggregationSearch
+                .buildDateRangeBuckets(timerange, config.searchWithinMs(), config.executeEveryMs())
+                .ranges();
+
+        for (DateRange range : ranges) {
+            final long from = range.from().map(DateTime::getMillis).orElse(Long.MIN_VALUE);
+            final long to = range.to().map(DateTime::getMillis).orElse(Long.MAX_VALUE);
+
+            final Map<List<String>, MergedGroup> groups = new LinkedHashMap<>();
+            if (config.groupBy().isEmpty()) {
+                // Like the date range aggregation, return a result for every range even if there were no messages
+                groups.put(ImmutableList.of(), new MergedGroup(config.series().size()));
+            }
+            for (StreamingAggregationPaneDto pane : panes) {
+                final long paneStart = pane.paneStart().getMillis();
+                if (paneStart < from || paneStart >= to) {
+                    continue;
+                }
+                for (StreamingAggregationPaneDto.Group group : pane.groups()) {
+                    groups.computeIfAbsent(group.key(), key -> new MergedGroup(config.series().size())).merge(group);
+                }
+            }
+
+            final DateTime timestamp = range.to().orElse(timerange.getTo()).withZone(DateTimeZone.UTC);
+            for (Map.Entry<List<String>, MergedGroup> group : groups.entrySet()) {
+                final ImmutableList<String> key = ImmutableList.copyOf(group.getKey());
+                results.add(AggregationKeyResult.builder()
+                        .key(key)
+                        .timestamp(timestamp)
+                        .seriesValues(group.getValue().values(key))
+                        .build());
+            }
+        }
+        return results.build();
+    }
+
+    private class MergedGroup {
+        private long docCount = 0;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxs;
+
+        MergedGroup(int seriesCount) {
+            this.counts = new long[seriesCount];
+            this.sums = new double[seriesCount];
+            this.mins = new double[seriesCount];
+            this.maxs = new double[seriesCount];
+            for (int i = 0; i < seriesCount; i++) {
+                mins[i] = Double.POSITIVE_INFINITY;
+                maxs[i] = Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        void merge(StreamingAggregationPaneDto.Group group) {
+            docCount += group.docCount();
+            for (StreamingAggregationPaneDto.SeriesState state : group.series()) {
+                final int i = seriesIndex(state.seriesId());
+                if (i < 0) {
+                    continue;
+                }
+                counts[i] += state.count();
+                sums[i] += state.sum();
+                if (state.min() != null) {
+                    mins[i] = Math.min(mins[i], state.min());
+                }
+                if (state.max() != null) {
+                    maxs[i] = Math.max(maxs[i], state.max());
+                }
+            }
+        }
+
+        List<AggregationSeriesValue> values(ImmutableList<String> key) {
+            final ImmutableList.Builder<AggregationSeriesValue> values = ImmutableList.builder();
+            for (int i = 0; i < config.series().size(); i++) {
+                final AggregationSeries series = config.series().get(i);
+                values.add(AggregationSeriesValue.builder()
+                        .key(key)
+                        .value(value(series.function(), i))
+                        .series(series)
+                        .build());
+            }
+            return values.build();
+        }
+
+        private double value(AggregationFunction function, int i) {
+            // Missing values are NaN like the "null" results of the search backend, see PivotAggregationSearch
+            switch (function) {
+                case COUNT:
+                    return counts[i];
+                case SUM:
+                    return sums[i];
+                case MIN:
+                    return counts[i] > 0 ? mins[i] : Double.NaN;
+                case MAX:
+                    return counts[i] > 0 ? maxs[i] : Double.NaN;
+                case AVG:
+                    return counts[i] > 0 ? sums[i] / counts[i] : Double.NaN;
+                default:
+                    throw new IllegalStateException("Unsupported streaming aggregation function " + function);
+            }
+        }
+
+        private int seriesIndex(String seriesId) {
+            for (int i = 0; i < config.series().size(); i++) {
+                if (config.series().get(i).id().equals(seriesId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
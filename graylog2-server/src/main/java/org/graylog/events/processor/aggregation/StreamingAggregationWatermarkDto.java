@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import org.joda.time.DateTime;
+import org.mongojack.Id;
+import org.mongojack.ObjectId;
+
+import javax.annotation.Nullable;
+
+/**
+ * Progress of a node streaming the messages of an event definition into panes. All messages the node processed
+ * before {@link #flushedUntil()} are part of the stored panes.
+ */
+@AutoValue
+@JsonDeserialize(builder = StreamingAggregationWatermarkDto.Builder.class)
+public abstract class StreamingAggregationWatermarkDto {
+    private static final String FIELD_ID = "id";
+    static final String FIELD_NODE_ID = "node_id";
+    static final String FIELD_EVENT_DEFINITION_ID = "event_definition_id";
+    static final String FIELD_FINGERPRINT = "fingerprint";
+    static final String FIELD_STREAMING_SINCE = "streaming_since";
+    static final String FIELD_FLUSHED_UNTIL = "flushed_until";
+    static final String FIELD_UPDATED_AT = "updated_at";
+
+    @Id
+    @ObjectId
+    @Nullable
+    @JsonProperty(FIELD_ID)
+    public abstract String id();
+
+    @JsonProperty(FIELD_NODE_ID)
+    public abstract String nodeId();
+
+    @JsonProperty(FIELD_EVENT_DEFINITION_ID)
+    public abstract String eventDefinitionId();
+
+    @JsonProperty(FIELD_FINGERPRINT)
+    public abstract String fingerprint();
+
+    @JsonProperty(FIELD_STREAMING_SINCE)
+    public abstract DateTime streamingSince();
+
+    @JsonProperty(FIELD_FLUSHED_UNTIL)
+    public abstract DateTime flushedUntil();
+
+    @JsonProperty(FIELD_UPDATED_AT)
+    public abstract DateTime updatedAt();
+
+    public static Builder builder() {
+        return Builder.create();
+    }
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+        @JsonCreator
+        public static Builder create() {
+            return new AutoValue_StreamingAggregationWatermarkDto.Builder();
+        }
+
+        @Id
+        @ObjectId
+        @JsonProperty(FIELD_ID)
+        public abstract Builder id(String id);
+
+        @JsonProperty(FIELD_NODE_ID)
+        public abstract Builder nodeId(String nodeId);
+
+        @JsonProperty(FIELD_EVENT_DEFINITION_ID)
+        public abstract Builder eventDefinitionId(String eventDefinitionId);
+
+        @JsonProperty(FIELD_FINGERPRINT)
+        public abstract Builder fingerprint(String fingerprint);
+
+        @JsonProperty(FIELD_STREAMING_SINCE)
+        public abstract Builder streamingSince(DateTime streamingSince);
+
+        @JsonProperty(FIELD_FLUSHED_UNTIL)
+        public abstract Builder flushedUntil(DateTime flushedUntil);
+
+        @JsonProperty(FIELD_UPDATED_AT)
+        public abstract Builder updatedAt(DateTime updatedAt);
+
+        public abstract StreamingAggregationWatermarkDto build();
+    }
+}
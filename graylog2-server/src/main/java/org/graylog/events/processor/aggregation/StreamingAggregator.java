@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Aggregates the messages of a single event definition into one-second panes while they are being processed.
+ */
+class StreamingAggregator {
+    static final long PANE_SIZE_MS = 1000L;
+
+    private final String eventDefinitionId;
+    private final AggregationEventProcessorConfig config;
+    private final SimpleQueryMatcher matcher;
+    private final String fingerprint;
+    private volatile DateTime streamingSince;
+
+    private Map<Long, Pane> panes = new HashMap<>();
+
+    StreamingAggregator(String eventDefinitionId,
+                        AggregationEventProcessorConfig config,
+                        SimpleQueryMatcher matcher,
+                        DateTime streamingSince) {
+        this.eventDefinitionId = eventDefinitionId;
+        this.config = config;
+        this.matcher = matcher;
+        this.fingerprint = fingerprint(config);
+        this.streamingSince = streamingSince;
+    }
+
+    String eventDefinitionId() {
+        return eventDefinitionId;
+    }
+
+    String fingerprint() {
+        return fingerprint;
+    }
+
+    DateTime streamingSince() {
+        return streamingSince;
+    }
+
+    /**
+     * Marks all panes before the given time as incomplete, used after panes couldn't be stored.
+     */
+    void restartStreaming(DateTime since) {
+        this.streamingSince = since;
+    }
+
+    /**
+     * Adds the given message to the pane of its timestamp if it matches the streams and query of the definition.
+     *
+     * @return true if the message has been aggregated
+     */
+    boolean process(Message message) {
+        final Set<String> streamIds = new HashSet<>(message.getStreamIds());
+        if (!config.streams().isEmpty() && config.streams().stream().noneMatch(streamIds::contains)) {
+            return false;
+        }
+        if (!matcher.matches(message)) {
+            return false;
+        }
+
+        final List<String> key = new ArrayList<>(config.groupBy().size());
+        for (String field : config.groupBy()) {
+            final Object value = message.getField(field);
+            if (value == null) {
+                // Messages without a value for all grouping fields are not part of any terms bucket
+                return false;
+            }
+            key.add(value.toString());
+        }
+
+        final long paneStart = Math.floorDiv(message.getTimestamp().getMillis(), PANE_SIZE_MS) * PANE_SIZE_MS;
+        synchronized (this) {
+            final Pane pane = panes.computeIfAbsent(paneStart, start -> new Pane());
+            pane.sourceStreams.addAll(streamIds);
+            pane.groups.computeIfAbsent(key, k -> new GroupState(config.series().size())).add(message, config.series());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the panes collected since the last call and resets the aggregator.
+     */
+    List<StreamingAggregationPaneDto> drain(String nodeId, DateTime now) {
+        final Map<Long, Pane> drained;
+        synchronized (this) {
+            if (panes.isEmpty()) {
+                return ImmutableList.of();
+            }
+            drained = panes;
+            panes = new HashMap<>();
+        }
+
+        final List<StreamingAggregationPaneDto> result = new ArrayList<>(drained.size());
+        for (Map.Entry<Long, Pane> entry : drained.entrySet()) {
+            final List<StreamingAggregationPaneDto.Group> groups = new ArrayList<>(entry.getValue().groups.size());
+            for (Map.Entry<List<String>, GroupState> group : entry.getValue().groups.entrySet()) {
+                groups.add(group.getValue().toDto(group.getKey(), config.series()));
+            }
+            result.add(StreamingAggregationPaneDto.builder()
+                    .eventDefinitionId(eventDefinitionId)
+                    .fingerprint(fingerprint)
+                    .nodeId(nodeId)
+                    .paneStart(new DateTime(entry.getKey(), DateTimeZone.UTC))
+                    .sourceStreams(entry.getValue().sourceStreams)
+                    .groups(groups)
+                    .createdAt(now)
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * Identifies the parts of the configuration which influence the content of the panes. Panes written for an
+     * older version of the event definition must not be used to compute results for a newer one.
+     */
+    static String fingerprint(AggregationEventProcessorConfig config) {
+        final Hasher hasher = Hashing.sha256().newHasher()
+                .putString(config.query(), StandardCharsets.UTF_8)
+                .putString(String.join(",", new TreeSet<>(config.streams())), StandardCharsets.UTF_8)
+                .putString(String.join(",", config.groupBy()), StandardCharsets.UTF_8);
+        for (AggregationSeries series : config.series()) {
+            hasher.putString(series.id(), StandardCharsets.UTF_8)
+                    .putString(series.function().name(), StandardCharsets.UTF_8)
+                    .putString(series.field().orElse(""), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    @Nullable
+    static Double numericValue(@Nullable Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static class Pane {
+        private final Set<String> sourceStreams = new HashSet<>();
+        private final Map<List<String>, GroupState> groups = new HashMap<>();
+    }
+
+    private static class GroupState {
+        private long docCount = 0;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxs;
+
+        GroupState(int seriesCount) {
+            this.counts = new long[seriesCount];
+            this.sums = new double[seriesCount];
+            this.mins = new double[seriesCount];
+            this.maxs = new double[seriesCount];
+            for (int i = 0; i < seriesCount; i++) {
+                mins[i] = Double.POSITIVE_INFINITY;
+                maxs[i] = Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        void add(Message message, List<AggregationSeries> series) {
+            docCount++;
+            for (int i = 0; i < series.size(); i++) {
+                final AggregationSeries entry = series.get(i);
+                if (!entry.field().isPresent()) {
+                    counts[i]++;
+                    continue;
+                }
+                final Object value = message.getField(entry.field().get());
+                if (value == null) {
+                    continue;
+                }
+                if (entry.function() == AggregationFunction.COUNT) {
+                    counts[i]++;
+                    continue;
+                }
+                final Double number = numericValue(value);
+                if (number == null) {
+                    continue;
+                }
+                counts[i]++;
+                sums[i] += number;
+                mins[i] = Math.min(mins[i], number);
+                maxs[i] = Math.max(maxs[i], number);
+            }
+        }
+
+        StreamingAggregationPaneDto.Group toDto(List<String> key, List<AggregationSeries> series) {
+            final ImmutableList.Builder<StreamingAggregationPaneDto.SeriesState> states = ImmutableList.builder();
+            for (int i = 0; i < series.size(); i++) {
+                final boolean hasValues = counts[i] > 0 && series.get(i).function() != AggregationFunction.COUNT;
+                states.add(StreamingAggregationPaneDto.SeriesState.builder()
+                        .seriesId(series.get(i).id())
+                        .count(counts[i])
+                        .sum(sums[i])
+                        .min(hasValues ? mins[i] : null)
+                        .max(hasValues ? maxs[i] : null)
+                        .build());
+            }
+            return StreamingAggregationPaneDto.Group.builder()
+                    .key(key)
+                    .docCount(docCount)
+                    .series(states.build())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import org.graylog.events.processor.EventDefinition;
+
+import javax.inject.Inject;
+
+/**
+ * Uses the {@link StreamingAggregationSearch} for event definitions which are evaluated on ingest and the
+ * {@link PivotAggregationSearch} for all others.
+ */
+public class StreamingAwareAggregationSearchFactory implements AggregationSearch.Factory {
+    private final StreamingAggregationEngine streamingAggregationEngine;
+    private final PivotAggregationSearch.Factory pivotSearchFactory;
+    private final StreamingAggregationSearch.Factory streamingSearchFactory;
+
+    @Inject
+    public StreamingAwareAggregationSearchFactory(StreamingAggregationEngine streamingAggregationEngine,
+                                                  PivotAggregationSearch.Factory pivotSearchFactory,
+                                                  StreamingAggregationSearch.Factory streamingSearchFactory) {
+        this.streamingAggregationEngine = streamingAggregationEngine;
+        this.pivotSearchFactory = pivotSearchFactory;
+        this.streamingSearchFactory = streamingSearchFactory;
+    }
+
+    @Override
+    public AggregationSearch create(AggregationEventProcessorConfig config,
+                                    AggregationEventProcessorParameters parameters,
+                                    String searchOwner,
+                                    EventDefinition eventDefinition) {
+        if (streamingAggregationEngine.isStreamed(config)) {
+            return streamingSearchFactory.create(config, parameters, searchOwner, eventDefinition);
+        }
+        return pivotSearchFactory.create(config, parameters, searchOwner, eventDefinition);
+    }
+}
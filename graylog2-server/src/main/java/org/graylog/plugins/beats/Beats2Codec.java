@@ -16,6 +16,8 @@
  */
 package org.graylog.plugins.beats;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -40,6 +42,7 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -67,18 +70,173 @@ public class Beats2Codec extends AbstractCodec {
     @Override
     public Message decode(@Nonnull RawMessage rawMessage) {
         final byte[] payload = rawMessage.getPayload();
-        final JsonNode event;
-        try {
-            event = objectMapper.readTree(payload);
+        try (final JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            final JsonToken firstToken = parser.nextToken();
+            if (firstToken == null) {
+                throw new IOException("null result");
+            }
+            if (firstToken == JsonToken.START_OBJECT) {
+                return parseEvent(parser);
+            }
+
+            // Events are always JSON objects, take the slow path for anything else
+            final JsonNode event = objectMapper.readTree(parser);
             if (event == null) {
                 throw new IOException("null result");
             }
+            return parseEvent(event);
         } catch (IOException e) {
             LOG.error("Couldn't decode raw message {}", rawMessage);
             return null;
         }
+    }
+
+    /**
+     * Flattens the event while streaming through the JSON tokens, without building an intermediate tree.
+     * The resulting message is identical to the one created by {@link #parseEvent(JsonNode)}.
+     */
+    private Message parseEvent(JsonParser parser) throws IOException {
+        final EventHeader header = new EventHeader();
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String key = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            switch (key) {
+                case "message":
+                    header.message = scalarText(parser, token, header.message);
+                    parser.skipChildren();
+                    continue;
+                case Message.FIELD_GL2_SOURCE_COLLECTOR:
+                    header.gl2SourceCollector = scalarText(parser, token, header.gl2SourceCollector);
+                    parser.skipChildren();
+                    continue;
+                case "@timestamp":
+                    header.timestamp = scalarText(parser, token, "");
+                    break;
+                case "agent":
+                    header.hasAgent = true;
+                    header.agentHostname = null;
+                    break;
+                default:
+                    break;
+            }
+            addFlattened(parser, token, key, key, fields, header);
+        }
+
+        final String beatsType = header.beatsType == null ? "beat" : header.beatsType;
+        final String rootPath = noBeatsPrefix ? "" : beatsType;
+        // backwards compatibility for beats < 7.0
+        final String hostname = header.hasAgent ? header.agentHostname : header.beatHostname;
 
-        return parseEvent(event);
+        final Message gelfMessage = new Message(
+                header.message == null ? "-" : header.message,
+                hostname == null ? BEATS_UNKNOWN : hostname,
+                Tools.dateTimeFromString(header.timestamp));
+        gelfMessage.addField("beats_type", beatsType);
+
+        // This field should be stored without a prefix
+        if (!header.gl2SourceCollector.isEmpty()) {
+            gelfMessage.addField(Message.FIELD_GL2_SOURCE_COLLECTOR, header.gl2SourceCollector);
+        }
+
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            final String path = rootPath.isEmpty() ? field.getKey() : rootPath + MAP_KEY_SEPARATOR + field.getKey();
+            gelfMessage.addField(path, field.getValue());
+        }
+        return gelfMessage;
+    }
+
+    private void addFlattened(JsonParser parser, JsonToken token, String currentPath, String topLevelKey,
+                              Map<String, Object> fields, EventHeader header) throws IOException {
+        if (token == JsonToken.START_OBJECT) {
+            final String pathPrefix = currentPath.isEmpty() ? "" : currentPath + MAP_KEY_SEPARATOR;
+            final boolean isHeaderObject = currentPath.equals(topLevelKey);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String key = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if (isHeaderObject) {
+                    captureHeaderField(parser, valueToken, topLevelKey, key, header);
+                }
+                addFlattened(parser, valueToken, pathPrefix + key, topLevelKey, fields, header);
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            final List<Object> values = new ArrayList<>();
+            int i = 0;
+            JsonToken elementToken;
+            while ((elementToken = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (elementToken == JsonToken.START_OBJECT) {
+                    final String pathPrefix = currentPath.isEmpty() ? "" : currentPath + MAP_KEY_SEPARATOR + i;
+                    addFlattened(parser, elementToken, pathPrefix, null, fields, header);
+                } else if (elementToken == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else {
+                    values.add(value(parser, elementToken));
+                }
+                i++;
+            }
+            fields.put(currentPath, values);
+        } else {
+            fields.put(currentPath, value(parser, token));
+        }
+    }
+
+    private void captureHeaderField(JsonParser parser, JsonToken token, String topLevelKey, String key, EventHeader header) throws IOException {
+        switch (topLevelKey) {
+            case "@metadata":
+                if ("beat".equals(key)) {
+                    header.beatsType = scalarText(parser, token, header.beatsType);
+                }
+                break;
+            case "agent":
+                if ("hostname".equals(key)) {
+                    header.agentHostname = scalarText(parser, token, header.agentHostname);
+                }
+                break;
+            case "beat":
+                if ("hostname".equals(key)) {
+                    header.beatHostname = scalarText(parser, token, header.beatHostname);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the text of a scalar value or an empty string for objects and arrays, like {@link JsonNode#asText(String)}.
+     */
+    @Nullable
+    private static String scalarText(JsonParser parser, JsonToken token, @Nullable String defaultValue) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return defaultValue;
+        } else if (token.isStructStart()) {
+            return "";
+        }
+        return parser.getText();
+    }
+
+    @Nullable
+    private static Object value(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return parser.getIntValue();
+                    case LONG:
+                        return parser.getLongValue();
+                    default:
+                        return parser.getBigIntegerValue().longValue();
+                }
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return parser.getBooleanValue();
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.getText();
+        }
     }
 
     private Message parseEvent(JsonNode event) {
@@ -159,6 +317,16 @@ public class Beats2Codec extends AbstractCodec {
     }
 
 
+    private static class EventHeader {
+        private String beatsType;
+        private String timestamp = "";
+        private boolean hasAgent = false;
+        private String agentHostname;
+        private String beatHostname;
+        private String message;
+        private String gl2SourceCollector = "";
+    }
+
     @FactoryClass
     public interface Factory extends AbstractCodec.Factory<Beats2Codec> {
         @Override
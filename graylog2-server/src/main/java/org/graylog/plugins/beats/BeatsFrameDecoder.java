@@ -19,7 +19,6 @@ package org.graylog.plugins.beats;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -29,16 +28,15 @@ import io.netty.handler.codec.ReplayingDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * FrameDecoder for the Beats/Lumberjack protocol.
@@ -64,8 +62,11 @@ public class BeatsFrameDecoder extends ReplayingDecoder<BeatsFrameDecoder.Decodi
         FRAME_WINDOW_SIZE
     }
 
+    // a decoder is only used by a single channel, so the inflater can be reused for all compressed frames
+    private final Inflater inflater = new Inflater();
     private long windowSize;
     private long sequenceNum;
+    private boolean ackPending = false;
 
     public BeatsFrameDecoder() {
         super(DecodingState.PROTOCOL_VERSION);
@@ -116,6 +117,22 @@ public class BeatsFrameDecoder extends ReplayingDecoder<BeatsFrameDecoder.Decodi
         checkpoint(DecodingState.PROTOCOL_VERSION);
     }
 
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        // flush the ACKs of all windows completed in this read cycle at once
+        if (ackPending) {
+            ackPending = false;
+            ctx.channel().flush();
+        }
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        inflater.end();
+        super.handlerRemoved0(ctx);
+    }
+
     private Collection<ByteBuf> processUncompressedBuffer(Channel channel, ByteBuf buffer) throws Exception {
         checkVersion(buffer);
         byte frameType = buffer.readByte();
@@ -153,7 +170,8 @@ public class BeatsFrameDecoder extends ReplayingDecoder<BeatsFrameDecoder.Decodi
             buffer.writeInt((int) sequenceNum);
 
             LOG.trace("Sending ACK for sequence number {} on channel {}", sequenceNum, channel);
-            channel.writeAndFlush(buffer);
+            channel.write(buffer, channel.voidPromise());
+            ackPending = true;
         }
     }
 
@@ -179,10 +197,33 @@ public class BeatsFrameDecoder extends ReplayingDecoder<BeatsFrameDecoder.Decodi
         final long payloadLength = channelBuffer.readUnsignedInt();
         final byte[] data = new byte[(int) payloadLength];
         channelBuffer.readBytes(data);
-        try (final ByteArrayInputStream dataStream = new ByteArrayInputStream(data);
-             final InputStream in = new InflaterInputStream(dataStream)) {
-            final ByteBuf buffer = Unpooled.wrappedBuffer(ByteStreams.toByteArray(in));
+
+        final ByteBuf buffer = inflate(channel, data);
+        try {
             return processCompressedDataFrames(channel, buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private ByteBuf inflate(Channel channel, byte[] data) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(data);
+        // the Inflater of Java 8 can only write into arrays, so use a pooled heap buffer
+        final ByteBuf buffer = channel.alloc().heapBuffer(Math.max(256, Ints.saturatedCast(data.length * 4L)));
+        try {
+            while (!inflater.finished()) {
+                buffer.ensureWritable(Math.max(256, buffer.capacity() / 2));
+                final int inflated = inflater.inflate(buffer.array(), buffer.arrayOffset() + buffer.writerIndex(), buffer.writableBytes());
+                buffer.writerIndex(buffer.writerIndex() + inflated);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Incomplete compressed frame");
+                }
+            }
+            return buffer;
+        } catch (DataFormatException | RuntimeException e) {
+            buffer.release();
+            throw e;
         }
     }
 
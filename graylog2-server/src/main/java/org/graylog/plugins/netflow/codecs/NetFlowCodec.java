@@ -17,8 +17,13 @@
 package org.graylog.plugins.netflow.codecs;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.assistedinject.Assisted;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
@@ -62,6 +67,7 @@ import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 @Codec(name = "netflow", displayName = "NetFlow")
@@ -80,6 +86,9 @@ public class NetFlowCodec extends AbstractCodec implements MultiMessageCodec {
     private static final Logger LOG = LoggerFactory.getLogger(NetFlowCodec.class);
     private final NetFlowV9FieldTypeRegistry typeRegistry;
     private final NetflowV9CodecAggregator netflowV9CodecAggregator;
+    // every journal entry contains the templates it needs, parse and compile each of them only once
+    private final Cache<ByteString, NetFlowV9Template> templateCache = CacheBuilder.newBuilder().maximumSize(5000).build();
+    private final Cache<ByteString, NetFlowV9OptionTemplate> optionTemplateCache = CacheBuilder.newBuilder().maximumSize(5000).build();
 
     @Inject
     protected NetFlowCodec(@Assisted Configuration configuration, NetflowV9CodecAggregator netflowV9CodecAggregator) throws IOException {
@@ -170,17 +179,11 @@ public class NetFlowCodec extends AbstractCodec implements MultiMessageCodec {
         buffer.readBytes(v9JournalEntry);
         final NetFlowV9Journal.RawNetflowV9 rawNetflowV9 = NetFlowV9Journal.RawNetflowV9.parseFrom(v9JournalEntry);
 
-        // parse all templates used in the packet
+        // look up all templates used in the packet
         final Map<Integer, NetFlowV9Template> templateMap = Maps.newHashMap();
-        rawNetflowV9.getTemplatesMap().forEach((templateId, byteString) -> {
-            final NetFlowV9Template netFlowV9Template = NetFlowV9Parser.parseTemplate(
-                    Unpooled.wrappedBuffer(byteString.toByteArray()), typeRegistry);
-            templateMap.put(templateId, netFlowV9Template);
-        });
+        rawNetflowV9.getTemplatesMap().forEach((templateId, byteString) -> templateMap.put(templateId, template(byteString)));
         final NetFlowV9OptionTemplate[] optionTemplate = {null};
-        rawNetflowV9.getOptionTemplateMap().forEach((templateId, byteString) -> {
-            optionTemplate[0] = NetFlowV9Parser.parseOptionTemplate(Unpooled.wrappedBuffer(byteString.toByteArray()), typeRegistry);
-        });
+        rawNetflowV9.getOptionTemplateMap().forEach((templateId, byteString) -> optionTemplate[0] = optionTemplate(byteString));
 
         return rawNetflowV9.getPacketsList().stream()
                 .map(bytes -> Unpooled.wrappedBuffer(bytes.toByteArray()))
@@ -188,6 +191,24 @@ public class NetFlowCodec extends AbstractCodec implements MultiMessageCodec {
                 .collect(Collectors.toList());
     }
 
+    private NetFlowV9Template template(ByteString bytes) {
+        try {
+            return templateCache.get(bytes, () -> NetFlowV9Parser.parseTemplate(Unpooled.wrappedBuffer(bytes.toByteArray()), typeRegistry));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private NetFlowV9OptionTemplate optionTemplate(ByteString bytes) {
+        try {
+            return optionTemplateCache.get(bytes, () -> NetFlowV9Parser.parseOptionTemplate(Unpooled.wrappedBuffer(bytes.toByteArray()), typeRegistry));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     @FactoryClass
     public interface Factory extends AbstractCodec.Factory<NetFlowCodec> {
         @Override
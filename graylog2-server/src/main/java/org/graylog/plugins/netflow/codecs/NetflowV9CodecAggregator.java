@@ -27,6 +27,7 @@ import io.netty.buffer.Unpooled;
 import org.graylog.plugins.netflow.v9.NetFlowV9Journal;
 import org.graylog.plugins.netflow.v9.NetFlowV9Parser;
 import org.graylog.plugins.netflow.v9.RawNetFlowV9Packet;
+import org.graylog2.shared.inputs.ExpirationTimer;
 import org.graylog2.shared.utilities.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,20 +54,23 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
     private static final Logger LOG = LoggerFactory.getLogger(NetflowV9CodecAggregator.class);
 
     private static final ByteBuf PASSTHROUGH_MARKER = Unpooled.wrappedBuffer(new byte[]{NetFlowCodec.PASSTHROUGH_MARKER});
+    private static final long PACKET_EXPIRATION_MINUTES = 1;
 
+    private final ExpirationTimer expirationTimer;
     private final Cache<TemplateKey, TemplateBytes> templateCache;
     private final Cache<TemplateKey, Queue<PacketBytes>> packetCache;
 
     @Inject
-    public NetflowV9CodecAggregator() {
+    public NetflowV9CodecAggregator(ExpirationTimer expirationTimer) {
+        this.expirationTimer = expirationTimer;
         // TODO customize
         this.templateCache = CacheBuilder.newBuilder()
                 .maximumSize(5000)
                 .removalListener(notification -> LOG.debug("Removed {} from template cache for reason {}", notification.getKey(), notification.getCause()))
                 .recordStats()
                 .build();
+        // buffered packets are expired by the expiration timer instead of the cache, see newPacketQueue()
         this.packetCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(1, TimeUnit.MINUTES)
                 .maximumWeight(Size.megabytes(1).toBytes())
                 .removalListener((RemovalListener<TemplateKey, Queue<PacketBytes>>) notification -> LOG.debug("Removed {} from packet cache for reason {}", notification.getKey(), notification.getCause()))
                 .weigher((key, value) -> value.stream().map(PacketBytes::readableBytes).reduce(0, Integer::sum))
@@ -185,7 +189,7 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
                     // we don't have the template, this packet needs to be buffered until we receive the templates
                     try {
                         final TemplateKey newTemplateKey = TemplateKey.idForExporter(remoteAddress, sourceId);
-                        final Queue<PacketBytes> bufferedPackets = packetCache.get(newTemplateKey, ConcurrentLinkedQueue::new);
+                        final Queue<PacketBytes> bufferedPackets = packetCache.get(newTemplateKey, () -> newPacketQueue(newTemplateKey));
                         final byte[] bytes = ByteBufUtil.getBytes(buf);
                         bufferedPackets.add(new PacketBytes(bytes, rawNetFlowV9Packet.usedTemplates()));
                         packetBuffered = true;
@@ -249,6 +253,17 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
         }
     }
 
+    /**
+     * Creates the queue of buffered packets for an exporter, which is dropped if the templates haven't arrived within
+     * {@link #PACKET_EXPIRATION_MINUTES} after the first buffered packet.
+     */
+    private Queue<PacketBytes> newPacketQueue(TemplateKey key) {
+        final Queue<PacketBytes> queue = new ConcurrentLinkedQueue<>();
+        // only remove the queue if it hasn't been replaced after being evicted by weight
+        expirationTimer.expireAfter(PACKET_EXPIRATION_MINUTES, TimeUnit.MINUTES, () -> packetCache.asMap().remove(key, queue));
+        return queue;
+    }
+
     private static class TemplateBytes {
         private final byte[] bytes;
         private final boolean optionTemplate;
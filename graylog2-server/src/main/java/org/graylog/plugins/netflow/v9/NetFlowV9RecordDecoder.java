@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.v9;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Decodes the data records of a template. The field definitions are compiled into flat arrays once, so decoding a
+ * record doesn't need to look at the field types and names again.
+ */
+public class NetFlowV9RecordDecoder {
+    private static final int KIND_UNSIGNED = 0;
+    private static final int KIND_IPV4 = 1;
+    private static final int KIND_SKIP = 2;
+    private static final int KIND_GENERIC = 3;
+
+    private final NetFlowV9FieldDef[] definitions;
+    private final String[] keys;
+    private final int[] kinds;
+    private final int[] lengths;
+    private final int recordLength;
+
+    private NetFlowV9RecordDecoder(List<NetFlowV9FieldDef> definitions) {
+        final int size = definitions.size();
+        this.definitions = definitions.toArray(new NetFlowV9FieldDef[0]);
+        this.keys = new String[size];
+        this.kinds = new int[size];
+        this.lengths = new int[size];
+
+        int recordLength = 0;
+        for (int i = 0; i < size; i++) {
+            final NetFlowV9FieldDef def = this.definitions[i];
+            final NetFlowV9FieldType.ValueType valueType = def.type().valueType();
+            final int length = def.length() != 0 ? def.length() : valueType.getDefaultLength();
+
+            keys[i] = def.type().name().toLowerCase(Locale.ROOT);
+            lengths[i] = length;
+            kinds[i] = kind(valueType, length);
+            recordLength += def.length();
+        }
+        this.recordLength = recordLength;
+    }
+
+    public static NetFlowV9RecordDecoder compile(List<NetFlowV9FieldDef> definitions) {
+        return new NetFlowV9RecordDecoder(definitions);
+    }
+
+    private static int kind(NetFlowV9FieldType.ValueType valueType, int length) {
+        switch (valueType) {
+            case UINT8:
+            case UINT16:
+            case UINT24:
+            case UINT32:
+            case UINT64:
+                return isNativeLength(length) ? KIND_UNSIGNED : KIND_GENERIC;
+            case IPV4:
+                return KIND_IPV4;
+            case SKIP:
+                return KIND_SKIP;
+            default:
+                return KIND_GENERIC;
+        }
+    }
+
+    private static boolean isNativeLength(int length) {
+        return length == 1 || length == 2 || length == 3 || length == 4 || length == 8;
+    }
+
+    /**
+     * Returns the length of a single record as declared by the template.
+     */
+    public int recordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Decodes a single record, starting at the current reader index of the buffer.
+     */
+    public ImmutableMap<String, Object> decode(ByteBuf bb) {
+        final ImmutableMap.Builder<String, Object> fields = ImmutableMap.builderWithExpectedSize(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            switch (kinds[i]) {
+                case KIND_UNSIGNED:
+                    fields.put(keys[i], readUnsignedNumber(bb, lengths[i]));
+                    break;
+                case KIND_IPV4:
+                    fields.put(keys[i], readIpv4Address(bb));
+                    break;
+                case KIND_SKIP:
+                    bb.skipBytes(lengths[i]);
+                    break;
+                default:
+                    final Optional<Object> value = definitions[i].parse(bb);
+                    if (value.isPresent()) {
+                        fields.put(keys[i], value.get());
+                    }
+            }
+        }
+        return fields.build();
+    }
+
+    // Same value types as NetFlowV9FieldDef#parse
+    private static Object readUnsignedNumber(ByteBuf bb, int length) {
+        switch (length) {
+            case 1:
+                return bb.readUnsignedByte();
+            case 2:
+                return bb.readUnsignedShort();
+            case 3:
+                return bb.readUnsignedMedium();
+            case 4:
+                return bb.readUnsignedInt();
+            default:
+                return bb.readLong();
+        }
+    }
+
+    private static String readIpv4Address(ByteBuf bb) {
+        return new StringBuilder(15)
+                .append(bb.readUnsignedByte()).append('.')
+                .append(bb.readUnsignedByte()).append('.')
+                .append(bb.readUnsignedByte()).append('.')
+                .append(bb.readUnsignedByte())
+                .toString();
+    }
+}
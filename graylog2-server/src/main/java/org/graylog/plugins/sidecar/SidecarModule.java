@@ -38,6 +38,8 @@ import org.graylog.plugins.sidecar.services.CollectorService;
 import org.graylog.plugins.sidecar.services.ConfigurationService;
 import org.graylog.plugins.sidecar.services.ConfigurationVariableService;
 import org.graylog.plugins.sidecar.services.EtagService;
+import org.graylog.plugins.sidecar.services.RenderedConfigurationCache;
+import org.graylog.plugins.sidecar.services.SidecarRegistry;
 import org.graylog.plugins.sidecar.services.SidecarService;
 import org.graylog2.migrations.Migration;
 import org.graylog2.plugin.PluginConfigBean;
@@ -80,5 +82,7 @@ public class SidecarModule extends PluginModule {
         binder.addBinding().to(V20180601151500_AddDefaultConfiguration.class);
 
         serviceBinder().addBinding().to(EtagService.class).in(Scopes.SINGLETON);
+        serviceBinder().addBinding().to(SidecarRegistry.class).in(Scopes.SINGLETON);
+        serviceBinder().addBinding().to(RenderedConfigurationCache.class).in(Scopes.SINGLETON);
     }
 }
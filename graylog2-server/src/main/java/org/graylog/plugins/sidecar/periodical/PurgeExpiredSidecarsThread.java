@@ -16,6 +16,7 @@
  */
 package org.graylog.plugins.sidecar.periodical;
 
+import org.graylog.plugins.sidecar.services.SidecarRegistry;
 import org.graylog.plugins.sidecar.services.SidecarService;
 import org.graylog.plugins.sidecar.system.SidecarConfiguration;
 import org.graylog2.plugin.cluster.ClusterConfigService;
@@ -30,12 +31,15 @@ public class PurgeExpiredSidecarsThread extends Periodical {
     private static final Logger LOG = LoggerFactory.getLogger(PurgeExpiredSidecarsThread.class);
 
     private final SidecarService sidecarService;
+    private final SidecarRegistry sidecarRegistry;
     private final SidecarConfiguration sidecarConfiguration;
 
     @Inject
     public PurgeExpiredSidecarsThread(SidecarService sidecarService,
+                                      SidecarRegistry sidecarRegistry,
                                       ClusterConfigService clusterConfigService) {
         this.sidecarService = sidecarService;
+        this.sidecarRegistry = sidecarRegistry;
         this.sidecarConfiguration = clusterConfigService.getOrDefault(SidecarConfiguration.class, SidecarConfiguration.defaultConfiguration());
     }
 
@@ -86,5 +90,8 @@ public class PurgeExpiredSidecarsThread extends Periodical {
         LOG.debug("Marked {} sidecars as inactive.", expiredSidecars);
         final int purgedSidecars = sidecarService.destroyExpired(this.sidecarConfiguration.sidecarExpirationThreshold());
         LOG.debug("Purged {} inactive sidecars.", purgedSidecars);
+        if (expiredSidecars > 0 || purgedSidecars > 0) {
+            sidecarRegistry.invalidateAll();
+        }
     }
 }
@@ -17,6 +17,7 @@
 package org.graylog.plugins.sidecar.rest.resources;
 
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.Hashing;
 import io.swagger.annotations.Api;
@@ -39,6 +40,8 @@ import org.graylog.plugins.sidecar.rest.responses.ConfigurationSidecarsResponse;
 import org.graylog.plugins.sidecar.services.ConfigurationService;
 import org.graylog.plugins.sidecar.services.EtagService;
 import org.graylog.plugins.sidecar.services.ImportService;
+import org.graylog.plugins.sidecar.services.RenderedConfigurationCache;
+import org.graylog.plugins.sidecar.services.SidecarRegistry;
 import org.graylog.plugins.sidecar.services.SidecarService;
 import org.graylog.plugins.sidecar.template.RenderTemplateException;
 import org.graylog2.audit.jersey.AuditEvent;
@@ -74,6 +77,7 @@ import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -95,7 +99,9 @@ public class ConfigurationResource extends RestResource implements PluginRestRes
 
     private final ConfigurationService configurationService;
     private final SidecarService sidecarService;
+    private final SidecarRegistry sidecarRegistry;
     private final EtagService etagService;
+    private final RenderedConfigurationCache renderedConfigurationCache;
     private final ImportService importService;
     private final SearchQueryParser searchQueryParser;
     private static final ImmutableMap<String, SearchQueryField> SEARCH_FIELD_MAPPING = ImmutableMap.<String, SearchQueryField>builder()
@@ -107,11 +113,15 @@ public class ConfigurationResource extends RestResource implements PluginRestRes
     @Inject
     public ConfigurationResource(ConfigurationService configurationService,
                                  SidecarService sidecarService,
+                                 SidecarRegistry sidecarRegistry,
                                  EtagService etagService,
+                                 RenderedConfigurationCache renderedConfigurationCache,
                                  ImportService importService) {
         this.configurationService = configurationService;
         this.sidecarService = sidecarService;
+        this.sidecarRegistry = sidecarRegistry;
         this.etagService = etagService;
+        this.renderedConfigurationCache = renderedConfigurationCache;
         this.importService = importService;
         this.searchQueryParser = new SearchQueryParser(Configuration.FIELD_NAME, SEARCH_FIELD_MAPPING);;
     }
@@ -212,8 +222,9 @@ public class ConfigurationResource extends RestResource implements PluginRestRes
         Response.ResponseBuilder builder = Response.noContent();
 
         // check if client is up to date with a known valid etag
+        EntityTag etag = null;
         if (ifNoneMatch != null) {
-            EntityTag etag = new EntityTag(ifNoneMatch.replaceAll("\"", ""));
+            etag = new EntityTag(ifNoneMatch.replaceAll("\"", ""));
             if (etagService.isPresent(etag.toString())) {
                 etagCached = true;
                 builder = Response.notModified();
@@ -223,7 +234,7 @@ public class ConfigurationResource extends RestResource implements PluginRestRes
 
         // fetch configuration from database if client is outdated
         if (!etagCached) {
-            Sidecar sidecar = sidecarService.findByNodeId(sidecarId);
+            Sidecar sidecar = sidecarRegistry.find(sidecarId);
             if (sidecar == null) {
                 throw new NotFoundException("Couldn't find Sidecar by ID: " + sidecarId);
             }
@@ -232,16 +243,21 @@ public class ConfigurationResource extends RestResource implements PluginRestRes
                 throw new NotFoundException("Couldn't find configuration by ID: " + configurationId);
             }
 
-            Configuration collectorConfiguration = this.configurationService.renderConfigurationForCollector(sidecar, configuration);
+            // identical sidecars share the rendered configuration
+            Configuration collectorConfiguration = renderedConfigurationCache.render(sidecar, configuration);
 
             // add new etag to cache
             String etagString = configurationToEtag(collectorConfiguration);
 
             EntityTag collectorConfigurationEtag = new EntityTag(etagString);
-            builder = Response.ok(collectorConfiguration);
-            builder.tag(collectorConfigurationEtag);
             etagService.put(collectorConfigurationEtag.toString());
-
+            if (collectorConfigurationEtag.equals(etag)) {
+                // the etag wasn't cached on this node yet, but the client is up to date
+                builder = Response.notModified();
+            } else {
+                builder = Response.ok(collectorConfiguration);
+            }
+            builder.tag(collectorConfigurationEtag);
         }
 
         // set cache control
@@ -405,8 +421,14 @@ public class ConfigurationResource extends RestResource implements PluginRestRes
     }
 
     private String configurationToEtag(Configuration configuration) {
-        return Hashing.md5()
-                .hashInt(configuration.hashCode())  // avoid negative values
+        // hash the whole content, hash codes of different configurations can collide
+        return Hashing.sha256().newHasher()
+                .putString(Strings.nullToEmpty(configuration.id()), StandardCharsets.UTF_8)
+                .putString(configuration.collectorId(), StandardCharsets.UTF_8)
+                .putString(configuration.name(), StandardCharsets.UTF_8)
+                .putString(configuration.color(), StandardCharsets.UTF_8)
+                .putString(configuration.template(), StandardCharsets.UTF_8)
+                .hash()
                 .toString();
     }
 
@@ -41,7 +41,7 @@ import org.graylog.plugins.sidecar.rest.requests.NodeConfigurationRequest;
 import org.graylog.plugins.sidecar.rest.requests.RegistrationRequest;
 import org.graylog.plugins.sidecar.rest.responses.RegistrationResponse;
 import org.graylog.plugins.sidecar.rest.responses.SidecarListResponse;
-import org.graylog.plugins.sidecar.services.ActionService;
+import org.graylog.plugins.sidecar.services.SidecarRegistry;
 import org.graylog.plugins.sidecar.services.SidecarService;
 import org.graylog.plugins.sidecar.system.SidecarConfiguration;
 import org.graylog2.audit.jersey.AuditEvent;
@@ -54,8 +54,6 @@ import org.graylog2.search.SearchQueryField;
 import org.graylog2.search.SearchQueryParser;
 import org.graylog2.shared.rest.resources.RestResource;
 import org.hibernate.validator.constraints.NotEmpty;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
@@ -96,7 +94,7 @@ public class SidecarResource extends RestResource implements PluginRestResource
             .build();
 
     private final SidecarService sidecarService;
-    private final ActionService actionService;
+    private final SidecarRegistry sidecarRegistry;
     private final ActiveSidecarFilter activeSidecarFilter;
     private final SearchQueryParser searchQueryParser;
     private final SidecarStatusMapper sidecarStatusMapper;
@@ -104,12 +102,12 @@ public class SidecarResource extends RestResource implements PluginRestResource
 
     @Inject
     public SidecarResource(SidecarService sidecarService,
-                           ActionService actionService,
+                           SidecarRegistry sidecarRegistry,
                            ClusterConfigService clusterConfigService,
                            SidecarStatusMapper sidecarStatusMapper) {
         this.sidecarService = sidecarService;
         this.sidecarConfiguration = clusterConfigService.getOrDefault(SidecarConfiguration.class, SidecarConfiguration.defaultConfiguration());
-        this.actionService = actionService;
+        this.sidecarRegistry = sidecarRegistry;
         this.activeSidecarFilter = new ActiveSidecarFilter(sidecarConfiguration.sidecarInactiveThreshold());
         this.sidecarStatusMapper = sidecarStatusMapper;
         this.searchQueryParser = new SearchQueryParser(Sidecar.FIELD_NODE_NAME, SEARCH_FIELD_MAPPING);
@@ -197,23 +195,10 @@ public class SidecarResource extends RestResource implements PluginRestResource
                              @ApiParam(name = "JSON body", required = true)
                              @Valid @NotNull RegistrationRequest request,
                              @HeaderParam(value = "X-Graylog-Sidecar-Version") @NotEmpty String sidecarVersion) {
-        final Sidecar newSidecar;
-        final Sidecar oldSidecar = sidecarService.findByNodeId(sidecarId);
-        List<ConfigurationAssignment> assignments = null;
-        if (oldSidecar != null) {
-            assignments = oldSidecar.assignments();
-            newSidecar = oldSidecar.toBuilder()
-                    .nodeName(request.nodeName())
-                    .nodeDetails(request.nodeDetails())
-                    .sidecarVersion(sidecarVersion)
-                    .lastSeen(DateTime.now(DateTimeZone.UTC))
-                    .build();
-        } else {
-            newSidecar = sidecarService.fromRequest(sidecarId, request, sidecarVersion);
-        }
-        sidecarService.save(newSidecar);
+        final Sidecar sidecar = sidecarRegistry.register(sidecarId, request, sidecarVersion);
+        final List<ConfigurationAssignment> assignments = sidecar.assignments();
 
-        final CollectorActions collectorActions = actionService.findActionBySidecar(sidecarId, true);
+        final CollectorActions collectorActions = sidecarRegistry.takePendingActions(sidecarId);
         List<CollectorAction> collectorAction = null;
         if (collectorActions != null) {
             collectorAction = collectorActions.action();
@@ -249,6 +234,7 @@ public class SidecarResource extends RestResource implements PluginRestResource
             try {
                 Sidecar sidecar = sidecarService.assignConfiguration(nodeId, nodeRelations);
                 sidecarService.save(sidecar);
+                sidecarRegistry.invalidate(nodeId);
             } catch (org.graylog2.database.NotFoundException e) {
                 throw new NotFoundException(e.getMessage());
             }
@@ -21,6 +21,7 @@ import org.bson.types.ObjectId;
 import org.graylog.plugins.sidecar.rest.models.CollectorAction;
 import org.graylog.plugins.sidecar.rest.models.CollectorActions;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.database.MongoConnection;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -34,10 +35,13 @@ import java.util.List;
 public class ActionService {
     private static final String COLLECTION_NAME = "sidecar_collector_actions";
     private final JacksonDBCollection<CollectorActions, ObjectId> dbCollection;
+    private final ClusterEventBus clusterEventBus;
 
     @Inject
     public ActionService(MongoConnection mongoConnection,
-                         MongoJackObjectMapperProvider mapper){
+                         MongoJackObjectMapperProvider mapper,
+                         ClusterEventBus clusterEventBus){
+        this.clusterEventBus = clusterEventBus;
         dbCollection = JacksonDBCollection.wrap(
                 mongoConnection.getDatabase().getCollection(COLLECTION_NAME),
                 CollectorActions.class,
@@ -70,7 +74,7 @@ public class ActionService {
     }
 
     public CollectorActions saveAction(CollectorActions collectorActions) {
-        return dbCollection.findAndModify(
+        final CollectorActions savedActions = dbCollection.findAndModify(
                 DBQuery.is("sidecar_id", collectorActions.sidecarId()),
                 new BasicDBObject(),
                 new BasicDBObject(),
@@ -78,6 +82,9 @@ public class ActionService {
                 collectorActions,
                 true,
                 true);
+        // Sidecar registrations skip the lookup of actions if the sidecar had none before
+        clusterEventBus.post(SidecarCacheInvalidation.sidecarId(collectorActions.sidecarId()));
+        return savedActions;
     }
 
     public CollectorActions findActionBySidecar(String sidecarId, boolean remove) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.sidecar.services;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.AbstractIdleService;
+import org.graylog.plugins.sidecar.common.SidecarPluginConfiguration;
+import org.graylog.plugins.sidecar.rest.models.Configuration;
+import org.graylog.plugins.sidecar.rest.models.Sidecar;
+import org.graylog.plugins.sidecar.template.RenderTemplateException;
+import org.graylog2.metrics.CacheStatsSet;
+import org.graylog2.shared.metrics.MetricUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Caches rendered collector configurations, so sidecars with the same relevant details share a single rendering.
+ * <p>
+ * Entries are keyed by the stored configuration and the values of the sidecar details the template refers to.
+ * All entries are invalidated with every {@link EtagCacheInvalidation}, which is posted whenever configurations or
+ * configuration variables change.
+ */
+@Singleton
+public class RenderedConfigurationCache extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(RenderedConfigurationCache.class);
+
+    private static final Map<String, Function<Sidecar, Object>> SIDECAR_DETAILS = ImmutableMap.of(
+            "nodeId", Sidecar::nodeId,
+            "nodeName", Sidecar::nodeName,
+            "sidecarVersion", Sidecar::sidecarVersion,
+            "operatingSystem", sidecar -> sidecar.nodeDetails().operatingSystem());
+    private static final Pattern SIDECAR_REFERENCE = Pattern.compile("\\bsidecar\\b(?:\\s*\\.\\s*(\\w+))?");
+    private static final Pattern INCLUDE_DIRECTIVE = Pattern.compile("<#(?:include|import)\\b");
+
+    private final ConfigurationService configurationService;
+    private final MetricRegistry metricRegistry;
+    private final EventBus eventBus;
+    private final Cache<List<Object>, Configuration> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Inject
+    public RenderedConfigurationCache(ConfigurationService configurationService,
+                                      SidecarPluginConfiguration pluginConfiguration,
+                                      MetricRegistry metricRegistry,
+                                      EventBus eventBus) {
+        this.configurationService = configurationService;
+        this.metricRegistry = metricRegistry;
+        this.eventBus = eventBus;
+        final Duration cacheTime = pluginConfiguration.getCacheTime();
+        this.cache = CacheBuilder.newBuilder()
+                .recordStats()
+                .expireAfterWrite(cacheTime.getQuantity(), cacheTime.getUnit())
+                .maximumSize(pluginConfiguration.getRenderedConfigurationCacheMaxSize())
+                .build();
+    }
+
+    /**
+     * Returns the given configuration rendered for the given sidecar, rendering it only if there is no cached result.
+     */
+    public Configuration render(Sidecar sidecar, Configuration configuration) throws RenderTemplateException {
+        final List<Object> key = cacheKey(sidecar, configuration);
+        final Configuration cachedConfiguration = cache.getIfPresent(key);
+        if (cachedConfiguration != null) {
+            return cachedConfiguration;
+        }
+
+        final long invalidationsBefore = invalidations.get();
+        final Configuration renderedConfiguration = configurationService.renderConfigurationForCollector(sidecar, configuration);
+        // Don't cache the result if configuration variables might have changed while rendering
+        if (invalidations.get() == invalidationsBefore) {
+            cache.put(key, renderedConfiguration);
+        }
+        return renderedConfiguration;
+    }
+
+    private List<Object> cacheKey(Sidecar sidecar, Configuration configuration) {
+        final List<Object> key = new ArrayList<>();
+        key.add(configuration);
+
+        final String template = configuration.template();
+        final Set<String> referencedDetails = new HashSet<>();
+        // Templates which access the sidecar details in any other way than by name, e.g. by listing or assigning the
+        // details or by including other templates, might use all of them
+        boolean dynamicAccess = INCLUDE_DIRECTIVE.matcher(template).find();
+        final Matcher matcher = SIDECAR_REFERENCE.matcher(template);
+        while (!dynamicAccess && matcher.find()) {
+            final String detail = matcher.group(1);
+            if (detail != null && SIDECAR_DETAILS.containsKey(detail)) {
+                referencedDetails.add(detail);
+            } else {
+                dynamicAccess = true;
+            }
+        }
+        for (Map.Entry<String, Function<Sidecar, Object>> detail : SIDECAR_DETAILS.entrySet()) {
+            if (dynamicAccess || referencedDetails.contains(detail.getKey())) {
+                key.add(detail.getKey());
+                key.add(detail.getValue().apply(sidecar));
+            }
+        }
+        return key;
+    }
+
+    @Subscribe
+    public void handleEtagInvalidation(EtagCacheInvalidation event) {
+        LOG.trace("Invalidating rendered collector configurations");
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        eventBus.register(this);
+        MetricUtils.safelyRegisterAll(metricRegistry, new CacheStatsSet(name(RenderedConfigurationCache.class, "cache"), cache));
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        eventBus.unregister(this);
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(name(RenderedConfigurationCache.class, "cache")));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.sidecar.services;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.AbstractIdleService;
+import org.graylog.plugins.sidecar.common.SidecarPluginConfiguration;
+import org.graylog.plugins.sidecar.rest.models.CollectorActions;
+import org.graylog.plugins.sidecar.rest.models.NodeDetails;
+import org.graylog.plugins.sidecar.rest.models.Sidecar;
+import org.graylog.plugins.sidecar.rest.requests.RegistrationRequest;
+import org.graylog2.events.ClusterEventBus;
+import org.graylog2.metrics.CacheStatsSet;
+import org.graylog2.shared.metrics.MetricUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Keeps the registered sidecars in memory to handle their periodic registration requests without rewriting the
+ * whole sidecar document every time.
+ * <p>
+ * If only the last seen time and the node metrics of a known sidecar have changed, the update is queued and written
+ * together with the updates of all other sidecars by a periodic bulk write. Updates of the same sidecar within one
+ * flush interval are coalesced. Any other change is saved right away.
+ * <p>
+ * Sidecars without pending actions are remembered as well, so their registrations don't have to query the actions.
+ * The cached state of a sidecar is invalidated on all nodes with a {@link SidecarCacheInvalidation} cluster event
+ * when its assignments or actions change.
+ */
+@Singleton
+public class SidecarRegistry extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(SidecarRegistry.class);
+
+    private final SidecarService sidecarService;
+    private final ActionService actionService;
+    private final MetricRegistry metricRegistry;
+    private final EventBus eventBus;
+    private final ClusterEventBus clusterEventBus;
+    private final ScheduledExecutorService scheduler;
+    private final Duration flushInterval;
+    private final Cache<String, Sidecar> sidecars;
+    private final Cache<String, Boolean> sidecarsWithoutActions;
+    private final Map<String, Sidecar> pendingHeartbeats = new ConcurrentHashMap<>();
+    private final Timer registrationTime;
+    private final Meter fullSaves;
+    private final Meter actionLookups;
+    private final Timer flushTime;
+    private final Histogram flushedHeartbeats;
+    private ScheduledFuture<?> flushFuture;
+
+    @Inject
+    public SidecarRegistry(SidecarService sidecarService,
+                           ActionService actionService,
+                           SidecarPluginConfiguration pluginConfiguration,
+                           MetricRegistry metricRegistry,
+                           EventBus eventBus,
+                           ClusterEventBus clusterEventBus,
+                           @Named("daemonScheduler") ScheduledExecutorService scheduler) {
+        this.sidecarService = sidecarService;
+        this.actionService = actionService;
+        this.metricRegistry = metricRegistry;
+        this.eventBus = eventBus;
+        this.clusterEventBus = clusterEventBus;
+        this.scheduler = scheduler;
+        this.flushInterval = pluginConfiguration.getHeartbeatFlushInterval();
+
+        final Duration cacheTime = pluginConfiguration.getCacheTime();
+        this.sidecars = CacheBuilder.newBuilder()
+                .recordStats()
+                .expireAfterAccess(cacheTime.getQuantity(), cacheTime.getUnit())
+                .build();
+        this.sidecarsWithoutActions = CacheBuilder.newBuilder()
+                .recordStats()
+                .expireAfterWrite(cacheTime.getQuantity(), cacheTime.getUnit())
+                .build();
+
+        this.registrationTime = metricRegistry.timer(name(SidecarRegistry.class, "registration-time"));
+        this.fullSaves = metricRegistry.meter(name(SidecarRegistry.class, "full-saves"));
+        this.actionLookups = metricRegistry.meter(name(SidecarRegistry.class, "action-lookups"));
+        this.flushTime = metricRegistry.timer(name(SidecarRegistry.class, "heartbeat-flush-time"));
+        this.flushedHeartbeats = metricRegistry.histogram(name(SidecarRegistry.class, "heartbeat-flush-size"));
+    }
+
+    /**
+     * Registers the sidecar with the given details.
+     *
+     * @return the registered sidecar, including its configuration assignments
+     */
+    public Sidecar register(String sidecarId, RegistrationRequest request, String sidecarVersion) {
+        try (final Timer.Context ignored = registrationTime.time()) {
+            final DateTime now = DateTime.now(DateTimeZone.UTC);
+
+            final Sidecar cachedSidecar = sidecars.getIfPresent(sidecarId);
+            if (cachedSidecar != null) {
+                final Sidecar updatedSidecar = update(cachedSidecar, request, sidecarVersion, now);
+                if (onlyHeartbeatChanged(cachedSidecar, updatedSidecar)) {
+                    // Don't put the sidecar back into the cache if it has been invalidated in the meantime
+                    sidecars.asMap().replace(sidecarId, cachedSidecar, updatedSidecar);
+                    pendingHeartbeats.put(sidecarId, updatedSidecar);
+                    return updatedSidecar;
+                }
+            }
+
+            // Read the current state to make sure we don't overwrite any assignments with outdated ones
+            final Sidecar oldSidecar = sidecarService.findByNodeId(sidecarId);
+            final Sidecar newSidecar = oldSidecar == null
+                    ? sidecarService.fromRequest(sidecarId, request, sidecarVersion)
+                    : update(oldSidecar, request, sidecarVersion, now);
+
+            pendingHeartbeats.remove(sidecarId);
+            final Sidecar savedSidecar = sidecarService.save(newSidecar);
+            fullSaves.mark();
+            sidecars.put(sidecarId, savedSidecar);
+            return savedSidecar;
+        }
+    }
+
+    /**
+     * Returns the sidecar with the given ID, using the registered state if it is known.
+     */
+    @Nullable
+    public Sidecar find(String sidecarId) {
+        final Sidecar cachedSidecar = sidecars.getIfPresent(sidecarId);
+        return cachedSidecar != null ? cachedSidecar : sidecarService.findByNodeId(sidecarId);
+    }
+
+    /**
+     * Returns and removes the pending actions of the given sidecar.
+     *
+     * @return the pending actions or {@code null} if there are none
+     */
+    @Nullable
+    public CollectorActions takePendingActions(String sidecarId) {
+        if (sidecarsWithoutActions.getIfPresent(sidecarId) != null) {
+            return null;
+        }
+        actionLookups.mark();
+        final CollectorActions collectorActions = actionService.findActionBySidecar(sidecarId, true);
+        if (collectorActions == null) {
+            sidecarsWithoutActions.put(sidecarId, Boolean.TRUE);
+        }
+        return collectorActions;
+    }
+
+    public void invalidate(String sidecarId) {
+        clusterEventBus.post(SidecarCacheInvalidation.sidecarId(sidecarId));
+    }
+
+    public void invalidateAll() {
+        clusterEventBus.post(SidecarCacheInvalidation.sidecarId(""));
+    }
+
+    @Subscribe
+    public void handleSidecarCacheInvalidation(SidecarCacheInvalidation event) {
+        if (event.sidecarId().equals("")) {
+            LOG.trace("Invalidating all cached sidecars");
+            sidecars.invalidateAll();
+            sidecarsWithoutActions.invalidateAll();
+        } else {
+            LOG.trace("Invalidating cached sidecar {}", event.sidecarId());
+            sidecars.invalidate(event.sidecarId());
+            sidecarsWithoutActions.invalidate(event.sidecarId());
+        }
+    }
+
+    private Sidecar update(Sidecar sidecar, RegistrationRequest request, String sidecarVersion, DateTime lastSeen) {
+        return sidecar.toBuilder()
+                .nodeName(request.nodeName())
+                .nodeDetails(request.nodeDetails())
+                .sidecarVersion(sidecarVersion)
+                .lastSeen(lastSeen)
+                .build();
+    }
+
+    private boolean onlyHeartbeatChanged(Sidecar oldSidecar, Sidecar newSidecar) {
+        final NodeDetails oldDetails = oldSidecar.nodeDetails();
+        final NodeDetails newDetails = newSidecar.nodeDetails();
+        return Objects.equals(oldSidecar.nodeName(), newSidecar.nodeName())
+                && Objects.equals(oldSidecar.sidecarVersion(), newSidecar.sidecarVersion())
+                && Objects.equals(oldDetails.operatingSystem(), newDetails.operatingSystem())
+                && Objects.equals(oldDetails.ip(), newDetails.ip())
+                && Objects.equals(oldDetails.logFileList(), newDetails.logFileList())
+                && Objects.equals(oldDetails.statusList(), newDetails.statusList());
+    }
+
+    private void flush() {
+        final List<Sidecar> heartbeats = new ArrayList<>(pendingHeartbeats.size());
+        for (String sidecarId : pendingHeartbeats.keySet()) {
+            final Sidecar sidecar = pendingHeartbeats.remove(sidecarId);
+            if (sidecar != null) {
+                heartbeats.add(sidecar);
+            }
+        }
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+
+        try (final Timer.Context ignored = flushTime.time()) {
+            final int updated = sidecarService.updateLastSeen(heartbeats);
+            flushedHeartbeats.update(heartbeats.size());
+            if (updated < heartbeats.size()) {
+                // Some sidecars have been removed, make sure they are registered again on their next request
+                LOG.debug("Only {} of {} sidecars were updated, clearing cached sidecars.", updated, heartbeats.size());
+                sidecars.invalidateAll();
+            }
+        } catch (Exception e) {
+            LOG.warn("Couldn't update last seen time of {} sidecars, retrying.", heartbeats.size(), e);
+            heartbeats.forEach(sidecar -> pendingHeartbeats.putIfAbsent(sidecar.nodeId(), sidecar));
+        }
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        eventBus.register(this);
+        MetricUtils.safelyRegisterAll(metricRegistry, new CacheStatsSet(name(SidecarRegistry.class, "sidecar-cache"), sidecars));
+        MetricUtils.safelyRegisterAll(metricRegistry, new CacheStatsSet(name(SidecarRegistry.class, "action-cache"), sidecarsWithoutActions));
+        flushFuture = scheduler.scheduleWithFixedDelay(this::flush,
+                flushInterval.getQuantity(), flushInterval.getQuantity(), flushInterval.getUnit());
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+        }
+        flush();
+        eventBus.unregister(this);
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(name(SidecarRegistry.class, "sidecar-cache"))
+                || name.startsWith(name(SidecarRegistry.class, "action-cache")));
+    }
+}
@@ -16,8 +16,17 @@
  */
 package org.graylog.plugins.sidecar.services;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableSet;
 import com.mongodb.BasicDBObject;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
 import org.graylog.plugins.sidecar.rest.models.Collector;
 import org.graylog.plugins.sidecar.rest.models.CollectorStatus;
 import org.graylog.plugins.sidecar.rest.models.CollectorStatusList;
@@ -42,7 +51,9 @@ import org.mongojack.DBSort;
 import javax.inject.Inject;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -52,6 +63,8 @@ public class SidecarService extends PaginatedDbService<Sidecar> {
     private static final String COLLECTION_NAME = "sidecars";
     private final CollectorService collectorService;
     private final ConfigurationService configurationService;
+    private final MongoCollection<Document> sidecarCollection;
+    private final ObjectMapper objectMapper;
 
     private final Validator validator;
 
@@ -65,6 +78,8 @@ public class SidecarService extends PaginatedDbService<Sidecar> {
         this.collectorService = collectorService;
         this.configurationService = configurationService;
         this.validator = validator;
+        this.sidecarCollection = mongoConnection.getMongoDatabase().getCollection(COLLECTION_NAME);
+        this.objectMapper = mapper.get();
 
         db.createIndex(new BasicDBObject(Sidecar.FIELD_NODE_ID, 1), new BasicDBObject("unique", true));
     }
@@ -93,6 +108,33 @@ public class SidecarService extends PaginatedDbService<Sidecar> {
             throw new IllegalArgumentException("Specified object is not of correct implementation type (" + sidecar.getClass() + ")!");
     }
 
+    /**
+     * Updates the last seen time and node metrics of the given sidecars with a single bulk write, instead of
+     * replacing the whole documents.
+     *
+     * @return the number of updated sidecars
+     */
+    public int updateLastSeen(Collection<Sidecar> sidecars) {
+        if (sidecars.isEmpty()) {
+            return 0;
+        }
+        final List<WriteModel<Document>> updates = sidecars.stream()
+                .map(sidecar -> new UpdateOneModel<Document>(
+                        Filters.eq(Sidecar.FIELD_NODE_ID, sidecar.nodeId()),
+                        Updates.combine(
+                                Updates.set(Sidecar.FIELD_LAST_SEEN, sidecar.lastSeen().toDate()),
+                                Updates.set(Sidecar.FIELD_NODE_DETAILS + ".metrics", metricsDocument(sidecar.nodeDetails())))))
+                .collect(Collectors.toList());
+        return sidecarCollection.bulkWrite(updates, new BulkWriteOptions().ordered(false)).getMatchedCount();
+    }
+
+    private Document metricsDocument(NodeDetails nodeDetails) {
+        if (nodeDetails.metrics() == null) {
+            return null;
+        }
+        return new Document(objectMapper.convertValue(nodeDetails.metrics(), new TypeReference<Map<String, Object>>() {}));
+    }
+
     public List<Sidecar> all() {
         try (final Stream<Sidecar> collectorStream = streamAll()) {
             return collectorStream.collect(Collectors.toList());
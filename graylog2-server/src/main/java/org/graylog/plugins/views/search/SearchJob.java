@@ -31,10 +31,11 @@ import org.slf4j.LoggerFactory;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @JsonAutoDetect
 // execution must come before results, as it signals the overall "done" state
-@JsonPropertyOrder({"execution", "results"})
+@JsonPropertyOrder({"execution", "results", "partial_results"})
 public class SearchJob {
     private static final Logger LOG = LoggerFactory.getLogger(SearchJob.class);
     static final String FIELD_OWNER = "owner";
@@ -53,6 +54,9 @@ public class SearchJob {
 
     private Map<String, CompletableFuture<QueryResult>> queryResults = Maps.newHashMap();
 
+    // snapshots published by backends while a query is still running, superseded by the final result
+    private final Map<String, QueryResult> partialResults = new ConcurrentHashMap<>();
+
     @JsonProperty("errors")
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
     private Set<SearchError> errors = Sets.newHashSet();
@@ -97,6 +101,29 @@ public class SearchJob {
                 .toMap();
     }
 
+    /**
+     * Returns the latest partial result snapshot of every query that has not completed yet.
+     * Once a query completes, its final result is only available via {@link #results()}.
+     */
+    @JsonProperty("partial_results")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public Map<String, QueryResult> partialResults() {
+        return EntryStream.of(partialResults)
+                .filterKeys(queryId -> {
+                    final CompletableFuture<QueryResult> future = queryResults.get(queryId);
+                    return future != null && !future.isDone();
+                })
+                .toMap();
+    }
+
+    /**
+     * Publishes an intermediate result for a query that is still being executed, for example after a backend searched
+     * the first batch of indices. Each call replaces the previous snapshot of the query.
+     */
+    public void publishPartialResult(String queryId, QueryResult partialResult) {
+        partialResults.put(queryId, partialResult);
+    }
+
     @JsonProperty("execution")
     public ExecutionInfo execution() {
         return new ExecutionInfo(resultFuture.isDone(), resultFuture.isCancelled(), !errors.isEmpty());
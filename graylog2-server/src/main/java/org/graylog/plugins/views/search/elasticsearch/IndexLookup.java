@@ -25,8 +25,8 @@ import org.graylog2.streams.StreamService;
 
 import javax.inject.Inject;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -44,16 +44,24 @@ public class IndexLookup {
     }
 
     public Set<String> indexNamesForStreamsInTimeRange(Set<String> streamIds, TimeRange timeRange) {
+        return indexRangesForStreamsInTimeRange(streamIds, timeRange).stream()
+                .map(IndexRange::indexName)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns the index ranges containing messages of the given streams in the given time range. This allows callers
+     * to decide in which order the indices should be searched.
+     */
+    public List<IndexRange> indexRangesForStreamsInTimeRange(Set<String> streamIds, TimeRange timeRange) {
         if (streamIds.isEmpty())
-            return Collections.emptySet();
+            return Collections.emptyList();
 
         Set<Stream> usedStreams = streamService.loadByIds(streamIds);
-        SortedSet<IndexRange> candidateIndices = indexRangeService.find(timeRange.getFrom(), timeRange.getTo());
 
-        return candidateIndices.stream()
+        return indexRangeService.find(timeRange.getFrom(), timeRange.getTo()).stream()
                 .filter(i -> indexRangeContainsOneOfStreams.apply(i, usedStreams))
-                .map(IndexRange::indexName)
-                .collect(Collectors.toSet());
+                .collect(Collectors.toList());
     }
 
     private boolean indexRangeContainsOneOfStreams(IndexRange indexRange, Set<Stream> streams) {
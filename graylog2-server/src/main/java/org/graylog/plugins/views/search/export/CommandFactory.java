@@ -41,7 +41,8 @@ public class CommandFactory {
                 .queryString(request.queryString())
                 .streams(request.streams())
                 .fieldsInOrder(request.fieldsInOrder())
-                .chunkSize(request.chunkSize());
+                .chunkSize(request.chunkSize())
+                .ordered(request.ordered());
 
         if (request.limit().isPresent()) {
             builder.limit(request.limit().getAsInt());
@@ -62,6 +62,12 @@ public abstract class ExportMessagesCommand {
 
     public abstract OptionalInt limit();
 
+    /**
+     * If this is {@code false}, backends may return messages in any order, which allows them to fetch messages in
+     * parallel.
+     */
+    public abstract boolean ordered();
+
     public static ExportMessagesCommand withDefaults() {
         return builder().build();
     }
@@ -96,6 +102,8 @@ public abstract class ExportMessagesCommand {
 
         public abstract Builder limit(Integer limit);
 
+        public abstract Builder ordered(boolean ordered);
+
         abstract ExportMessagesCommand autoBuild();
 
         public ExportMessagesCommand build() {
@@ -109,7 +117,8 @@ public abstract class ExportMessagesCommand {
                     .queryString(DEFAULT_QUERY)
                     .fieldsInOrder(DEFAULT_FIELDS)
                     .decorators(Collections.emptyList())
-                    .chunkSize(DEFAULT_CHUNK_SIZE);
+                    .chunkSize(DEFAULT_CHUNK_SIZE)
+                    .ordered(true);
         }
     }
 }
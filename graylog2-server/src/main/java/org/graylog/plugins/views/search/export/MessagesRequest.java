@@ -45,6 +45,7 @@ public abstract class MessagesRequest {
     private static final String FIELD_QUERY_STRING = "query_string";
     private static final String FIELD_FIELDS = "fields_in_order";
     private static final String FIELD_CHUNK_SIZE = "chunk_size";
+    private static final String FIELD_ORDERED = "ordered";
 
     @JsonProperty(FIELD_TIMERANGE)
     public abstract TimeRange timeRange();
@@ -66,6 +67,9 @@ public abstract class MessagesRequest {
     @Positive
     public abstract OptionalInt limit();
 
+    @JsonProperty(FIELD_ORDERED)
+    public abstract boolean ordered();
+
     public static MessagesRequest withDefaults() {
         return builder().build();
     }
@@ -100,6 +104,9 @@ public abstract class MessagesRequest {
         @JsonProperty
         public abstract Builder limit(Integer limit);
 
+        @JsonProperty(FIELD_ORDERED)
+        public abstract Builder ordered(boolean ordered);
+
         abstract MessagesRequest autoBuild();
 
         public MessagesRequest build() {
@@ -113,7 +120,8 @@ public abstract class MessagesRequest {
                     .streams(DEFAULT_STREAMS)
                     .queryString(DEFAULT_QUERY)
                     .fieldsInOrder(DEFAULT_FIELDS)
-                    .chunkSize(DEFAULT_CHUNK_SIZE);
+                    .chunkSize(DEFAULT_CHUNK_SIZE)
+                    .ordered(true);
         }
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog2.rest.MoreMediaTypes;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes every message of a chunk as a single line JSON object, containing the requested fields in order.
+ * Missing fields are omitted.
+ */
+@Provider
+@Produces(MoreMediaTypes.APPLICATION_NDJSON)
+public class SimpleMessageChunkNdjsonWriter implements MessageBodyWriter<SimpleMessageChunk> {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapperProvider().get();
+    private static final byte[] LINE_SEPARATOR = {'\n'};
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return typesMatch(type, genericType) && MoreMediaTypes.APPLICATION_NDJSON_TYPE.isCompatible(mediaType);
+    }
+
+    private boolean typesMatch(Class<?> type, Type genericType) {
+        return SimpleMessageChunk.class.equals(type) || isAutoValueType(type, genericType);
+    }
+
+    private boolean isAutoValueType(Class<?> type, Type genericType) {
+        return AutoValue_SimpleMessageChunk.class.equals(type) && SimpleMessageChunk.class.equals(genericType);
+    }
+
+    @Override
+    public void writeTo(
+            SimpleMessageChunk chunk,
+            Class<?> type, Type genericType,
+            Annotation[] annotations,
+            MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders,
+            OutputStream entityStream) throws IOException, WebApplicationException {
+
+        for (SimpleMessage message : chunk.messages()) {
+            entityStream.write(OBJECT_MAPPER.writeValueAsBytes(fieldsInOrder(chunk, message)));
+            entityStream.write(LINE_SEPARATOR);
+        }
+        entityStream.flush();
+    }
+
+    private Map<String, Object> fieldsInOrder(SimpleMessageChunk chunk, SimpleMessage message) {
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        for (String field : chunk.fieldsInOrder()) {
+            final Object value = message.valueFor(field);
+            if (value != null) {
+                fields.put(field, value);
+            }
+        }
+        return fields;
+    }
+}
@@ -55,7 +55,7 @@ import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-@Api(value = "Search/Messages", description = "Simple search returning (matching) messages only, as CSV.")
+@Api(value = "Search/Messages", description = "Simple search returning (matching) messages only, as CSV or NDJSON.")
 @Path("/views/search/messages")
 @RequiresAuthentication
 public class MessagesResource extends RestResource implements PluginRestResource {
@@ -88,11 +88,12 @@ public class MessagesResource extends RestResource implements PluginRestResource
     }
 
     @ApiOperation(
-            value = "Export messages as CSV",
-            notes = "Use this endpoint, if you want to configure export parameters freely instead of relying on an existing Search"
+            value = "Export messages as CSV or NDJSON",
+            notes = "Use this endpoint, if you want to configure export parameters freely instead of relying on an existing Search. " +
+                    "Set \"ordered\" to false to fetch messages in parallel if their order does not matter."
     )
     @POST
-    @Produces(MoreMediaTypes.TEXT_CSV)
+    @Produces({MoreMediaTypes.TEXT_CSV, MoreMediaTypes.APPLICATION_NDJSON})
     @NoAuditEvent("Has custom audit events")
     public ChunkedOutput<SimpleMessageChunk> retrieve(@ApiParam @Valid MessagesRequest rawrequest) {
         final MessagesRequest request = fillInIfNecessary(rawrequest);
@@ -113,10 +114,10 @@ public class MessagesResource extends RestResource implements PluginRestResource
         return request;
     }
 
-    @ApiOperation(value = "Export a search result as CSV")
+    @ApiOperation(value = "Export a search result as CSV or NDJSON")
     @POST
     @Path("{searchId}")
-    @Produces(MoreMediaTypes.TEXT_CSV)
+    @Produces({MoreMediaTypes.TEXT_CSV, MoreMediaTypes.APPLICATION_NDJSON})
     @NoAuditEvent("Has custom audit events")
     public ChunkedOutput<SimpleMessageChunk> retrieveForSearch(
             @ApiParam(value = "ID of an existing Search", name = "searchId") @PathParam("searchId") String searchId,
@@ -130,10 +131,10 @@ public class MessagesResource extends RestResource implements PluginRestResource
         return asyncRunner.apply(chunkConsumer -> exporter(searchId).export(command, chunkConsumer));
     }
 
-    @ApiOperation(value = "Export a message table as CSV")
+    @ApiOperation(value = "Export a message table as CSV or NDJSON")
     @POST
     @Path("{searchId}/{searchTypeId}")
-    @Produces(MoreMediaTypes.TEXT_CSV)
+    @Produces({MoreMediaTypes.TEXT_CSV, MoreMediaTypes.APPLICATION_NDJSON})
     @NoAuditEvent("Has custom audit events")
     public ChunkedOutput<SimpleMessageChunk> retrieveForSearchType(
             @ApiParam(value = "ID of an existing Search", name = "searchId") @PathParam("searchId") String searchId,
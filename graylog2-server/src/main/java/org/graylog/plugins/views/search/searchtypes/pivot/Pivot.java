@@ -78,6 +78,14 @@ public abstract class Pivot implements SearchType {
     @JsonProperty
     public abstract boolean rollup();
 
+    /**
+     * Approximate pivots are calculated from a random sample of the matching messages, which is a lot faster for
+     * large result sets. Counts and sums are extrapolated to all matching messages and come with an error bound, all
+     * values are marked as approximate. Messages indexed without a sample key are left out and reported separately.
+     */
+    @JsonProperty
+    public abstract boolean approximate();
+
     @Nullable
     @Override
     public abstract Filter filter();
@@ -95,6 +103,7 @@ public abstract class Pivot implements SearchType {
                 .rowGroups(of())
                 .columnGroups(of())
                 .sort(of())
+                .approximate(false)
                 .streams(Collections.emptySet());
     }
 
@@ -131,6 +140,9 @@ public abstract class Pivot implements SearchType {
         @JsonProperty
         public abstract Builder rollup(boolean rollup);
 
+        @JsonProperty
+        public abstract Builder approximate(boolean approximate);
+
         @JsonProperty
         public abstract Builder filter(@Nullable Filter filter);
 
@@ -169,6 +181,7 @@ public abstract class Pivot implements SearchType {
                 .id(id())
                 .name(name().orElse(null))
                 .rollup(rollup())
+                .approximate(approximate())
                 .series(series())
                 .type(type())
                 .build();
@@ -51,6 +51,10 @@ public abstract class PivotResult implements SearchType.Result {
     @JsonProperty(FIELD_EFFECTIVE_TIMERANGE)
     public abstract AbsoluteRange effectiveTimerange();
 
+    @JsonProperty
+    @Nullable
+    public abstract Sampling sampling();
+
     public static Builder builder() {
         return new AutoValue_PivotResult.Builder();
     }
@@ -80,6 +84,8 @@ public abstract class PivotResult implements SearchType.Result {
 
         public abstract Builder effectiveTimerange(AbsoluteRange effectiveTimerange);
 
+        public abstract Builder sampling(@Nullable Sampling sampling);
+
         public abstract PivotResult build();
     }
 
@@ -136,8 +142,63 @@ public abstract class PivotResult implements SearchType.Result {
         @JsonProperty
         public abstract String source();
 
+        /**
+         * Whether the value has been calculated from a sample of the matching messages instead of all of them.
+         */
+        @JsonProperty
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        public abstract boolean approximate();
+
+        /**
+         * The bounds of the 95% confidence interval of an approximated value, i.e. the exact value is expected to be
+         * within {@code value ± error}. Only set for extrapolated counts and sums of approximate pivots.
+         */
+        @JsonProperty
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        @Nullable
+        public abstract Double error();
+
         public static Value create(Collection<String> key, @Nullable Object value, boolean rollup, String source) {
-            return new AutoValue_PivotResult_Value(ImmutableList.copyOf(key), value, rollup, source);
+            return new AutoValue_PivotResult_Value(ImmutableList.copyOf(key), value, rollup, source, false, null);
+        }
+
+        public static Value approximate(Collection<String> key, @Nullable Object value, boolean rollup, String source, @Nullable Double error) {
+            return new AutoValue_PivotResult_Value(ImmutableList.copyOf(key), value, rollup, source, true, error);
+        }
+    }
+
+    /**
+     * Describes the sample an approximate pivot has been calculated from.
+     */
+    @AutoValue
+    public static abstract class Sampling {
+        @JsonProperty("sampled_documents")
+        public abstract long sampledDocuments();
+
+        @JsonProperty("total_documents")
+        public abstract long totalDocuments();
+
+        /**
+         * The number of matching messages which can't be sampled because they have been indexed without a sample key.
+         * They are neither part of the sample nor of the extrapolated values.
+         */
+        @JsonProperty("unsampled_documents")
+        public abstract long unsampledDocuments();
+
+        @JsonProperty("scale_factor")
+        public abstract double scaleFactor();
+
+        /**
+         * The number of matching messages the sample has been drawn from.
+         */
+        public long sampledPopulation() {
+            return Math.max(0, totalDocuments() - unsampledDocuments());
+        }
+
+        public static Sampling create(long sampledDocuments, long totalDocuments, long unsampledDocuments) {
+            final long population = Math.max(0, totalDocuments - unsampledDocuments);
+            final double scaleFactor = sampledDocuments == 0 ? 1.0 : (double) population / sampledDocuments;
+            return new AutoValue_PivotResult_Sampling(sampledDocuments, totalDocuments, unsampledDocuments, scaleFactor);
         }
     }
 }
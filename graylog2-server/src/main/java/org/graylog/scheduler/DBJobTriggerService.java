@@ -19,9 +19,17 @@ package org.graylog.scheduler;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.DBObject;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
 import one.util.streamex.StreamEx;
 import org.bson.types.ObjectId;
 import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
+import org.graylog.scheduler.eventbus.JobTriggerUpdatedEvent;
 import org.graylog.scheduler.schedule.OnceJobSchedule;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoConnection;
@@ -32,10 +40,13 @@ import org.mongojack.DBQuery;
 import org.mongojack.DBSort;
 import org.mongojack.DBUpdate;
 import org.mongojack.JacksonDBCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -50,6 +61,8 @@ import static java.util.Objects.requireNonNull;
 // This class does NOT use PaginatedDbService because we use the triggers collection for locking and need to handle
 // updates very carefully.
 public class DBJobTriggerService {
+    private static final Logger LOG = LoggerFactory.getLogger(DBJobTriggerService.class);
+
     static final String COLLECTION_NAME = "scheduler_triggers";
     private static final String FIELD_ID = "_id";
     static final String FIELD_JOB_DEFINITION_ID = JobTriggerDto.FIELD_JOB_DEFINITION_ID;
@@ -66,19 +79,24 @@ public class DBJobTriggerService {
 
     private final String nodeId;
     private final JacksonDBCollection<JobTriggerDto, ObjectId> db;
+    private final MongoCollection<DBObject> triggerCollection;
     private final JobSchedulerClock clock;
+    private final JobSchedulerEventBus schedulerEventBus;
 
     @Inject
     public DBJobTriggerService(MongoConnection mongoConnection,
                                MongoJackObjectMapperProvider mapper,
                                NodeId nodeId,
-                               JobSchedulerClock clock) {
+                               JobSchedulerClock clock,
+                               JobSchedulerEventBus schedulerEventBus) {
         this.nodeId = nodeId.toString();
         this.clock = clock;
+        this.schedulerEventBus = schedulerEventBus;
         this.db = JacksonDBCollection.wrap(mongoConnection.getDatabase().getCollection(COLLECTION_NAME),
                 JobTriggerDto.class,
                 ObjectId.class,
                 mapper.get());
+        this.triggerCollection = mongoConnection.getMongoDatabase().getCollection(COLLECTION_NAME, DBObject.class);
 
         db.createIndex(new BasicDBObject(FIELD_JOB_DEFINITION_ID, 1));
         db.createIndex(new BasicDBObject(FIELD_LOCK_OWNER, 1));
@@ -191,7 +209,64 @@ public class DBJobTriggerService {
             throw new IllegalArgumentException("New trigger must not have an ID");
         }
 
-        return db.insert(trigger).getSavedObject();
+        final JobTriggerDto savedTrigger = db.insert(trigger).getSavedObject();
+        // Let the scheduler on this node check for runnable triggers right away
+        schedulerEventBus.post(JobTriggerUpdatedEvent.INSTANCE);
+        return savedTrigger;
+    }
+
+    /**
+     * Creates new records for all given triggers with a single unordered bulk insert. The given {@link JobTriggerDto}
+     * objects <b>must not</b> have an ID to make sure new records are created.
+     * <p>
+     * A trigger which fails to be inserted doesn't prevent the other triggers from being created. Failed triggers
+     * are retried one by one, triggers which can't be created on retry either are logged and left out of the result.
+     *
+     * @param triggers the new trigger objects (without an ID set)
+     * @return the newly created trigger objects
+     * @throws IllegalArgumentException if one of the passed triggers has an ID set
+     */
+    public List<JobTriggerDto> createAll(List<JobTriggerDto> triggers) {
+        requireNonNull(triggers, "triggers cannot be null");
+        if (triggers.isEmpty()) {
+            return ImmutableList.of();
+        }
+        if (triggers.stream().anyMatch(trigger -> trigger.id() != null)) {
+            throw new IllegalArgumentException("New triggers must not have an ID");
+        }
+
+        final List<DBObject> documents = triggers.stream().map(db::convertToDbObject).collect(Collectors.toList());
+        final Set<Integer> failedIndices = new HashSet<>();
+        try {
+            triggerCollection.insertMany(documents, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                LOG.warn("Couldn't create job trigger for job definition <{}>, retrying: {}",
+                        triggers.get(error.getIndex()).jobDefinitionId(), error.getMessage());
+                failedIndices.add(error.getIndex());
+            }
+        }
+
+        final ImmutableList.Builder<JobTriggerDto> savedTriggers = ImmutableList.builder();
+        for (int i = 0; i < triggers.size(); i++) {
+            if (!failedIndices.contains(i)) {
+                savedTriggers.add(db.convertFromDbObject(documents.get(i)));
+                continue;
+            }
+            final JobTriggerDto trigger = triggers.get(i);
+            try {
+                savedTriggers.add(db.insert(trigger).getSavedObject());
+            } catch (MongoException e) {
+                LOG.error("Couldn't create job trigger for job definition <{}>", trigger.jobDefinitionId(), e);
+            }
+        }
+
+        final List<JobTriggerDto> result = savedTriggers.build();
+        if (!result.isEmpty()) {
+            // Let the scheduler on this node check for runnable triggers right away
+            schedulerEventBus.post(JobTriggerUpdatedEvent.INSTANCE);
+        }
+        return result;
     }
 
     /**
@@ -249,7 +324,11 @@ public class DBJobTriggerService {
             scheduleUpdate.get().forEach(update::set);
         }
 
-        return db.update(DBQuery.is(FIELD_ID, getId(trigger)), update).getN() > 0;
+        final boolean updated = db.update(DBQuery.is(FIELD_ID, getId(trigger)), update).getN() > 0;
+        if (updated) {
+            schedulerEventBus.post(JobTriggerUpdatedEvent.INSTANCE);
+        }
+        return updated;
     }
 
     /**
@@ -290,7 +369,94 @@ public class DBJobTriggerService {
     public Optional<JobTriggerDto> nextRunnableTrigger() {
         final DateTime now = clock.nowUTC();
 
+        final DBQuery.Query query = runnableTriggersQuery(now);
+
+        // We want to lock the trigger with the oldest next time
+        final DBSort.SortBuilder sort = DBSort.asc(FIELD_NEXT_TIME);
+
+        // Atomically update, lock and return the next runnable trigger
+        final JobTriggerDto trigger = db.findAndModify(
+                query,
+                null,
+                sort,
+                false,
+                lockUpdate(now),
+                true, // We need the modified object so we have access to the lock information
+                false
+        );
+
+        return Optional.ofNullable(trigger);
+    }
+
+    /**
+     * Locks and returns up to {@code limit} runnable triggers, oldest next time first. The caller needs to take care
+     * of releasing the trigger locks.
+     * <p>
+     * The candidates are locked with a single update. Every trigger is only locked if it's still runnable, so
+     * triggers which have been locked by another node in the meantime are not part of the result.
+     *
+     * @param limit the maximum number of triggers to lock
+     * @return the locked triggers, an empty list if there are no runnable triggers
+     */
+    public List<JobTriggerDto> nextRunnableTriggers(int limit) {
+        if (limit <= 0) {
+            return ImmutableList.of();
+        }
+        final DateTime now = clock.nowUTC();
+        final DBQuery.Query query = runnableTriggersQuery(now);
+
+        final List<ObjectId> candidates;
+        try (final DBCursor<JobTriggerDto> cursor = db.find(query).sort(DBSort.asc(FIELD_NEXT_TIME)).limit(limit)) {
+            candidates = StreamEx.of(cursor.iterator())
+                    .map(trigger -> new ObjectId(requireNonNull(trigger.id())))
+                    .toList();
+        }
+        if (candidates.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        db.updateMulti(DBQuery.and(DBQuery.in(FIELD_ID, candidates), query), lockUpdate(now));
+
+        // Only this node locks triggers with this lock time, all other candidates have been locked by other nodes
+        final DBQuery.Query lockedQuery = DBQuery.and(
+                DBQuery.in(FIELD_ID, candidates),
+                DBQuery.is(FIELD_LOCK_OWNER, nodeId),
+                DBQuery.is(FIELD_STATUS, JobTriggerStatus.RUNNING),
+                DBQuery.is(FIELD_LAST_LOCK_TIME, now)
+        );
+        try (final DBCursor<JobTriggerDto> cursor = db.find(lockedQuery).sort(DBSort.asc(FIELD_NEXT_TIME))) {
+            return ImmutableList.copyOf(cursor.iterator());
+        }
+    }
+
+    /**
+     * Returns the times at which the next unlocked triggers become runnable, earliest first.
+     *
+     * @param limit the maximum number of returned times
+     * @return list of due times
+     */
+    public List<DateTime> nextDueTimes(int limit) {
+        final DateTime now = clock.nowUTC();
         final DBQuery.Query query = DBQuery.and(
+                DBQuery.is(FIELD_LOCK_OWNER, null),
+                DBQuery.is(FIELD_STATUS, JobTriggerStatus.RUNNABLE),
+                DBQuery.or(
+                        DBQuery.notExists(FIELD_END_TIME),
+                        DBQuery.is(FIELD_END_TIME, null),
+                        DBQuery.greaterThan(FIELD_END_TIME, Optional.of(now))
+                )
+        );
+        try (final DBCursor<JobTriggerDto> cursor = db.find(query).sort(DBSort.asc(FIELD_NEXT_TIME)).limit(limit)) {
+            // A trigger is not runnable before its start time, even if its next time is earlier
+            return StreamEx.of(cursor.iterator())
+                    .map(trigger -> trigger.startTime().isAfter(trigger.nextTime()) ? trigger.startTime() : trigger.nextTime())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private DBQuery.Query runnableTriggersQuery(DateTime now) {
+        return DBQuery.and(
                 // We cannot lock a trigger that is already locked by another node
                 DBQuery.is(FIELD_LOCK_OWNER, null),
                 DBQuery.is(FIELD_STATUS, JobTriggerStatus.RUNNABLE),
@@ -304,27 +470,13 @@ public class DBJobTriggerService {
                 //       The scheduler should not lock any new triggers if it detects that its clock is wrong
                 DBQuery.lessThanEquals(FIELD_NEXT_TIME, now)
         );
+    }
 
-        // We want to lock the trigger with the oldest next time
-        final DBSort.SortBuilder sort = DBSort.asc(FIELD_NEXT_TIME);
-
-        final DBUpdate.Builder lockUpdate = DBUpdate.set(FIELD_LOCK_OWNER, nodeId)
+    private DBUpdate.Builder lockUpdate(DateTime now) {
+        return DBUpdate.set(FIELD_LOCK_OWNER, nodeId)
                 .set(FIELD_STATUS, JobTriggerStatus.RUNNING)
                 .set(FIELD_TRIGGERED_AT, Optional.of(now))
                 .set(FIELD_LAST_LOCK_TIME, now);
-
-        // Atomically update, lock and return the next runnable trigger
-        final JobTriggerDto trigger = db.findAndModify(
-                query,
-                null,
-                sort,
-                false,
-                lockUpdate,
-                true, // We need the modified object so we have access to the lock information
-                false
-        );
-
-        return Optional.ofNullable(trigger);
     }
 
     /**
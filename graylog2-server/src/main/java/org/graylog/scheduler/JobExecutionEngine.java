@@ -17,9 +17,11 @@
 package org.graylog.scheduler;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.inject.assistedinject.Assisted;
+import org.graylog.scheduler.clock.JobSchedulerClock;
 import org.graylog.scheduler.eventbus.JobCompletedEvent;
 import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
 import org.graylog.scheduler.worker.JobWorkerPool;
@@ -29,8 +31,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -45,6 +48,10 @@ public class JobExecutionEngine {
 
     private static final Logger LOG = LoggerFactory.getLogger(JobExecutionEngine.class);
 
+    // Triggers which are changed on other nodes are picked up after this time at the latest
+    private static final long DUE_TIMES_MAX_AGE_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final int DUE_TIMES_LIMIT = 100;
+
     private final DBJobTriggerService jobTriggerService;
     private final DBJobDefinitionService jobDefinitionService;
     private final JobSchedulerEventBus eventBus;
@@ -52,9 +59,14 @@ public class JobExecutionEngine {
     private final JobTriggerUpdates.Factory jobTriggerUpdatesFactory;
     private final Map<String, Job.Factory> jobFactory;
     private final JobWorkerPool workerPool;
+    private final JobSchedulerClock clock;
+    private final JobTriggerDueQueue dueQueue = new JobTriggerDueQueue(DUE_TIMES_MAX_AGE_MS);
     private Counter executionSuccessful;
     private Counter executionFailed;
     private Timer executionTime;
+    private final Timer triggerClaimTime;
+    private final Timer triggerLag;
+    private final Histogram claimedTriggers;
 
     private final AtomicBoolean isRunning = new AtomicBoolean(true);
     private final AtomicBoolean shouldCleanup = new AtomicBoolean(true);
@@ -66,6 +78,7 @@ public class JobExecutionEngine {
                               JobScheduleStrategies scheduleStrategies,
                               JobTriggerUpdates.Factory jobTriggerUpdatesFactory,
                               Map<String, Job.Factory> jobFactory,
+                              JobSchedulerClock clock,
                               @Assisted JobWorkerPool workerPool, MetricRegistry metricRegistry) {
         this.jobTriggerService = jobTriggerService;
         this.jobDefinitionService = jobDefinitionService;
@@ -74,9 +87,13 @@ public class JobExecutionEngine {
         this.jobTriggerUpdatesFactory = jobTriggerUpdatesFactory;
         this.jobFactory = jobFactory;
         this.workerPool = workerPool;
+        this.clock = clock;
         this.executionSuccessful = metricRegistry.counter(MetricRegistry.name(getClass(), "executions", "successful"));
         this.executionFailed = metricRegistry.counter(MetricRegistry.name(getClass(), "executions", "failed"));
         this.executionTime = metricRegistry.timer(MetricRegistry.name(getClass(), "executions", "time"));
+        this.triggerClaimTime = metricRegistry.timer(MetricRegistry.name(getClass(), "triggers", "claim-time"));
+        this.triggerLag = metricRegistry.timer(MetricRegistry.name(getClass(), "triggers", "lag"));
+        this.claimedTriggers = metricRegistry.histogram(MetricRegistry.name(getClass(), "triggers", "claimed"));
     }
 
     /**
@@ -97,10 +114,17 @@ public class JobExecutionEngine {
     }
 
     /**
-     * Execute the engine. This will try to lock a trigger and execute the job if there are free slots in the
-     * worker pool and the engine is not shutting down.
+     * Signal that triggers have been created or rescheduled, so the known due times are outdated.
+     */
+    public void triggersChanged() {
+        dueQueue.markStale();
+    }
+
+    /**
+     * Execute the engine. This will try to lock as many triggers as there are free slots in the worker pool and
+     * execute their jobs if the engine is not shutting down.
      *
-     * @return true if a job trigger has been locked and the related job has been triggered, false otherwise
+     * @return true if at least one job trigger has been locked and the related job has been triggered, false otherwise
      */
     public boolean execute() {
         // Cleanup stale scheduler state *before* processing any triggers for the first time.
@@ -109,21 +133,36 @@ public class JobExecutionEngine {
             cleanup();
         }
 
-        // We want to avoid a call to the database if there are no free slots in the pool or the engine is shutting down
-        if (isRunning.get() && workerPool.hasFreeSlots()) {
-            final Optional<JobTriggerDto> triggerOptional = jobTriggerService.nextRunnableTrigger();
+        // We want to avoid a call to the database if there are no free slots in the pool, the engine is shutting down
+        // or we know that there are no runnable triggers
+        final DateTime now = clock.nowUTC();
+        if (isRunning.get() && workerPool.hasFreeSlots() && dueQueue.hasDueTriggers(now)) {
+            final int freeSlots = workerPool.freeSlots();
+            final long changesBefore = dueQueue.changes();
+            final List<JobTriggerDto> triggers;
+            try (final Timer.Context ignored = triggerClaimTime.time()) {
+                triggers = jobTriggerService.nextRunnableTriggers(freeSlots);
+            }
+            claimedTriggers.update(triggers.size());
+
+            if (triggers.size() < freeSlots) {
+                // All runnable triggers have been locked, remember when the next ones are due
+                dueQueue.refresh(jobTriggerService.nextDueTimes(DUE_TIMES_LIMIT), now, changesBefore);
+            }
 
-            if (triggerOptional.isPresent()) {
-                final JobTriggerDto trigger = triggerOptional.get();
+            boolean executed = false;
+            for (final JobTriggerDto trigger : triggers) {
+                triggerLag.update(Math.max(0, now.getMillis() - trigger.nextTime().getMillis()), TimeUnit.MILLISECONDS);
 
-                if (!workerPool.execute(() -> handleTrigger(trigger))) {
+                if (workerPool.execute(() -> handleTrigger(trigger))) {
+                    executed = true;
+                } else {
                     // The job couldn't be executed so we have to release the trigger again with the same nextTime
                     jobTriggerService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(trigger.nextTime()));
-                    return false;
+                    dueQueue.markStale();
                 }
-
-                return true;
             }
+            return executed;
         }
 
         return false;
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import org.graylog.scheduler.clock.JobSchedulerClock;
 import org.graylog.scheduler.eventbus.JobCompletedEvent;
 import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
+import org.graylog.scheduler.eventbus.JobTriggerUpdatedEvent;
 import org.graylog.scheduler.worker.JobWorkerPool;
 import org.graylog2.plugin.ServerStatus;
 import org.slf4j.Logger;
@@ -123,6 +124,15 @@ public class JobSchedulerService extends AbstractExecutionThreadService {
     @Subscribe
     public void handleJobCompleted(JobCompletedEvent triggerCompletedEvent) {
         // The job execution engine has just completed a job so we want to check for runnable triggers immediately.
+        // The completed trigger has been rescheduled, so the known due times are outdated.
+        jobExecutionEngine.triggersChanged();
+        sleeper.interrupt();
+    }
+
+    @Subscribe
+    public void handleJobTriggerUpdated(JobTriggerUpdatedEvent triggerUpdatedEvent) {
+        // A trigger has been created or rescheduled and might be runnable right away.
+        jobExecutionEngine.triggersChanged();
         sleeper.interrupt();
     }
 
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler;
+
+import org.joda.time.DateTime;
+
+import java.util.Collection;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the due times of the next runnable triggers in memory so the execution engine only has to ask the database
+ * for triggers when one of them is due or the triggers have been changed.
+ */
+class JobTriggerDueQueue {
+    private final long maxAgeMillis;
+    private final PriorityQueue<DateTime> dueTimes = new PriorityQueue<>();
+    private boolean stale = true;
+    private long changes = 0;
+    private long refreshedAtMillis = 0;
+
+    /**
+     * @param maxAgeMillis the due times are refreshed after this time even without any changes, to pick up triggers
+     *                     which have been changed on other nodes
+     */
+    JobTriggerDueQueue(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Returns a counter which is incremented on every change. Pass it to {@link #refresh(Collection, DateTime, long)}
+     * so changes which happen while the due times are loaded aren't lost.
+     */
+    synchronized long changes() {
+        return changes;
+    }
+
+    /**
+     * Replaces the known due times with the given ones. The queue stays stale if it has been changed since
+     * {@code changesBefore} has been read.
+     */
+    synchronized void refresh(Collection<DateTime> nextDueTimes, DateTime now, long changesBefore) {
+        dueTimes.clear();
+        dueTimes.addAll(nextDueTimes);
+        stale = changes != changesBefore;
+        refreshedAtMillis = now.getMillis();
+    }
+
+    /**
+     * Marks the known due times as outdated, for example because a trigger has been created.
+     */
+    synchronized void markStale() {
+        stale = true;
+        changes++;
+    }
+
+    /**
+     * Checks if there might be runnable triggers at the given time.
+     */
+    synchronized boolean hasDueTriggers(DateTime now) {
+        if (stale || now.getMillis() - refreshedAtMillis >= maxAgeMillis) {
+            return true;
+        }
+        final DateTime next = dueTimes.peek();
+        return next != null && !next.isAfter(now);
+    }
+}
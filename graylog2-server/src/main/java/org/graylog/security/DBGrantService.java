@@ -19,9 +19,11 @@ package org.graylog.security;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
 import com.mongodb.BasicDBObject;
 import org.graylog.grn.GRN;
 import org.graylog.grn.GRNRegistry;
+import org.graylog.security.events.GrantsChangedEvent;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.database.PaginatedDbService;
@@ -47,13 +49,16 @@ public class DBGrantService extends PaginatedDbService<GrantDTO> {
     public static final String COLLECTION_NAME = "grants";
 
     private final GRNRegistry grnRegistry;
+    private final EventBus serverEventBus;
 
     @Inject
     public DBGrantService(MongoConnection mongoConnection,
                           MongoJackObjectMapperProvider mapper,
-                          GRNRegistry grnRegistry) {
+                          GRNRegistry grnRegistry,
+                          EventBus serverEventBus) {
         super(mongoConnection, mapper, GrantDTO.class, COLLECTION_NAME);
         this.grnRegistry = grnRegistry;
+        this.serverEventBus = serverEventBus;
 
         db.createIndex(new BasicDBObject(GrantDTO.FIELD_GRANTEE, 1));
         db.createIndex(new BasicDBObject(GrantDTO.FIELD_TARGET, 1));
@@ -178,11 +183,36 @@ public class DBGrantService extends PaginatedDbService<GrantDTO> {
     }
 
     public int deleteForGrantee(GRN grantee) {
-        return db.remove(DBQuery.is(GrantDTO.FIELD_GRANTEE, grantee.toString())).getN();
+        final int deleted = db.remove(DBQuery.is(GrantDTO.FIELD_GRANTEE, grantee.toString())).getN();
+        postGrantsChanged(deleted);
+        return deleted;
     }
 
     public int deleteForTarget(GRN target) {
-        return db.remove(DBQuery.is(GrantDTO.FIELD_TARGET, target.toString())).getN();
+        final int deleted = db.remove(DBQuery.is(GrantDTO.FIELD_TARGET, target.toString())).getN();
+        postGrantsChanged(deleted);
+        return deleted;
+    }
+
+    @Override
+    public GrantDTO save(GrantDTO grantDTO) {
+        final GrantDTO savedGrant = super.save(grantDTO);
+        serverEventBus.post(GrantsChangedEvent.create());
+        return savedGrant;
+    }
+
+    @Override
+    public int delete(String id) {
+        final int deleted = super.delete(id);
+        postGrantsChanged(deleted);
+        return deleted;
+    }
+
+    private void postGrantsChanged(int changedGrants) {
+        // Cached authorization info is derived from grants, so it has to be invalidated on every change
+        if (changedGrants > 0) {
+            serverEventBus.post(GrantsChangedEvent.create());
+        }
     }
 
     public List<GrantDTO> getForTargetExcludingGrantee(GRN target, GRN grantee) {
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.security.permissions;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.AllPermission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of granted permissions which checks if a permission is implied without comparing it to every single
+ * granted permission.
+ * <p>
+ * {@link WildcardPermission}s are stored in a trie of their parts, {@link GRNPermission}s in a hash set. Checking
+ * a permission like {@code streams:read:<id>} therefore takes a few hash lookups, no matter how many permissions
+ * have been granted. Permissions which can't be indexed, and checked permissions with parts consisting of multiple
+ * sub-parts (e.g. {@code streams:read,edit}) are compared with all granted permissions, like Shiro does.
+ */
+public final class CompiledPermissions {
+    private static final String WILDCARD = WildcardPermission.WILDCARD_TOKEN;
+    private static final Splitter PART_SPLITTER = Splitter.on(WildcardPermission.PART_DIVIDER_TOKEN);
+    private static final Splitter SUBPART_SPLITTER = Splitter.on(WildcardPermission.SUBPART_DIVIDER_TOKEN);
+
+    private final boolean allPermitted;
+    private final Node root = new Node();
+    private final ImmutableSet<GRNPermission> grnPermissions;
+    private final ImmutableList<Permission> otherPermissions;
+    private final ImmutableList<Permission> permissions;
+
+    private CompiledPermissions(Collection<Permission> permissions) {
+        final ImmutableSet.Builder<GRNPermission> grnPermissions = ImmutableSet.builder();
+        final ImmutableList.Builder<Permission> otherPermissions = ImmutableList.builder();
+        boolean allPermitted = false;
+
+        for (Permission permission : permissions) {
+            if (permission instanceof AllPermission) {
+                allPermitted = true;
+            } else if (permission instanceof GRNPermission) {
+                grnPermissions.add((GRNPermission) permission);
+            } else if (isIndexable(permission)) {
+                add(parts(permission));
+            } else {
+                otherPermissions.add(permission);
+            }
+        }
+
+        this.allPermitted = allPermitted;
+        this.grnPermissions = grnPermissions.build();
+        this.otherPermissions = otherPermissions.build();
+        this.permissions = ImmutableList.copyOf(permissions);
+    }
+
+    public static CompiledPermissions compile(Collection<Permission> permissions) {
+        return new CompiledPermissions(permissions);
+    }
+
+    /**
+     * Checks if any of the granted permissions implies the given permission.
+     */
+    public boolean implies(Permission permission) {
+        if (allPermitted) {
+            return true;
+        }
+        if (permission instanceof GRNPermission) {
+            return grnPermissions.contains(permission);
+        }
+        if (!isIndexable(permission)) {
+            return impliedByAny(permissions, permission);
+        }
+
+        final List<List<String>> parts = parts(permission);
+        if (parts.stream().anyMatch(part -> part.size() != 1)) {
+            return impliedByAny(permissions, permission);
+        }
+        return root.implies(parts, 0) || impliedByAny(otherPermissions, permission);
+    }
+
+    private void add(List<List<String>> parts) {
+        // Shiro ignores trailing parts of a granted permission if they are wildcards, e.g. "streams:*" implies
+        // "streams", so every node followed only by wildcard parts is terminal as well
+        int terminalFrom = parts.size();
+        while (terminalFrom > 0 && parts.get(terminalFrom - 1).contains(WILDCARD)) {
+            terminalFrom--;
+        }
+        add(root, parts, 0, terminalFrom);
+    }
+
+    private static void add(Node node, List<List<String>> parts, int depth, int terminalFrom) {
+        if (depth >= terminalFrom) {
+            node.terminal = true;
+        }
+        if (depth == parts.size()) {
+            return;
+        }
+        final List<String> part = parts.get(depth);
+        if (part.contains(WILDCARD)) {
+            add(node.wildcard(), parts, depth + 1, terminalFrom);
+        } else {
+            for (String token : part) {
+                add(node.child(token), parts, depth + 1, terminalFrom);
+            }
+        }
+    }
+
+    private static boolean impliedByAny(Collection<Permission> permissions, Permission permission) {
+        for (Permission granted : permissions) {
+            if (granted.implies(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIndexable(Permission permission) {
+        // Subclasses might implement different semantics in their implies() method
+        return permission.getClass().equals(WildcardPermission.class);
+    }
+
+    private static List<List<String>> parts(Permission permission) {
+        // The parts of a WildcardPermission aren't accessible, but its string representation contains all of them
+        final ImmutableList.Builder<List<String>> parts = ImmutableList.builder();
+        for (String part : PART_SPLITTER.split(permission.toString())) {
+            parts.add(SUBPART_SPLITTER.splitToList(part));
+        }
+        return parts.build();
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcard = null;
+        private boolean terminal = false;
+
+        Node child(String token) {
+            return children.computeIfAbsent(token, ignored -> new Node());
+        }
+
+        Node wildcard() {
+            if (wildcard == null) {
+                wildcard = new Node();
+            }
+            return wildcard;
+        }
+
+        boolean implies(List<List<String>> parts, int depth) {
+            if (terminal) {
+                return true;
+            }
+            if (depth == parts.size()) {
+                return false;
+            }
+            if (wildcard != null && wildcard.implies(parts, depth + 1)) {
+                return true;
+            }
+            final Node child = children.get(parts.get(depth).get(0));
+            return child != null && child.implies(parts, depth + 1);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.github.joschi.jadconfig.ValidatorMethod;
 import com.github.joschi.jadconfig.converters.StringSetConverter;
 import com.github.joschi.jadconfig.converters.TrimmedStringSetConverter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.PositiveLongValidator;
@@ -60,13 +61,16 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "outputbuffer_processors", required = true, validator = PositiveIntegerValidator.class)
     private int outputBufferProcessors = 3;
 
-    @Parameter(value = "outputbuffer_processor_threads_max_pool_size", required = true, validator = PositiveIntegerValidator.class)
+    @Parameter(value = "outputbuffer_processor_threads_max_pool_size", validator = PositiveIntegerValidator.class)
+    @Deprecated
     private int outputBufferProcessorThreadsMaxPoolSize = 30;
 
-    @Parameter(value = "outputbuffer_processor_threads_core_pool_size", required = true, validator = PositiveIntegerValidator.class)
+    @Parameter(value = "outputbuffer_processor_threads_core_pool_size", validator = PositiveIntegerValidator.class)
+    @Deprecated
     private int outputBufferProcessorThreadsCorePoolSize = 3;
 
     @Parameter(value = "outputbuffer_processor_keep_alive_time", validator = PositiveIntegerValidator.class)
+    @Deprecated
     private int outputBufferProcessorKeepAliveTime = 5000;
 
     @Parameter(value = "node_id_file", validator = NodeIdFileValidator.class)
@@ -91,6 +95,15 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "allow_highlighting")
     private boolean allowHighlighting = false;
 
+    @Parameter(value = "search_progressive_index_batch_size")
+    private int searchProgressiveIndexBatchSize = 0;
+
+    @Parameter(value = "export_parallelism", validator = PositiveIntegerValidator.class)
+    private int exportParallelism = 4;
+
+    @Parameter(value = "approximate_pivot_sample_probability")
+    private double approximatePivotSampleProbability = 0.05;
+
     @Parameter(value = "lb_recognition_period_seconds", validator = PositiveIntegerValidator.class)
     private int loadBalancerRecognitionPeriodSeconds = 3;
 
@@ -112,6 +125,12 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "output_fault_penalty_seconds", validator = PositiveLongValidator.class)
     private long outputFaultPenaltySeconds = 30;
 
+    @Parameter(value = "output_spill_dir", required = true)
+    private Path outputSpillDir = DEFAULT_DATA_DIR.resolve("output_spill");
+
+    @Parameter(value = "output_spill_max_size")
+    private Size outputSpillMaxSize = Size.gigabytes(1L);
+
     @Parameter(value = "stale_master_timeout", validator = PositiveIntegerValidator.class)
     private int staleMasterTimeout = 2000;
 
@@ -126,6 +145,12 @@ public class Configuration extends BaseConfiguration {
     @Deprecated
     private boolean enableLegacyAlerts = false;
 
+    @Parameter(value = "events_streaming_aggregation_enabled")
+    private boolean eventsStreamingAggregationEnabled = false;
+
+    @Parameter(value = "cluster_event_change_streams_enabled")
+    private boolean clusterEventChangeStreamsEnabled = true;
+
     @Parameter(value = "gc_warning_threshold")
     private Duration gcWarningThreshold = Duration.seconds(1L);
 
@@ -186,14 +211,26 @@ public class Configuration extends BaseConfiguration {
         return outputBufferProcessors;
     }
 
+    /**
+     * @deprecated Not used anymore, output buffer processors don't have thread pools.
+     */
+    @Deprecated
     public int getOutputBufferProcessorThreadsCorePoolSize() {
         return outputBufferProcessorThreadsCorePoolSize;
     }
 
+    /**
+     * @deprecated Not used anymore, output buffer processors don't have thread pools.
+     */
+    @Deprecated
     public int getOutputBufferProcessorThreadsMaxPoolSize() {
         return outputBufferProcessorThreadsMaxPoolSize;
     }
 
+    /**
+     * @deprecated Not used anymore, output buffer processors don't have thread pools.
+     */
+    @Deprecated
     public int getOutputBufferProcessorKeepAliveTime() {
         return outputBufferProcessorKeepAliveTime;
     }
@@ -227,6 +264,18 @@ public class Configuration extends BaseConfiguration {
         return allowHighlighting;
     }
 
+    public int getSearchProgressiveIndexBatchSize() {
+        return searchProgressiveIndexBatchSize;
+    }
+
+    public int getExportParallelism() {
+        return exportParallelism;
+    }
+
+    public double getApproximatePivotSampleProbability() {
+        return approximatePivotSampleProbability;
+    }
+
     public int getLoadBalancerRecognitionPeriodSeconds() {
         return loadBalancerRecognitionPeriodSeconds;
     }
@@ -251,6 +300,14 @@ public class Configuration extends BaseConfiguration {
         return outputFaultPenaltySeconds;
     }
 
+    public Path getOutputSpillDir() {
+        return outputSpillDir;
+    }
+
+    public Size getOutputSpillMaxSize() {
+        return outputSpillMaxSize;
+    }
+
     public int getStaleMasterTimeout() {
         return staleMasterTimeout;
     }
@@ -269,6 +326,14 @@ public class Configuration extends BaseConfiguration {
         return enableLegacyAlerts;
     }
 
+    public boolean isEventsStreamingAggregationEnabled() {
+        return eventsStreamingAggregationEnabled;
+    }
+
+    public boolean isClusterEventChangeStreamsEnabled() {
+        return clusterEventChangeStreamsEnabled;
+    }
+
     public Duration getGcWarningThreshold() {
         return gcWarningThreshold;
     }
@@ -330,6 +395,14 @@ public class Configuration extends BaseConfiguration {
         }
     }
 
+    @ValidatorMethod
+    @SuppressWarnings("unused")
+    public void validateApproximatePivotSampleProbability() throws ValidationException {
+        if (!(approximatePivotSampleProbability > 0.0 && approximatePivotSampleProbability <= 1.0)) {
+            throw new ValidationException("Parameter \"approximate_pivot_sample_probability\" must be greater than 0 and at most 1.");
+        }
+    }
+
     @ValidatorMethod
     @SuppressWarnings("unused")
     public void validateRootUser() throws ValidationException {
@@ -21,6 +21,7 @@ import com.codahale.metrics.InstrumentedThreadFactory;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
@@ -80,13 +81,13 @@ public class OutputBuffer extends Buffer {
         LOG.info("Initialized OutputBuffer with ring size <{}> and wait strategy <{}>.",
                 ringBufferSize, waitStrategy.getClass().getSimpleName());
 
-        final OutputBufferProcessor[] processors = new OutputBufferProcessor[processorCount];
+        final PartitionedEventHandler[] processors = new PartitionedEventHandler[processorCount];
 
         for (int i = 0; i < processorCount; i++) {
-            processors[i] = processorProvider.get();
+            processors[i] = new PartitionedEventHandler(processorProvider.get(), i, processorCount);
         }
 
-        disruptor.handleEventsWithWorkerPool(processors);
+        disruptor.handleEventsWith(processors);
 
         ringBuffer = disruptor.start();
     }
@@ -104,4 +105,29 @@ public class OutputBuffer extends Buffer {
     protected void afterInsert(int n) {
         incomingMessages.mark(n);
     }
+
+    /**
+     * Every processor sees every event, but only handles the events whose sequence falls into its partition. Unlike a
+     * worker pool, this tells the processors about the end of a batch so they can write their messages in bulk.
+     */
+    private static class PartitionedEventHandler implements EventHandler<MessageEvent> {
+        private final OutputBufferProcessor processor;
+        private final int ordinal;
+        private final int numberOfProcessors;
+
+        PartitionedEventHandler(OutputBufferProcessor processor, int ordinal, int numberOfProcessors) {
+            this.processor = processor;
+            this.ordinal = ordinal;
+            this.numberOfProcessors = numberOfProcessors;
+        }
+
+        @Override
+        public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+            if (sequence % numberOfProcessors == ordinal) {
+                processor.onEvent(event, sequence, endOfBatch);
+            } else if (endOfBatch) {
+                processor.flush();
+            }
+        }
+    }
 }
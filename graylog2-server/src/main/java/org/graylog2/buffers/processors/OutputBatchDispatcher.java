@@ -0,0 +1,560 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.graylog2.Configuration;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.outputs.OutputRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.outputs.BatchMessageOutput;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
+/**
+ * Writes message batches to outputs.
+ * <p>
+ * Only outputs implementing {@link BatchMessageOutput} are handed the whole batch, all other outputs are written one
+ * message at a time.
+ * </p>
+ * <p>
+ * The default output is written on the calling thread so it can exert back pressure on the output buffer. Every stream
+ * output gets its own worker thread with a bounded queue of batches, so a slow or failing stream output only delays its
+ * own messages and never blocks the output buffer processors.
+ * </p>
+ * <p>
+ * Each stream output has a circuit breaker which opens after {@code output_fault_count_threshold} writes in a row
+ * failed or took longer than {@code output_module_timeout}, and lets a probe write through after
+ * {@code output_fault_penalty_seconds}. While the breaker is not closed, or the in-memory queue is full, new batches
+ * are handed to a single spill thread which writes them to disk in {@code output_spill_dir}. They are replayed in order
+ * once the output has recovered and the batches which were already in memory have been written. A batch which could
+ * not be written after {@value #MAX_WRITE_ATTEMPTS} attempts is dropped, so a single bad batch can't block its output.
+ * Batches are also dropped if the spill thread can't keep up or the spill queue of the output has reached
+ * {@code output_spill_max_size}.
+ * </p>
+ * <p>
+ * Spilled batches survive a restart. {@link #replaySpilledBatches(Map)} starts the workers of outputs which have
+ * spilled batches left, so they are replayed even if the output doesn't get any new messages. The streams of spilled
+ * messages are restored by ID.
+ * </p>
+ */
+@Singleton
+public class OutputBatchDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(OutputBatchDispatcher.class);
+
+    // Number of batches a stream output can fall behind before batches are spilled to disk
+    static final int STREAM_OUTPUT_QUEUE_CAPACITY = 16;
+    // Number of batches of all stream outputs which can wait for the spill thread
+    static final int SPILL_EXECUTOR_QUEUE_CAPACITY = 256;
+    static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final long IDLE_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final ConcurrentMap<MessageOutput, StreamOutputWorker> workers = new ConcurrentHashMap<>();
+    // Guarded by itself, spill queues are shared by all workers of an output and closed once the last one released it
+    private final Map<String, SharedSpillQueue> spillQueues = new HashMap<>();
+    private final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+            .setNameFormat("outputbuffer-stream-output-%d")
+            .setDaemon(true)
+            .build();
+    private final ExecutorService spillExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(SPILL_EXECUTOR_QUEUE_CAPACITY),
+            new ThreadFactoryBuilder().setNameFormat("outputbuffer-spill-%d").setDaemon(true).build());
+    private final Object metricsLock = new Object();
+    private final OutputRegistry outputRegistry;
+    private final StreamService streamService;
+    private final ObjectMapper objectMapper;
+    private final MetricRegistry metricRegistry;
+    private final long outputModuleTimeout;
+    private final long faultCountThreshold;
+    private final long faultPenaltyMillis;
+    private final Path spillDirectory;
+    private final long spillMaxBytes;
+    private final Timer processTime;
+    private final Meter droppedMessages;
+    private final Meter spilledMessages;
+    private final Meter replayedMessages;
+
+    @Inject
+    public OutputBatchDispatcher(Configuration configuration,
+                                 MetricRegistry metricRegistry,
+                                 OutputRegistry outputRegistry,
+                                 StreamService streamService,
+                                 ObjectMapper objectMapper) {
+        this.outputRegistry = outputRegistry;
+        this.streamService = streamService;
+        this.objectMapper = objectMapper;
+        this.metricRegistry = metricRegistry;
+        this.outputModuleTimeout = configuration.getOutputModuleTimeout();
+        this.faultCountThreshold = configuration.getOutputFaultCountThreshold();
+        this.faultPenaltyMillis = TimeUnit.SECONDS.toMillis(configuration.getOutputFaultPenaltySeconds());
+        this.spillDirectory = configuration.getOutputSpillDir();
+        this.spillMaxBytes = configuration.getOutputSpillMaxSize().toBytes();
+        this.processTime = metricRegistry.timer(name(OutputBufferProcessor.class, "processTime"));
+        this.droppedMessages = metricRegistry.meter(name(OutputBatchDispatcher.class, "droppedMessages"));
+        this.spilledMessages = metricRegistry.meter(name(OutputBatchDispatcher.class, "spilledMessages"));
+        this.replayedMessages = metricRegistry.meter(name(OutputBatchDispatcher.class, "replayedMessages"));
+        safelyRegister(metricRegistry, name(OutputBatchDispatcher.class, "streamOutputWorkers"), (Gauge<Integer>) workers::size);
+    }
+
+    /**
+     * Writes the batch to the given output and blocks until the output returns.
+     */
+    public void write(MessageOutput output, List<Message> messages) {
+        if (!output.isRunning()) {
+            LOG.debug("Skipping stopped output {}", output.getClass().getName());
+            return;
+        }
+        try {
+            writeBatch(output, messages);
+        } catch (Exception e) {
+            LOG.error("Error in output [" + output.getClass() + "].", e);
+        }
+    }
+
+    private void writeBatch(MessageOutput output, List<Message> messages) throws Exception {
+        try (Timer.Context ignored = processTime.time()) {
+            if (output instanceof BatchMessageOutput) {
+                output.write(messages);
+            } else {
+                for (Message message : messages) {
+                    output.write(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the batch to the worker of the given stream output without blocking on the output or the disk. The batch
+     * is spilled to disk by the spill thread if the output cannot take it right now.
+     *
+     * @return {@code true} if the batch has been queued or handed to the spill thread, {@code false} if it has been dropped
+     */
+    public boolean dispatch(MessageOutput output, List<Message> messages) {
+        if (!output.isRunning()) {
+            LOG.debug("Skipping stopped output {}", output.getClass().getName());
+            return false;
+        }
+        final StreamOutputWorker worker = workers.computeIfAbsent(output, this::startWorker);
+        if (worker.acceptsInMemory() && worker.queue.offer(messages)) {
+            return true;
+        }
+        return worker.spill(messages);
+    }
+
+    /**
+     * Deletes the spill directories of outputs which don't exist anymore.
+     *
+     * @param existingOutputIds the IDs of all outputs
+     */
+    public void removeSpillDirectories(Set<String> existingOutputIds) {
+        for (Path directory : listSpillDirectories()) {
+            final String outputId = directory.getFileName().toString();
+            if (existingOutputIds.contains(outputId)) {
+                continue;
+            }
+            synchronized (spillQueues) {
+                // Still in use by the worker of a stopping output, the next run will remove it
+                if (spillQueues.containsKey(outputId)) {
+                    continue;
+                }
+                try {
+                    LOG.info("Removing spilled messages of deleted output <{}>", outputId);
+                    FileUtils.deleteDirectory(directory.toFile());
+                } catch (IOException e) {
+                    LOG.warn("Unable to remove spill directory <{}> of deleted output", directory, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the workers of outputs which have spilled batches on disk but no worker, e. g. after a restart.
+     *
+     * @param streamsByOutputId a stream each output is assigned to, used to launch the output
+     */
+    public void replaySpilledBatches(Map<String, Stream> streamsByOutputId) {
+        for (Path directory : listSpillDirectories()) {
+            final String outputId = directory.getFileName().toString();
+            final Stream stream = streamsByOutputId.get(outputId);
+            // Deleted outputs are handled by removeSpillDirectories(), unassigned ones are replayed once reassigned
+            if (stream == null || hasSpillQueue(outputId)) {
+                continue;
+            }
+            try {
+                if (!OutputSpillQueue.containsSpilledBatches(directory)) {
+                    continue;
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to read spill directory <{}>", directory, e);
+                continue;
+            }
+            final MessageOutput output = outputRegistry.getOutputForIdAndStream(outputId, stream);
+            if (output == null || !output.isRunning()) {
+                LOG.warn("Unable to launch output <{}> to replay its spilled messages, retrying later.", outputId);
+                continue;
+            }
+            LOG.info("Replaying spilled messages of output <{}>", outputId);
+            workers.computeIfAbsent(output, this::startWorker);
+        }
+    }
+
+    private List<Path> listSpillDirectories() {
+        final List<Path> directories = new ArrayList<>();
+        if (!Files.isDirectory(spillDirectory)) {
+            return directories;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spillDirectory, Files::isDirectory)) {
+            stream.forEach(directories::add);
+        } catch (IOException e) {
+            LOG.warn("Unable to list output spill directory <{}>", spillDirectory, e);
+        }
+        return directories;
+    }
+
+    private boolean hasSpillQueue(String outputId) {
+        synchronized (spillQueues) {
+            return spillQueues.containsKey(outputId);
+        }
+    }
+
+    private Optional<Stream> loadStream(String streamId) {
+        try {
+            return Optional.of(streamService.load(streamId));
+        } catch (NotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    private StreamOutputWorker startWorker(MessageOutput output) {
+        final String outputId = outputRegistry.getOutputId(output);
+        final StreamOutputWorker worker = new StreamOutputWorker(output, outputId, acquireSpillQueue(outputId));
+        threadFactory.newThread(worker).start();
+        return worker;
+    }
+
+    @Nullable
+    private OutputSpillQueue acquireSpillQueue(@Nullable String outputId) {
+        if (outputId == null) {
+            return null;
+        }
+        synchronized (spillQueues) {
+            // Shared by all instances of an output, a restarted output replays what its predecessor spilled
+            SharedSpillQueue shared = spillQueues.get(outputId);
+            if (shared == null) {
+                try {
+                    shared = new SharedSpillQueue(new OutputSpillQueue(spillDirectory.resolve(outputId), spillMaxBytes, objectMapper, this::loadStream));
+                } catch (IOException e) {
+                    LOG.error("Unable to open spill queue for output <{}>, messages will be dropped if it can't keep up.", outputId, e);
+                    return null;
+                }
+                spillQueues.put(outputId, shared);
+            }
+            shared.references++;
+            return shared.queue;
+        }
+    }
+
+    private void releaseSpillQueue(String outputId) {
+        synchronized (spillQueues) {
+            final SharedSpillQueue shared = spillQueues.get(outputId);
+            if (shared == null || --shared.references > 0) {
+                return;
+            }
+            spillQueues.remove(outputId);
+            try {
+                shared.queue.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close spill queue of output <{}>", outputId, e);
+            }
+        }
+    }
+
+    private void registerGauge(String name, Gauge<?> gauge) {
+        synchronized (metricsLock) {
+            // A restarted output takes over the metrics of its predecessor
+            metricRegistry.remove(name);
+            metricRegistry.register(name, gauge);
+        }
+    }
+
+    private void removeGauge(String name, Gauge<?> gauge) {
+        synchronized (metricsLock) {
+            metricRegistry.removeMatching((metricName, metric) -> metricName.equals(name) && metric == gauge);
+        }
+    }
+
+    private static class SharedSpillQueue {
+        private final OutputSpillQueue queue;
+        private int references = 0;
+
+        private SharedSpillQueue(OutputSpillQueue queue) {
+            this.queue = queue;
+        }
+    }
+
+    private class StreamOutputWorker implements Runnable {
+        private final MessageOutput output;
+        private final String outputId;
+        private final OutputSpillQueue spillQueue;
+        private final BlockingQueue<List<Message>> queue = new ArrayBlockingQueue<>(STREAM_OUTPUT_QUEUE_CAPACITY);
+        private final OutputCircuitBreaker circuitBreaker = new OutputCircuitBreaker(faultCountThreshold, faultPenaltyMillis);
+        // Batches which have been handed to the spill thread but have not been written to disk yet
+        private final AtomicInteger pendingSpills = new AtomicInteger();
+        private final Map<String, Gauge<?>> gauges = new HashMap<>();
+
+        // Only accessed by the worker thread
+        private List<Message> currentBatch = null;
+        private int currentBatchAttempts = 0;
+        private int replayAttempts = 0;
+
+        StreamOutputWorker(MessageOutput output, @Nullable String outputId, @Nullable OutputSpillQueue spillQueue) {
+            this.output = output;
+            this.outputId = outputId;
+            this.spillQueue = spillQueue;
+            if (outputId != null) {
+                final String metricPrefix = name(OutputBatchDispatcher.class, "outputs", outputId);
+                gauges.put(name(metricPrefix, "queueDepth"), (Gauge<Integer>) queue::size);
+                gauges.put(name(metricPrefix, "circuitState"), (Gauge<String>) () -> circuitBreaker.state().name());
+                if (spillQueue != null) {
+                    gauges.put(name(metricPrefix, "spillBytes"), (Gauge<Long>) spillQueue::sizeInBytes);
+                    gauges.put(name(metricPrefix, "replayLag"), (Gauge<Long>) this::replayLagMillis);
+                }
+                gauges.forEach(OutputBatchDispatcher.this::registerGauge);
+            }
+        }
+
+        boolean acceptsInMemory() {
+            // Once batches have been spilled, newer ones have to go to the spill queue as well to keep them in order
+            return circuitBreaker.state() == OutputCircuitBreaker.State.CLOSED && !hasSpilledBatches();
+        }
+
+        private boolean hasSpilledBatches() {
+            return spillQueue != null && (pendingSpills.get() > 0 || !spillQueue.isEmpty());
+        }
+
+        boolean spill(List<Message> messages) {
+            if (spillQueue != null) {
+                pendingSpills.incrementAndGet();
+                try {
+                    spillExecutor.execute(() -> {
+                        try {
+                            append(messages);
+                        } finally {
+                            pendingSpills.decrementAndGet();
+                        }
+                    });
+                    return true;
+                } catch (RejectedExecutionException e) {
+                    pendingSpills.decrementAndGet();
+                    LOG.warn("Spilling messages to disk can't keep up.");
+                }
+            }
+            drop(messages);
+            return false;
+        }
+
+        private void append(List<Message> messages) {
+            try {
+                if (spillQueue.append(messages, System.currentTimeMillis())) {
+                    spilledMessages.mark(messages.size());
+                    return;
+                }
+                LOG.warn("Spill queue of output <{}> is full.", outputId);
+            } catch (IOException e) {
+                LOG.error("Unable to spill messages of output <{}>", outputId, e);
+            }
+            drop(messages);
+        }
+
+        private void drop(List<Message> messages) {
+            LOG.warn("Dropping batch of {} messages for output [{}].", messages.size(), output.getClass());
+            droppedMessages.mark(messages.size());
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (output.isRunning()) {
+                    if (currentBatch == null) {
+                        currentBatch = queue.poll();
+                    }
+                    final long now = System.currentTimeMillis();
+                    if (currentBatch != null || (spillQueue != null && !spillQueue.isEmpty())) {
+                        if (circuitBreaker.allowsWrite(now)) {
+                            // Batches in memory are older than the spilled ones
+                            if (currentBatch != null) {
+                                writeFromMemory();
+                            } else {
+                                replayNext();
+                            }
+                        } else {
+                            Thread.sleep(Math.min(IDLE_CHECK_INTERVAL_MILLIS, Math.max(1, circuitBreaker.remainingOpenMillis(now))));
+                        }
+                    } else {
+                        currentBatch = queue.poll(IDLE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+                // Outputs are stopped when they are removed from the registry, keep what is left for a restarted output
+                if (currentBatch != null) {
+                    spill(currentBatch);
+                }
+                for (List<Message> messages = queue.poll(); messages != null; messages = queue.poll()) {
+                    spill(messages);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Remove our metrics before a replacement worker for the same output can be started
+                gauges.forEach(OutputBatchDispatcher.this::removeGauge);
+                workers.remove(output, this);
+                if (spillQueue != null) {
+                    releaseSpillQueueAfterPendingSpills();
+                }
+                LOG.debug("Stopped worker for output [{}].", output.getClass());
+            }
+        }
+
+        private void releaseSpillQueueAfterPendingSpills() {
+            try {
+                // The spill thread runs in order, so this runs after the spills of this worker
+                spillExecutor.execute(() -> releaseSpillQueue(outputId));
+            } catch (RejectedExecutionException e) {
+                releaseSpillQueue(outputId);
+            }
+        }
+
+        private void writeFromMemory() {
+            if (tryWrite(currentBatch)) {
+                currentBatch = null;
+                currentBatchAttempts = 0;
+                return;
+            }
+            recordFailure();
+            // The batch stays in memory and is retried before anything newer, unless it keeps failing
+            if (++currentBatchAttempts >= MAX_WRITE_ATTEMPTS) {
+                LOG.error("Output [{}] failed to write a batch {} times, skipping it.", output.getClass(), currentBatchAttempts);
+                drop(currentBatch);
+                currentBatch = null;
+                currentBatchAttempts = 0;
+            }
+        }
+
+        private void replayNext() {
+            final OutputSpillQueue.SpilledBatch batch;
+            try {
+                batch = spillQueue.peek();
+            } catch (IOException e) {
+                LOG.error("Unable to read spilled messages of output <{}>", outputId, e);
+                circuitBreaker.recordFailure(System.currentTimeMillis());
+                return;
+            }
+            if (batch == null) {
+                return;
+            }
+            if (tryWrite(batch.messages())) {
+                replayedMessages.mark(batch.messages().size());
+                removeReplayed();
+                return;
+            }
+            recordFailure();
+            if (++replayAttempts >= MAX_WRITE_ATTEMPTS) {
+                LOG.error("Output [{}] failed to write a spilled batch {} times, skipping it.", output.getClass(), replayAttempts);
+                drop(batch.messages());
+                removeReplayed();
+            }
+        }
+
+        private void removeReplayed() {
+            replayAttempts = 0;
+            try {
+                spillQueue.remove();
+            } catch (IOException e) {
+                LOG.error("Unable to remove replayed messages of output <{}>", outputId, e);
+            }
+        }
+
+        /**
+         * @return {@code false} if the output failed, the caller has to record the failure
+         */
+        private boolean tryWrite(List<Message> messages) {
+            final long start = System.nanoTime();
+            try {
+                writeBatch(output, messages);
+            } catch (Exception e) {
+                LOG.error("Error in output [" + output.getClass() + "].", e);
+                return false;
+            }
+            final long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (tookMillis > outputModuleTimeout) {
+                // The batch has been written, but the output is too slow to be fed from memory
+                LOG.warn("Output [{}] took {}ms to write {} messages.", output.getClass(), tookMillis, messages.size());
+                recordFailure();
+            } else {
+                circuitBreaker.recordSuccess();
+            }
+            return true;
+        }
+
+        private void recordFailure() {
+            if (circuitBreaker.recordFailure(System.currentTimeMillis())) {
+                LOG.warn("Output [{}] is failing or too slow. Spilling its messages for {} seconds before trying again.",
+                        output.getClass(), TimeUnit.MILLISECONDS.toSeconds(faultPenaltyMillis));
+            }
+        }
+
+        private long replayLagMillis() {
+            final long oldestAppendedAt = spillQueue.oldestAppendedAt();
+            return oldestAppendedAt == 0L ? 0L : System.currentTimeMillis() - oldestAppendedAt;
+        }
+    }
+}
@@ -17,14 +17,9 @@
 package org.graylog2.buffers.processors;
 
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Timer;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.google.common.util.concurrent.Uninterruptibles;
-import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.EventHandler;
 import org.graylog2.Configuration;
 import org.graylog2.outputs.DefaultMessageOutput;
 import org.graylog2.outputs.OutputRouter;
@@ -37,66 +32,51 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
-public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
+public class OutputBufferProcessor implements EventHandler<MessageEvent> {
 
     private static final Logger LOG = LoggerFactory.getLogger(OutputBufferProcessor.class);
 
     private static final String INCOMING_MESSAGES_METRICNAME = name(OutputBufferProcessor.class, "incomingMessages");
-    private static final String PROCESS_TIME_METRICNAME = name(OutputBufferProcessor.class, "processTime");
 
-    private final ExecutorService executor;
-
-    private final Configuration configuration;
     private final ServerStatus serverStatus;
+    private final OutputRouter outputRouter;
+    private final MessageOutput defaultMessageOutput;
+    private final OutputBatchDispatcher dispatcher;
+    private final int maxBatchSize;
 
     private final Meter incomingMessages;
     private final Counter outputThroughput;
-    private final Timer processTime;
 
-    private final OutputRouter outputRouter;
-    private final MessageOutput defaultMessageOutput;
+    // Only accessed by the thread running this processor
+    private final Set<MessageOutput> matchedOutputs = new HashSet<>();
+    private final Map<MessageOutput, List<Message>> streamOutputBatches = new HashMap<>();
+    private List<Message> batch;
 
     @Inject
     public OutputBufferProcessor(Configuration configuration,
                                  MetricRegistry metricRegistry,
                                  ServerStatus serverStatus,
                                  OutputRouter outputRouter,
-                                 @DefaultMessageOutput MessageOutput defaultMessageOutput) {
-        this.configuration = configuration;
+                                 @DefaultMessageOutput MessageOutput defaultMessageOutput,
+                                 OutputBatchDispatcher dispatcher) {
         this.serverStatus = serverStatus;
         this.outputRouter = outputRouter;
         this.defaultMessageOutput = defaultMessageOutput;
-
-        final String nameFormat = "outputbuffer-processor-executor-%d";
-        final int corePoolSize = configuration.getOutputBufferProcessorThreadsCorePoolSize();
-        final int maxPoolSize = configuration.getOutputBufferProcessorThreadsMaxPoolSize();
-        final int keepAliveTime = configuration.getOutputBufferProcessorKeepAliveTime();
-        this.executor = executorService(metricRegistry, nameFormat, corePoolSize, maxPoolSize, keepAliveTime);
+        this.dispatcher = dispatcher;
+        this.maxBatchSize = configuration.getOutputBatchSize();
+        this.batch = new ArrayList<>(maxBatchSize);
 
         this.incomingMessages = metricRegistry.meter(INCOMING_MESSAGES_METRICNAME);
         this.outputThroughput = metricRegistry.counter(GlobalMetricNames.OUTPUT_THROUGHPUT);
-        this.processTime = metricRegistry.timer(PROCESS_TIME_METRICNAME);
-    }
-
-    private ExecutorService executorService(final MetricRegistry metricRegistry, final String nameFormat,
-                                            final int corePoolSize, final int maxPoolSize, final int keepAliveTime) {
-        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(nameFormat).build();
-        return new InstrumentedExecutorService(
-                new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, TimeUnit.MILLISECONDS,
-                        new LinkedBlockingQueue<Runnable>(), threadFactory),
-                metricRegistry,
-                name(this.getClass(), "executor-service"));
     }
 
     /**
@@ -106,100 +86,85 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
      * outputs, currently based on the stream outputs that are configured in the system.
      * </p>
      * <p>
-     * The stream outputs are time limited so one bad output does not impact throughput too much. Essentially this means
-     * that the work of writing to the outputs is performed, but the writer threads will not wait forever for stream
-     * outputs to finish their work. <b>This might lead to increased memory usage!</b>
-     * </p>
-     * <p>
-     * The default output, however, is allowed to block and is not subject to time limiting. This is important because it
-     * can exert back pressure on the processing pipeline this way, making sure we don't run into excessive heap usage.
+     * Messages are collected until the end of the batch the ring buffer handed to this processor, or until
+     * {@code output_batch_size} messages have been collected, and are then written to every output. Outputs
+     * implementing {@link org.graylog2.plugin.outputs.BatchMessageOutput} get them in a single
+     * {@link MessageOutput#write(List)} call.
      * </p>
      *
-     * @param event the message to write to outputs
+     * @param event      the message to write to outputs
+     * @param sequence   the sequence of the event in the ring buffer
+     * @param endOfBatch whether this is the last event which is currently available in the ring buffer
      * @throws Exception
      */
     @Override
-    public void onEvent(MessageEvent event) throws Exception {
+    public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
         incomingMessages.mark();
 
         final Message msg = event.getMessage();
         if (msg == null) {
             LOG.debug("Skipping null message.");
-            return;
+        } else {
+            LOG.debug("Processing message <{}> from OutputBuffer.", msg.getId());
+            addToBatch(msg);
+            event.clearMessages();
         }
-        LOG.debug("Processing message <{}> from OutputBuffer.", msg.getId());
-
-        final Set<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
-        msg.recordCounter(serverStatus, "matched-outputs", messageOutputs.size());
-
-        final Future<?> defaultOutputCompletion = processMessage(msg, defaultMessageOutput);
 
-        final CountDownLatch streamOutputsDoneSignal = new CountDownLatch(messageOutputs.size());
-        for (final MessageOutput output : messageOutputs) {
-            processMessage(msg, output, streamOutputsDoneSignal);
+        if (endOfBatch || batch.size() >= maxBatchSize) {
+            flush();
         }
+    }
 
-        // Wait until all writer threads for stream outputs have finished or timeout is reached.
-        if (!streamOutputsDoneSignal.await(configuration.getOutputModuleTimeout(), TimeUnit.MILLISECONDS)) {
-            LOG.warn("Timeout reached. Not waiting any longer for stream output writer threads to complete.");
-        }
+    private void addToBatch(Message msg) {
+        matchedOutputs.clear();
+        outputRouter.addStreamOutputsForMessage(msg, matchedOutputs);
+        msg.recordCounter(serverStatus, "matched-outputs", matchedOutputs.size());
 
-        // now block until the default output has finished. most batching outputs will already been done because their
-        // fast path is really fast (usually an insert into a queue), but the slow flush path might block for a long time
-        // this exerts the back pressure to the system
-        if (defaultOutputCompletion != null) {
-            Uninterruptibles.getUninterruptibly(defaultOutputCompletion);
-        } else {
-            LOG.error("The default output future was null, this is a bug!");
+        for (MessageOutput output : matchedOutputs) {
+            streamOutputBatches.computeIfAbsent(output, key -> new ArrayList<>()).add(msg);
         }
+        batch.add(msg);
+    }
 
-        if (msg.hasRecordings()) {
-            LOG.debug("Message event trace: {}", msg.recordingsAsString());
+    /**
+     * Writes all collected messages to their outputs.
+     * <p>
+     * The stream outputs are handed their batches first. They are written asynchronously, and batches for outputs which
+     * can't keep up are spilled to disk, so one bad output does not impact throughput or heap usage.
+     * </p>
+     * <p>
+     * The default output, however, is written on the processor thread and is not subject to time limiting. This is
+     * important because it can exert back pressure on the processing pipeline this way, making sure we don't run into
+     * excessive heap usage.
+     * </p>
+     */
+    public void flush() throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
         }
+        final List<Message> messages = batch;
+        batch = new ArrayList<>(maxBatchSize);
 
-        outputThroughput.inc();
-
-        LOG.debug("Wrote message <{}> to all outputs. Finished handling.", msg.getId());
-
-        event.clearMessages();
-    }
+        if (!streamOutputBatches.isEmpty()) {
+            for (Map.Entry<MessageOutput, List<Message>> entry : streamOutputBatches.entrySet()) {
+                dispatcher.dispatch(entry.getKey(), entry.getValue());
+            }
+            streamOutputBatches.clear();
+        }
 
-    private Future<?> processMessage(final Message msg, final MessageOutput defaultMessageOutput) {
-        return processMessage(msg, defaultMessageOutput, new CountDownLatch(0));
-    }
+        // most batching outputs will be done quickly because their fast path is really fast (usually an insert into a
+        // queue), but the slow flush path might block for a long time. this exerts the back pressure to the system
+        dispatcher.write(defaultMessageOutput, messages);
 
-    private Future<?> processMessage(final Message msg, final MessageOutput output, final CountDownLatch doneSignal) {
-        if (output == null) {
-            LOG.error("Output was null!");
-            return Futures.immediateCancelledFuture();
-        }
-        if (!output.isRunning()) {
-            LOG.debug("Skipping stopped output {}", output.getClass().getName());
-            return Futures.immediateCancelledFuture();
-        }
+        outputThroughput.inc(messages.size());
 
-        Future<?> future = null;
-        try {
-            LOG.debug("Writing message to [{}].", output.getClass());
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Message id for [{}]: <{}>", output.getClass(), msg.getId());
-            }
-            future = executor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    try (Timer.Context ignored = processTime.time()) {
-                        output.write(msg);
-                    } catch (Exception e) {
-                        LOG.error("Error in output [" + output.getClass() + "].", e);
-                    } finally {
-                        doneSignal.countDown();
-                    }
+        if (LOG.isDebugEnabled()) {
+            for (Message msg : messages) {
+                if (msg.hasRecordings()) {
+                    LOG.debug("Message event trace: {}", msg.recordingsAsString());
                 }
-            });
-        } catch (Exception e) {
-            LOG.error("Could not write message batch to output [" + output.getClass() + "].", e);
-            doneSignal.countDown();
+            }
+            LOG.debug("Wrote batch of {} messages to all outputs. Finished handling.", messages.size());
         }
-        return future;
     }
 }
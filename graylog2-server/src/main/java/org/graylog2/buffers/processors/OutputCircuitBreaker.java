@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+/**
+ * Stops writes to a stream output after it failed or was too slow a number of times in a row. After the open duration
+ * the next write is let through as a probe, which closes the breaker again if it succeeds.
+ */
+class OutputCircuitBreaker {
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final long failureThreshold;
+    private final long openDurationMillis;
+
+    private State state = State.CLOSED;
+    private long failures = 0;
+    private long openedAt = 0;
+
+    OutputCircuitBreaker(long failureThreshold, long openDurationMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    synchronized boolean allowsWrite(long now) {
+        if (state == State.OPEN && now - openedAt >= openDurationMillis) {
+            state = State.HALF_OPEN;
+        }
+        return state != State.OPEN;
+    }
+
+    synchronized void recordSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * @return {@code true} if this failure opened the breaker
+     */
+    synchronized boolean recordFailure(long now) {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized long remainingOpenMillis(long now) {
+        return state == State.OPEN ? Math.max(0, openedAt + openDurationMillis - now) : 0;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+}
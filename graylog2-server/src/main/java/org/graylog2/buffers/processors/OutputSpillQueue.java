@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Disk backed FIFO queue of message batches for a single stream output.
+ * <p>
+ * Batches are appended to segment files in the given directory and read back in the same order. Segments are deleted
+ * once all of their batches have been removed. The read position is not persisted, so after a restart the batches of
+ * the oldest segment which had already been replayed are replayed again.
+ * </p>
+ * <p>
+ * The message fields and the IDs of the assigned streams are stored. The streams are looked up again when the batch
+ * is read back, assignments to streams which don't exist anymore are lost. Date values other than the message
+ * timestamp are read back as strings.
+ * </p>
+ */
+class OutputSpillQueue implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(OutputSpillQueue.class);
+
+    static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    // payload length + append timestamp
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final TypeReference<List<SpilledMessage>> RECORD_TYPE = new TypeReference<List<SpilledMessage>>() {
+    };
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ObjectMapper objectMapper;
+    private final Function<String, Optional<Stream>> streamLookup;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private long nextSegmentId = 0;
+    private long readPosition = 0;
+    private long sizeInBytes = 0;
+    private SpilledBatch head = null;
+    private boolean closed = false;
+    // Read without holding the lock, e.g. by metrics
+    private volatile long oldestAppendedAt = 0L;
+
+    /**
+     * @param streamLookup looks up the streams assigned to the spilled messages by ID
+     */
+    OutputSpillQueue(Path directory, long maxBytes, ObjectMapper objectMapper, Function<String, Optional<Stream>> streamLookup) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.objectMapper = objectMapper;
+        this.streamLookup = streamLookup;
+
+        Files.createDirectories(directory);
+        final TreeMap<Long, Path> existingSegments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                final String fileName = path.getFileName().toString();
+                try {
+                    existingSegments.put(Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unknown file <{}> in output spill directory.", path);
+                }
+            }
+        }
+        for (Map.Entry<Long, Path> entry : existingSegments.entrySet()) {
+            final Segment segment = new Segment(entry.getValue());
+            segments.addLast(segment);
+            sizeInBytes += segment.size;
+            nextSegmentId = entry.getKey() + 1;
+        }
+        if (sizeInBytes > 0) {
+            LOG.info("Found {} bytes of spilled messages in <{}>, replaying them once the output is available.", sizeInBytes, directory);
+        }
+    }
+
+    /**
+     * Appends the batch to the queue.
+     *
+     * @return {@code false} if the batch would exceed the maximum size of the queue
+     */
+    synchronized boolean append(List<Message> messages, long now) throws IOException {
+        if (closed) {
+            throw new IOException("Spill queue in <" + directory + "> has been closed");
+        }
+        final byte[] payload = objectMapper.writeValueAsBytes(toRecords(messages));
+        final int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (sizeInBytes + recordSize > maxBytes) {
+            return false;
+        }
+
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.size >= SEGMENT_SIZE) {
+            segment = new Segment(directory.resolve(String.format("%020d%s", nextSegmentId++, SEGMENT_SUFFIX)));
+            segments.addLast(segment);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(recordSize);
+        buffer.putInt(payload.length).putLong(now).put(payload).flip();
+        long position = segment.size;
+        while (buffer.hasRemaining()) {
+            position += segment.channel.write(buffer, position);
+        }
+        segment.size += recordSize;
+        if (sizeInBytes == 0) {
+            oldestAppendedAt = now;
+        }
+        sizeInBytes += recordSize;
+        return true;
+    }
+
+    /**
+     * Returns the oldest batch without removing it, or {@code null} if the queue is empty.
+     */
+    @Nullable
+    synchronized SpilledBatch peek() throws IOException {
+        while (head == null) {
+            final Segment segment = segments.peekFirst();
+            if (segment == null) {
+                return null;
+            }
+            if (readPosition >= segment.size) {
+                if (segments.size() == 1) {
+                    return null;
+                }
+                deleteFirstSegment();
+                continue;
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            final int payloadLength;
+            final long appendedAt;
+            final ByteBuffer payload;
+            try {
+                readFully(segment.channel, header, readPosition);
+                payloadLength = header.getInt(0);
+                appendedAt = header.getLong(Integer.BYTES);
+                if (payloadLength < 0 || readPosition + RECORD_HEADER_SIZE + payloadLength > segment.size) {
+                    throw new EOFException();
+                }
+                payload = ByteBuffer.allocate(payloadLength);
+                readFully(segment.channel, payload, readPosition + RECORD_HEADER_SIZE);
+            } catch (EOFException e) {
+                // Most likely the server stopped while writing the last record
+                LOG.warn("Discarding truncated record at position {} of spilled segment <{}>.", readPosition, segment.path);
+                sizeInBytes -= segment.size - readPosition;
+                resetOldestAppendedAtIfEmpty();
+                deleteFirstSegment();
+                continue;
+            }
+
+            final int recordSize = RECORD_HEADER_SIZE + payloadLength;
+            try {
+                head = new SpilledBatch(fromRecords(objectMapper.readValue(payload.array(), RECORD_TYPE)), appendedAt, recordSize);
+                oldestAppendedAt = appendedAt;
+            } catch (IOException e) {
+                LOG.warn("Discarding unreadable record at position {} of spilled segment <{}>.", readPosition, segment.path, e);
+                advance(recordSize);
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Removes the batch which has been returned by the last call to {@link #peek()}.
+     */
+    synchronized void remove() throws IOException {
+        if (head != null) {
+            final int recordSize = head.recordSize;
+            head = null;
+            advance(recordSize);
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return sizeInBytes == 0;
+    }
+
+    synchronized long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Returns the time at which the oldest batch has been appended, or {@code 0} if the queue is empty or the oldest
+     * batch has not been read yet after a restart. Doesn't touch the disk.
+     */
+    long oldestAppendedAt() {
+        return oldestAppendedAt;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+        segments.clear();
+        head = null;
+        closed = true;
+    }
+
+    private void advance(int recordSize) throws IOException {
+        readPosition += recordSize;
+        sizeInBytes -= recordSize;
+        resetOldestAppendedAtIfEmpty();
+        final Segment segment = segments.peekFirst();
+        if (segment != null && readPosition >= segment.size) {
+            deleteFirstSegment();
+        }
+    }
+
+    private void resetOldestAppendedAtIfEmpty() {
+        if (sizeInBytes == 0) {
+            oldestAppendedAt = 0L;
+        }
+    }
+
+    private void deleteFirstSegment() throws IOException {
+        final Segment segment = segments.removeFirst();
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+        readPosition = 0;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long currentPosition = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, currentPosition);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            currentPosition += read;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the given directory contains spilled batches, without opening the queue.
+     */
+    static boolean containsSpilledBatches(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                if (Files.size(path) > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<SpilledMessage> toRecords(List<Message> messages) {
+        final List<SpilledMessage> records = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            final Map<String, Object> fields = new HashMap<>(message.getFields());
+            fields.put(Message.FIELD_TIMESTAMP, message.getTimestamp().getMillis());
+            final Set<String> streamIds = message.getStreams().stream().map(Stream::getId).collect(Collectors.toSet());
+            records.add(new SpilledMessage(fields, streamIds));
+        }
+        return records;
+    }
+
+    private List<Message> fromRecords(List<SpilledMessage> records) {
+        final List<Message> messages = new ArrayList<>(records.size());
+        // Most messages of a batch share their streams
+        final Map<String, Optional<Stream>> streams = new HashMap<>();
+        for (SpilledMessage record : records) {
+            final Map<String, Object> fields = record.fields;
+            final Object timestamp = fields.get(Message.FIELD_TIMESTAMP);
+            if (timestamp instanceof Number) {
+                fields.put(Message.FIELD_TIMESTAMP, new DateTime(((Number) timestamp).longValue(), DateTimeZone.UTC));
+            }
+            final Message message = new Message(fields);
+            for (String streamId : record.streams) {
+                final Optional<Stream> stream = streams.computeIfAbsent(streamId, streamLookup);
+                if (stream.isPresent()) {
+                    message.addStream(stream.get());
+                } else {
+                    LOG.debug("Stream <{}> of spilled message <{}> doesn't exist anymore.", streamId, message.getId());
+                }
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    static class SpilledMessage {
+        private final Map<String, Object> fields;
+        private final Set<String> streams;
+
+        @JsonCreator
+        SpilledMessage(@JsonProperty("fields") Map<String, Object> fields,
+                       @JsonProperty("streams") @Nullable Set<String> streams) {
+            this.fields = fields;
+            this.streams = streams == null ? Collections.emptySet() : streams;
+        }
+
+        @JsonProperty("fields")
+        Map<String, Object> fields() {
+            return fields;
+        }
+
+        @JsonProperty("streams")
+        Set<String> streams() {
+            return streams;
+        }
+    }
+
+    static class SpilledBatch {
+        private final List<Message> messages;
+        private final long appendedAt;
+        private final int recordSize;
+
+        private SpilledBatch(List<Message> messages, long appendedAt, int recordSize) {
+            this.messages = messages;
+            this.appendedAt = appendedAt;
+            this.recordSize = recordSize;
+        }
+
+        List<Message> messages() {
+            return messages;
+        }
+
+        long appendedAt() {
+            return appendedAt;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+
+        private Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+    }
+}
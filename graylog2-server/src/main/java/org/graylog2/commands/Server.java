@@ -66,6 +66,7 @@ import org.graylog2.contentpacks.ContentPacksModule;
 import org.graylog2.decorators.DecoratorBindings;
 import org.graylog2.indexer.IndexerBindings;
 import org.graylog2.indexer.retention.RetentionStrategyBindings;
+import org.graylog2.indexer.rollup.RollupModule;
 import org.graylog2.indexer.rotation.RotationStrategyBindings;
 import org.graylog2.inputs.transports.NettyTransportConfiguration;
 import org.graylog2.messageprocessors.MessageProcessorModule;
@@ -153,6 +154,7 @@ public class Server extends ServerBootstrap {
                 new AuditBindings(),
                 new AlertConditionBindings(),
                 new IndexerBindings(),
+                new RollupModule(),
                 new MigrationsModule(),
                 new NetFlowPluginModule(),
                 new CEFInputModule(),
@@ -79,6 +79,9 @@ public abstract class PivotEntity implements SearchTypeEntity {
     @JsonProperty
     public abstract boolean rollup();
 
+    @JsonProperty
+    public abstract boolean approximate();
+
     @Nullable
     @Override
     public abstract Filter filter();
@@ -96,6 +99,7 @@ public abstract class PivotEntity implements SearchTypeEntity {
                 .rowGroups(of())
                 .columnGroups(of())
                 .sort(of())
+                .approximate(false)
                 .streams(Collections.emptySet());
     }
 
@@ -132,6 +136,9 @@ public abstract class PivotEntity implements SearchTypeEntity {
         @JsonProperty
         public abstract Builder rollup(boolean rollup);
 
+        @JsonProperty
+        public abstract Builder approximate(boolean approximate);
+
         @JsonProperty
         public abstract Builder filter(@Nullable Filter filter);
 
@@ -168,6 +175,7 @@ public abstract class PivotEntity implements SearchTypeEntity {
                 .columnGroups(columnGroups())
                 .series(series())
                 .rollup(rollup())
+                .approximate(approximate())
                 .query(query().orElse(null))
                 .filter(filter())
                 .type(type())
@@ -16,25 +16,40 @@
  */
 package org.graylog2.events;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.eventbus.DeadEvent;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.MongoCommandException;
 import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
 import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.plugin.periodical.Periodical;
 import org.graylog2.plugin.system.NodeId;
 import org.graylog2.shared.plugins.ChainingClassLoader;
 import org.graylog2.shared.utilities.AutoValueUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.mongojack.DBCursor;
+import org.mongojack.DBQuery;
 import org.mongojack.DBSort;
 import org.mongojack.DBUpdate;
 import org.mongojack.JacksonDBCollection;
@@ -42,20 +57,52 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Delivers cluster events from the {@code cluster_events} collection to the local event bus.
+ * <p>
+ * If the MongoDB deployment supports change streams (replica sets), a background thread watches the collection
+ * and delivers new events right after they have been inserted. Polling the collection every second is only used
+ * if change streams aren't available, or as a periodic safety net while they are.
+ */
 public class ClusterEventPeriodical extends Periodical {
     private static final Logger LOG = LoggerFactory.getLogger(ClusterEventPeriodical.class);
 
     @VisibleForTesting
     static final String COLLECTION_NAME = "cluster_events";
 
+    // Error code returned by MongoDB if change streams are used on a standalone server
+    private static final int CHANGE_STREAMS_NOT_SUPPORTED = 40573;
+    private static final long CHANGE_STREAM_MAX_AWAIT_MS = 1000;
+    private static final long CHANGE_STREAM_RETRY_MS = 5000;
+    // Poll interval while the change stream is active, to catch events which might have been missed
+    private static final long SAFETY_NET_POLL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
     private final JacksonDBCollection<ClusterEvent, String> dbCollection;
+    private final MongoCollection<Document> changeStreamCollection;
     private final NodeId nodeId;
     private final ObjectMapper objectMapper;
     private final EventBus serverEventBus;
     private final ChainingClassLoader chainingClassLoader;
+    private final boolean changeStreamsEnabled;
+    private final Timer deliveryLatency;
+    private final Map<String, Class<?>> eventClasses = new ConcurrentHashMap<>();
+    private final ExecutorService changeStreamExecutor;
+    private final AtomicBoolean changeStreamStarted = new AtomicBoolean(false);
+    private volatile boolean changeStreamActive = false;
+    private volatile long lastPollNanos = 0;
 
     @Inject
     public ClusterEventPeriodical(final MongoJackObjectMapperProvider mapperProvider,
@@ -63,22 +110,37 @@ public class ClusterEventPeriodical extends Periodical {
                                   final NodeId nodeId,
                                   final ChainingClassLoader chainingClassLoader,
                                   final EventBus serverEventBus,
-                                  final ClusterEventBus clusterEventBus) {
+                                  final ClusterEventBus clusterEventBus,
+                                  final MetricRegistry metricRegistry,
+                                  @Named("cluster_event_change_streams_enabled") final boolean changeStreamsEnabled) {
         this(JacksonDBCollection.wrap(prepareCollection(mongoConnection), ClusterEvent.class, String.class, mapperProvider.get()),
-                nodeId, mapperProvider.get(), chainingClassLoader, serverEventBus, clusterEventBus);
+                mongoConnection.getMongoDatabase().getCollection(COLLECTION_NAME),
+                nodeId, mapperProvider.get(), chainingClassLoader, serverEventBus, clusterEventBus, metricRegistry,
+                changeStreamsEnabled);
     }
 
     private ClusterEventPeriodical(final JacksonDBCollection<ClusterEvent, String> dbCollection,
+                           final MongoCollection<Document> changeStreamCollection,
                            final NodeId nodeId,
                            final ObjectMapper objectMapper,
                            final ChainingClassLoader chainingClassLoader,
                            final EventBus serverEventBus,
-                           final ClusterEventBus clusterEventBus) {
+                           final ClusterEventBus clusterEventBus,
+                           final MetricRegistry metricRegistry,
+                           final boolean changeStreamsEnabled) {
         this.nodeId = checkNotNull(nodeId);
         this.dbCollection = checkNotNull(dbCollection);
+        this.changeStreamCollection = checkNotNull(changeStreamCollection);
         this.objectMapper = checkNotNull(objectMapper);
         this.chainingClassLoader = chainingClassLoader;
         this.serverEventBus = checkNotNull(serverEventBus);
+        this.changeStreamsEnabled = changeStreamsEnabled;
+        // Time between publishing an event on one node and delivering it on this node, subject to clock skew
+        this.deliveryLatency = metricRegistry.timer(MetricRegistry.name(ClusterEventPeriodical.class, "delivery-latency"));
+        this.changeStreamExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cluster-event-change-stream-%d")
+                .setDaemon(true)
+                .build());
 
         checkNotNull(clusterEventBus).registerClusterEventSubscriber(this);
     }
@@ -139,8 +201,32 @@ public class ClusterEventPeriodical extends Periodical {
         return LOG;
     }
 
+    @Override
+    public void onShutdown() {
+        // Interrupts the thread watching the change stream
+        changeStreamExecutor.shutdownNow();
+    }
+
     @Override
     public void doRun() {
+        if (changeStreamsEnabled && changeStreamStarted.compareAndSet(false, true)) {
+            changeStreamExecutor.execute(this::watchChangeStream);
+        }
+
+        if (changeStreamActive && System.nanoTime() - lastPollNanos < SAFETY_NET_POLL_INTERVAL_NANOS) {
+            return;
+        }
+        deliverPendingEvents();
+    }
+
+    /**
+     * Delivers all events which haven't been consumed by this node yet, in the order they have been published.
+     * The consumers of all delivered events are updated with a single write.
+     */
+    private synchronized void deliverPendingEvents() {
+        lastPollNanos = System.nanoTime();
+        final List<ObjectId> deliveredIds = new ArrayList<>();
+
         LOG.debug("Opening MongoDB cursor on \"{}\"", COLLECTION_NAME);
         try (DBCursor<ClusterEvent> cursor = eventCursor(nodeId)) {
             if (LOG.isTraceEnabled()) {
@@ -154,16 +240,64 @@ public class ClusterEventPeriodical extends Periodical {
                 Object payload = extractPayload(clusterEvent.payload(), clusterEvent.eventClass());
                 if (payload != null) {
                     serverEventBus.post(payload);
+                    deliveryLatency.update(Math.max(0, DateTime.now(DateTimeZone.UTC).getMillis() - clusterEvent.timestamp()), TimeUnit.MILLISECONDS);
                 } else {
                     LOG.warn("Couldn't extract payload of cluster event with ID <{}>", clusterEvent.id());
                     LOG.debug("Invalid payload in cluster event: {}", clusterEvent);
                 }
 
-                updateConsumers(clusterEvent.id(), nodeId);
+                deliveredIds.add(new ObjectId(clusterEvent.id()));
             }
         } catch (Exception e) {
             LOG.warn("Error while reading cluster events from MongoDB, retrying.", e);
         }
+
+        try {
+            updateConsumers(deliveredIds, nodeId);
+        } catch (Exception e) {
+            LOG.warn("Error while updating consumers of cluster events in MongoDB.", e);
+        }
+    }
+
+    private void watchChangeStream() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try (MongoCursor<ChangeStreamDocument<Document>> changeStream = changeStreamCollection
+                    .watch(Collections.singletonList(Aggregates.match(Filters.eq("operationType", "insert"))))
+                    .maxAwaitTime(CHANGE_STREAM_MAX_AWAIT_MS, TimeUnit.MILLISECONDS)
+                    .iterator()) {
+                LOG.debug("Watching change stream of \"{}\"", COLLECTION_NAME);
+                changeStreamActive = true;
+                // Deliver events which have been published before the change stream has been opened
+                deliverPendingEvents();
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (changeStream.tryNext() != null) {
+                        deliverPendingEvents();
+                    }
+                }
+            } catch (MongoInterruptedException e) {
+                // The driver doesn't always preserve the interrupt flag
+                Thread.currentThread().interrupt();
+                break;
+            } catch (MongoCommandException e) {
+                changeStreamActive = false;
+                if (e.getErrorCode() == CHANGE_STREAMS_NOT_SUPPORTED) {
+                    LOG.info("MongoDB doesn't support change streams, polling for cluster events every {} seconds.", getPeriodSeconds());
+                    return;
+                }
+                LOG.warn("Error while watching cluster events in MongoDB, retrying.", e);
+            } catch (Exception e) {
+                changeStreamActive = false;
+                LOG.warn("Error while watching cluster events in MongoDB, retrying.", e);
+            }
+
+            try {
+                Thread.sleep(CHANGE_STREAM_RETRY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        changeStreamActive = false;
     }
 
     @Subscribe
@@ -193,14 +327,16 @@ public class ClusterEventPeriodical extends Periodical {
         return dbCollection.find(query).sort(DBSort.asc("timestamp"));
     }
 
-    private void updateConsumers(final String eventId, final NodeId nodeId) {
-        dbCollection.updateById(eventId, DBUpdate.addToSet("consumers", nodeId.toString()));
+    private void updateConsumers(final List<ObjectId> eventIds, final NodeId nodeId) {
+        if (eventIds.isEmpty()) {
+            return;
+        }
+        dbCollection.updateMulti(DBQuery.in("_id", eventIds), DBUpdate.addToSet("consumers", nodeId.toString()));
     }
 
     private Object extractPayload(Object payload, String eventClass) {
         try {
-            final Class<?> clazz = chainingClassLoader.loadClass(eventClass);
-            return objectMapper.convertValue(payload, clazz);
+            return objectMapper.convertValue(payload, loadEventClass(eventClass));
         } catch (ClassNotFoundException e) {
             LOG.debug("Couldn't load class <" + eventClass + "> for event", e);
             return null;
@@ -210,4 +346,14 @@ public class ClusterEventPeriodical extends Periodical {
 
         }
     }
+
+    private Class<?> loadEventClass(String eventClass) throws ClassNotFoundException {
+        final Class<?> cachedClass = eventClasses.get(eventClass);
+        if (cachedClass != null) {
+            return cachedClass;
+        }
+        final Class<?> clazz = chainingClassLoader.loadClass(eventClass);
+        eventClasses.put(eventClass, clazz);
+        return clazz;
+    }
 }
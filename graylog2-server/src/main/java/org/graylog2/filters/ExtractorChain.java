@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.filters;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Extractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The extractors of a single input, sorted by their order and prepared for running them on messages.
+ * <p>
+ * Extractors with the same source field and condition share a single condition. It is evaluated at most once per
+ * message and value of the source field, so it is only evaluated again if an earlier extractor changed the field.
+ */
+class ExtractorChain {
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractorChain.class);
+    private static final int NO_CONDITION = -1;
+
+    private final List<Extractor> extractors;
+    private final int[] conditionSlots;
+    private final List<Extractor> conditions;
+
+    private ExtractorChain(List<Extractor> extractors, int[] conditionSlots, List<Extractor> conditions) {
+        this.extractors = extractors;
+        this.conditionSlots = conditionSlots;
+        this.conditions = conditions;
+    }
+
+    static ExtractorChain compile(Collection<Extractor> extractors) {
+        final List<Extractor> sortedExtractors = extractors.stream()
+                .sorted(Comparator.comparingLong(Extractor::getOrder))
+                .collect(ImmutableList.toImmutableList());
+
+        final int[] conditionSlots = new int[sortedExtractors.size()];
+        final Map<ConditionKey, Integer> slots = new HashMap<>();
+        final ImmutableList.Builder<Extractor> conditions = ImmutableList.builder();
+        for (int i = 0; i < sortedExtractors.size(); i++) {
+            final Extractor extractor = sortedExtractors.get(i);
+            if (extractor.getConditionType() == Extractor.ConditionType.NONE) {
+                conditionSlots[i] = NO_CONDITION;
+                continue;
+            }
+            final ConditionKey key = new ConditionKey(extractor);
+            final Integer slot = slots.get(key);
+            if (slot == null) {
+                conditionSlots[i] = slots.size();
+                slots.put(key, slots.size());
+                // The first extractor with this condition evaluates it for all others
+                conditions.add(extractor);
+            } else {
+                conditionSlots[i] = slot;
+            }
+        }
+
+        return new ExtractorChain(sortedExtractors, conditionSlots, conditions.build());
+    }
+
+    void run(Message msg) {
+        final ConditionResults conditionResults = conditions.isEmpty() ? null : new ConditionResults(conditions);
+        for (int i = 0; i < extractors.size(); i++) {
+            final Extractor extractor = extractors.get(i);
+            final int slot = conditionSlots[i];
+            try {
+                if (slot == NO_CONDITION) {
+                    extractor.runExtractor(msg);
+                } else {
+                    extractor.runExtractor(msg, field -> conditionResults.matches(slot, field));
+                }
+            } catch (Exception e) {
+                extractor.incrementExceptions();
+                LOG.error("Could not apply extractor \"" + extractor.getTitle() + "\" (id=" + extractor.getId() + ") "
+                        + "to message " + msg.getId(), e);
+            }
+        }
+    }
+
+    List<Extractor> extractors() {
+        return extractors;
+    }
+
+    int conditionCount() {
+        return conditions.size();
+    }
+
+    /**
+     * Remembers the condition results for a single message.
+     */
+    private static class ConditionResults {
+        private final List<Extractor> conditions;
+        private final String[] values;
+        private final boolean[] matches;
+
+        ConditionResults(List<Extractor> conditions) {
+            this.conditions = conditions;
+            this.values = new String[conditions.size()];
+            this.matches = new boolean[conditions.size()];
+        }
+
+        @SuppressWarnings("StringEquality")
+        boolean matches(int slot, String field) {
+            // Identity is enough, an equal value which has been written by another extractor is simply evaluated again
+            if (values[slot] != field) {
+                matches[slot] = conditions.get(slot).matchesCondition(field);
+                values[slot] = field;
+            }
+            return matches[slot];
+        }
+    }
+
+    private static class ConditionKey {
+        private final String sourceField;
+        private final Extractor.ConditionType conditionType;
+        private final String conditionValue;
+
+        ConditionKey(Extractor extractor) {
+            this.sourceField = extractor.getSourceField();
+            this.conditionType = extractor.getConditionType();
+            this.conditionValue = extractor.getConditionValue();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ConditionKey that = (ConditionKey) o;
+            return Objects.equals(sourceField, that.sourceField) &&
+                    conditionType == that.conditionType &&
+                    Objects.equals(conditionValue, that.conditionValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceField, conditionType, conditionValue);
+        }
+    }
+}
@@ -37,6 +37,7 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.cache.CacheLoader.asyncReloading;
@@ -48,6 +49,7 @@ public class GrokPatternRegistry {
     private final GrokPatternService grokPatternService;
 
     private final AtomicReference<Set<GrokPattern>> patterns = new AtomicReference<>(Collections.emptySet());
+    private final AtomicLong revision = new AtomicLong();
     private final LoadingCache<String, Grok> grokCache;
     private final LoadingCache<String, Grok> grokCacheNamedOnly;
 
@@ -110,6 +112,17 @@ public class GrokPatternRegistry {
         patterns.set(grokPatterns);
         grokCache.invalidateAll();
         grokCacheNamedOnly.invalidateAll();
+        revision.incrementAndGet();
+    }
+
+    /**
+     * Returns the revision of the grok patterns, which changes after every reload.
+     * <p>
+     * A compiled pattern returned by {@link #cachedGrokForPattern(String, boolean)} can be kept for as long as the
+     * revision which has been read <em>before</em> retrieving it is still current.
+     */
+    public long revision() {
+        return revision.get();
     }
 
     public Set<GrokPattern> patterns() {
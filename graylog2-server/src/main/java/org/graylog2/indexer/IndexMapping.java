@@ -99,6 +99,7 @@ public abstract class IndexMapping implements IndexMappingTemplate {
                 // http://www.elasticsearch.org/guide/reference/mapping/date-format.html
                 .put("timestamp", typeTimeWithMillis())
                 .put(Message.FIELD_GL2_ACCOUNTED_MESSAGE_SIZE, typeLong())
+                .put(Message.FIELD_GL2_SAMPLE_KEY, typeInteger())
                 .put(Message.FIELD_GL2_RECEIVE_TIMESTAMP, typeTimeWithMillis())
                 .put(Message.FIELD_GL2_PROCESSING_TIMESTAMP, typeTimeWithMillis())
                 // to support wildcard searches in source we need to lowercase the content (wildcard search lowercases search term)
@@ -127,6 +128,10 @@ public abstract class IndexMapping implements IndexMappingTemplate {
         return ImmutableMap.of("type", "long");
     }
 
+    protected Map<String, Object> typeInteger() {
+        return ImmutableMap.of("type", "integer");
+    }
+
     private Map<String, Boolean> enabled() {
         return ImmutableMap.of("enabled", true);
     }
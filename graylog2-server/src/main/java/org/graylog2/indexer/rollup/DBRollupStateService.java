@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.mongodb.BasicDBObject;
+import org.bson.types.ObjectId;
+import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.database.MongoDBUpsertRetryer;
+import org.mongojack.DBQuery;
+import org.mongojack.DBUpdate;
+import org.mongojack.JacksonDBCollection;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static org.graylog2.indexer.rollup.RollupStateDto.FIELD_INDEX_SET_ID;
+import static org.graylog2.indexer.rollup.RollupStateDto.FIELD_ROLLED_UP_FROM;
+import static org.graylog2.indexer.rollup.RollupStateDto.FIELD_ROLLED_UP_UNTIL;
+import static org.graylog2.indexer.rollup.RollupStateDto.FIELD_ROLLUP_CONFIG;
+
+/**
+ * Manages the database state of index set rollups.
+ */
+public class DBRollupStateService {
+    private static final String COLLECTION_NAME = "index_set_rollup_state";
+
+    private final JacksonDBCollection<RollupStateDto, ObjectId> db;
+
+    @Inject
+    public DBRollupStateService(MongoConnection mongoConnection,
+                                MongoJackObjectMapperProvider mapper) {
+        this.db = JacksonDBCollection.wrap(mongoConnection.getDatabase().getCollection(COLLECTION_NAME),
+                RollupStateDto.class,
+                ObjectId.class,
+                mapper.get());
+
+        // There should only be one state document for each index set.
+        db.createIndex(new BasicDBObject(FIELD_INDEX_SET_ID, 1), new BasicDBObject("unique", true));
+    }
+
+    public Optional<RollupStateDto> findByIndexSetId(String indexSetId) {
+        checkArgument(!isNullOrEmpty(indexSetId), "indexSetId cannot be null or empty");
+
+        return Optional.ofNullable(db.findOne(DBQuery.is(FIELD_INDEX_SET_ID, indexSetId)));
+    }
+
+    public List<RollupStateDto> findByIndexSetIds(Set<String> indexSetIds) {
+        return db.find(DBQuery.in(FIELD_INDEX_SET_ID, indexSetIds)).toArray();
+    }
+
+    /**
+     * Creates a new or replaces the existing state record of the index set in the given DTO.
+     *
+     * @param dto state DTO
+     * @return the created or updated record
+     */
+    public RollupStateDto setState(RollupStateDto dto) {
+        checkArgument(!isNullOrEmpty(dto.indexSetId()), "indexSetId cannot be null or empty");
+        checkArgument(dto.rolledUpUntil().isAfter(dto.rolledUpFrom()) || dto.rolledUpUntil().isEqual(dto.rolledUpFrom()),
+                "rolledUpFrom must not be newer than rolledUpUntil");
+
+        final DBUpdate.Builder update = DBUpdate.set(FIELD_INDEX_SET_ID, dto.indexSetId())
+                .set(FIELD_ROLLUP_CONFIG, dto.rollupConfig())
+                .set(FIELD_ROLLED_UP_FROM, dto.rolledUpFrom())
+                .set(FIELD_ROLLED_UP_UNTIL, dto.rolledUpUntil());
+
+        // We have a unique index on the indexSetId so this query is enough
+        MongoDBUpsertRetryer.run(() -> db.update(DBQuery.is(FIELD_INDEX_SET_ID, dto.indexSetId()), update, true, false));
+        return findByIndexSetId(dto.indexSetId())
+                .orElseThrow(() -> new IllegalStateException("Couldn't store rollup state for index set <" + dto.indexSetId() + ">"));
+    }
+
+    /**
+     * Delete the state object of the given index set.
+     *
+     * @param indexSetId the index set ID
+     * @return the number of objects that have been deleted
+     */
+    public int deleteByIndexSetId(String indexSetId) {
+        return db.remove(DBQuery.is(FIELD_INDEX_SET_ID, indexSetId)).getN();
+    }
+}
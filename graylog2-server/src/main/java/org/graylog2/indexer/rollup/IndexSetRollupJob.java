@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.assistedinject.Assisted;
+import org.graylog.scheduler.Job;
+import org.graylog.scheduler.JobDefinitionConfig;
+import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog.scheduler.JobExecutionContext;
+import org.graylog.scheduler.JobTriggerUpdate;
+import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.indexer.indexset.IndexSetService;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeService;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates the messages of all index sets with a {@link RollupConfig} into their rollup indices.
+ * <p>
+ * Every execution rolls up the complete intervals since the last execution, at most {@link Config#maxRangePerRun()}
+ * per index set. Intervals are only rolled up once they are older than {@link Config#delay()}, to give late messages
+ * a chance to be indexed. Whenever new intervals are rolled up, the intervals of the preceding
+ * {@link Config#lateMessageWindow()} are rolled up again to include messages which have been indexed late. Messages
+ * which are indexed even later are missing from the rollups.
+ * <p>
+ * Rollups follow the retention of their index set: rolled up intervals before the oldest raw message are deleted, so
+ * pivots return the same results whether they are answered from rollups or not.
+ */
+public class IndexSetRollupJob implements Job {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSetRollupJob.class);
+
+    public static final String TYPE_NAME = "index-set-rollup-v1";
+
+    public interface Factory extends Job.Factory<IndexSetRollupJob> {
+        @Override
+        IndexSetRollupJob create(JobDefinitionDto jobDefinition);
+    }
+
+    private final JobSchedulerClock clock;
+    private final IndexSetService indexSetService;
+    private final IndexSetRegistry indexSetRegistry;
+    private final IndexRangeService indexRangeService;
+    private final DBRollupStateService stateService;
+    private final Provider<RollupAdapter> rollupAdapter;
+    private final Config config;
+
+    @Inject
+    public IndexSetRollupJob(JobSchedulerClock clock,
+                             IndexSetService indexSetService,
+                             IndexSetRegistry indexSetRegistry,
+                             IndexRangeService indexRangeService,
+                             DBRollupStateService stateService,
+                             Provider<RollupAdapter> rollupAdapter,
+                             @Assisted JobDefinitionDto jobDefinition) {
+        this.clock = clock;
+        this.indexSetService = indexSetService;
+        this.indexSetRegistry = indexSetRegistry;
+        this.indexRangeService = indexRangeService;
+        this.stateService = stateService;
+        this.rollupAdapter = rollupAdapter;
+        this.config = (Config) jobDefinition.config();
+    }
+
+    @Override
+    public JobTriggerUpdate execute(JobExecutionContext ctx) {
+        boolean catchingUp = false;
+        for (IndexSetConfig indexSetConfig : indexSetService.findAll()) {
+            try {
+                catchingUp |= rollup(indexSetConfig);
+            } catch (Exception e) {
+                LOG.error("Couldn't roll up index set <{}/{}>", indexSetConfig.id(), indexSetConfig.title(), e);
+            }
+        }
+
+        // Continue right away if some index sets couldn't be rolled up completely in this execution
+        return catchingUp ? JobTriggerUpdate.withNextTime(clock.nowUTC()) : ctx.jobTriggerUpdates().scheduleNextExecution();
+    }
+
+    /**
+     * @return {@code true} if there are more complete intervals to roll up
+     */
+    private boolean rollup(IndexSetConfig indexSetConfig) {
+        final String rollupIndex = RollupConfig.indexName(indexSetConfig.indexPrefix());
+        final RollupConfig rollupConfig = indexSetConfig.rollup();
+        Optional<RollupStateDto> state = stateService.findByIndexSetId(indexSetConfig.id());
+
+        if (state.isPresent() && !state.get().rollupConfig().equals(rollupConfig)) {
+            LOG.info("Rollup configuration of index set <{}/{}> has changed, deleting rollup index <{}>",
+                    indexSetConfig.id(), indexSetConfig.title(), rollupIndex);
+            rollupAdapter.get().deleteRollupIndex(rollupIndex);
+            stateService.deleteByIndexSetId(indexSetConfig.id());
+            state = Optional.empty();
+        }
+        if (rollupConfig == null) {
+            return false;
+        }
+        final Optional<IndexSet> indexSet = indexSetRegistry.get(indexSetConfig.id());
+        if (!indexSet.isPresent()) {
+            return false;
+        }
+
+        final Duration interval = rollupConfig.interval();
+        final Optional<DateTime> oldestInterval = oldestMessage(indexSet.get()).map(timestamp -> alignDown(timestamp, interval));
+        final DateTime end = alignDown(clock.nowUTC().minus(config.delay()), interval);
+        final DateTime from = state.map(RollupStateDto::rolledUpUntil).orElseGet(() -> oldestInterval.orElse(end));
+        final long maxRange = Math.max(config.maxRangePerRun().getMillis(), interval.getMillis());
+        final DateTime to = min(end, alignDown(from.plus(maxRange), interval));
+
+        final DateTime rolledUpFrom;
+        if (state.isPresent()) {
+            rolledUpFrom = applyRetention(indexSetConfig, state.get(), oldestInterval);
+        } else {
+            rolledUpFrom = from;
+        }
+
+        if (!to.isAfter(from)) {
+            if (!state.isPresent()) {
+                // Nothing to roll up yet, start with the current interval
+                stateService.setState(newState(indexSetConfig, from, from));
+            } else if (!rolledUpFrom.equals(state.get().rolledUpFrom())) {
+                stateService.setState(newState(indexSetConfig, rolledUpFrom, from));
+            }
+            return false;
+        }
+
+        // Roll up the most recent intervals again, rollup documents have deterministic IDs and are overwritten
+        final DateTime rollupFrom = state.isPresent() ? max(rolledUpFrom, alignDown(from.minus(config.lateMessageWindow()), interval)) : from;
+        final Set<String> sourceIndices = indexRangeService.find(rollupFrom, to).stream()
+                .map(IndexRange::indexName)
+                .filter(indexSet.get()::isManagedIndex)
+                .collect(Collectors.toSet());
+
+        final RollupAdapter adapter = rollupAdapter.get();
+        adapter.ensureRollupIndex(rollupIndex, rollupConfig, indexSetConfig.shards(), indexSetConfig.replicas());
+        final long documents = sourceIndices.isEmpty() ? 0 : adapter.rollup(rollupConfig, sourceIndices, rollupIndex, rollupFrom, to);
+        LOG.debug("Rolled up messages of index set <{}/{}> from <{}> to <{}> into {} documents",
+                indexSetConfig.id(), indexSetConfig.title(), rollupFrom, to, documents);
+
+        stateService.setState(newState(indexSetConfig, rolledUpFrom, to));
+        return to.isBefore(end);
+    }
+
+    /**
+     * Deletes the rolled up intervals before the oldest raw message of the index set.
+     *
+     * @return the start of the rolled up time range which is left
+     */
+    private DateTime applyRetention(IndexSetConfig indexSetConfig, RollupStateDto state, Optional<DateTime> oldestInterval) {
+        if (!oldestInterval.isPresent()) {
+            return state.rolledUpFrom();
+        }
+        final DateTime retainFrom = min(oldestInterval.get(), state.rolledUpUntil());
+        if (!retainFrom.isAfter(state.rolledUpFrom())) {
+            return state.rolledUpFrom();
+        }
+        final String rollupIndex = RollupConfig.indexName(indexSetConfig.indexPrefix());
+        final long deleted = rollupAdapter.get().deleteRolledUpBefore(rollupIndex, retainFrom);
+        LOG.debug("Deleted {} rollup documents of index set <{}/{}> before <{}>",
+                deleted, indexSetConfig.id(), indexSetConfig.title(), retainFrom);
+        return retainFrom;
+    }
+
+    private RollupStateDto newState(IndexSetConfig indexSetConfig, DateTime rolledUpFrom, DateTime rolledUpUntil) {
+        return RollupStateDto.builder()
+                .indexSetId(indexSetConfig.id())
+                .rollupConfig(indexSetConfig.rollup())
+                .rolledUpFrom(rolledUpFrom)
+                .rolledUpUntil(rolledUpUntil)
+                .build();
+    }
+
+    private Optional<DateTime> oldestMessage(IndexSet indexSet) {
+        // The index range of the current write index starts at the epoch, ignore it
+        return indexRangeService.findAll().stream()
+                .filter(indexRange -> indexSet.isManagedIndex(indexRange.indexName()))
+                .map(IndexRange::begin)
+                .filter(begin -> begin.getMillis() > 0)
+                .min(DateTime::compareTo);
+    }
+
+    @VisibleForTesting
+    static DateTime alignDown(DateTime timestamp, Duration interval) {
+        final long millis = timestamp.getMillis();
+        return new DateTime(millis - Math.floorMod(millis, interval.getMillis()), DateTimeZone.UTC);
+    }
+
+    private static DateTime min(DateTime a, DateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static DateTime max(DateTime a, DateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    @AutoValue
+    @JsonTypeName(IndexSetRollupJob.TYPE_NAME)
+    @JsonDeserialize(builder = Config.Builder.class)
+    public static abstract class Config implements JobDefinitionConfig {
+        private static final String FIELD_DELAY = "delay";
+        private static final String FIELD_MAX_RANGE_PER_RUN = "max_range_per_run";
+        private static final String FIELD_LATE_MESSAGE_WINDOW = "late_message_window";
+
+        @JsonProperty(FIELD_DELAY)
+        public abstract Duration delay();
+
+        @JsonProperty(FIELD_MAX_RANGE_PER_RUN)
+        public abstract Duration maxRangePerRun();
+
+        /**
+         * Time range before the newly rolled up intervals which is rolled up again to include late messages.
+         */
+        @JsonProperty(FIELD_LATE_MESSAGE_WINDOW)
+        public abstract Duration lateMessageWindow();
+
+        public static Builder builder() {
+            return Builder.create();
+        }
+
+        public abstract Builder toBuilder();
+
+        @AutoValue.Builder
+        public static abstract class Builder implements JobDefinitionConfig.Builder<Builder> {
+            @JsonCreator
+            public static Builder create() {
+                return new AutoValue_IndexSetRollupJob_Config.Builder()
+                        .type(TYPE_NAME)
+                        .delay(Duration.standardMinutes(5L))
+                        .maxRangePerRun(Duration.standardHours(6L))
+                        .lateMessageWindow(Duration.standardHours(1L));
+            }
+
+            @JsonProperty(FIELD_DELAY)
+            public abstract Builder delay(Duration delay);
+
+            @JsonProperty(FIELD_MAX_RANGE_PER_RUN)
+            public abstract Builder maxRangePerRun(Duration maxRangePerRun);
+
+            @JsonProperty(FIELD_LATE_MESSAGE_WINDOW)
+            public abstract Builder lateMessageWindow(Duration lateMessageWindow);
+
+            abstract Config autoBuild();
+
+            public Config build() {
+                // Make sure the type name is correct!
+                type(TYPE_NAME);
+
+                return autoBuild();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import org.joda.time.DateTime;
+
+import java.util.Set;
+
+public interface RollupAdapter {
+    /**
+     * Creates the rollup index with the mapping for the given configuration, unless it already exists.
+     */
+    void ensureRollupIndex(String rollupIndex, RollupConfig config, int shards, int replicas);
+
+    void deleteRollupIndex(String rollupIndex);
+
+    /**
+     * Deletes all rollup documents of intervals which start before the given time.
+     *
+     * @return the number of deleted rollup documents
+     */
+    long deleteRolledUpBefore(String rollupIndex, DateTime before);
+
+    /**
+     * Aggregates all messages of the source indices with a timestamp in {@code [from, to)} into the rollup index.
+     * Rollup documents have deterministic IDs, so running the rollup for the same time range again overwrites the
+     * documents written before.
+     *
+     * @return the number of written rollup documents
+     */
+    long rollup(RollupConfig config, Set<String> sourceIndices, String rollupIndex, DateTime from, DateTime to);
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.autovalue.WithBeanGetter;
+import org.joda.time.Duration;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configures the rollup of an index set: messages are pre-aggregated per {@link #interval()} and per combination of
+ * the {@link #groupBy()} field values into a separate rollup index. For every field in {@link #metrics()} the
+ * rollup stores the sum, minimum, maximum and number of values.
+ */
+@AutoValue
+@WithBeanGetter
+@JsonAutoDetect
+public abstract class RollupConfig {
+    private static final String FIELD_INTERVAL = "interval";
+    private static final String FIELD_GROUP_BY = "group_by";
+    private static final String FIELD_METRICS = "metrics";
+
+    public static final Duration MIN_INTERVAL = Duration.standardMinutes(1L);
+
+    /**
+     * Number of raw messages which have been aggregated into a rollup document.
+     */
+    public static final String FIELD_COUNT = "gl2_rollup_count";
+
+    public static final String FUNCTION_SUM = "sum";
+    public static final String FUNCTION_MIN = "min";
+    public static final String FUNCTION_MAX = "max";
+    public static final String FUNCTION_COUNT = "count";
+
+    @JsonProperty(FIELD_INTERVAL)
+    public abstract Duration interval();
+
+    @JsonProperty(FIELD_GROUP_BY)
+    public abstract ImmutableSet<String> groupBy();
+
+    @JsonProperty(FIELD_METRICS)
+    public abstract ImmutableSet<String> metrics();
+
+    @JsonCreator
+    public static RollupConfig create(@JsonProperty(FIELD_INTERVAL) Duration interval,
+                                      @JsonProperty(FIELD_GROUP_BY) @Nullable Set<String> groupBy,
+                                      @JsonProperty(FIELD_METRICS) @Nullable Set<String> metrics) {
+        requireNonNull(interval, "interval cannot be null");
+        checkArgument(!interval.isShorterThan(MIN_INTERVAL), "interval must be at least " + MIN_INTERVAL);
+        checkArgument(Duration.standardDays(1L).getMillis() % interval.getMillis() == 0,
+                "interval must evenly divide a day");
+
+        final ImmutableSet<String> groupByFields = ImmutableSet.copyOf(groupBy == null ? Collections.emptySet() : groupBy);
+        final ImmutableSet<String> metricFields = ImmutableSet.copyOf(metrics == null ? Collections.emptySet() : metrics);
+        checkArgument(Collections.disjoint(groupByFields, metricFields), "group_by and metrics fields must be distinct");
+
+        return new AutoValue_RollupConfig(interval, groupByFields, metricFields);
+    }
+
+    /**
+     * Returns the name of the rollup index for the index set with the given prefix. The name deliberately doesn't
+     * match the index wildcard of the index set, so the rollup index is never treated as one of its raw indices.
+     */
+    public static String indexName(String indexPrefix) {
+        return indexPrefix + "-rollup";
+    }
+
+    /**
+     * Returns the name of the rollup document field which stores the given aggregation function of a metric field.
+     */
+    public static String metricField(String field, String function) {
+        return "gl2_rollup_" + function + "_" + field;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * Describes which rollup indices can replace raw messages for a set of streams, and for which time range and fields.
+ */
+@AutoValue
+public abstract class RollupCoverage {
+    public abstract ImmutableSet<String> rollupIndices();
+
+    public abstract Duration interval();
+
+    public abstract ImmutableSet<String> groupBy();
+
+    public abstract ImmutableSet<String> metrics();
+
+    /**
+     * The rollup indices contain all messages with a timestamp in {@code [rolledUpFrom, rolledUpUntil)}.
+     */
+    public abstract DateTime rolledUpFrom();
+
+    public abstract DateTime rolledUpUntil();
+
+    public static RollupCoverage create(ImmutableSet<String> rollupIndices,
+                                        Duration interval,
+                                        ImmutableSet<String> groupBy,
+                                        ImmutableSet<String> metrics,
+                                        DateTime rolledUpFrom,
+                                        DateTime rolledUpUntil) {
+        return new AutoValue_RollupCoverage(rollupIndices, interval, groupBy, metrics, rolledUpFrom, rolledUpUntil);
+    }
+}
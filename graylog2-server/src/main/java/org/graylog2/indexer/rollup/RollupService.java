@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.joda.time.DateTime;
+
+import javax.inject.Inject;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Looks up the rollups which can be used to answer aggregations over the messages of a set of streams.
+ */
+public class RollupService {
+    private final StreamService streamService;
+    private final DBRollupStateService stateService;
+
+    @Inject
+    public RollupService(StreamService streamService, DBRollupStateService stateService) {
+        this.streamService = streamService;
+        this.stateService = stateService;
+    }
+
+    /**
+     * Returns the rollup coverage for the given streams. Rollups can only be used if every index set of the streams
+     * has an up-to-date rollup with the same interval. The coverage only contains the fields and the time range which
+     * are covered by all of these rollups. Rolled up intervals within the late message window of the rollup job can
+     * still change when they are rolled up again, see {@link IndexSetRollupJob}.
+     *
+     * @param streamIds the IDs of the streams to look up the rollups for
+     * @return filled optional with the coverage if rollups can be used, empty optional otherwise
+     */
+    public Optional<RollupCoverage> coverageFor(Set<String> streamIds) {
+        if (streamIds.isEmpty()) {
+            return Optional.empty();
+        }
+        final Set<IndexSetConfig> indexSets = streamService.loadByIds(streamIds).stream()
+                .map(Stream::getIndexSet)
+                .filter(Objects::nonNull)
+                .map(IndexSet::getConfig)
+                .collect(Collectors.toSet());
+        if (indexSets.isEmpty() || indexSets.stream().anyMatch(indexSet -> indexSet.rollup() == null || indexSet.id() == null)) {
+            return Optional.empty();
+        }
+
+        final Map<String, RollupStateDto> states = stateService.findByIndexSetIds(indexSets.stream().map(IndexSetConfig::id).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(RollupStateDto::indexSetId, Function.identity()));
+        // Rollups which have been built with an outdated configuration are rebuilt by the rollup job and can't be used
+        final boolean allUpToDate = indexSets.stream().allMatch(indexSet -> states.containsKey(indexSet.id())
+                && states.get(indexSet.id()).rollupConfig().equals(indexSet.rollup()));
+        if (!allUpToDate) {
+            return Optional.empty();
+        }
+
+        final List<RollupConfig> configs = indexSets.stream().map(IndexSetConfig::rollup).collect(Collectors.toList());
+        final RollupConfig first = configs.get(0);
+        if (configs.stream().anyMatch(config -> !config.interval().equals(first.interval()))) {
+            return Optional.empty();
+        }
+
+        Set<String> groupBy = first.groupBy();
+        Set<String> metrics = first.metrics();
+        for (RollupConfig config : configs) {
+            groupBy = Sets.intersection(groupBy, config.groupBy());
+            metrics = Sets.intersection(metrics, config.metrics());
+        }
+
+        final DateTime rolledUpFrom = states.values().stream().map(RollupStateDto::rolledUpFrom).max(Comparator.naturalOrder()).get();
+        final DateTime rolledUpUntil = states.values().stream().map(RollupStateDto::rolledUpUntil).min(Comparator.naturalOrder()).get();
+        if (!rolledUpUntil.isAfter(rolledUpFrom)) {
+            return Optional.empty();
+        }
+
+        final ImmutableSet<String> rollupIndices = indexSets.stream()
+                .map(indexSet -> RollupConfig.indexName(indexSet.indexPrefix()))
+                .collect(ImmutableSet.toImmutableSet());
+
+        return Optional.of(RollupCoverage.create(rollupIndices, first.interval(), ImmutableSet.copyOf(groupBy),
+                ImmutableSet.copyOf(metrics), rolledUpFrom, rolledUpUntil));
+    }
+}
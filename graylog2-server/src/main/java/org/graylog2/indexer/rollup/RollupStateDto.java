@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import org.joda.time.DateTime;
+import org.mongojack.Id;
+import org.mongojack.ObjectId;
+
+import javax.annotation.Nullable;
+
+/**
+ * Tracks which time range of an index set has been aggregated into its rollup index and with which configuration.
+ * The rollup index contains all messages with a timestamp in {@code [rolledUpFrom, rolledUpUntil)}.
+ */
+@AutoValue
+@JsonDeserialize(builder = RollupStateDto.Builder.class)
+public abstract class RollupStateDto {
+    private static final String FIELD_ID = "id";
+    static final String FIELD_INDEX_SET_ID = "index_set_id";
+    static final String FIELD_ROLLUP_CONFIG = "rollup_config";
+    static final String FIELD_ROLLED_UP_FROM = "rolled_up_from";
+    static final String FIELD_ROLLED_UP_UNTIL = "rolled_up_until";
+
+    @Id
+    @ObjectId
+    @Nullable
+    @JsonProperty(FIELD_ID)
+    public abstract String id();
+
+    @JsonProperty(FIELD_INDEX_SET_ID)
+    public abstract String indexSetId();
+
+    @JsonProperty(FIELD_ROLLUP_CONFIG)
+    public abstract RollupConfig rollupConfig();
+
+    @JsonProperty(FIELD_ROLLED_UP_FROM)
+    public abstract DateTime rolledUpFrom();
+
+    @JsonProperty(FIELD_ROLLED_UP_UNTIL)
+    public abstract DateTime rolledUpUntil();
+
+    public static Builder builder() {
+        return Builder.create();
+    }
+
+    public abstract Builder toBuilder();
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+        @JsonCreator
+        public static Builder create() {
+            return new AutoValue_RollupStateDto.Builder();
+        }
+
+        @Id
+        @ObjectId
+        @JsonProperty(FIELD_ID)
+        public abstract Builder id(String id);
+
+        @JsonProperty(FIELD_INDEX_SET_ID)
+        public abstract Builder indexSetId(String indexSetId);
+
+        @JsonProperty(FIELD_ROLLUP_CONFIG)
+        public abstract Builder rollupConfig(RollupConfig rollupConfig);
+
+        @JsonProperty(FIELD_ROLLED_UP_FROM)
+        public abstract Builder rolledUpFrom(DateTime rolledUpFrom);
+
+        @JsonProperty(FIELD_ROLLED_UP_UNTIL)
+        public abstract Builder rolledUpUntil(DateTime rolledUpUntil);
+
+        public abstract RollupStateDto build();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import org.graylog.scheduler.DBJobDefinitionService;
+import org.graylog.scheduler.DBJobTriggerService;
+import org.graylog.scheduler.JobDefinitionConfig;
+import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog.scheduler.JobTriggerDto;
+import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog.scheduler.schedule.IntervalJobSchedule;
+import org.graylog2.migrations.Migration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Creates the job definition and trigger of the {@link IndexSetRollupJob}, which handles the rollups of all index sets.
+ */
+public class V20201110000000_CreateIndexSetRollupJob extends Migration {
+    private static final Logger LOG = LoggerFactory.getLogger(V20201110000000_CreateIndexSetRollupJob.class);
+
+    private final DBJobDefinitionService jobDefinitionService;
+    private final DBJobTriggerService jobTriggerService;
+    private final JobSchedulerClock clock;
+
+    @Inject
+    public V20201110000000_CreateIndexSetRollupJob(DBJobDefinitionService jobDefinitionService,
+                                                   DBJobTriggerService jobTriggerService,
+                                                   JobSchedulerClock clock) {
+        this.jobDefinitionService = jobDefinitionService;
+        this.jobTriggerService = jobTriggerService;
+        this.clock = clock;
+    }
+
+    @Override
+    public ZonedDateTime createdAt() {
+        return ZonedDateTime.parse("2020-11-10T00:00:00Z");
+    }
+
+    @Override
+    public void upgrade() {
+        if (jobDefinitionService.getByConfigField(JobDefinitionConfig.TYPE_FIELD, IndexSetRollupJob.TYPE_NAME).isPresent()) {
+            LOG.debug("Found index set rollup job, no migration necessary.");
+            return;
+        }
+
+        final JobDefinitionDto jobDefinition = jobDefinitionService.save(JobDefinitionDto.builder()
+                .title("Index Set Rollups")
+                .description("Aggregates messages of index sets with a rollup configuration into their rollup indices")
+                .config(IndexSetRollupJob.Config.builder().build())
+                .build());
+
+        final JobTriggerDto jobTrigger = jobTriggerService.create(JobTriggerDto.builderWithClock(clock)
+                .jobDefinitionId(requireNonNull(jobDefinition.id(), "Job definition ID cannot be null"))
+                .nextTime(clock.nowUTC())
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.MINUTES)
+                        .build())
+                .build());
+        LOG.debug("Created index set rollup job definition <{}> and trigger <{}>", jobDefinition.id(), jobTrigger.id());
+    }
+}
@@ -23,22 +23,21 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.Timeout;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
 import org.graylog2.inputs.codecs.gelf.GELFMessageChunk;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.graylog2.shared.inputs.ExpirationTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import javax.inject.Named;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -53,7 +52,6 @@ public class GelfChunkAggregator implements CodecAggregator {
     public static final Result VALID_EMPTY_RESULT = new Result(null, true);
     public static final Result INVALID_RESULT = new Result(null, false);
     public static final int VALIDITY_PERIOD = 5000; // millis
-    private static final long CHECK_PERIOD = 1000;
 
     public static final String CHUNK_COUNTER = name(GelfChunkAggregator.class, "total-chunks");
     public static final String WAITING_MESSAGES = name(GelfChunkAggregator.class, "waiting-messages");
@@ -63,7 +61,7 @@ public class GelfChunkAggregator implements CodecAggregator {
     public static final String DUPLICATE_CHUNKS = name(GelfChunkAggregator.class, "duplicate-chunks");
 
     private final ConcurrentMap<String, ChunkEntry> chunks = Maps.newConcurrentMap();
-    private final ConcurrentSkipListSet<ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
+    private final ExpirationTimer expirationTimer;
     private final Counter chunkCounter;
     private final Counter waitingMessages;
     private final Counter expiredMessages;
@@ -72,10 +70,9 @@ public class GelfChunkAggregator implements CodecAggregator {
     private final Counter completeMessages;
 
     @Inject
-    public GelfChunkAggregator(@Named("daemonScheduler") ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
-        scheduler.scheduleAtFixedRate(new ChunkEvictionTask(), VALIDITY_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+    public GelfChunkAggregator(ExpirationTimer expirationTimer, MetricRegistry metricRegistry) {
+        this.expirationTimer = expirationTimer;
         chunkCounter = metricRegistry.counter(CHUNK_COUNTER);
-        // this is a counter instead of a Gauge, because calling sortedEvictionSet.size() is expensive
         waitingMessages = metricRegistry.counter(WAITING_MESSAGES);
         completeMessages = metricRegistry.counter(COMPLETE_MESSAGES);
         expiredMessages = metricRegistry.counter(EXPIRED_MESSAGES);
@@ -140,11 +137,12 @@ public class GelfChunkAggregator implements CodecAggregator {
 
         final ChunkEntry existing = chunks.putIfAbsent(messageId, entry);
         if (existing == null) {
-            // add this chunk entry to the eviction set
+            // expire the chunk entry if the message isn't complete within the validity period
             waitingMessages.inc();
-            sortedEvictionSet.add(entry);
+            final ChunkEntry newEntry = entry;
+            entry.expiration = expirationTimer.expireAfter(VALIDITY_PERIOD, TimeUnit.MILLISECONDS, () -> expireEntry(newEntry));
         } else {
-            // the entry is already in the eviction set and chunk map
+            // the entry is already in the chunk map and scheduled for expiration
             entry = existing;
         }
 
@@ -165,8 +163,12 @@ public class GelfChunkAggregator implements CodecAggregator {
         if (chunkWatermark == sequenceCount) {
             // message is complete by chunk count, assemble and return it.
             // it might still be corrupt etc, but we've seen enough chunks
-            // remove before operating on it, to avoid racing too much with the clean up job, some race is inevitable, though.
+            // remove before operating on it, to avoid racing with the expiration of the entry
             entry = getAndCleanupEntry(messageId);
+            if (entry == null) {
+                log.debug("Chunks of <{}> expired while completing the message. Dropping chunks.", messageId);
+                return null;
+            }
 
             final byte[] allChunks[] = new byte[sequenceCount][];
             for (int i = 0; i < entry.payloadArray.length(); i++) {
@@ -185,26 +187,33 @@ public class GelfChunkAggregator implements CodecAggregator {
         if (isOutdated(entry)) {
             // chunks are outdated, the oldest came in over 5 seconds ago, clean them all up
             log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", messageId, VALIDITY_PERIOD);
-            expireEntry(messageId);
+            expireEntry(entry);
         }
 
         return null;
     }
 
-    private void expireEntry(String messageId) {
-        final ChunkEntry cleanupEntry = getAndCleanupEntry(messageId);
-        expiredMessages.inc();
-        expiredChunks.inc(cleanupEntry.chunkSlotsWritten.get());
+    private void expireEntry(ChunkEntry entry) {
+        // the entry might have been completed or expired in the meantime
+        if (chunks.remove(entry.id, entry)) {
+            entry.cancelExpiration();
+            waitingMessages.dec();
+            expiredMessages.inc();
+            expiredChunks.inc(entry.chunkSlotsWritten.get());
+        }
     }
 
     private boolean isOutdated(ChunkEntry entry) {
         return (Tools.nowUTC().getMillis() - entry.firstTimestamp) > VALIDITY_PERIOD;
     }
 
+    @Nullable
     private ChunkEntry getAndCleanupEntry(String id) {
         final ChunkEntry entry = chunks.remove(id);
-        sortedEvictionSet.remove(entry);
-        waitingMessages.dec();
+        if (entry != null) {
+            entry.cancelExpiration();
+            waitingMessages.dec();
+        }
         return entry;
     }
 
@@ -224,11 +233,12 @@ public class GelfChunkAggregator implements CodecAggregator {
     }
 
     @VisibleForTesting
-    static class ChunkEntry implements Comparable<ChunkEntry> {
+    static class ChunkEntry {
         protected final AtomicInteger chunkSlotsWritten = new AtomicInteger(0);
         protected final long firstTimestamp;
         protected final AtomicReferenceArray<GELFMessageChunk> payloadArray;
         protected final String id;
+        private volatile Timeout expiration;
 
         public ChunkEntry(int chunkCount, long firstTimestamp, String id) {
             this.payloadArray = new AtomicReferenceArray<>(chunkCount);
@@ -236,6 +246,13 @@ public class GelfChunkAggregator implements CodecAggregator {
             this.id = requireNonNull(id);
         }
 
+        void cancelExpiration() {
+            final Timeout timeout = expiration;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -255,20 +272,6 @@ public class GelfChunkAggregator implements CodecAggregator {
             return Objects.hash(id, firstTimestamp);
         }
 
-        @Override
-        public int compareTo(@Nonnull ChunkEntry o) {
-            if (equals(o)) {
-                return 0;
-            }
-            // If two chunk entries have the same timestamp, we have to compare the IDs. Otherwise the removal from
-            // the eviction set might not work and leak memory.
-            // See: https://github.com/Graylog2/graylog2-server/issues/1462
-            if (firstTimestamp == o.firstTimestamp) {
-                return id.compareTo(o.id);
-            }
-            return firstTimestamp < o.firstTimestamp ? -1 : 1;
-        }
-
         @Override
         public String toString() {
             return MoreObjects.toStringHelper(this)
@@ -278,31 +281,4 @@ public class GelfChunkAggregator implements CodecAggregator {
                     .toString();
         }
     }
-
-    @VisibleForTesting
-    class ChunkEvictionTask implements Runnable {
-        @Override
-        public void run() {
-            try {
-                // loop until we've either evicted all outdated chunk entries, or the set is completely empty.
-                // this task will run every second by default (see constant in constructor)
-                while (true) {
-                    // Check if eviction set is empty to avoid a NoElementException when calling first().
-                    if (sortedEvictionSet.isEmpty()) {
-                        break;
-                    }
-                    final ChunkEntry oldestChunkEntry = sortedEvictionSet.first();
-                    if (isOutdated(oldestChunkEntry)) {
-                        expireEntry(oldestChunkEntry.id);
-                    } else {
-                        log.debug("No more outdated chunk entries found to evict, leaving cleanup loop.");
-                        break;
-                    }
-                }
-            } catch (Exception e) {
-                // Make sure to never throw an exception out of this runnable, it's being run in an executor.
-                log.warn("Error while expiring GELF chunk entries", e);
-            }
-        }
-    }
 }
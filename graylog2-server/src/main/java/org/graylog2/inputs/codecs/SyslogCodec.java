@@ -19,6 +19,7 @@ package org.graylog2.inputs.codecs;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.net.InetAddresses;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
@@ -28,6 +29,8 @@ import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.configuration.fields.BooleanField;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.DropdownField;
 import org.graylog2.plugin.inputs.annotations.Codec;
 import org.graylog2.plugin.inputs.annotations.ConfigClass;
 import org.graylog2.plugin.inputs.annotations.FactoryClass;
@@ -70,21 +73,30 @@ public class SyslogCodec extends AbstractCodec {
     static final String CK_ALLOW_OVERRIDE_DATE = "allow_override_date";
     static final String CK_EXPAND_STRUCTURED_DATA = "expand_structured_data";
     static final String CK_STORE_FULL_MESSAGE = "store_full_message";
+    static final String CK_PARSER = "parser";
+
+    static final String PARSER_SYSLOG4J = "syslog4j";
+    static final String PARSER_SINGLE_PASS = "single_pass";
+    private static final ImmutableMap<String, String> PARSER_VALUES = ImmutableMap.of(
+            PARSER_SYSLOG4J, "syslog4j",
+            PARSER_SINGLE_PASS, "Single pass (RFC 5424, RFC 3164 and FortiGate)");
 
     private final Timer resolveTime;
     private final Timer decodeTime;
+    private final SyslogMessageParser messageParser;
 
     @AssistedInject
     public SyslogCodec(@Assisted Configuration configuration, MetricRegistry metricRegistry) {
         super(configuration);
         this.resolveTime = metricRegistry.timer(name(SyslogCodec.class, "resolveTime"));
         this.decodeTime = metricRegistry.timer(name(SyslogCodec.class, "decodeTime"));
+        this.messageParser = PARSER_SINGLE_PASS.equals(configuration.getString(CK_PARSER, PARSER_SYSLOG4J))
+                ? new SyslogMessageParser() : null;
     }
 
     @Nullable
     @Override
     public Message decode(@Nonnull RawMessage rawMessage) {
-        final String msg = new String(rawMessage.getPayload(), StandardCharsets.UTF_8);
         try (Timer.Context ignored = this.decodeTime.time()) {
             final ResolvableInetSocketAddress address = rawMessage.getRemoteAddress();
             final InetSocketAddress remoteAddress;
@@ -93,8 +105,46 @@ public class SyslogCodec extends AbstractCodec {
             } else {
                 remoteAddress = address.getInetSocketAddress();
             }
-            return parse(msg, remoteAddress == null ? null : remoteAddress.getAddress(), rawMessage.getTimestamp());
+            final InetAddress remoteInetAddress = remoteAddress == null ? null : remoteAddress.getAddress();
+
+            if (messageParser != null) {
+                final SyslogMessageParser.Result result = messageParser.parse(rawMessage.getPayload(), rawMessage.getTimestamp().getYear());
+                if (result != null) {
+                    return createMessage(result, rawMessage.getPayload(), remoteInetAddress, rawMessage.getTimestamp());
+                }
+            }
+
+            final String msg = new String(rawMessage.getPayload(), StandardCharsets.UTF_8);
+            return parse(msg, remoteInetAddress, rawMessage.getTimestamp());
+        }
+    }
+
+    private Message createMessage(SyslogMessageParser.Result result, byte[] payload, InetAddress remoteAddress, DateTime receivedTimestamp) {
+        final Message m = new Message(result.message(), parseHost(result.host(), remoteAddress), parseDate(result.timestamp(), receivedTimestamp, payload));
+        m.addField("facility", Tools.syslogFacilityToReadable(result.facility()));
+        m.addField("level", result.level());
+        m.addField("facility_num", result.facility());
+
+        if (!result.fields().isEmpty()) {
+            final HashMap<String, Object> fields = new HashMap<>(result.fields());
+            // The FortiGate "level" field is a string, Graylog requires a numeric value.
+            fields.remove("level");
+            m.addFields(fields);
+        }
+
+        if (configuration.getBoolean(CK_STORE_FULL_MESSAGE)) {
+            m.addField("full_message", new String(payload, StandardCharsets.UTF_8));
+        }
+
+        m.addFields(structuredDataFields(result.structuredData(), configuration.getBoolean(CK_EXPAND_STRUCTURED_DATA)));
+        if (!isNullOrEmpty(result.applicationName())) {
+            m.addField("application_name", result.applicationName());
         }
+        if (!isNullOrEmpty(result.processId())) {
+            m.addField("process_id", result.processId());
+        }
+
+        return m;
     }
 
     private Message parse(String msg, InetAddress remoteAddress, DateTime receivedTimestamp) {
@@ -142,7 +192,8 @@ public class SyslogCodec extends AbstractCodec {
             syslogMessage = e.getMessage();
         }
 
-        final Message m = new Message(syslogMessage, parseHost(e, remoteAddress), parseDate(e, receivedTimestamp));
+        final DateTime date = e.getDate() == null ? null : new DateTime(e.getDate());
+        final Message m = new Message(syslogMessage, parseHost(e.getHost(), remoteAddress), parseDate(date, receivedTimestamp, e.getRaw()));
         m.addField("facility", Tools.syslogFacilityToReadable(e.getFacility()));
         m.addField("level", e.getLevel());
         m.addField("facility_num", e.getFacility());
@@ -191,7 +242,7 @@ public class SyslogCodec extends AbstractCodec {
         }
     }
 
-    private String parseHost(SyslogServerEventIF msg, InetAddress remoteAddress) {
+    private String parseHost(@Nullable String host, @Nullable InetAddress remoteAddress) {
         if (remoteAddress != null && configuration.getBoolean(CK_FORCE_RDNS)) {
             try (Timer.Context ignored = this.resolveTime.time()) {
                 return Tools.rdnsLookup(remoteAddress);
@@ -200,25 +251,24 @@ public class SyslogCodec extends AbstractCodec {
             }
         }
 
-        final String host = msg.getHost();
         return isNullOrEmpty(host) && remoteAddress != null ? InetAddresses.toAddrString(remoteAddress) : host;
     }
 
-    private DateTime parseDate(SyslogServerEventIF msg, DateTime receivedTimestamp) throws IllegalStateException {
+    private DateTime parseDate(@Nullable DateTime date, DateTime receivedTimestamp, byte[] raw) throws IllegalStateException {
         // Check if date could be parsed.
-        if (msg.getDate() == null) {
+        if (date == null) {
             if (configuration.getBoolean(CK_ALLOW_OVERRIDE_DATE)) {
                 LOG.debug("Date could not be parsed. Was set to NOW because {} is true.", CK_ALLOW_OVERRIDE_DATE);
                 return receivedTimestamp;
             } else {
                 LOG.warn("Syslog message is missing date or date could not be parsed. (Possibly set {} to true) "
                                 + "Not further handling. Message was: {}",
-                        CK_ALLOW_OVERRIDE_DATE, new String(msg.getRaw(), StandardCharsets.UTF_8));
+                        CK_ALLOW_OVERRIDE_DATE, new String(raw, StandardCharsets.UTF_8));
                 throw new IllegalStateException("Syslog message is missing date or date could not be parsed.");
             }
         }
 
-        return new DateTime(msg.getDate());
+        return date;
     }
 
     @Nullable
@@ -281,6 +331,17 @@ public class SyslogCodec extends AbstractCodec {
                     )
             );
 
+            r.addField(
+                    new DropdownField(
+                            CK_PARSER,
+                            "Parser",
+                            PARSER_SYSLOG4J,
+                            PARSER_VALUES,
+                            "The single pass parser is faster and handles RFC 5424 messages strictly, e. g. the MSGID is not part of the message anymore. Other messages are handled by syslog4j.",
+                            ConfigurationField.Optional.OPTIONAL
+                    )
+            );
+
             return r;
         }
 
@@ -304,17 +365,8 @@ public class SyslogCodec extends AbstractCodec {
     Map<String, Object> extractFields(final StructuredSyslogServerEvent msg, final boolean expand) {
         try {
             final Map<String, Map<String, String>> raw = msg.getStructuredMessage().getStructuredData();
-
-            if (raw != null && !raw.isEmpty()) {
-                final Map<String, Object> fields = new HashMap<>();
-                for (Map.Entry<String, Map<String, String>> entry : raw.entrySet()) {
-                    if (expand) {
-                        fields.putAll(prefixElements(entry.getKey(), entry.getValue()));
-                    } else {
-                        fields.putAll(entry.getValue());
-                    }
-                }
-                return fields;
+            if (raw != null) {
+                return structuredDataFields(raw, expand);
             }
         } catch (Exception e) {
             LOG.debug("Could not extract structured syslog", e);
@@ -322,6 +374,22 @@ public class SyslogCodec extends AbstractCodec {
         return Collections.emptyMap();
     }
 
+    private Map<String, Object> structuredDataFields(final Map<String, Map<String, String>> structuredData, final boolean expand) {
+        if (structuredData.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Object> fields = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> entry : structuredData.entrySet()) {
+            if (expand) {
+                fields.putAll(prefixElements(entry.getKey(), entry.getValue()));
+            } else {
+                fields.putAll(entry.getValue());
+            }
+        }
+        return fields;
+    }
+
     private Map<String, String> prefixElements(final String prefix, final Map<String, String> elements) {
         if (elements == null || elements.isEmpty()) {
             return Collections.emptyMap();
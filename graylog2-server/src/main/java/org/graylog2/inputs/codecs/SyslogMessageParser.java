@@ -0,0 +1,649 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.IllegalFieldValueException;
+import org.joda.time.IllegalInstantException;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses syslog messages in a single pass over the raw bytes, without regular expressions or intermediate strings.
+ * <p>
+ * Understands RFC 5424 messages including structured data, RFC 3164 messages with either a classic BSD or an
+ * RFC 3339 timestamp and FortiGate messages. Everything else, e. g. Cisco messages with sequence numbers, yields
+ * {@code null} and has to be handled by the syslog4j based parser.
+ * <p>
+ * Timestamps are parsed once per minute: the start of the last seen minute is cached, so that the common case of many
+ * messages from the same minute only has to add the seconds. Instances are thread-safe.
+ */
+class SyslogMessageParser {
+    private static final int MAX_PRI = 191;
+    private static final byte[] FORTIGATE_PREFIX = "date=".getBytes(StandardCharsets.US_ASCII);
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    // Length of "yyyy-MM-ddTHH:mm", the part of an RFC 3339 timestamp which identifies the minute
+    private static final int RFC3339_MINUTE_LENGTH = 16;
+
+    private volatile CachedMinute rfc3339Minute;
+    private volatile CachedMinute bsdMinute;
+
+    /**
+     * Parses the given syslog message.
+     *
+     * @param payload      the raw syslog message
+     * @param receivedYear the year to use for timestamps without a year
+     * @return the parsed message or {@code null} if the message has to be parsed by the syslog4j based parser
+     */
+    @Nullable
+    Result parse(byte[] payload, int receivedYear) {
+        final int length = payload.length;
+        if (length < 3 || payload[0] != '<') {
+            return null;
+        }
+
+        int pos = 1;
+        int pri = 0;
+        while (pos < length && pos < 4 && isDigit(payload[pos])) {
+            pri = pri * 10 + (payload[pos] - '0');
+            pos++;
+        }
+        if (pos == 1 || pos >= length || payload[pos] != '>' || pri > MAX_PRI) {
+            return null;
+        }
+        pos++;
+        final int facility = pri >> 3;
+        final int level = pri & 7;
+
+        int digitsEnd = pos;
+        while (digitsEnd < length && isDigit(payload[digitsEnd])) {
+            digitsEnd++;
+        }
+        final int digits = digitsEnd - pos;
+        if (digits >= 1 && digits <= 3 && digitsEnd < length && isWhitespace(payload[digitsEnd])) {
+            return parseRfc5424(payload, digitsEnd + 1, facility, level);
+        } else if (digitsEnd + 1 < length && payload[digitsEnd] == ':' && isWhitespace(payload[digitsEnd + 1])) {
+            // Cisco message with sequence number, these have too many timestamp variants to handle them here
+            return null;
+        } else if (startsWith(payload, pos, FORTIGATE_PREFIX)) {
+            return parseFortiGate(payload, pos, facility, level);
+        } else {
+            return parseRfc3164(payload, pos, facility, level, receivedYear);
+        }
+    }
+
+    /**
+     * {@code VERSION SP TIMESTAMP SP HOSTNAME SP APP-NAME SP PROCID SP MSGID SP STRUCTURED-DATA [SP MSG]}
+     */
+    @Nullable
+    private Result parseRfc5424(byte[] payload, int start, int facility, int level) {
+        final int length = payload.length;
+        int pos = start;
+
+        final int timestampEnd = indexOf(payload, pos, (byte) ' ');
+        if (timestampEnd < 0) {
+            return null;
+        }
+        final DateTime timestamp;
+        if (isNil(payload, pos, timestampEnd)) {
+            timestamp = null;
+        } else {
+            final long millis = parseRfc3339(payload, pos, timestampEnd);
+            if (millis == Long.MIN_VALUE) {
+                return null;
+            }
+            timestamp = new DateTime(millis);
+        }
+        pos = timestampEnd + 1;
+
+        final String[] header = new String[3];
+        for (int i = 0; i < header.length; i++) {
+            final int end = indexOf(payload, pos, (byte) ' ');
+            if (end < 0) {
+                return null;
+            }
+            header[i] = isNil(payload, pos, end) ? null : new String(payload, pos, end - pos, StandardCharsets.UTF_8);
+            pos = end + 1;
+        }
+
+        final int msgIdStart = pos;
+        final int msgIdEnd = indexOf(payload, pos, (byte) ' ');
+        if (msgIdEnd < 0) {
+            return null;
+        }
+        pos = msgIdEnd + 1;
+
+        final Map<String, Map<String, String>> structuredData;
+        if (pos < length && payload[pos] == '-') {
+            structuredData = Collections.emptyMap();
+            pos++;
+        } else if (pos < length && payload[pos] == '[') {
+            structuredData = new LinkedHashMap<>();
+            pos = parseStructuredData(payload, pos, structuredData);
+            if (pos < 0) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        final int headerEnd = pos;
+
+        if (pos < length && payload[pos] == ' ') {
+            pos++;
+        }
+        // Skip the byte order mark of UTF-8 encoded messages
+        if (pos + 2 < length && payload[pos] == (byte) 0xEF && payload[pos + 1] == (byte) 0xBB && payload[pos + 2] == (byte) 0xBF) {
+            pos += 3;
+        }
+        String message = trimmedString(payload, pos, length);
+        if (message.isEmpty()) {
+            // Use the message ID and the structured data rather than dropping the message
+            message = trimmedString(payload, msgIdStart, headerEnd);
+        }
+
+        return new Result(facility, level, timestamp, header[0], header[1], header[2], message,
+                structuredData, Collections.emptyMap());
+    }
+
+    /**
+     * Parses a sequence of structured data elements, {@code [SD-ID *(SP PARAM-NAME="PARAM-VALUE")]}.
+     *
+     * @return the position after the last element or {@code -1} if the structured data is malformed
+     */
+    private static int parseStructuredData(byte[] payload, int start, Map<String, Map<String, String>> structuredData) {
+        final int length = payload.length;
+        int pos = start;
+        while (pos < length && payload[pos] == '[') {
+            pos++;
+            final int idStart = pos;
+            while (pos < length && payload[pos] != ' ' && payload[pos] != ']') {
+                pos++;
+            }
+            if (pos >= length || pos == idStart) {
+                return -1;
+            }
+            final String id = new String(payload, idStart, pos - idStart, StandardCharsets.UTF_8);
+            final Map<String, String> params = new HashMap<>();
+
+            while (pos < length && payload[pos] == ' ') {
+                pos++;
+                final int nameStart = pos;
+                while (pos < length && payload[pos] != '=') {
+                    pos++;
+                }
+                if (pos + 1 >= length || payload[pos + 1] != '"') {
+                    return -1;
+                }
+                final String name = new String(payload, nameStart, pos - nameStart, StandardCharsets.UTF_8);
+                pos += 2;
+
+                final int valueStart = pos;
+                boolean escaped = false;
+                while (pos < length && payload[pos] != '"') {
+                    if (payload[pos] == '\\' && pos + 1 < length && isEscapable(payload[pos + 1])) {
+                        escaped = true;
+                        pos++;
+                    }
+                    pos++;
+                }
+                if (pos >= length) {
+                    return -1;
+                }
+                params.put(name, escaped ? unescape(payload, valueStart, pos) : new String(payload, valueStart, pos - valueStart, StandardCharsets.UTF_8));
+                pos++;
+            }
+
+            if (pos >= length || payload[pos] != ']') {
+                return -1;
+            }
+            pos++;
+            structuredData.put(id, params);
+        }
+        return pos;
+    }
+
+    private static String unescape(byte[] payload, int start, int end) {
+        final byte[] value = new byte[end - start];
+        int length = 0;
+        for (int pos = start; pos < end; pos++) {
+            if (payload[pos] == '\\' && pos + 1 < end && isEscapable(payload[pos + 1])) {
+                pos++;
+            }
+            value[length++] = payload[pos];
+        }
+        return new String(value, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * {@code Mmm dd hh:mm:ss HOSTNAME MSG} or {@code TIMESTAMP HOSTNAME MSG} with an RFC 3339 timestamp.
+     * <p>
+     * Like the syslog4j based parser, the message contains the host name.
+     */
+    @Nullable
+    private Result parseRfc3164(byte[] payload, int start, int facility, int level, int receivedYear) {
+        final int timestampEnd;
+        final long millis;
+        if (start < payload.length && isDigit(payload[start])) {
+            timestampEnd = indexOf(payload, start, (byte) ' ');
+            millis = timestampEnd < 0 ? Long.MIN_VALUE : parseRfc3339(payload, start, timestampEnd);
+        } else {
+            timestampEnd = start + 15;
+            millis = parseBsdTimestamp(payload, start, receivedYear);
+        }
+        if (millis == Long.MIN_VALUE || timestampEnd >= payload.length || payload[timestampEnd] != ' ') {
+            return null;
+        }
+
+        final String message = trimmedString(payload, timestampEnd + 1, payload.length);
+        if (message.isEmpty()) {
+            return null;
+        }
+        final int hostEnd = message.indexOf(' ');
+        final String host = hostEnd < 0 ? message : message.substring(0, hostEnd);
+
+        return new Result(facility, level, new DateTime(millis), host, null, null, message,
+                Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * {@code date=yyyy-MM-dd time=HH:mm:ss devname=... key=value key="quoted value"}
+     */
+    private static Result parseFortiGate(byte[] payload, int start, int facility, int level) {
+        final int length = payload.length;
+        final Map<String, String> fields = new LinkedHashMap<>();
+        int pos = start;
+        while (pos < length) {
+            while (pos < length && payload[pos] == ' ') {
+                pos++;
+            }
+            final int keyStart = pos;
+            while (pos < length && payload[pos] != '=' && payload[pos] != ' ') {
+                pos++;
+            }
+            if (pos >= length || payload[pos] != '=') {
+                continue;
+            }
+            final String key = new String(payload, keyStart, pos - keyStart, StandardCharsets.UTF_8);
+            pos++;
+
+            final int valueStart;
+            final int valueEnd;
+            if (pos < length && payload[pos] == '"') {
+                valueStart = pos + 1;
+                final int quote = indexOf(payload, valueStart, (byte) '"');
+                valueEnd = quote < 0 ? length : quote;
+                pos = valueEnd + 1;
+            } else {
+                valueStart = pos;
+                while (pos < length && payload[pos] != ' ') {
+                    pos++;
+                }
+                valueEnd = pos;
+            }
+            fields.put(key, new String(payload, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8));
+        }
+
+        final String message = trimmedString(payload, start, length);
+        return new Result(facility, level, fortiGateTimestamp(fields), fields.get("devname"), null, null, message,
+                Collections.emptyMap(), fields);
+    }
+
+    @Nullable
+    private static DateTime fortiGateTimestamp(Map<String, String> fields) {
+        final String date = fields.get("date");
+        final String time = fields.get("time");
+        if (date == null || time == null || date.length() != 10 || time.length() != 8) {
+            return null;
+        }
+        final byte[] timestamp = (date + "T" + time).getBytes(StandardCharsets.US_ASCII);
+        final String tz = fields.get("tz");
+        final int offsetMillis = tz == null ? 0 : parseOffset(tz.getBytes(StandardCharsets.US_ASCII), 0, tz.length());
+        if (offsetMillis == Integer.MIN_VALUE) {
+            return null;
+        }
+        final int seconds = twoDigits(timestamp, 17);
+        final long minute = minuteMillis(timestamp, 0, DateTimeZone.forOffsetMillis(offsetMillis));
+        if (seconds < 0 || seconds > 59 || minute == Long.MIN_VALUE) {
+            return null;
+        }
+        return new DateTime(minute + seconds * 1000L);
+    }
+
+    /**
+     * Parses an RFC 3339 timestamp like {@code 2003-08-24T05:14:15.000003-07:00}.
+     *
+     * @return the milliseconds since the epoch or {@link Long#MIN_VALUE} if the timestamp is invalid
+     */
+    private long parseRfc3339(byte[] payload, int start, int end) {
+        if (end - start < RFC3339_MINUTE_LENGTH + 4
+                || payload[start + 4] != '-' || payload[start + 7] != '-'
+                || (payload[start + 10] != 'T' && payload[start + 10] != 't')
+                || payload[start + 13] != ':' || payload[start + 16] != ':') {
+            return Long.MIN_VALUE;
+        }
+        final int seconds = twoDigits(payload, start + 17);
+        if (seconds < 0 || seconds > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        int pos = start + 19;
+        int millis = 0;
+        if (pos < end && payload[pos] == '.') {
+            pos++;
+            final int fractionStart = pos;
+            while (pos < end && isDigit(payload[pos])) {
+                if (pos - fractionStart < 3) {
+                    millis = millis * 10 + (payload[pos] - '0');
+                }
+                pos++;
+            }
+            if (pos == fractionStart) {
+                return Long.MIN_VALUE;
+            }
+            for (int i = pos - fractionStart; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+        final int zoneStart = pos;
+
+        final CachedMinute cached = rfc3339Minute;
+        if (cached != null && cached.matches(payload, start, RFC3339_MINUTE_LENGTH, zoneStart, end)) {
+            return cached.millis + seconds * 1000L + millis;
+        }
+
+        final int offsetMillis = parseOffset(payload, zoneStart, end);
+        if (offsetMillis == Integer.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        final long minute = minuteMillis(payload, start, DateTimeZone.forOffsetMillis(offsetMillis));
+        if (minute == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        rfc3339Minute = CachedMinute.of(payload, start, RFC3339_MINUTE_LENGTH, zoneStart, end, 0, minute);
+        return minute + seconds * 1000L + millis;
+    }
+
+    /**
+     * Parses a BSD timestamp like {@code Feb  5 17:32:18} in the default time zone.
+     *
+     * @return the milliseconds since the epoch or {@link Long#MIN_VALUE} if the timestamp is invalid
+     */
+    private long parseBsdTimestamp(byte[] payload, int start, int year) {
+        // "Mmm dd hh:mm" identifies the minute, the day may be padded with a space instead of a zero
+        final int minuteLength = 12;
+        if (start + 15 > payload.length
+                || payload[start + 3] != ' ' || payload[start + 6] != ' '
+                || payload[start + 9] != ':' || payload[start + 12] != ':') {
+            return Long.MIN_VALUE;
+        }
+        final int seconds = twoDigits(payload, start + 13);
+        if (seconds < 0 || seconds > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        final CachedMinute cached = bsdMinute;
+        if (cached != null && cached.year == year && cached.matches(payload, start, minuteLength, start, start)) {
+            return cached.millis + seconds * 1000L;
+        }
+
+        final int month = MONTHS.indexOf(new String(payload, start, 3, StandardCharsets.US_ASCII));
+        final int day = payload[start + 4] == ' ' ? digit(payload[start + 5]) : twoDigits(payload, start + 4);
+        final int hour = twoDigits(payload, start + 7);
+        final int minute = twoDigits(payload, start + 10);
+        if (month < 0 || month % 3 != 0 || day < 0 || hour < 0 || minute < 0) {
+            return Long.MIN_VALUE;
+        }
+        final long minuteMillis;
+        try {
+            minuteMillis = new DateTime(year, month / 3 + 1, day, hour, minute, DateTimeZone.getDefault()).getMillis();
+        } catch (IllegalFieldValueException | IllegalInstantException e) {
+            return Long.MIN_VALUE;
+        }
+        bsdMinute = CachedMinute.of(payload, start, minuteLength, start, start, year, minuteMillis);
+        return minuteMillis + seconds * 1000L;
+    }
+
+    private static long minuteMillis(byte[] payload, int start, DateTimeZone zone) {
+        final int year = fourDigits(payload, start);
+        final int month = twoDigits(payload, start + 5);
+        final int day = twoDigits(payload, start + 8);
+        final int hour = twoDigits(payload, start + 11);
+        final int minute = twoDigits(payload, start + 14);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return new DateTime(year, month, day, hour, minute, zone).getMillis();
+        } catch (IllegalFieldValueException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Parses {@code Z}, {@code +HH:MM} or {@code +HHMM}.
+     *
+     * @return the offset in milliseconds or {@link Integer#MIN_VALUE} if the offset is invalid
+     */
+    private static int parseOffset(byte[] payload, int start, int end) {
+        final int length = end - start;
+        if (length == 1 && (payload[start] == 'Z' || payload[start] == 'z')) {
+            return 0;
+        }
+        if ((length != 6 && length != 5) || (payload[start] != '+' && payload[start] != '-')
+                || (length == 6 && payload[start + 3] != ':')) {
+            return Integer.MIN_VALUE;
+        }
+        final int hours = twoDigits(payload, start + 1);
+        final int minutes = twoDigits(payload, end - 2);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return Integer.MIN_VALUE;
+        }
+        final int offset = (hours * 60 + minutes) * 60_000;
+        return payload[start] == '-' ? -offset : offset;
+    }
+
+    private static int fourDigits(byte[] payload, int pos) {
+        final int high = twoDigits(payload, pos);
+        final int low = twoDigits(payload, pos + 2);
+        return high < 0 || low < 0 ? -1 : high * 100 + low;
+    }
+
+    private static int twoDigits(byte[] payload, int pos) {
+        final int high = digit(payload[pos]);
+        final int low = digit(payload[pos + 1]);
+        return high < 0 || low < 0 ? -1 : high * 10 + low;
+    }
+
+    private static int digit(byte b) {
+        return isDigit(b) ? b - '0' : -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    private static boolean isEscapable(byte b) {
+        return b == '"' || b == '\\' || b == ']';
+    }
+
+    private static boolean isNil(byte[] payload, int start, int end) {
+        return end - start == 1 && payload[start] == '-';
+    }
+
+    private static boolean startsWith(byte[] payload, int start, byte[] prefix) {
+        if (payload.length - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (payload[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] payload, int start, byte b) {
+        for (int pos = start; pos < payload.length; pos++) {
+            if (payload[pos] == b) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static String trimmedString(byte[] payload, int start, int end) {
+        while (start < end && isWhitespace(payload[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(payload[end - 1])) {
+            end--;
+        }
+        return new String(payload, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The start of a minute and the bytes it has been parsed from: the part of the timestamp up to the minute and the
+     * time zone designator. BSD timestamps don't contain the year, so it is kept separately.
+     */
+    private static class CachedMinute {
+        private final byte[] minute;
+        private final byte[] zone;
+        private final int year;
+        private final long millis;
+
+        private CachedMinute(byte[] minute, byte[] zone, int year, long millis) {
+            this.minute = minute;
+            this.zone = zone;
+            this.year = year;
+            this.millis = millis;
+        }
+
+        static CachedMinute of(byte[] payload, int start, int minuteLength, int zoneStart, int zoneEnd, int year, long millis) {
+            return new CachedMinute(
+                    Arrays.copyOfRange(payload, start, start + minuteLength),
+                    Arrays.copyOfRange(payload, zoneStart, zoneEnd),
+                    year,
+                    millis);
+        }
+
+        boolean matches(byte[] payload, int start, int minuteLength, int zoneStart, int zoneEnd) {
+            if (zoneEnd - zoneStart != zone.length) {
+                return false;
+            }
+            for (int i = 0; i < minuteLength; i++) {
+                if (payload[start + i] != minute[i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < zone.length; i++) {
+                if (payload[zoneStart + i] != zone[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static class Result {
+        private final int facility;
+        private final int level;
+        private final DateTime timestamp;
+        private final String host;
+        private final String applicationName;
+        private final String processId;
+        private final String message;
+        private final Map<String, Map<String, String>> structuredData;
+        private final Map<String, String> fields;
+
+        Result(int facility,
+               int level,
+               @Nullable DateTime timestamp,
+               @Nullable String host,
+               @Nullable String applicationName,
+               @Nullable String processId,
+               String message,
+               Map<String, Map<String, String>> structuredData,
+               Map<String, String> fields) {
+            this.facility = facility;
+            this.level = level;
+            this.timestamp = timestamp;
+            this.host = host;
+            this.applicationName = applicationName;
+            this.processId = processId;
+            this.message = message;
+            this.structuredData = structuredData;
+            this.fields = fields;
+        }
+
+        int facility() {
+            return facility;
+        }
+
+        int level() {
+            return level;
+        }
+
+        @Nullable
+        DateTime timestamp() {
+            return timestamp;
+        }
+
+        @Nullable
+        String host() {
+            return host;
+        }
+
+        @Nullable
+        String applicationName() {
+            return applicationName;
+        }
+
+        @Nullable
+        String processId() {
+            return processId;
+        }
+
+        String message() {
+            return message;
+        }
+
+        /**
+         * The RFC 5424 structured data elements by their SD-ID.
+         */
+        Map<String, Map<String, String>> structuredData() {
+            return structuredData;
+        }
+
+        /**
+         * The key-value pairs of FortiGate messages.
+         */
+        Map<String, String> fields() {
+            return fields;
+        }
+    }
+}
@@ -35,6 +35,7 @@ public class GrokExtractor extends Extractor {
     private GrokPatternRegistry grokPatternRegistry;
     private String pattern;
     private boolean namedCapturesOnly;
+    private volatile ResolvedGrok resolvedGrok;
 
     GrokExtractor(MetricRegistry metricRegistry,
                   GrokPatternRegistry grokPatternRegistry,
@@ -73,9 +74,8 @@ public class GrokExtractor extends Extractor {
 
     @Override
     protected Result[] run(String value) {
-        final Grok grok = grokPatternRegistry.cachedGrokForPattern(this.pattern, this.namedCapturesOnly);
+        final Grok grok = grok();
 
-        // the extractor instance is rebuilt every second anyway
         final Match match = grok.match(value);
         final Map<String, Object> matches = match.captureFlattened();
         final List<Result> results = new ArrayList<>(matches.size());
@@ -89,4 +89,27 @@ public class GrokExtractor extends Extractor {
 
         return results.toArray(new Result[0]);
     }
+
+    /**
+     * Returns the compiled pattern, which is only looked up again after the registry has reloaded its grok patterns.
+     */
+    private Grok grok() {
+        final long revision = grokPatternRegistry.revision();
+        ResolvedGrok resolved = resolvedGrok;
+        if (resolved == null || resolved.revision != revision) {
+            resolved = new ResolvedGrok(revision, grokPatternRegistry.cachedGrokForPattern(this.pattern, this.namedCapturesOnly));
+            resolvedGrok = resolved;
+        }
+        return resolved.grok;
+    }
+
+    private static class ResolvedGrok {
+        private final long revision;
+        private final Grok grok;
+
+        ResolvedGrok(long revision, Grok grok) {
+            this.revision = revision;
+            this.grok = grok;
+        }
+    }
 }
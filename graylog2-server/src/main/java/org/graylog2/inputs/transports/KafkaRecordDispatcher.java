@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
+/**
+ * Hands the records of a Kafka consumer to an input, one partition batch at a time, and keeps track of the offsets
+ * which can be committed afterwards.
+ * <p>
+ * Every consumer thread uses its own dispatcher, only the metrics are read from other threads.
+ */
+class KafkaRecordDispatcher {
+    private final MessageInput input;
+    private final MetricRegistry metricRegistry;
+    private final LongConsumer bytesRead;
+    private final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+    private final Map<TopicPartition, PartitionMetrics> partitionMetrics = new HashMap<>();
+    private boolean uncommitted = false;
+
+    KafkaRecordDispatcher(MessageInput input, MetricRegistry metricRegistry, LongConsumer bytesRead) {
+        this.input = input;
+        this.metricRegistry = metricRegistry;
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * Hands the records to the input, with a single batch per partition to keep the order of every partition.
+     *
+     * @param records     the records of a single poll
+     * @param mayContinue called before every partition batch, returns {@code false} to stop dispatching
+     * @return {@code false} if dispatching has been stopped before all records have been handed to the input
+     */
+    boolean dispatch(ConsumerRecords<byte[], byte[]> records, BooleanSupplier mayContinue) {
+        for (final TopicPartition partition : records.partitions()) {
+            if (!mayContinue.getAsBoolean()) {
+                return false;
+            }
+            final List<ConsumerRecord<byte[], byte[]>> partitionRecords = records.records(partition);
+            if (partitionRecords.isEmpty()) {
+                continue;
+            }
+
+            final List<RawMessage> rawMessages = new ArrayList<>(partitionRecords.size());
+            long bytes = 0;
+            for (final ConsumerRecord<byte[], byte[]> record : partitionRecords) {
+                final byte[] value = record.value();
+                // it is possible that the message is null
+                if (value != null) {
+                    rawMessages.add(new RawMessage(value));
+                    bytes += value.length;
+                }
+            }
+            input.processRawMessages(rawMessages);
+
+            final long nextOffset = partitionRecords.get(partitionRecords.size() - 1).offset() + 1;
+            offsets.put(partition, new OffsetAndMetadata(nextOffset));
+            uncommitted = true;
+            bytesRead.accept(bytes);
+            partitionMetrics(partition).dispatched(rawMessages.size(), bytes, nextOffset);
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if records have been dispatched since the offsets have been committed the last time.
+     */
+    boolean hasUncommittedOffsets() {
+        return uncommitted;
+    }
+
+    /**
+     * Returns the offsets of all assigned partitions which have been dispatched so far and marks them as committed.
+     * The returned offsets always contain every assigned partition, so a failed commit gets repeated by the next one.
+     */
+    Map<TopicPartition, OffsetAndMetadata> offsetsToCommit() {
+        uncommitted = false;
+        return new HashMap<>(offsets);
+    }
+
+    /**
+     * Forgets the offsets and metrics of partitions which are no longer assigned to the consumer.
+     */
+    void revoke(Collection<TopicPartition> partitions) {
+        for (final TopicPartition partition : partitions) {
+            offsets.remove(partition);
+            final PartitionMetrics metrics = partitionMetrics.remove(partition);
+            if (metrics != null) {
+                metrics.remove();
+            }
+        }
+    }
+
+    void revokeAll() {
+        revoke(new ArrayList<>(offsets.keySet()));
+    }
+
+    private PartitionMetrics partitionMetrics(TopicPartition partition) {
+        final PartitionMetrics metrics = partitionMetrics.get(partition);
+        if (metrics != null) {
+            return metrics;
+        }
+        final PartitionMetrics newMetrics = new PartitionMetrics(partition);
+        partitionMetrics.put(partition, newMetrics);
+        return newMetrics;
+    }
+
+    private class PartitionMetrics {
+        private final String baseName;
+        private final Meter messages;
+        private final Meter bytes;
+        private volatile long offset = -1;
+
+        PartitionMetrics(TopicPartition partition) {
+            this.baseName = name("partition", partition.topic() + "-" + partition.partition());
+            this.messages = metricRegistry.meter(name(baseName, "messages"));
+            this.bytes = metricRegistry.meter(name(baseName, "bytes"));
+            safelyRegister(metricRegistry, name(baseName, "offset"), (Gauge<Long>) () -> offset);
+        }
+
+        void dispatched(int messageCount, long byteCount, long nextOffset) {
+            messages.mark(messageCount);
+            bytes.mark(byteCount);
+            offset = nextOffset;
+        }
+
+        void remove() {
+            metricRegistry.removeMatching((name, metric) -> name.startsWith(baseName + "."));
+        }
+    }
+}
@@ -37,12 +37,14 @@ import kafka.consumer.TopicFilter;
 import kafka.consumer.Whitelist;
 import kafka.javaapi.consumer.ConsumerConnector;
 import kafka.message.MessageAndMetadata;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.InvalidOffsetException;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.clients.consumer.internals.NoOpConsumerRebalanceListener;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.AuthorizationException;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
@@ -71,9 +73,13 @@ import javax.inject.Named;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -120,6 +126,7 @@ public class KafkaTransport extends ThrottleableTransport {
     private final AtomicLong totalBytesRead = new AtomicLong(0);
     private final AtomicLong lastSecBytesRead = new AtomicLong(0);
     private final AtomicLong lastSecBytesReadTmp = new AtomicLong(0);
+    private final ConcurrentMap<Integer, Long> consumerLag = new ConcurrentHashMap<>();
     private final ExecutorService executor;
 
     private volatile boolean stopped = false;
@@ -171,6 +178,12 @@ public class KafkaTransport extends ThrottleableTransport {
                 return 0L;
             }
         });
+        localRegistry.register("records_lag_max", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return consumerLag.values().stream().mapToLong(Long::longValue).max().orElse(0L);
+            }
+        });
     }
 
     @Subscribe
@@ -232,9 +245,9 @@ public class KafkaTransport extends ThrottleableTransport {
         // Map largest -> latest, smallest -> earliest
         final String resetValue = configuration.getString(CK_OFFSET_RESET, DEFAULT_OFFSET_RESET);
         props.put("auto.offset.reset", resetValue.equals("largest") ? "latest" : "earliest");
-        // Default auto commit interval is 60 seconds. Reduce to 1 second to minimize message duplication
-        // if something breaks.
-        props.put("auto.commit.interval.ms", "1000");
+        // Offsets are committed explicitly after every batch has been handed to the input buffer and when partitions
+        // get revoked, so a rebalance doesn't lead to duplicated messages.
+        props.put("enable.auto.commit", "false");
         props.put(org.apache.kafka.clients.consumer.ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         props.put(org.apache.kafka.clients.consumer.ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
 
@@ -249,52 +262,75 @@ public class KafkaTransport extends ThrottleableTransport {
         IntStream.range(0, numThreads).forEach(i -> executor.submit(new ConsumerRunnable(props, input, i)));
     }
 
-    private class ConsumerRunnable implements Runnable {
-        private final Properties props;
-        private final MessageInput input;
+    private class ConsumerRunnable implements Runnable, ConsumerRebalanceListener {
+        private final int threadId;
         private final KafkaConsumer<byte[], byte[]> consumer;
+        private final KafkaRecordDispatcher dispatcher;
 
         public ConsumerRunnable(Properties props, MessageInput input, int threadId) {
-            this.input = input;
+            this.threadId = threadId;
             final Properties nprops = (Properties) props.clone();
             nprops.put("client.id", "gl2-" + nodeId + "-" + input.getId() + "-" + threadId);
-            this.props = nprops;
-            consumer = new KafkaConsumer<>(props);
+            consumer = new KafkaConsumer<>(nprops);
+            dispatcher = new KafkaRecordDispatcher(input, localRegistry, bytes -> {
+                totalBytesRead.addAndGet(bytes);
+                lastSecBytesReadTmp.addAndGet(bytes);
+            });
             //noinspection ConstantConditions
-            consumer.subscribe(Pattern.compile(configuration.getString(CK_TOPIC_FILTER)), new NoOpConsumerRebalanceListener());
+            consumer.subscribe(Pattern.compile(configuration.getString(CK_TOPIC_FILTER)), this);
         }
 
-        private void consumeRecords(ConsumerRecords<byte[], byte[]> consumerRecords) {
-            for (final ConsumerRecord<byte[], byte[]> record : consumerRecords) {
-                if (paused) {
-                    // we try not to spin here, so we wait until the lifecycle goes back to running.
-                    LOG.debug("Message processing is paused, blocking until message processing is turned back on.");
-                    Uninterruptibles.awaitUninterruptibly(pausedLatch);
-                }
-                // check for being stopped before actually getting the message, otherwise we could end up losing that message
-                if (stopped) {
-                    break;
-                }
-                if (isThrottled()) {
-                    blockUntilUnthrottled();
-                }
-
-                // process the message, this will immediately mark the message as having been processed. this gets tricky
-                // if we get an exception about processing it down below.
-                final byte[] bytes = record.value();
+        private boolean mayProcessRecords() {
+            if (paused) {
+                // we try not to spin here, so we wait until the lifecycle goes back to running.
+                LOG.debug("Message processing is paused, blocking until message processing is turned back on.");
+                Uninterruptibles.awaitUninterruptibly(pausedLatch);
+            }
+            // check for being stopped before handing over the records, otherwise we would commit their offsets
+            if (stopped) {
+                return false;
+            }
+            if (isThrottled()) {
+                blockUntilUnthrottled();
+            }
+            return true;
+        }
 
-                // it is possible that the message is null
-                if (bytes == null) {
-                    continue;
+        private void commitAsync() {
+            if (!dispatcher.hasUncommittedOffsets()) {
+                return;
+            }
+            consumer.commitAsync(dispatcher.offsetsToCommit(), (offsets, exception) -> {
+                if (exception != null) {
+                    // the next commit contains these offsets again
+                    LOG.warn("Unable to commit offsets {}", offsets, exception);
                 }
-                totalBytesRead.addAndGet(bytes.length);
-                lastSecBytesReadTmp.addAndGet(bytes.length);
+            });
+        }
 
-                final RawMessage rawMessage = new RawMessage(bytes);
-                input.processRawMessage(rawMessage);
+        private void commitSync() {
+            if (!dispatcher.hasUncommittedOffsets()) {
+                return;
+            }
+            try {
+                consumer.commitSync(dispatcher.offsetsToCommit());
+            } catch (KafkaException e) {
+                LOG.warn("Unable to commit offsets, messages might be consumed again.", e);
             }
         }
 
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            // commit everything which has been handed to the input buffer before another consumer takes over
+            commitSync();
+            dispatcher.revoke(partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            LOG.debug("Consumer thread {} has been assigned partitions {}", threadId, partitions);
+        }
+
         private Optional<ConsumerRecords<byte[], byte[]>> tryPoll() {
             try {
                 // Workaround https://issues.apache.org/jira/browse/KAFKA-4189 by calling wakeup()
@@ -311,6 +347,17 @@ public class KafkaTransport extends ThrottleableTransport {
             return Optional.empty();
         }
 
+        private void updateLag() {
+            for (Map.Entry<MetricName, ? extends Metric> entry : consumer.metrics().entrySet()) {
+                if ("records-lag-max".equals(entry.getKey().name())) {
+                    // the lag is not a finite number as long as nothing has been fetched
+                    final double lag = entry.getValue().value();
+                    consumerLag.put(threadId, Double.isFinite(lag) ? (long) lag : 0L);
+                    return;
+                }
+            }
+        }
+
         @Override
         public void run() {
             while (!stopped) {
@@ -328,16 +375,21 @@ public class KafkaTransport extends ThrottleableTransport {
                     break;
                 }
                 try {
-                    consumeRecords(consumerRecords.get());
+                    updateLag();
+                    if (!dispatcher.dispatch(consumerRecords.get(), this::mayProcessRecords)) {
+                        break;
+                    }
+                    commitAsync();
                 } catch (Exception e) {
                     LOG.error("Exception in consumer thread. Stopping input", e);
                     stopped = true;
                     break;
                 }
             }
-            // explicitly commit our offsets when stopping.
-            // this might trigger a couple of times, but it won't hurt
-            consumer.commitAsync();
+            // explicitly commit the offsets of all records which have been handed to the input buffer when stopping.
+            commitSync();
+            dispatcher.revokeAll();
+            consumerLag.remove(threadId);
             stopLatch.countDown();
             // TODO once we update our kafka client, we should call this with a timeout
             // Otherwise might hang if kafka is not available: https://issues.apache.org/jira/browse/KAFKA-3822
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Reads the receive queue size and the number of dropped datagrams of all UDP sockets bound to a local port from
+ * {@code /proc/net/udp} and {@code /proc/net/udp6}. This is only available on Linux.
+ * <p>
+ * The statistics of all sockets bound to the port are summed up, which includes every channel of an input using
+ * {@code SO_REUSEPORT}.
+ */
+class UdpSocketStatistics {
+    private static final Logger LOG = LoggerFactory.getLogger(UdpSocketStatistics.class);
+    private static final List<Path> PROC_FILES = ImmutableList.of(Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6"));
+    private static final Splitter FIELD_SPLITTER = Splitter.on(' ').omitEmptyStrings().trimResults();
+
+    private final Supplier<Statistics> statistics;
+
+    UdpSocketStatistics(int port) {
+        // all gauges are usually read at once, so only read the files once per second
+        this.statistics = Suppliers.memoizeWithExpiration(() -> read(port), 1, TimeUnit.SECONDS)::get;
+    }
+
+    static boolean isAvailable() {
+        return Files.isReadable(PROC_FILES.get(0));
+    }
+
+    /**
+     * Returns the number of bytes which have been received but not read by the application yet.
+     */
+    long receiveQueueBytes() {
+        return statistics.get().receiveQueueBytes;
+    }
+
+    /**
+     * Returns the number of datagrams the kernel has dropped, usually because the receive buffer was full.
+     */
+    long drops() {
+        return statistics.get().drops;
+    }
+
+    private static Statistics read(int port) {
+        long receiveQueueBytes = 0;
+        long drops = 0;
+        for (Path file : PROC_FILES) {
+            if (!Files.isReadable(file)) {
+                continue;
+            }
+            try {
+                final Statistics statistics = parse(Files.readAllLines(file, StandardCharsets.US_ASCII), port);
+                receiveQueueBytes += statistics.receiveQueueBytes;
+                drops += statistics.drops;
+            } catch (IOException e) {
+                LOG.debug("Unable to read UDP socket statistics from {}", file, e);
+            }
+        }
+        return new Statistics(receiveQueueBytes, drops);
+    }
+
+    /**
+     * Parses the lines of {@code /proc/net/udp}, for example:
+     * <pre>
+     * sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops
+     * 42: 00000000:0202 00000000:0000 07 00000000:00000300 00:00000000 00000000  1000        0 31337 2 0000000000000000 17
+     * </pre>
+     */
+    @VisibleForTesting
+    static Statistics parse(List<String> lines, int port) {
+        long receiveQueueBytes = 0;
+        long drops = 0;
+        for (String line : lines) {
+            final List<String> fields = FIELD_SPLITTER.splitToList(line);
+            if (fields.size() < 13 || "sl".equals(fields.get(0))) {
+                continue;
+            }
+            try {
+                final String localAddress = fields.get(1);
+                final int localPort = Integer.parseInt(localAddress.substring(localAddress.lastIndexOf(':') + 1), 16);
+                if (localPort != port) {
+                    continue;
+                }
+                final String queues = fields.get(4);
+                receiveQueueBytes += Long.parseLong(queues.substring(queues.indexOf(':') + 1), 16);
+                drops += Long.parseLong(fields.get(12));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                LOG.debug("Skipping invalid UDP socket statistics line: {}", line);
+            }
+        }
+        return new Statistics(receiveQueueBytes, drops);
+    }
+
+    @VisibleForTesting
+    static class Statistics {
+        final long receiveQueueBytes;
+        final long drops;
+
+        Statistics(long receiveQueueBytes, long drops) {
+            this.receiveQueueBytes = receiveQueueBytes;
+            this.drops = drops;
+        }
+    }
+}
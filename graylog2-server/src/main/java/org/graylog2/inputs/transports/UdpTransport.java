@@ -16,6 +16,7 @@
  */
 package org.graylog2.inputs.transports;
 
+import com.codahale.metrics.Gauge;
 import com.github.joschi.jadconfig.util.Size;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.primitives.Ints;
@@ -31,6 +32,7 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.FixedRecvByteBufAllocator;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.DatagramChannelConfig;
 import io.netty.channel.unix.UnixChannelOption;
 import io.netty.util.concurrent.GlobalEventExecutor;
@@ -43,6 +45,8 @@ import org.graylog2.inputs.transports.netty.NettyTransportType;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.NumberField;
 import org.graylog2.plugin.inputs.MessageInput;
 import org.graylog2.plugin.inputs.MisfireException;
 import org.graylog2.plugin.inputs.annotations.ConfigClass;
@@ -55,14 +59,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.LinkedHashMap;
 import java.util.concurrent.Callable;
 
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
 public class UdpTransport extends NettyTransport {
+    public static final String CK_BATCH_RECEIVE_DATAGRAMS = "batch_receive_datagrams";
+    public static final String CK_MAX_DATAGRAM_SIZE = "max_datagram_size";
     private static final Logger LOG = LoggerFactory.getLogger(UdpTransport.class);
+    private static final int DEFAULT_BATCH_RECEIVE_DATAGRAMS = 1;
+    private static final int DEFAULT_MAX_DATAGRAM_SIZE = 8192;
 
     private final NettyTransportConfiguration nettyTransportConfiguration;
+    private final int batchReceiveDatagrams;
+    private final int maxDatagramSize;
     private final ChannelGroup channels;
     private EventLoopGroup eventLoopGroup;
     private Bootstrap bootstrap;
@@ -76,6 +89,8 @@ public class UdpTransport extends NettyTransport {
         super(configuration, eventLoopGroupFactory, throughputCounter, localRegistry);
         this.nettyTransportConfiguration = nettyTransportConfiguration;
         this.channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        this.batchReceiveDatagrams = Math.max(1, configuration.getInt(CK_BATCH_RECEIVE_DATAGRAMS, DEFAULT_BATCH_RECEIVE_DATAGRAMS));
+        this.maxDatagramSize = Math.max(1, configuration.getInt(CK_MAX_DATAGRAM_SIZE, DEFAULT_MAX_DATAGRAM_SIZE));
     }
 
     @VisibleForTesting
@@ -85,14 +100,30 @@ public class UdpTransport extends NettyTransport {
 
         eventLoopGroup = eventLoopGroupFactory.create(workerThreads, localRegistry, "workers");
 
-        return new Bootstrap()
+        final Bootstrap bootstrap = new Bootstrap()
                 .group(eventLoopGroup)
                 .channelFactory(new DatagramChannelFactory(transportType))
-                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(getRecvBufferSize()))
                 .option(ChannelOption.SO_RCVBUF, getRecvBufferSize())
                 .option(UnixChannelOption.SO_REUSEPORT, true)
-                .handler(getChannelInitializer(getChannelHandlers(input)))
-                .validate();
+                .handler(getChannelInitializer(getChannelHandlers(input)));
+
+        if (isBatchReceiveEnabled(transportType)) {
+            // recvmmsg() splits every receive buffer into slots of the maximum datagram size
+            LOG.debug("Receiving up to {} datagrams of at most {} bytes with a single system call", batchReceiveDatagrams, maxDatagramSize);
+            bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(Ints.saturatedCast((long) batchReceiveDatagrams * maxDatagramSize)))
+                    .option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, maxDatagramSize);
+        } else {
+            if (batchReceiveDatagrams > 1) {
+                LOG.warn("Receiving datagrams in batches is only supported by the epoll transport, not by {}. Receiving one datagram at a time.", transportType);
+            }
+            bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(getRecvBufferSize()));
+        }
+
+        return bootstrap.validate();
+    }
+
+    private boolean isBatchReceiveEnabled(NettyTransportType transportType) {
+        return batchReceiveDatagrams > 1 && transportType == NettyTransportType.EPOLL;
     }
 
     @Override
@@ -131,12 +162,23 @@ public class UdpTransport extends NettyTransport {
                         .addListener(new InputLaunchListener(channels, input, getRecvBufferSize()))
                         .syncUninterruptibly();
             }
+            registerSocketStatistics();
         } catch (Exception e) {
             throw new MisfireException(e);
         }
     }
 
 
+    private void registerSocketStatistics() {
+        final SocketAddress localAddress = getLocalAddress();
+        if (!UdpSocketStatistics.isAvailable() || !(localAddress instanceof InetSocketAddress)) {
+            return;
+        }
+        final UdpSocketStatistics statistics = new UdpSocketStatistics(((InetSocketAddress) localAddress).getPort());
+        safelyRegister(localRegistry, "udp_receive_queue_bytes", (Gauge<Long>) statistics::receiveQueueBytes);
+        safelyRegister(localRegistry, "udp_drops", (Gauge<Long>) statistics::drops);
+    }
+
     @Override
     public void stop() {
         if (channels != null) {
@@ -176,6 +218,20 @@ public class UdpTransport extends NettyTransport {
 
             final int recvBufferSize = Ints.saturatedCast(Size.kilobytes(256L).toBytes());
             r.addField(ConfigurationRequest.Templates.recvBufferSize(CK_RECV_BUFFER_SIZE, recvBufferSize));
+            r.addField(new NumberField(
+                    CK_BATCH_RECEIVE_DATAGRAMS,
+                    "Datagrams per receive call",
+                    DEFAULT_BATCH_RECEIVE_DATAGRAMS,
+                    "Number of datagrams received with a single system call (recvmmsg). Only supported by the epoll transport, 1 disables receiving in batches.",
+                    ConfigurationField.Optional.OPTIONAL,
+                    NumberField.Attribute.ONLY_POSITIVE));
+            r.addField(new NumberField(
+                    CK_MAX_DATAGRAM_SIZE,
+                    "Maximum datagram size",
+                    DEFAULT_MAX_DATAGRAM_SIZE,
+                    "Maximum size of a datagram in bytes when receiving datagrams in batches. Larger datagrams are truncated.",
+                    ConfigurationField.Optional.OPTIONAL,
+                    NumberField.Attribute.ONLY_POSITIVE));
 
             return r;
         }
@@ -27,11 +27,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 public class EnvelopeMessageHandler extends SimpleChannelInboundHandler<AddressedEnvelope<ByteBuf, InetSocketAddress>> {
     private static final Logger LOG = LoggerFactory.getLogger(NettyTransport.class);
 
     private final MessageInput input;
+    // messages of the current read cycle, the handler is only used by the event loop of its channel
+    private List<RawMessage> pendingMessages = new ArrayList<>();
 
     public EnvelopeMessageHandler(MessageInput input) {
         this.input = input;
@@ -43,7 +47,28 @@ public class EnvelopeMessageHandler extends SimpleChannelInboundHandler<Addresse
         final byte[] bytes = new byte[msg.readableBytes()];
         msg.readBytes(bytes);
         final RawMessage raw = new RawMessage(bytes, envelope.sender());
-        input.processRawMessage(raw);
+        pendingMessages.add(raw);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        flushPendingMessages();
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        flushPendingMessages();
+        super.channelInactive(ctx);
+    }
+
+    private void flushPendingMessages() {
+        if (pendingMessages.isEmpty()) {
+            return;
+        }
+        final List<RawMessage> messages = pendingMessages;
+        pendingMessages = new ArrayList<>();
+        input.processRawMessages(messages);
     }
 
     @Override
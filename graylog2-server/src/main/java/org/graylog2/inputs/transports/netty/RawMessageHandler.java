@@ -26,11 +26,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 public class RawMessageHandler extends SimpleChannelInboundHandler<ByteBuf> {
     private static final Logger LOG = LoggerFactory.getLogger(NettyTransport.class);
 
     private final MessageInput input;
+    // messages of the current read cycle, the handler is only used by the event loop of its channel
+    private List<RawMessage> pendingMessages = new ArrayList<>();
 
     public RawMessageHandler(MessageInput input) {
         this.input = input;
@@ -41,7 +45,28 @@ public class RawMessageHandler extends SimpleChannelInboundHandler<ByteBuf> {
         final byte[] bytes = new byte[msg.readableBytes()];
         msg.readBytes(bytes);
         final RawMessage raw = new RawMessage(bytes, (InetSocketAddress) ctx.channel().remoteAddress());
-        input.processRawMessage(raw);
+        pendingMessages.add(raw);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        flushPendingMessages();
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        flushPendingMessages();
+        super.channelInactive(ctx);
+    }
+
+    private void flushPendingMessages() {
+        if (pendingMessages.isEmpty()) {
+            return;
+        }
+        final List<RawMessage> messages = pendingMessages;
+        pendingMessages = new ArrayList<>();
+        input.processRawMessages(messages);
     }
 
     @Override
@@ -27,6 +27,7 @@ import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.messages.Messages;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.outputs.BatchMessageOutput;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.journal.Journal;
 import org.slf4j.Logger;
@@ -43,7 +44,7 @@ import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 // Singleton class
-public class BlockingBatchedESOutput extends ElasticSearchOutput {
+public class BlockingBatchedESOutput extends ElasticSearchOutput implements BatchMessageOutput {
     private static final Logger log = LoggerFactory.getLogger(BlockingBatchedESOutput.class);
     private final int maxBufferSize;
     private final Timer processTime;
@@ -105,12 +106,31 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
         }
         // if the current thread found it had to flush any messages, it does so but blocks.
         // this ensures we don't flush more than 'processorCount' in parallel.
-        // TODO this will still be time limited by the OutputBufferProcessor and thus be called more often than it should
         if (flushBatch != null) {
             flush(flushBatch);
         }
     }
 
+    @Override
+    public void write(List<Message> messages) throws Exception {
+        final List<List<Map.Entry<IndexSet, Message>>> flushBatches = new ArrayList<>(1);
+        synchronized (this) {
+            for (Message message : messages) {
+                for (IndexSet indexSet : message.getIndexSets()) {
+                    buffer.add(Maps.immutableEntry(indexSet, message));
+
+                    if (buffer.size() >= maxBufferSize) {
+                        flushBatches.add(buffer);
+                        buffer = new ArrayList<>(maxBufferSize);
+                    }
+                }
+            }
+        }
+        for (List<Map.Entry<IndexSet, Message>> flushBatch : flushBatches) {
+            flush(flushBatch);
+        }
+    }
+
     private void flush(List<Map.Entry<IndexSet, Message>> messages) {
         // never try to flush an empty buffer
         if (messages.isEmpty()) {
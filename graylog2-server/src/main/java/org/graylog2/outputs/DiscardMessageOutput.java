@@ -23,6 +23,7 @@ import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.outputs.BatchMessageOutput;
 import org.graylog2.plugin.outputs.MessageOutput;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.journal.Journal;
@@ -33,7 +34,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
-public class DiscardMessageOutput implements MessageOutput {
+public class DiscardMessageOutput implements BatchMessageOutput {
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
     private final Journal journal;
     private final Meter messagesDiscarded;
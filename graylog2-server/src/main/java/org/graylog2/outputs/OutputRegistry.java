@@ -162,6 +162,19 @@ public class OutputRegistry {
                 .build();
     }
 
+    /**
+     * Returns the ID of the given running stream output or {@code null} if it is not a running stream output.
+     */
+    @Nullable
+    public String getOutputId(MessageOutput messageOutput) {
+        for (Map.Entry<String, MessageOutput> entry : runningMessageOutputs.asMap().entrySet()) {
+            if (entry.getValue() == messageOutput) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
     public void removeOutput(Output output) {
         final MessageOutput messageOutput = runningMessageOutputs.getIfPresent(output.getId());
         if (messageOutput != null) {
@@ -38,14 +38,18 @@ public class OutputRouter {
 
     protected Set<MessageOutput> getMessageOutputsForStream(Stream stream) {
         Set<MessageOutput> result = new HashSet<>();
+        addMessageOutputsForStream(stream, result);
+
+        return result;
+    }
+
+    private void addMessageOutputsForStream(Stream stream, Set<MessageOutput> result) {
         for (Output output : stream.getOutputs()) {
             final MessageOutput messageOutput = outputRegistry.getOutputForIdAndStream(output.getId(), stream);
             if (messageOutput != null) {
                 result.add(messageOutput);
             }
         }
-
-        return result;
     }
 
     public Set<MessageOutput> getOutputsForMessage(final Message msg) {
@@ -64,4 +68,14 @@ public class OutputRouter {
 
         return result;
     }
+
+    /**
+     * Adds the stream outputs of the given message to an existing set, so callers can reuse the set across messages
+     * instead of allocating new sets for every message and stream.
+     */
+    public void addStreamOutputsForMessage(final Message msg, final Set<MessageOutput> result) {
+        for (Stream stream : msg.getStreams()) {
+            addMessageOutputsForStream(stream, result);
+        }
+    }
 }
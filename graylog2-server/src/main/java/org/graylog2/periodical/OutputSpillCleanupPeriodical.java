@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.periodical;
+
+import org.graylog2.buffers.processors.OutputBatchDispatcher;
+import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.plugin.streams.Output;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.OutputService;
+import org.graylog2.streams.StreamService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link Periodical} to remove the spilled messages of deleted stream outputs from the local disk and to replay the
+ * spilled messages of outputs which haven't been started since the server was restarted.
+ */
+public class OutputSpillCleanupPeriodical extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(OutputSpillCleanupPeriodical.class);
+
+    private final OutputService outputService;
+    private final StreamService streamService;
+    private final OutputBatchDispatcher outputBatchDispatcher;
+
+    @Inject
+    public OutputSpillCleanupPeriodical(OutputService outputService,
+                                        StreamService streamService,
+                                        OutputBatchDispatcher outputBatchDispatcher) {
+        this.outputService = outputService;
+        this.streamService = streamService;
+        this.outputBatchDispatcher = outputBatchDispatcher;
+    }
+
+    @Override
+    public void doRun() {
+        final Set<String> outputIds = outputService.loadAll().stream()
+                .map(Output::getId)
+                .collect(Collectors.toSet());
+        outputBatchDispatcher.removeSpillDirectories(outputIds);
+
+        final Map<String, Stream> streamsByOutputId = new HashMap<>();
+        for (Stream stream : streamService.loadAllEnabled()) {
+            for (Output output : stream.getOutputs()) {
+                streamsByOutputId.putIfAbsent(output.getId(), stream);
+            }
+        }
+        outputBatchDispatcher.replaySpilledBatches(streamsByOutputId);
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return true;
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 30;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return (int) TimeUnit.MINUTES.toSeconds(10);
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+}
@@ -28,6 +28,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.common.net.InetAddresses;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.messages.Indexable;
@@ -40,6 +41,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -102,6 +104,14 @@ public class Message implements Messages, Indexable {
      */
     public static final String FIELD_GL2_ACCOUNTED_MESSAGE_SIZE = "gl2_accounted_message_size";
 
+    /**
+     * Will be set to a number which is derived from the message ID and uniformly distributed in
+     * {@code [0, SAMPLE_KEY_RANGE)}. A range query on this field matches a random sample of the messages.
+     */
+    public static final String FIELD_GL2_SAMPLE_KEY = "gl2_sample_key";
+
+    public static final int SAMPLE_KEY_RANGE = 1_000_000;
+
     /**
      * This is the message ID. It will be set to a {@link de.huxhorn.sulky.ulid.ULID} during processing.
      * <p></p>
@@ -195,6 +205,7 @@ public class Message implements Messages, Indexable {
 
     private static final ImmutableSet<String> GRAYLOG_FIELDS = ImmutableSet.of(
         FIELD_GL2_ACCOUNTED_MESSAGE_SIZE,
+        FIELD_GL2_SAMPLE_KEY,
         FIELD_GL2_ORIGINAL_TIMESTAMP,
         FIELD_GL2_PROCESSING_ERROR,
         FIELD_GL2_PROCESSING_TIMESTAMP,
@@ -408,6 +419,7 @@ public class Message implements Messages, Indexable {
         obj.put(FIELD_SOURCE, getSource());
         obj.put(FIELD_STREAMS, getStreamIds());
         obj.put(FIELD_GL2_ACCOUNTED_MESSAGE_SIZE, getSize());
+        obj.put(FIELD_GL2_SAMPLE_KEY, sampleKey(getId()));
 
         final Object timestampValue = getField(FIELD_TIMESTAMP);
         DateTime dateTime;
@@ -602,6 +614,13 @@ public class Message implements Messages, Indexable {
         return sizeCounter.getCount();
     }
 
+    /**
+     * Returns the sample key of the message with the given ID, see {@link #FIELD_GL2_SAMPLE_KEY}.
+     */
+    public static int sampleKey(String messageId) {
+        return Math.floorMod(Hashing.murmur3_32().hashString(messageId, StandardCharsets.UTF_8).asInt(), SAMPLE_KEY_RANGE);
+    }
+
     public static boolean validKey(final String key) {
         return VALID_KEY_CHARS.matcher(key).matches();
     }
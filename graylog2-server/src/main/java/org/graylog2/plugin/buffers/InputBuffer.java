@@ -18,8 +18,22 @@ package org.graylog2.plugin.buffers;
 
 import org.graylog2.plugin.journal.RawMessage;
 
+import java.util.List;
+
 public interface InputBuffer {
     void insert(RawMessage message);
 
+    /**
+     * Inserts the given messages in order. Implementations should claim the space for all messages at once instead
+     * of inserting them one by one.
+     *
+     * @param messages the messages to insert
+     */
+    default void insertBatch(List<RawMessage> messages) {
+        for (final RawMessage message : messages) {
+            insert(message);
+        }
+    }
+
     long getUsage();
 }
@@ -35,6 +35,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -181,6 +182,19 @@ public abstract class Extractor implements EmbeddedPersistable {
     }
 
     public void runExtractor(Message msg) {
+        runExtractor(msg, this::matchesCondition);
+    }
+
+    /**
+     * Runs the extractor on the given message, using {@code condition} instead of {@link #matchesCondition(String)} to
+     * decide whether to extract at all. This allows sharing the condition result between extractors with the same
+     * source field and condition.
+     *
+     * @param msg       the message to run the extractor on
+     * @param condition evaluates the extractor condition on the current value of the source field, it is not
+     *                  called if the extractor has no condition
+     */
+    public void runExtractor(Message msg, Predicate<String> condition) {
         try(final Timer.Context ignored = completeTimer.time()) {
             final String field;
             try (final Timer.Context ignored2 = conditionTimer.time()) {
@@ -193,15 +207,8 @@ public abstract class Extractor implements EmbeddedPersistable {
                 field = (String) msg.getField(sourceField);
 
                 // Decide if to extract at all.
-                if (conditionType.equals(ConditionType.STRING)) {
-                    if (field.contains(conditionValue)) {
-                        conditionHitsCounter.inc();
-                    } else {
-                        conditionMissesCounter.inc();
-                        return;
-                    }
-                } else if (conditionType.equals(ConditionType.REGEX)) {
-                    if (regexConditionPattern.matcher(field).find()) {
+                if (!conditionType.equals(ConditionType.NONE)) {
+                    if (condition.test(field)) {
                         conditionHitsCounter.inc();
                     } else {
                         conditionMissesCounter.inc();
@@ -249,6 +256,23 @@ public abstract class Extractor implements EmbeddedPersistable {
         }
     }
 
+    /**
+     * Checks if the given value of the source field fulfills the extractor condition.
+     *
+     * @param field the value of the source field
+     * @return {@code true} if the extractor should run on the value, {@code false} otherwise
+     */
+    public boolean matchesCondition(String field) {
+        switch (conditionType) {
+            case STRING:
+                return field.contains(conditionValue);
+            case REGEX:
+                return regexConditionPattern.matcher(field).find();
+            default:
+                return true;
+        }
+    }
+
     private void runConverters(Message msg) {
         try(final Timer.Context ignored = converterTimer.time()) {
             for (Converter converter : converters) {
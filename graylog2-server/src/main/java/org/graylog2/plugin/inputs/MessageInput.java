@@ -40,7 +40,10 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public abstract class MessageInput implements Stoppable {
@@ -332,20 +335,11 @@ public abstract class MessageInput implements Stoppable {
     public void processRawMessage(RawMessage rawMessage) {
         final int payloadLength = rawMessage.getPayload().length;
         if (payloadLength == 0) {
-            LOG.debug("Discarding empty message {} from input [{}/{}] (remote address {}). Turn logger org.graylog2.plugin.journal.RawMessage to TRACE to see originating stack trace.",
-                      rawMessage.getId(),
-                      getTitle(),
-                      getId(),
-                      rawMessage.getRemoteAddress() == null ? "unknown" : rawMessage.getRemoteAddress());
-            emptyMessages.inc();
+            discardEmptyMessage(rawMessage);
             return;
         }
 
-        // add the common message metadata for this input/codec
-        rawMessage.setCodecName(codec.getName());
-        rawMessage.setCodecConfig(codecConfig);
-        rawMessage.addSourceNode(getId(), serverStatus.getNodeId());
-
+        addMessageMetadata(rawMessage);
         inputBuffer.insert(rawMessage);
 
         incomingMessages.mark();
@@ -354,6 +348,54 @@ public abstract class MessageInput implements Stoppable {
         globalRawSize.inc(payloadLength);
     }
 
+    /**
+     * Processes a batch of raw messages, keeping their order. Empty messages are discarded.
+     *
+     * @param rawMessages the raw messages to process
+     */
+    public void processRawMessages(Collection<RawMessage> rawMessages) {
+        final List<RawMessage> batch = new ArrayList<>(rawMessages.size());
+        long totalLength = 0;
+        for (final RawMessage rawMessage : rawMessages) {
+            final int payloadLength = rawMessage.getPayload().length;
+            if (payloadLength == 0) {
+                discardEmptyMessage(rawMessage);
+                continue;
+            }
+
+            addMessageMetadata(rawMessage);
+            batch.add(rawMessage);
+            totalLength += payloadLength;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        inputBuffer.insertBatch(batch);
+
+        final int count = batch.size();
+        incomingMessages.mark(count);
+        globalIncomingMessages.inc(count);
+        rawSize.mark(totalLength);
+        globalRawSize.inc(totalLength);
+    }
+
+    private void addMessageMetadata(RawMessage rawMessage) {
+        // add the common message metadata for this input/codec
+        rawMessage.setCodecName(codec.getName());
+        rawMessage.setCodecConfig(codecConfig);
+        rawMessage.addSourceNode(getId(), serverStatus.getNodeId());
+    }
+
+    private void discardEmptyMessage(RawMessage rawMessage) {
+        LOG.debug("Discarding empty message {} from input [{}/{}] (remote address {}). Turn logger org.graylog2.plugin.journal.RawMessage to TRACE to see originating stack trace.",
+                  rawMessage.getId(),
+                  getTitle(),
+                  getId(),
+                  rawMessage.getRemoteAddress() == null ? "unknown" : rawMessage.getRemoteAddress());
+        emptyMessages.inc();
+    }
+
     public String getType() {
         return this.getClass().getCanonicalName();
     }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin.journal;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+import org.graylog2.plugin.configuration.Configuration;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Dictionary of the codec configurations written to and read from the journal.
+ * <p>
+ * All messages of an input share the same codec configuration, so it is serialized once per configuration instead
+ * of once per message. When reading messages, configurations with the same serialized form are deserialized once
+ * and the resulting {@link Configuration} instance is shared by all of them, which allows to cache objects created
+ * from the configuration, like codecs, by configuration identity.
+ */
+final class CodecConfigDictionary {
+    private static final String EMPTY = "";
+    private static final int MAX_DESERIALIZED_CONFIGS = 1000;
+
+    // weak keys are compared by identity, the configuration of a running input never changes
+    private static final Cache<Configuration, String> SERIALIZED = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private static final Cache<ByteString, Configuration> DESERIALIZED = CacheBuilder.newBuilder()
+            .maximumSize(MAX_DESERIALIZED_CONFIGS)
+            .build();
+
+    private CodecConfigDictionary() {
+    }
+
+    @Nullable
+    static String serialize(Configuration configuration) {
+        try {
+            final String json = SERIALIZED.get(configuration, () -> {
+                final String serialized = configuration.serializeToJson();
+                return serialized == null ? EMPTY : serialized;
+            });
+            return json.isEmpty() ? null : json;
+        } catch (ExecutionException e) {
+            return configuration.serializeToJson();
+        }
+    }
+
+    static Configuration deserialize(ByteString json) {
+        if (json.isEmpty()) {
+            return Configuration.EMPTY_CONFIGURATION;
+        }
+        try {
+            return DESERIALIZED.get(json, () -> Configuration.deserializeFromJson(json.toStringUtf8()));
+        } catch (ExecutionException e) {
+            return Configuration.deserializeFromJson(json.toStringUtf8());
+        }
+    }
+}
@@ -124,7 +124,7 @@ public class RawMessage implements Serializable {
         this.journalOffset = journalOffset;
         id = new UUID(journalMessage.getUuidTime(), journalMessage.getUuidClockseq());
         msgBuilder = JournalMessage.newBuilder(journalMessage);
-        codecConfig = Configuration.deserializeFromJson(journalMessage.getCodec().getConfig());
+        codecConfig = CodecConfigDictionary.deserialize(journalMessage.getCodec().getConfigBytes());
     }
 
     @Nullable
@@ -146,7 +146,7 @@ public class RawMessage implements Serializable {
             final JournalMessages.CodecInfo codec = msgBuilder.getCodec();
             final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec);
 
-            final String codecConfigJson = codecConfig.serializeToJson();
+            final String codecConfigJson = CodecConfigDictionary.serialize(codecConfig);
             if (codecConfigJson != null) {
                 builder.setConfig(codecConfigJson);
             }
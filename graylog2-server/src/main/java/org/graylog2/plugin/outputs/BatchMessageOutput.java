@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin.outputs;
+
+import org.graylog2.plugin.Message;
+
+import java.util.List;
+
+/**
+ * Marks outputs which write every message of a batch in {@link #write(List)}.
+ * <p>
+ * The output buffer hands batches of messages to outputs which implement this interface. All other outputs are
+ * written one message at a time with {@link #write(Message)}, because many of them don't implement batch writes.
+ */
+public interface BatchMessageOutput extends MessageOutput {
+}
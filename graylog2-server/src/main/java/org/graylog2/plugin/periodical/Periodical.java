@@ -30,7 +30,7 @@ public abstract class Periodical implements Runnable {
 
     /**
      * Should this thread be stopped when a graceful shutdown is in progress?
-     * This means that stop() is called and that is no longer triggered periodically.
+     * This means that {@link #onShutdown()} is called and that is no longer triggered periodically.
      *
      * @return
      */
@@ -71,6 +71,12 @@ public abstract class Periodical implements Runnable {
     public void initialize() {
     }
 
+    /**
+     * Called when this periodical is stopped on a graceful shutdown, see {@link #stopOnGracefulShutdown()}.
+     */
+    public void onShutdown() {
+    }
+
     @Override
     public void run() {
         try {
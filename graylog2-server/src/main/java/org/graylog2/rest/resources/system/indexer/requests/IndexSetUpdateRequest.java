@@ -22,6 +22,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.auto.value.AutoValue;
 import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.indexer.rollup.RollupConfig;
 import org.graylog2.plugin.indexer.retention.RetentionStrategyConfig;
 import org.graylog2.plugin.indexer.rotation.RotationStrategyConfig;
 import org.joda.time.Duration;
@@ -80,6 +81,10 @@ public abstract class IndexSetUpdateRequest {
     @JsonProperty("field_type_refresh_interval")
     public abstract Duration fieldTypeRefreshInterval();
 
+    @JsonProperty("rollup")
+    @Nullable
+    public abstract RollupConfig rollup();
+
     @JsonCreator
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static IndexSetUpdateRequest create(@JsonProperty("title") @NotBlank String title,
@@ -93,10 +98,11 @@ public abstract class IndexSetUpdateRequest {
                                                @JsonProperty("retention_strategy") @NotNull RetentionStrategyConfig retentionStrategy,
                                                @JsonProperty("index_optimization_max_num_segments") @Min(1L) int indexOptimizationMaxNumSegments,
                                                @JsonProperty("index_optimization_disabled") boolean indexOptimizationDisabled,
-                                               @JsonProperty("field_type_refresh_interval") Duration fieldTypeRefreshInterval) {
+                                               @JsonProperty("field_type_refresh_interval") Duration fieldTypeRefreshInterval,
+                                               @JsonProperty("rollup") @Nullable RollupConfig rollup) {
         return new AutoValue_IndexSetUpdateRequest(title, description, isWritable, shards, replicas,
                 rotationStrategyClass, rotationStrategy, retentionStrategyClass, retentionStrategy,
-                indexOptimizationMaxNumSegments, indexOptimizationDisabled, fieldTypeRefreshInterval);
+                indexOptimizationMaxNumSegments, indexOptimizationDisabled, fieldTypeRefreshInterval, rollup);
     }
 
     public static IndexSetUpdateRequest fromIndexSetConfig(IndexSetConfig indexSet) {
@@ -112,7 +118,8 @@ public abstract class IndexSetUpdateRequest {
                 indexSet.retentionStrategy(),
                 indexSet.indexOptimizationMaxNumSegments(),
                 indexSet.indexOptimizationDisabled(),
-                indexSet.fieldTypeRefreshInterval());
+                indexSet.fieldTypeRefreshInterval(),
+                indexSet.rollup());
 
     }
 
@@ -138,6 +145,7 @@ public abstract class IndexSetUpdateRequest {
                 .indexOptimizationMaxNumSegments(indexOptimizationMaxNumSegments())
                 .indexOptimizationDisabled(indexOptimizationDisabled())
                 .fieldTypeRefreshInterval(fieldTypeRefreshInterval())
+                .rollup(rollup())
                 .build();
     }
 }
@@ -22,6 +22,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.auto.value.AutoValue;
 import org.graylog.autovalue.WithBeanGetter;
 import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.indexer.rollup.RollupConfig;
 import org.graylog2.plugin.indexer.retention.RetentionStrategyConfig;
 import org.graylog2.plugin.indexer.rotation.RotationStrategyConfig;
 import org.joda.time.Duration;
@@ -105,6 +106,10 @@ public abstract class IndexSetSummary {
     @JsonProperty("index_template_type")
     public abstract Optional<IndexSetConfig.TemplateType> templateType();
 
+    @JsonProperty("rollup")
+    @Nullable
+    public abstract RollupConfig rollup();
+
     @JsonCreator
     public static IndexSetSummary create(@JsonProperty("id") @Nullable String id,
                                          @JsonProperty("title") @NotBlank String title,
@@ -123,11 +128,12 @@ public abstract class IndexSetSummary {
                                          @JsonProperty("index_optimization_max_num_segments") @Min(1L) int indexOptimizationMaxNumSegments,
                                          @JsonProperty("index_optimization_disabled") boolean indexOptimizationDisabled,
                                          @JsonProperty("field_type_refresh_interval") Duration fieldTypeRefreshInterval,
-                                         @JsonProperty("index_template_type") @Nullable IndexSetConfig.TemplateType templateType) {
+                                         @JsonProperty("index_template_type") @Nullable IndexSetConfig.TemplateType templateType,
+                                         @JsonProperty("rollup") @Nullable RollupConfig rollup) {
         return new AutoValue_IndexSetSummary(id, title, description, isDefault, isWritable, indexPrefix, shards, replicas,
                 rotationStrategyClass, rotationStrategy, retentionStrategyClass, retentionStrategy, creationDate,
                 indexAnalyzer, indexOptimizationMaxNumSegments, indexOptimizationDisabled, fieldTypeRefreshInterval,
-                Optional.ofNullable(templateType));
+                Optional.ofNullable(templateType), rollup);
     }
 
     public static IndexSetSummary fromIndexSetConfig(IndexSetConfig indexSet, boolean isDefault) {
@@ -149,7 +155,8 @@ public abstract class IndexSetSummary {
                 indexSet.indexOptimizationMaxNumSegments(),
                 indexSet.indexOptimizationDisabled(),
                 indexSet.fieldTypeRefreshInterval(),
-                indexSet.indexTemplateType().orElse(null));
+                indexSet.indexTemplateType().orElse(null),
+                indexSet.rollup());
 
     }
 
@@ -171,7 +178,8 @@ public abstract class IndexSetSummary {
                 .indexTemplateName(indexPrefix() + "-template")
                 .indexOptimizationMaxNumSegments(indexOptimizationMaxNumSegments())
                 .indexOptimizationDisabled(indexOptimizationDisabled())
-                .fieldTypeRefreshInterval(fieldTypeRefreshInterval());
+                .fieldTypeRefreshInterval(fieldTypeRefreshInterval())
+                .rollup(rollup());
 
         final IndexSetConfig.Builder builderWithTemplateType = templateType().map(builder::indexTemplateType).orElse(builder);
         return builderWithTemplateType.build();
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.security.realm;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.RolePermissionResolver;
+import org.graylog.security.permissions.CompiledPermissions;
+
+import javax.annotation.Nullable;
+
+/**
+ * Authorization info which compiles its permissions, including the ones of its roles, on first use. It is cached
+ * together with the authorization info, so the permissions are compiled once per cached principal.
+ */
+class CompiledAuthorizationInfo extends SimpleAuthorizationInfo {
+    private volatile CompiledPermissions compiledPermissions;
+
+    CompiledPermissions compiledPermissions(@Nullable RolePermissionResolver rolePermissionResolver) {
+        CompiledPermissions permissions = compiledPermissions;
+        if (permissions == null) {
+            permissions = compile(rolePermissionResolver);
+            compiledPermissions = permissions;
+        }
+        return permissions;
+    }
+
+    private CompiledPermissions compile(@Nullable RolePermissionResolver rolePermissionResolver) {
+        final ImmutableSet.Builder<Permission> permissions = ImmutableSet.builder();
+        if (getObjectPermissions() != null) {
+            permissions.addAll(getObjectPermissions());
+        }
+        if (rolePermissionResolver != null && getRoles() != null) {
+            for (String role : getRoles()) {
+                permissions.addAll(rolePermissionResolver.resolvePermissionsInRole(role));
+            }
+        }
+        return CompiledPermissions.compile(permissions.build());
+    }
+}
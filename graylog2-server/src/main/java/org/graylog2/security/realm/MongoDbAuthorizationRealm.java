@@ -32,11 +32,14 @@ import org.graylog.grn.GRN;
 import org.graylog.grn.GRNRegistry;
 import org.graylog.grn.GRNTypes;
 import org.graylog.security.PermissionAndRoleResolver;
+import org.graylog.security.events.EntitySharesUpdateEvent;
+import org.graylog.security.events.GrantsChangedEvent;
 import org.graylog2.plugin.database.users.User;
 import org.graylog2.security.MongoDbAuthorizationCacheManager;
-import org.graylog2.shared.security.ShiroRequestHeadersBinder;
 import org.graylog2.shared.users.UserService;
+import org.graylog2.users.events.RoleChangedEvent;
 import org.graylog2.users.events.UserChangedEvent;
+import org.graylog2.users.events.UserDeletedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,7 +48,6 @@ import java.util.Optional;
 import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
-import static org.graylog2.shared.rest.RequestIdFilter.X_REQUEST_ID;
 
 public class MongoDbAuthorizationRealm extends AuthorizingRealm {
 
@@ -71,12 +73,8 @@ public class MongoDbAuthorizationRealm extends AuthorizingRealm {
 
     @Override
     protected Object getAuthorizationCacheKey(PrincipalCollection principals) {
-        final Optional<String> requestId = ShiroRequestHeadersBinder.getHeaderFromThreadContext(X_REQUEST_ID);
-
-        if (requestId.isPresent()) {
-            return ImmutableSet.builder().addAll(principals).add(requestId.get()).build();
-        }
-        LOG.warn("Could not find X-Request-Id header. This is not supposed to happen.");
+        // The authorization info is cached per principal across requests. The cache is cleared whenever users, roles,
+        // shares or grants change on this node, changes on other nodes are picked up once the cache entry expires.
         return principals.asSet();
     }
 
@@ -112,7 +110,7 @@ public class MongoDbAuthorizationRealm extends AuthorizingRealm {
             }
         }
 
-        final SimpleAuthorizationInfo info = new SimpleAuthorizationInfo();
+        final CompiledAuthorizationInfo info = new CompiledAuthorizationInfo();
         info.setObjectPermissions(permissionsBuilder.build());
         info.setRoles(rolesBuilder.build());
 
@@ -124,6 +122,14 @@ public class MongoDbAuthorizationRealm extends AuthorizingRealm {
         return info;
     }
 
+    @Override
+    protected boolean isPermitted(Permission permission, AuthorizationInfo info) {
+        if (info instanceof CompiledAuthorizationInfo) {
+            return ((CompiledAuthorizationInfo) info).compiledPermissions(getRolePermissionResolver()).implies(permission);
+        }
+        return super.isPermitted(permission, info);
+    }
+
     private Optional<GRN> getUserPrincipal(PrincipalCollection principals) {
         final String userId = Iterables.getFirst(principals.byType(String.class), null);
         if (isBlank(userId)) {
@@ -156,4 +162,24 @@ public class MongoDbAuthorizationRealm extends AuthorizingRealm {
     public void handleUserSave(UserChangedEvent event) {
         getAuthorizationCache().clear();
     }
+
+    @Subscribe
+    public void handleUserDelete(UserDeletedEvent event) {
+        getAuthorizationCache().clear();
+    }
+
+    @Subscribe
+    public void handleSharesUpdate(EntitySharesUpdateEvent event) {
+        getAuthorizationCache().clear();
+    }
+
+    @Subscribe
+    public void handleGrantsChange(GrantsChangedEvent event) {
+        getAuthorizationCache().clear();
+    }
+
+    @Subscribe
+    public void handleRoleChange(RoleChangedEvent event) {
+        getAuthorizationCache().clear();
+    }
 }
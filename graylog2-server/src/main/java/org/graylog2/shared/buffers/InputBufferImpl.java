@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -103,6 +104,25 @@ public class InputBufferImpl implements InputBuffer {
         incomingMessages.mark();
     }
 
+    @Override
+    public void insertBatch(List<RawMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        // claim at most the whole ring at once, next(n) blocks until enough slots are free
+        final int bufferSize = ringBuffer.getBufferSize();
+        for (int offset = 0; offset < messages.size(); offset += bufferSize) {
+            final int length = Math.min(bufferSize, messages.size() - offset);
+            final long hi = ringBuffer.next(length);
+            final long lo = hi - (length - 1);
+            for (long sequence = lo; sequence <= hi; sequence++) {
+                ringBuffer.get(sequence).setRawMessage(messages.get(offset + (int) (sequence - lo)));
+            }
+            ringBuffer.publish(lo, hi);
+        }
+        incomingMessages.mark(messages.size());
+    }
+
     @Override
     public long getUsage() {
         return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
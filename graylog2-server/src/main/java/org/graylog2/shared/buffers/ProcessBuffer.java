@@ -40,6 +40,7 @@ import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -111,6 +112,26 @@ public class ProcessBuffer extends Buffer {
         afterInsert(1);
     }
 
+    /**
+     * Inserts the given raw messages in order, claiming the ring buffer slots for all of them at once. Blocks until
+     * there is enough space in the ring buffer.
+     */
+    public void insertBatch(@Nonnull List<RawMessage> rawMessages) {
+        if (rawMessages.isEmpty()) {
+            return;
+        }
+        for (int offset = 0; offset < rawMessages.size(); offset += ringBufferSize) {
+            final int length = Math.min(ringBufferSize, rawMessages.size() - offset);
+            final long hi = ringBuffer.next(length);
+            final long lo = hi - (length - 1);
+            for (long sequence = lo; sequence <= hi; sequence++) {
+                ringBuffer.get(sequence).setRaw(rawMessages.get(offset + (int) (sequence - lo)));
+            }
+            ringBuffer.publish(lo, hi);
+        }
+        afterInsert(rawMessages.size());
+    }
+
     @Override
     protected void afterInsert(int n) {
         incomingMessages.mark(n);
@@ -31,6 +31,7 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.inputs.codecs.MultiMessageCodec;
 import org.graylog2.plugin.journal.RawMessage;
@@ -41,16 +42,18 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
-import static com.codahale.metrics.MetricRegistry.name;
-
 public class DecodingProcessor implements EventHandler<MessageEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(DecodingProcessor.class);
+    private static final int MAX_CACHED_CODECS = 100;
 
     private final Timer decodeTime;
     private final Counter decodedTrafficCounter;
@@ -64,6 +67,14 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
     private final MetricRegistry metricRegistry;
     private final Journal journal;
     private final Timer parseTime;
+    // Every processor runs in its own thread, so the codecs don't need to be thread-safe
+    private final Map<CodecKey, Codec> codecs = new LinkedHashMap<CodecKey, Codec>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CodecKey, Codec> eldest) {
+            return size() > MAX_CACHED_CODECS;
+        }
+    };
+    private final Map<String, InputDecodingMetrics> inputMetrics = new HashMap<>();
 
     @AssistedInject
     public DecodingProcessor(Map<String, Codec.Factory<? extends Codec>> codecFactory,
@@ -85,7 +96,7 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
 
     @Override
     public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
-        final Timer.Context context = decodeTime.time();
+        final long start = System.nanoTime();
         try {
             processMessage(event);
         } catch (Exception e) {
@@ -99,11 +110,13 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             // basically this will make sure old messages are cleared out early.
             event.clearMessages();
         } finally {
+            final long elapsed = System.nanoTime() - start;
+            decodeTime.update(elapsed, TimeUnit.NANOSECONDS);
             if (event.getMessage() != null) {
-                event.getMessage().recordTiming(serverStatus, "decode", context.stop());
+                event.getMessage().recordTiming(serverStatus, "decode", elapsed);
             } else if (event.getMessages() != null) {
                 for (final Message message : event.getMessages()) {
-                    message.recordTiming(serverStatus, "decode", context.stop());
+                    message.recordTiming(serverStatus, "decode", elapsed);
                 }
             }
             // aid garbage collection to collect the raw message early (to avoid promoting it to later generations).
@@ -125,20 +138,18 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             inputIdOnCurrentNode = null;
         }
 
-        final Codec.Factory<? extends Codec> factory = codecFactory.get(raw.getCodecName());
-        if (factory == null) {
+        final Codec codec = codec(raw);
+        if (codec == null) {
             LOG.warn("Couldn't find factory for codec <{}>, skipping message {} on input <{}>.",
                     raw.getCodecName(), raw, inputIdOnCurrentNode);
             return;
         }
-
-        final Codec codec = factory.create(raw.getCodecConfig());
-        final String baseMetricName = name(codec.getClass(), inputIdOnCurrentNode);
+        final InputDecodingMetrics metrics = inputMetrics(codec, inputIdOnCurrentNode);
 
         Message message = null;
         Collection<Message> messages = null;
 
-        final Timer.Context decodeTimeCtx = parseTime.time();
+        final long decodeStart = System.nanoTime();
         final long decodeTime;
         try {
             // This is ugly but needed for backwards compatibility of the Codec interface in 1.x.
@@ -150,19 +161,20 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             }
         } catch (RuntimeException e) {
             LOG.error("Unable to decode raw message {} on input <{}>.", raw, inputIdOnCurrentNode);
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            metrics.failures().mark();
             throw e;
         } finally {
-            decodeTime = decodeTimeCtx.stop();
+            decodeTime = System.nanoTime() - decodeStart;
+            parseTime.update(decodeTime, TimeUnit.NANOSECONDS);
         }
 
         if (message != null) {
-            event.setMessage(postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, message, decodeTime));
+            event.setMessage(postProcessMessage(raw, codec, inputIdOnCurrentNode, metrics, message, decodeTime));
         } else if (messages != null && !messages.isEmpty()) {
             final List<Message> processedMessages = Lists.newArrayListWithCapacity(messages.size());
 
             for (final Message msg : messages) {
-                final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, msg, decodeTime);
+                final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, metrics, msg, decodeTime);
 
                 if (processedMessage != null) {
                     processedMessages.add(processedMessage);
@@ -173,14 +185,44 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         }
     }
 
+    /**
+     * Returns the codec for the raw message, creating it only once per codec and configuration. Raw messages read
+     * from the journal share the configuration instance with all other messages of the same input configuration.
+     */
+    @Nullable
+    private Codec codec(RawMessage raw) {
+        final CodecKey key = new CodecKey(raw.getCodecName(), raw.getCodecConfig());
+        final Codec cachedCodec = codecs.get(key);
+        if (cachedCodec != null) {
+            return cachedCodec;
+        }
+        final Codec.Factory<? extends Codec> factory = codecFactory.get(raw.getCodecName());
+        if (factory == null) {
+            return null;
+        }
+        final Codec codec = factory.create(raw.getCodecConfig());
+        codecs.put(key, codec);
+        return codec;
+    }
+
+    private InputDecodingMetrics inputMetrics(Codec codec, @Nullable String inputId) {
+        final InputDecodingMetrics metrics = inputMetrics.get(inputId);
+        if (metrics != null && metrics.isFor(codec.getClass())) {
+            return metrics;
+        }
+        final InputDecodingMetrics newMetrics = new InputDecodingMetrics(metricRegistry, codec.getClass(), inputId);
+        inputMetrics.put(inputId, newMetrics);
+        return newMetrics;
+    }
+
     @Nullable
-    private Message postProcessMessage(RawMessage raw, Codec codec, String inputIdOnCurrentNode, String baseMetricName, Message message, long decodeTime) {
+    private Message postProcessMessage(RawMessage raw, Codec codec, String inputIdOnCurrentNode, InputDecodingMetrics metrics, Message message, long decodeTime) {
         if (message == null) {
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            metrics.failures().mark();
             return null;
         }
         if (!message.isComplete()) {
-            metricRegistry.meter(name(baseMetricName, "incomplete")).mark();
+            metrics.incomplete().mark();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping incomplete message {} on input <{}>. Parsed fields: [{}]",
                         raw, inputIdOnCurrentNode, message.getFields());
@@ -190,7 +232,7 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
 
         message.setJournalOffset(raw.getJournalOffset());
         message.recordTiming(serverStatus, "parse", decodeTime);
-        metricRegistry.timer(name(baseMetricName, "parseTime")).update(decodeTime, TimeUnit.NANOSECONDS);
+        metrics.parseTime().update(decodeTime, TimeUnit.NANOSECONDS);
 
         for (final RawMessage.SourceNode node : raw.getSourceNodes()) {
             switch (node.type) {
@@ -252,8 +294,36 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         // message to the journal.
         message.setReceiveTime(raw.getTimestamp());
 
-        metricRegistry.meter(name(baseMetricName, "processedMessages")).mark();
+        metrics.processedMessages().mark();
         decodedTrafficCounter.inc(message.getSize());
         return message;
     }
+
+    private static class CodecKey {
+        private final String codecName;
+        private final Configuration configuration;
+
+        CodecKey(String codecName, Configuration configuration) {
+            this.codecName = codecName;
+            this.configuration = configuration;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final CodecKey that = (CodecKey) o;
+            // configurations are compared by identity, they don't implement equals()
+            return configuration == that.configuration && Objects.equals(codecName, that.codecName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(codecName) + System.identityHashCode(configuration);
+        }
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import javax.annotation.Nullable;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * The decoding metrics of a single input and codec, resolved once instead of looking them up by name for every
+ * decoded message.
+ */
+class InputDecodingMetrics {
+    private final Class<?> codecClass;
+    private final Meter failures;
+    private final Meter incomplete;
+    private final Meter processedMessages;
+    private final Timer parseTime;
+
+    InputDecodingMetrics(MetricRegistry metricRegistry, Class<?> codecClass, @Nullable String inputId) {
+        final String baseMetricName = name(codecClass, inputId);
+        this.codecClass = codecClass;
+        this.failures = metricRegistry.meter(name(baseMetricName, "failures"));
+        this.incomplete = metricRegistry.meter(name(baseMetricName, "incomplete"));
+        this.processedMessages = metricRegistry.meter(name(baseMetricName, "processedMessages"));
+        this.parseTime = metricRegistry.timer(name(baseMetricName, "parseTime"));
+    }
+
+    boolean isFor(Class<?> codecClass) {
+        return this.codecClass.equals(codecClass);
+    }
+
+    Meter failures() {
+        return failures;
+    }
+
+    Meter incomplete() {
+        return incomplete;
+    }
+
+    Meter processedMessages() {
+        return processedMessages;
+    }
+
+    Timer parseTime() {
+        return parseTime;
+    }
+}
@@ -84,6 +84,7 @@ public class PeriodicalsService extends AbstractIdleService {
             Map<Periodical,ScheduledFuture> futures = periodicals.getFutures();
             if (futures.containsKey(periodical)) {
                 futures.get(periodical).cancel(false);
+                periodical.onShutdown();
 
                 s.stop();
                 LOG.info("Shutdown of periodical [{}] complete, took <{}ms>.",
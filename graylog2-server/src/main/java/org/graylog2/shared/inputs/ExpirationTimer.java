@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.inputs;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import org.graylog2.shared.metrics.MetricUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Expires short-lived reassembly state of inputs, like incomplete GELF chunks or buffered NetFlow packets.
+ * <p>
+ * Expirations are kept in a hashed timing wheel, so registering and cancelling them is O(1) and doesn't require
+ * sorting the pending entries or scanning them periodically. The expiration callbacks are run on a single timer thread
+ * and must not block. They are run with a precision of {@link #TICK_DURATION_MILLIS}.
+ */
+@Singleton
+public class ExpirationTimer {
+    private static final Logger LOG = LoggerFactory.getLogger(ExpirationTimer.class);
+
+    static final long TICK_DURATION_MILLIS = 100;
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private final HashedWheelTimer timer;
+    private final Timer lag;
+
+    @Inject
+    public ExpirationTimer(MetricRegistry metricRegistry) {
+        this.timer = new HashedWheelTimer(
+                new ThreadFactoryBuilder().setNameFormat("input-expiration-timer-%d").setDaemon(true).build(),
+                TICK_DURATION_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+        this.lag = metricRegistry.timer(name(ExpirationTimer.class, "lag"));
+        MetricUtils.safelyRegister(metricRegistry, name(ExpirationTimer.class, "pending-entries"),
+                (Gauge<Long>) timer::pendingTimeouts);
+    }
+
+    /**
+     * Runs the given callback after the given delay, unless the returned {@link Timeout} has been cancelled before.
+     *
+     * @param delay    the delay after which the entry expires
+     * @param unit     the unit of the delay
+     * @param onExpiry the callback removing the expired entry
+     * @return the handle to cancel the expiration once the entry has been removed otherwise
+     */
+    public Timeout expireAfter(long delay, TimeUnit unit, Runnable onExpiry) {
+        final long deadline = System.nanoTime() + unit.toNanos(delay);
+        return timer.newTimeout(timeout -> {
+            lag.update(Math.max(0, System.nanoTime() - deadline), TimeUnit.NANOSECONDS);
+            try {
+                onExpiry.run();
+            } catch (Exception e) {
+                // Never let an exception escape, it would only be logged by the timer thread
+                LOG.warn("Error while expiring input state", e);
+            }
+        }, delay, unit);
+    }
+
+    public long pendingEntries() {
+        return timer.pendingTimeouts();
+    }
+
+    /**
+     * Stops the timer thread. Pending expirations are dropped without running their callbacks.
+     */
+    public void stop() {
+        timer.stop();
+    }
+}
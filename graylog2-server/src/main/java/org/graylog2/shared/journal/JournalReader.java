@@ -33,6 +33,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Semaphore;
 
@@ -153,6 +154,7 @@ public class JournalReader extends AbstractExecutionThreadService {
             } else {
                 readMessages.mark(encodedRawMessages.size());
                 log.debug("Processing {} messages from journal.", encodedRawMessages.size());
+                final List<RawMessage> rawMessages = new ArrayList<>(encodedRawMessages.size());
                 for (final Journal.JournalReadEntry encodedRawMessage : encodedRawMessages) {
                     final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayload(),
                                                                     encodedRawMessage.getOffset());
@@ -163,8 +165,9 @@ public class JournalReader extends AbstractExecutionThreadService {
                         continue;
                     }
 
-                    processBuffer.insertBlocking(rawMessage);
+                    rawMessages.add(rawMessage);
                 }
+                processBuffer.insertBatch(rawMessages);
             }
         }
         log.info("Stopping.");
@@ -18,6 +18,7 @@ package org.graylog2.storage;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.TypeLiteral;
+import com.google.inject.multibindings.MapBinder;
 import org.graylog.events.search.MoreSearchAdapter;
 import org.graylog.plugins.views.migrations.V20200730000000_AddGl2MessageIdFieldAliasForEvents;
 import org.graylog.plugins.views.search.engine.GeneratedQueryContext;
@@ -29,8 +30,10 @@ import org.graylog2.indexer.counts.CountsAdapter;
 import org.graylog2.indexer.fieldtypes.IndexFieldTypePollerAdapter;
 import org.graylog2.indexer.indices.IndicesAdapter;
 import org.graylog2.indexer.messages.MessagesAdapter;
+import org.graylog2.indexer.rollup.RollupAdapter;
 import org.graylog2.indexer.searches.SearchesAdapter;
 import org.graylog2.migrations.V20170607164210_MigrateReopenedIndicesToAliases;
+import org.graylog2.plugin.Version;
 import org.graylog2.storage.providers.ClusterAdapterProvider;
 import org.graylog2.storage.providers.CountsAdapterProvider;
 import org.graylog2.storage.providers.ElasticsearchBackendProvider;
@@ -40,6 +43,7 @@ import org.graylog2.storage.providers.IndicesAdapterProvider;
 import org.graylog2.storage.providers.MessagesAdapterProvider;
 import org.graylog2.storage.providers.MoreSearchAdapterProvider;
 import org.graylog2.storage.providers.NodeAdapterProvider;
+import org.graylog2.storage.providers.RollupAdapterProvider;
 import org.graylog2.storage.providers.SearchesAdapterProvider;
 import org.graylog2.storage.providers.V20170607164210_MigrateReopenedIndicesToAliasesClusterStateAdapterProvider;
 import org.graylog2.storage.providers.V20200730000000_AddGl2MessageIdFieldAliasForEventsElasticsearchAdapterProvider;
@@ -57,6 +61,9 @@ public class VersionAwareStorageModule extends AbstractModule {
         bind(NodeAdapter.class).toProvider(NodeAdapterProvider.class);
         bind(IndexFieldTypePollerAdapter.class).toProvider(IndexFieldTypePollerAdapterProvider.class);
         bind(IndexToolsAdapter.class).toProvider(IndexToolsAdapterProvider.class);
+        // Not every storage module supports rollups, make sure the version map exists anyway
+        MapBinder.newMapBinder(binder(), Version.class, RollupAdapter.class);
+        bind(RollupAdapter.class).toProvider(RollupAdapterProvider.class);
         bind(V20170607164210_MigrateReopenedIndicesToAliases.ClusterState.class)
                 .toProvider(V20170607164210_MigrateReopenedIndicesToAliasesClusterStateAdapterProvider.class);
         bind(V20200730000000_AddGl2MessageIdFieldAliasForEvents.ElasticsearchAdapter.class)
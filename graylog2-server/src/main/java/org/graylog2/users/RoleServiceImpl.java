@@ -20,6 +20,7 @@ import com.google.common.base.Function;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DuplicateKeyException;
 import org.bson.types.ObjectId;
@@ -31,6 +32,7 @@ import org.graylog2.plugin.database.ValidationException;
 import org.graylog2.shared.security.Permissions;
 import org.graylog2.shared.users.Role;
 import org.graylog2.shared.users.Roles;
+import org.graylog2.users.events.RoleChangedEvent;
 import org.mongojack.DBCursor;
 import org.mongojack.DBQuery;
 import org.mongojack.JacksonDBCollection;
@@ -63,6 +65,7 @@ public class RoleServiceImpl implements RoleService {
 
     private final JacksonDBCollection<RoleImpl, ObjectId> dbCollection;
     private final Validator validator;
+    private final EventBus serverEventBus;
     private final String adminRoleObjectId;
     private final String readerRoleObjectId;
 
@@ -70,8 +73,10 @@ public class RoleServiceImpl implements RoleService {
     public RoleServiceImpl(MongoConnection mongoConnection,
                               MongoJackObjectMapperProvider mapper,
                               Permissions permissions,
-                              Validator validator) {
+                              Validator validator,
+                              EventBus serverEventBus) {
         this.validator = validator;
+        this.serverEventBus = serverEventBus;
 
         dbCollection = JacksonDBCollection.wrap(
                 mongoConnection.getDatabase().getCollection(ROLES),
@@ -204,8 +209,10 @@ public class RoleServiceImpl implements RoleService {
         if (!violations.isEmpty()) {
             throw new ValidationException("Validation failed.", violations.toString());
         }
-        return MongoDBUpsertRetryer.run(() ->
+        final RoleImpl savedRole = MongoDBUpsertRetryer.run(() ->
                 dbCollection.findAndModify(is(NAME_LOWER, role.nameLower()), null, null, false, role, true, true));
+        serverEventBus.post(RoleChangedEvent.create(role.getName()));
+        return savedRole;
     }
 
     @Override
@@ -216,7 +223,11 @@ public class RoleServiceImpl implements RoleService {
     @Override
     public int delete(String roleName) {
         final DBQuery.Query nameMatchesAndNotReadonly = and(is(READ_ONLY, false), is(NAME_LOWER, roleName.toLowerCase(Locale.ENGLISH)));
-        return dbCollection.remove(nameMatchesAndNotReadonly).getN();
+        final int deleted = dbCollection.remove(nameMatchesAndNotReadonly).getN();
+        if (deleted > 0) {
+            serverEventBus.post(RoleChangedEvent.create(roleName));
+        }
+        return deleted;
     }
 
     @Override
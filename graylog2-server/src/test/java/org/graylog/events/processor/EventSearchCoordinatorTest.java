@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.db.SearchJobService;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.engine.QueryEngine;
+import org.graylog.plugins.views.search.errors.SearchError;
+import org.graylog.plugins.views.search.errors.SearchTypeError;
+import org.graylog.plugins.views.search.rest.PermittedStreams;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class EventSearchCoordinatorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private SearchJobService searchJobService;
+    @Mock
+    private QueryEngine queryEngine;
+    @Mock
+    private PermittedStreams permittedStreams;
+
+    private final AbsoluteRange timerange = AbsoluteRange.create(
+            new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC), new DateTime(2020, 1, 1, 0, 1, DateTimeZone.UTC));
+    private final List<Search> executedSearches = new CopyOnWriteArrayList<>();
+
+    private EventSearchCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        when(searchJobService.create(any(Search.class), anyString()))
+                .thenAnswer(invocation -> new SearchJob("job", invocation.getArgument(0), invocation.getArgument(1)));
+        when(queryEngine.execute(any(SearchJob.class))).thenAnswer(invocation -> {
+            final SearchJob searchJob = invocation.getArgument(0);
+            executedSearches.add(searchJob.getSearch());
+            for (Query query : searchJob.getSearch().queries()) {
+                final Map<String, SearchType.Result> results = new HashMap<>();
+                for (SearchType searchType : query.searchTypes()) {
+                    if (!searchType.id().endsWith("failing")) {
+                        results.put(searchType.id(), PivotResult.builder().id(searchType.id()).total(42).effectiveTimerange(timerange).build());
+                    }
+                }
+                final ImmutableSet.Builder<SearchError> errors = ImmutableSet.builder();
+                query.searchTypes().stream()
+                        .filter(searchType -> searchType.id().endsWith("failing"))
+                        .forEach(searchType -> errors.add(new SearchTypeError(query, searchType.id(), "boom")));
+                searchJob.addQueryResultFuture(query.id(), CompletableFuture.completedFuture(QueryResult.builder()
+                        .query(query)
+                        .searchTypes(results)
+                        .errors(errors.build())
+                        .build()));
+            }
+            return searchJob.seal();
+        });
+
+        coordinator = new EventSearchCoordinator(searchJobService, queryEngine, permittedStreams, new MetricRegistry());
+    }
+
+    private Pivot pivot(String id) {
+        return Pivot.builder().id(id).rollup(true).series(ImmutableList.of()).build();
+    }
+
+    @Test
+    public void combinesRequestsForSameStreamsAndTimerange() throws Exception {
+        final CompletableFuture<QueryResult> first = coordinator.submit(ImmutableSet.of("stream-1"), timerange,
+                "action:login", ImmutableList.of(pivot("pivot-1"), pivot("streams-pivot-1")));
+        final CompletableFuture<QueryResult> second = coordinator.submit(ImmutableSet.of("stream-1"), timerange,
+                "action:logout", ImmutableList.of(pivot("pivot-1"), pivot("failing")));
+
+        final QueryResult firstResult = first.get(5, TimeUnit.SECONDS);
+        final QueryResult secondResult = second.get(5, TimeUnit.SECONDS);
+
+        assertThat(executedSearches).hasSize(1);
+        final Query query = executedSearches.get(0).queries().iterator().next();
+        assertThat(query.searchTypes()).hasSize(4);
+        assertThat(query.searchTypes())
+                .extracting(searchType -> ((ElasticsearchQueryString) searchType.query().orElseThrow(AssertionError::new)).queryString())
+                .containsOnly("action:login", "action:logout");
+
+        assertThat(firstResult.searchTypes()).containsOnlyKeys("pivot-1", "streams-pivot-1");
+        assertThat(firstResult.errors()).isEmpty();
+        assertThat(secondResult.searchTypes()).containsOnlyKeys("pivot-1");
+        assertThat(secondResult.errors()).hasSize(1);
+    }
+
+    @Test
+    public void searchesDifferentTimerangesSeparately() throws Exception {
+        final CompletableFuture<QueryResult> first = coordinator.submit(ImmutableSet.of("stream-1"), timerange,
+                "", ImmutableList.of(pivot("pivot-1")));
+        final CompletableFuture<QueryResult> second = coordinator.submit(ImmutableSet.of("stream-1"),
+                AbsoluteRange.create(timerange.getTo(), timerange.getTo().plusMinutes(1)), "", ImmutableList.of(pivot("pivot-1")));
+
+        assertThat(first.get(5, TimeUnit.SECONDS).searchTypes()).containsOnlyKeys("pivot-1");
+        assertThat(second.get(5, TimeUnit.SECONDS).searchTypes()).containsOnlyKeys("pivot-1");
+        assertThat(executedSearches).hasSize(2);
+    }
+}
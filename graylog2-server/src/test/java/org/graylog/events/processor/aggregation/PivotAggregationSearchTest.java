@@ -19,6 +19,7 @@ package org.graylog.events.processor.aggregation;
 import com.google.common.collect.ImmutableList;
 import org.graylog.events.EventsConfigurationTestProvider;
 import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventSearchCoordinator;
 import org.graylog.events.search.MoreSearch;
 import org.graylog.plugins.views.search.db.SearchJobService;
 import org.graylog.plugins.views.search.engine.QueryEngine;
@@ -55,6 +56,8 @@ public class PivotAggregationSearchTest {
     private MoreSearch moreSearch;
     @Mock
     private PermittedStreams permittedStreams;
+    @Mock
+    private EventSearchCoordinator searchCoordinator;
 
     @Test
     public void testExtractValuesWithGroupBy() throws Exception {
@@ -85,7 +88,8 @@ public class PivotAggregationSearchTest {
                 queryEngine,
                 EventsConfigurationTestProvider.create(),
                 moreSearch,
-                permittedStreams);
+                permittedStreams,
+                searchCoordinator);
 
         final String toString = timerange.getTo().toString();
         final PivotResult pivotResult = PivotResult.builder()
@@ -181,7 +185,8 @@ public class PivotAggregationSearchTest {
                 queryEngine,
                 EventsConfigurationTestProvider.create(),
                 moreSearch,
-                permittedStreams);
+                permittedStreams,
+                searchCoordinator);
 
         final PivotResult pivotResult = PivotResult.builder()
                 .id("test")
@@ -252,7 +257,8 @@ public class PivotAggregationSearchTest {
                 queryEngine,
                 EventsConfigurationTestProvider.create(),
                 moreSearch,
-                permittedStreams);
+                permittedStreams,
+                searchCoordinator);
 
         final PivotResult pivotResult = PivotResult.builder()
                 .id("test")
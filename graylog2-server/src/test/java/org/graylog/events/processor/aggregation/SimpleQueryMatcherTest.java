@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SimpleQueryMatcherTest {
+    private Message message() {
+        final Message message = new Message("hello world", "Source-1", new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC));
+        message.addField("action", "login");
+        message.addField("status", 401);
+        message.addField("user_name", "jane doe");
+        return message;
+    }
+
+    private boolean matches(String query) {
+        return SimpleQueryMatcher.parse(query).orElseThrow(AssertionError::new).matches(message());
+    }
+
+    @Test
+    public void matchesEverythingForEmptyQueries() {
+        assertThat(matches("")).isTrue();
+        assertThat(matches("*")).isTrue();
+        assertThat(matches(null)).isTrue();
+    }
+
+    @Test
+    public void matchesFieldTerms() {
+        assertThat(matches("action:login")).isTrue();
+        assertThat(matches("action:logout")).isFalse();
+        assertThat(matches("status:401")).isTrue();
+        assertThat(matches("status:401.0")).isTrue();
+        assertThat(matches("user_name:\"jane doe\"")).isTrue();
+        assertThat(matches("source:source-1")).isTrue();
+    }
+
+    @Test
+    public void combinesTermsWithAndAndNot() {
+        assertThat(matches("action:login AND status:401")).isTrue();
+        assertThat(matches("action:login AND NOT status:401")).isFalse();
+        assertThat(matches("NOT action:logout")).isTrue();
+        assertThat(matches("_exists_:user_name AND NOT _exists_:missing")).isTrue();
+    }
+
+    @Test
+    public void rejectsUnsupportedSyntax() {
+        assertThat(SimpleQueryMatcher.parse("action:login OR action:logout")).isEmpty();
+        assertThat(SimpleQueryMatcher.parse("action:log*")).isEmpty();
+        assertThat(SimpleQueryMatcher.parse("status:[400 TO 499]")).isEmpty();
+        assertThat(SimpleQueryMatcher.parse("login")).isEmpty();
+        assertThat(SimpleQueryMatcher.parse("message:hello")).isEmpty();
+        assertThat(SimpleQueryMatcher.parse("action:\"login")).isEmpty();
+        assertThat(SimpleQueryMatcher.parse("action:login AND")).isEmpty();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.events.processor.aggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.events.JobSchedulerTestClock;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorPreconditionException;
+import org.graylog2.cluster.Node;
+import org.graylog2.cluster.NodeService;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.streams.Stream;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StreamingAggregationSearchTest {
+    private static final DateTime NOW = new DateTime(2020, 6, 1, 12, 0, DateTimeZone.UTC);
+    private static final String DEFINITION_ID = "definition-1";
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private DBStreamingAggregationService streamingAggregationService;
+    @Mock
+    private PivotAggregationSearch.Factory pivotSearchFactory;
+    @Mock
+    private EventDefinition eventDefinition;
+    @Mock
+    private NodeService nodeService;
+
+    private final AggregationSeries countSeries = AggregationSeries.create("count-1", AggregationFunction.COUNT, null);
+    private final AggregationSeries avgSeries = AggregationSeries.create("avg-1", AggregationFunction.AVG, "took_ms");
+    private final AggregationSeries maxSeries = AggregationSeries.create("max-1", AggregationFunction.MAX, "took_ms");
+    private final AbsoluteRange timerange = AbsoluteRange.create(NOW.minusMinutes(1), NOW);
+    private final JobSchedulerTestClock clock = new JobSchedulerTestClock(NOW.plusSeconds(10));
+
+    private Stream stream;
+
+    @Before
+    public void setUp() {
+        when(eventDefinition.id()).thenReturn(DEFINITION_ID);
+        stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-1");
+        when(nodeService.allActive(Node.Type.SERVER)).thenReturn(ImmutableMap.of("node-1", mock(Node.class)));
+    }
+
+    private AggregationEventProcessorConfig config(List<String> groupBy) {
+        return AggregationEventProcessorConfig.builder()
+                .query("action:request")
+                .streams(ImmutableSet.of("stream-1"))
+                .groupBy(groupBy)
+                .series(ImmutableList.of(countSeries, avgSeries, maxSeries))
+                .conditions(null)
+                .searchWithinMs(60000)
+                .executeEveryMs(60000)
+                .build();
+    }
+
+    private StreamingAggregationSearch search(AggregationEventProcessorConfig config) {
+        final AggregationEventProcessorParameters parameters = AggregationEventProcessorParameters.builder()
+                .streams(Collections.emptySet())
+                .timerange(timerange)
+                .batchSize(500)
+                .build();
+        return new StreamingAggregationSearch(config, parameters, "test", eventDefinition,
+                streamingAggregationService, pivotSearchFactory, clock, nodeService);
+    }
+
+    private Message message(DateTime timestamp, String action, String host, Object tookMs) {
+        final Message message = new Message("request", "source", timestamp);
+        message.addField("action", action);
+        message.addField("host", host);
+        if (tookMs != null) {
+            message.addField("took_ms", tookMs);
+        }
+        message.addStream(stream);
+        return message;
+    }
+
+    private StreamingAggregationWatermarkDto watermark(String fingerprint, DateTime streamingSince, DateTime flushedUntil) {
+        return watermark("node-1", fingerprint, streamingSince, flushedUntil);
+    }
+
+    private StreamingAggregationWatermarkDto watermark(String nodeId, String fingerprint, DateTime streamingSince, DateTime flushedUntil) {
+        return StreamingAggregationWatermarkDto.builder()
+                .nodeId(nodeId)
+                .eventDefinitionId(DEFINITION_ID)
+                .fingerprint(fingerprint)
+                .streamingSince(streamingSince)
+                .flushedUntil(flushedUntil)
+                .updatedAt(flushedUntil)
+                .build();
+    }
+
+    @Test
+    public void mergesPanesOfMultipleNodes() throws Exception {
+        final AggregationEventProcessorConfig config = config(ImmutableList.of("host"));
+        final SimpleQueryMatcher matcher = SimpleQueryMatcher.parse(config.query()).orElseThrow(AssertionError::new);
+        final StreamingAggregator node1 = new StreamingAggregator(DEFINITION_ID, config, matcher, NOW.minusHours(1));
+        final StreamingAggregator node2 = new StreamingAggregator(DEFINITION_ID, config, matcher, NOW.minusHours(1));
+
+        assertThat(node1.process(message(NOW.minusSeconds(30), "request", "a", 10))).isTrue();
+        assertThat(node1.process(message(NOW.minusSeconds(30), "request", "a", "30"))).isTrue();
+        assertThat(node2.process(message(NOW.minusSeconds(20), "request", "a", 50))).isTrue();
+        assertThat(node2.process(message(NOW.minusSeconds(20), "request", "b", null))).isTrue();
+        assertThat(node2.process(message(NOW.minusSeconds(20), "response", "b", 1))).isFalse();
+
+        final List<StreamingAggregationPaneDto> panes = ImmutableList.<StreamingAggregationPaneDto>builder()
+                .addAll(node1.drain("node-1", NOW))
+                .addAll(node2.drain("node-2", NOW))
+                .build();
+        assertThat(panes).hasSize(2);
+        assertThat(node1.drain("node-1", NOW)).isEmpty();
+
+        final String fingerprint = StreamingAggregator.fingerprint(config);
+        when(streamingAggregationService.findWatermarks(eq(DEFINITION_ID), any(DateTime.class)))
+                .thenReturn(ImmutableList.of(watermark(fingerprint, NOW.minusHours(1), NOW.plusSeconds(5))));
+        when(streamingAggregationService.findPanes(DEFINITION_ID, fingerprint, timerange.getFrom(), timerange.getTo()))
+                .thenReturn(panes);
+
+        final AggregationResult result = search(config).doSearch();
+
+        assertThat(result.totalAggregatedMessages()).isEqualTo(4);
+        assertThat(result.sourceStreams()).containsExactly("stream-1");
+        assertThat(result.keyResults()).hasSize(2);
+
+        final AggregationKeyResult a = result.keyResults().stream()
+                .filter(keyResult -> keyResult.key().equals(ImmutableList.of("a")))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        assertThat(a.timestamp()).contains(NOW);
+        assertThat(a.seriesValues()).extracting(AggregationSeriesValue::value).containsExactly(3.0, 30.0, 50.0);
+
+        final AggregationKeyResult b = result.keyResults().stream()
+                .filter(keyResult -> keyResult.key().equals(ImmutableList.of("b")))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        assertThat(b.seriesValues()).extracting(AggregationSeriesValue::value).containsExactly(1.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    public void returnsEmptyRowWithoutGroupBy() throws Exception {
+        final AggregationEventProcessorConfig config = config(ImmutableList.of());
+        final String fingerprint = StreamingAggregator.fingerprint(config);
+        when(streamingAggregationService.findWatermarks(eq(DEFINITION_ID), any(DateTime.class)))
+                .thenReturn(ImmutableList.of(watermark(fingerprint, NOW.minusHours(1), NOW.plusSeconds(5))));
+        when(streamingAggregationService.findPanes(DEFINITION_ID, fingerprint, timerange.getFrom(), timerange.getTo()))
+                .thenReturn(ImmutableList.of());
+
+        final AggregationResult result = search(config).doSearch();
+
+        assertThat(result.totalAggregatedMessages()).isZero();
+        assertThat(result.keyResults()).hasSize(1);
+        assertThat(result.keyResults().get(0).key()).isEmpty();
+        assertThat(result.keyResults().get(0).seriesValues()).extracting(AggregationSeriesValue::value)
+                .containsExactly(0.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    public void failsPreconditionIfPanesAreNotFlushedYet() {
+        final AggregationEventProcessorConfig config = config(ImmutableList.of());
+        final String fingerprint = StreamingAggregator.fingerprint(config);
+        when(streamingAggregationService.findWatermarks(eq(DEFINITION_ID), any(DateTime.class)))
+                .thenReturn(ImmutableList.of(watermark(fingerprint, NOW.minusHours(1), NOW.minusSeconds(5))));
+
+        assertThatThrownBy(() -> search(config).doSearch())
+                .isInstanceOf(EventProcessorPreconditionException.class);
+    }
+
+    @Test
+    public void fallsBackToSearchIfStreamingStartedWithinTimerange() throws Exception {
+        final AggregationEventProcessorConfig config = config(ImmutableList.of());
+        final String fingerprint = StreamingAggregator.fingerprint(config);
+        final PivotAggregationSearch pivotSearch = mock(PivotAggregationSearch.class);
+        when(pivotSearchFactory.create(any(), any(), any(), any())).thenReturn(pivotSearch);
+        when(pivotSearch.doSearch()).thenReturn(AggregationResult.empty());
+        when(streamingAggregationService.findWatermarks(eq(DEFINITION_ID), any(DateTime.class)))
+                .thenReturn(ImmutableList.of(watermark(fingerprint, NOW.minusSeconds(30), NOW.plusSeconds(5))));
+
+        assertThat(search(config).doSearch()).isEqualTo(AggregationResult.empty());
+        verify(pivotSearch).doSearch();
+    }
+
+    @Test
+    public void fallsBackToSearchIfActiveNodeDoesNotStream() throws Exception {
+        final AggregationEventProcessorConfig config = config(ImmutableList.of());
+        final String fingerprint = StreamingAggregator.fingerprint(config);
+        final PivotAggregationSearch pivotSearch = mock(PivotAggregationSearch.class);
+        when(pivotSearchFactory.create(any(), any(), any(), any())).thenReturn(pivotSearch);
+        when(pivotSearch.doSearch()).thenReturn(AggregationResult.empty());
+        // node-2 runs with streaming aggregation disabled and never writes a watermark
+        when(nodeService.allActive(Node.Type.SERVER)).thenReturn(ImmutableMap.of(
+                "node-1", mock(Node.class),
+                "node-2", mock(Node.class)));
+        when(streamingAggregationService.findWatermarks(eq(DEFINITION_ID), any(DateTime.class)))
+                .thenReturn(ImmutableList.of(watermark(fingerprint, NOW.minusHours(1), NOW.plusSeconds(5))));
+
+        assertThat(search(config).doSearch()).isEqualTo(AggregationResult.empty());
+        verify(pivotSearch).doSearch();
+    }
+
+    @Test
+    public void fallsBackToSearchIfNodeStoppedStreamingWithinTimerange() throws Exception {
+        final AggregationEventProcessorConfig config = config(ImmutableList.of());
+        final String fingerprint = StreamingAggregator.fingerprint(config);
+        final PivotAggregationSearch pivotSearch = mock(PivotAggregationSearch.class);
+        when(pivotSearchFactory.create(any(), any(), any(), any())).thenReturn(pivotSearch);
+        when(pivotSearch.doSearch()).thenReturn(AggregationResult.empty());
+        // node-2 died within the time range, its unflushed panes are lost
+        when(streamingAggregationService.findWatermarks(eq(DEFINITION_ID), any(DateTime.class)))
+                .thenReturn(ImmutableList.of(
+                        watermark(fingerprint, NOW.minusHours(1), NOW.plusSeconds(5)),
+                        watermark("node-2", fingerprint, NOW.minusHours(1), NOW.minusSeconds(30))));
+
+        assertThat(search(config).doSearch()).isEqualTo(AggregationResult.empty());
+        verify(pivotSearch).doSearch();
+    }
+
+    @Test
+    public void eligibility() {
+        assertThat(StreamingAggregationEngine.isEligible(config(ImmutableList.of("host")))).isTrue();
+        assertThat(StreamingAggregationEngine.isEligible(config(ImmutableList.of()).toBuilder()
+                .query("action:request OR action:response")
+                .build())).isFalse();
+        assertThat(StreamingAggregationEngine.isEligible(config(ImmutableList.of()).toBuilder()
+                .series(ImmutableList.of(AggregationSeries.create("card-1", AggregationFunction.CARD, "host")))
+                .build())).isFalse();
+        assertThat(StreamingAggregationEngine.isEligible(config(ImmutableList.of()).toBuilder()
+                .searchWithinMs(StreamingAggregationEngine.MAX_SEARCH_WITHIN_MS + 1000)
+                .build())).isFalse();
+    }
+}
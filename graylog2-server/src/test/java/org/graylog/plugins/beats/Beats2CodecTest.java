@@ -32,6 +32,7 @@ import org.mockito.junit.MockitoRule;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 
@@ -301,6 +302,27 @@ public class Beats2CodecTest {
         assertThat(message.getField("beat_meta_cloud_availability_zone")).isEqualTo("gz-azone2");
     }
 
+    @Test
+    public void decodeMessagesHandlesMetadataAfterEventFields() throws Exception {
+        final String json = "{\"count\":3,\"message\":\"TEST\",\"beat\":{\"hostname\":\"legacy.local\"},"
+                + "\"@timestamp\":\"2016-04-01T00:00:00.000Z\",\"@metadata\":{\"beat\":\"filebeat\"}}";
+        final Message message = codec.decode(new RawMessage(json.getBytes(StandardCharsets.UTF_8)));
+        assertThat(message).isNotNull();
+        assertThat(message.getMessage()).isEqualTo("TEST");
+        assertThat(message.getSource()).isEqualTo("legacy.local");
+        assertThat(message.getTimestamp()).isEqualTo(new DateTime(2016, 4, 1, 0, 0, DateTimeZone.UTC));
+        assertThat(message.getField("beats_type")).isEqualTo("filebeat");
+        assertThat(message.getField("filebeat_count")).isEqualTo(3);
+        assertThat(message.getField("filebeat_beat_hostname")).isEqualTo("legacy.local");
+        assertThat(message.getField("filebeat_message")).isNull();
+    }
+
+    @Test
+    public void decodeReturnsNullForTruncatedPayload() throws Exception {
+        final byte[] payload = "{\"message\":\"TEST\",\"@metadata\":{".getBytes(StandardCharsets.UTF_8);
+        assertThat(codec.decode(new RawMessage(payload))).isNull();
+    }
+
     private RawMessage messageFromJson(String resourceName) throws IOException {
         final URL resource = Resources.getResource(this.getClass(), resourceName);
         final byte[] json = Resources.toByteArray(resource);
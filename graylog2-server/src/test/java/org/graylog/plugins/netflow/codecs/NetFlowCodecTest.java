@@ -16,12 +16,15 @@
  */
 package org.graylog.plugins.netflow.codecs;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
 import org.graylog.plugins.netflow.flows.FlowException;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.inputs.ExpirationTimer;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -45,13 +48,20 @@ public class NetFlowCodecTest {
 
     private NetFlowCodec codec;
     private NetflowV9CodecAggregator codecAggregator;
+    private ExpirationTimer expirationTimer;
 
     @Before
     public void setUp() throws Exception {
-        codecAggregator = new NetflowV9CodecAggregator();
+        expirationTimer = new ExpirationTimer(new MetricRegistry());
+        codecAggregator = new NetflowV9CodecAggregator(expirationTimer);
         codec = new NetFlowCodec(Configuration.EMPTY_CONFIGURATION, codecAggregator);
     }
 
+    @After
+    public void tearDown() {
+        expirationTimer.stop();
+    }
+
     @Test
     public void constructorFailsIfNetFlow9DefinitionsPathDoesNotExist() throws Exception {
         final File definitionsFile = temporaryFolder.newFile();
@@ -16,6 +16,7 @@
  */
 package org.graylog.plugins.netflow.codecs;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -38,7 +39,9 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.inputs.ExpirationTimer;
 import org.joda.time.DateTime;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -60,6 +63,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class NetflowV9CodecAggregatorTest {
     private NetFlowCodec codec;
     private NetflowV9CodecAggregator codecAggregator;
+    private ExpirationTimer expirationTimer;
     private InetSocketAddress source;
 
     public NetflowV9CodecAggregatorTest() throws IOException {
@@ -70,10 +74,16 @@ public class NetflowV9CodecAggregatorTest {
     public void setup() throws IOException {
         // the codec aggregator creates "netflowv9"ish packets, that always contain all necessary templates before the data flows
         // this is not an RFC netflow packet, but greatly simplifies decoding
-        codecAggregator = new NetflowV9CodecAggregator();
+        expirationTimer = new ExpirationTimer(new MetricRegistry());
+        codecAggregator = new NetflowV9CodecAggregator(expirationTimer);
         codec = new NetFlowCodec(Configuration.EMPTY_CONFIGURATION, codecAggregator);
     }
 
+    @After
+    public void tearDown() {
+        expirationTimer.stop();
+    }
+
 
     @Test
     public void pcap_netgraph_NetFlowV5() throws Exception {
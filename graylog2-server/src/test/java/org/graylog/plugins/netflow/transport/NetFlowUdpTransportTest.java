@@ -26,6 +26,7 @@ import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.inputs.MessageInput;
 import org.graylog2.plugin.inputs.util.ThroughputCounter;
+import org.graylog2.shared.inputs.ExpirationTimer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -40,6 +41,7 @@ public class NetFlowUdpTransportTest {
     private EventLoopGroup eventLoopGroup;
     private EventLoopGroupFactory eventLoopGroupFactory;
     private NetFlowUdpTransport transport;
+    private ExpirationTimer expirationTimer;
 
     @Before
     public void setUp() {
@@ -52,12 +54,14 @@ public class NetFlowUdpTransportTest {
                 nettyTransportConfiguration,
                 new ThroughputCounter(eventLoopGroup),
                 new LocalMetricRegistry());
-        transport.setMessageAggregator(new NetflowV9CodecAggregator());
+        expirationTimer = new ExpirationTimer(new LocalMetricRegistry());
+        transport.setMessageAggregator(new NetflowV9CodecAggregator(expirationTimer));
     }
 
     @After
     public void tearDown() {
         eventLoopGroup.shutdownGracefully();
+        expirationTimer.stop();
     }
 
     @Test
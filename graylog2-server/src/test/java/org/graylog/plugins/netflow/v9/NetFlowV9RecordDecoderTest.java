@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.v9;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NetFlowV9RecordDecoderTest {
+    private static final List<NetFlowV9FieldDef> DEFINITIONS = ImmutableList.of(
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(1, NetFlowV9FieldType.ValueType.UINT32, "IN_BYTES"), 4),
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(4, NetFlowV9FieldType.ValueType.UINT8, "PROTOCOL"), 1),
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(7, NetFlowV9FieldType.ValueType.UINT16, "L4_SRC_PORT"), 2),
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(8, NetFlowV9FieldType.ValueType.IPV4, "IPV4_SRC_ADDR"), 4),
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(2, NetFlowV9FieldType.ValueType.UINT64, "IN_PKTS"), 8),
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(56, NetFlowV9FieldType.ValueType.MAC, "IN_SRC_MAC"), 6),
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(999, NetFlowV9FieldType.ValueType.SKIP, "PADDING"), 3),
+            NetFlowV9FieldDef.create(NetFlowV9FieldType.create(23, NetFlowV9FieldType.ValueType.UINT64, "OUT_BYTES"), 5));
+
+    @Test
+    public void decodesLikeFieldDefinitions() {
+        final ByteBuf record = record();
+        final NetFlowV9RecordDecoder decoder = NetFlowV9RecordDecoder.compile(DEFINITIONS);
+
+        final Map<String, Object> fields = decoder.decode(record.duplicate());
+
+        assertThat(fields).isEqualTo(parseWithFieldDefinitions(record.duplicate()));
+        assertThat(fields)
+                .containsEntry("in_bytes", 1000L)
+                .containsEntry("protocol", (short) 6)
+                .containsEntry("l4_src_port", 443)
+                .containsEntry("ipv4_src_addr", "192.168.1.254")
+                .containsEntry("in_pkts", 42L)
+                .containsEntry("in_src_mac", "00:1b:21:3c:4d:5e")
+                .doesNotContainKey("padding")
+                .containsKey("out_bytes");
+    }
+
+    @Test
+    public void consumesWholeRecord() {
+        final ByteBuf record = record();
+        final NetFlowV9RecordDecoder decoder = NetFlowV9RecordDecoder.compile(DEFINITIONS);
+
+        decoder.decode(record);
+
+        assertThat(decoder.recordLength()).isEqualTo(33);
+        assertThat(record.readableBytes()).isZero();
+    }
+
+    @Test
+    public void templateDecoderIsCompiledOnce() {
+        final NetFlowV9Template template = NetFlowV9Template.create(256, DEFINITIONS.size(), DEFINITIONS);
+
+        assertThat(template.decoder()).isSameAs(template.decoder());
+    }
+
+    private Map<String, Object> parseWithFieldDefinitions(ByteBuf bb) {
+        final ImmutableMap.Builder<String, Object> fields = ImmutableMap.builder();
+        for (NetFlowV9FieldDef def : DEFINITIONS) {
+            def.parse(bb).ifPresent(value -> fields.put(def.type().name().toLowerCase(Locale.ROOT), value));
+        }
+        return fields.build();
+    }
+
+    private ByteBuf record() {
+        return Unpooled.buffer()
+                .writeInt(1000)
+                .writeByte(6)
+                .writeShort(443)
+                .writeBytes(new byte[]{(byte) 192, (byte) 168, 1, (byte) 254})
+                .writeLong(42L)
+                .writeBytes(new byte[]{0x00, 0x1b, 0x21, 0x3c, 0x4d, 0x5e})
+                .writeBytes(new byte[3])
+                .writeBytes(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05});
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.sidecar.collectors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.EventBus;
+import org.graylog.plugins.sidecar.common.SidecarPluginConfiguration;
+import org.graylog.plugins.sidecar.rest.models.CollectorActions;
+import org.graylog.plugins.sidecar.rest.models.NodeDetails;
+import org.graylog.plugins.sidecar.rest.models.NodeMetrics;
+import org.graylog.plugins.sidecar.rest.models.Sidecar;
+import org.graylog.plugins.sidecar.rest.requests.RegistrationRequest;
+import org.graylog.plugins.sidecar.services.ActionService;
+import org.graylog.plugins.sidecar.services.SidecarCacheInvalidation;
+import org.graylog.plugins.sidecar.services.SidecarRegistry;
+import org.graylog.plugins.sidecar.services.SidecarService;
+import org.graylog2.events.ClusterEventBus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SidecarRegistryTest {
+    private static final String SIDECAR_ID = "sidecar-1";
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private SidecarService sidecarService;
+    @Mock
+    private ActionService actionService;
+    @Mock
+    private ClusterEventBus clusterEventBus;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Captor
+    private ArgumentCaptor<Runnable> flushCaptor;
+
+    private final List<List<Sidecar>> flushedHeartbeats = new ArrayList<>();
+
+    private SidecarRegistry registry;
+    private Runnable flush;
+
+    @Before
+    public void setUp() throws Exception {
+        when(sidecarService.fromRequest(anyString(), any(RegistrationRequest.class), anyString()))
+                .thenAnswer(invocation -> {
+                    final RegistrationRequest request = invocation.getArgument(1);
+                    return Sidecar.create(invocation.getArgument(0), request.nodeName(), request.nodeDetails(), invocation.getArgument(2));
+                });
+        when(sidecarService.save(any(Sidecar.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(sidecarService.updateLastSeen(anyCollection())).thenAnswer(invocation -> {
+            final Collection<Sidecar> sidecars = invocation.getArgument(0);
+            flushedHeartbeats.add(new ArrayList<>(sidecars));
+            return sidecars.size();
+        });
+
+        registry = new SidecarRegistry(sidecarService, actionService, new SidecarPluginConfiguration(),
+                new MetricRegistry(), new EventBus(), clusterEventBus, scheduler);
+        registry.startAsync().awaitRunning();
+
+        verify(scheduler).scheduleWithFixedDelay(flushCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        flush = flushCaptor.getValue();
+    }
+
+    @After
+    public void tearDown() {
+        registry.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void coalescesHeartbeatsUntilFlush() {
+        registry.register(SIDECAR_ID, request("Linux", 10.0f), "1.0.0");
+        registry.register(SIDECAR_ID, request("Linux", 20.0f), "1.0.0");
+        final Sidecar lastHeartbeat = registry.register(SIDECAR_ID, request("Linux", 30.0f), "1.0.0");
+
+        verify(sidecarService, times(1)).save(any(Sidecar.class));
+        verify(sidecarService, never()).updateLastSeen(anyCollection());
+
+        flush.run();
+
+        assertThat(flushedHeartbeats).hasSize(1);
+        assertThat(flushedHeartbeats.get(0)).containsExactly(lastHeartbeat);
+        assertThat(registry.find(SIDECAR_ID)).isEqualTo(lastHeartbeat);
+
+        // nothing is written if there weren't any heartbeats since the last flush
+        flush.run();
+        assertThat(flushedHeartbeats).hasSize(1);
+    }
+
+    @Test
+    public void savesSidecarRightAwayIfMoreThanItsHeartbeatChanged() {
+        registry.register(SIDECAR_ID, request("Linux", 10.0f), "1.0.0");
+        when(sidecarService.findByNodeId(SIDECAR_ID)).thenAnswer(invocation -> registry.find(SIDECAR_ID));
+
+        final Sidecar updatedSidecar = registry.register(SIDECAR_ID, request("Linux", 10.0f), "1.1.0");
+
+        verify(sidecarService, times(2)).save(any(Sidecar.class));
+        assertThat(updatedSidecar.sidecarVersion()).isEqualTo("1.1.0");
+
+        flush.run();
+        assertThat(flushedHeartbeats).isEmpty();
+    }
+
+    @Test
+    public void doesNotCacheHeartbeatOfSidecarInvalidatedDuringRegistration() {
+        registry.register(SIDECAR_ID, request("Linux", 10.0f), "1.0.0");
+
+        // the sidecar gets invalidated while its heartbeat is handled
+        final AtomicBoolean invalidated = new AtomicBoolean();
+        final RegistrationRequest request = mock(RegistrationRequest.class);
+        when(request.nodeName()).thenReturn("node-name");
+        when(request.nodeDetails()).thenAnswer(invocation -> {
+            if (invalidated.compareAndSet(false, true)) {
+                registry.handleSidecarCacheInvalidation(SidecarCacheInvalidation.sidecarId(SIDECAR_ID));
+            }
+            return nodeDetails("Linux", 20.0f);
+        });
+        registry.register(SIDECAR_ID, request, "1.0.0");
+        assertThat(invalidated).isTrue();
+
+        // the next registration reads the stored sidecar instead of using the heartbeat
+        registry.register(SIDECAR_ID, request("Linux", 30.0f), "1.0.0");
+
+        verify(sidecarService, times(2)).findByNodeId(SIDECAR_ID);
+        verify(sidecarService, times(2)).save(any(Sidecar.class));
+    }
+
+    @Test
+    public void readsStoredSidecarAfterInvalidation() {
+        registry.register(SIDECAR_ID, request("Linux", 10.0f), "1.0.0");
+        registry.handleSidecarCacheInvalidation(SidecarCacheInvalidation.sidecarId(SIDECAR_ID));
+        registry.register(SIDECAR_ID, request("Linux", 20.0f), "1.0.0");
+
+        verify(sidecarService, times(2)).findByNodeId(SIDECAR_ID);
+        verify(sidecarService, times(2)).save(any(Sidecar.class));
+    }
+
+    @Test
+    public void remembersSidecarsWithoutActions() {
+        assertThat(registry.takePendingActions(SIDECAR_ID)).isNull();
+        assertThat(registry.takePendingActions(SIDECAR_ID)).isNull();
+
+        verify(actionService, times(1)).findActionBySidecar(SIDECAR_ID, true);
+
+        registry.handleSidecarCacheInvalidation(SidecarCacheInvalidation.sidecarId(""));
+        final CollectorActions actions = mock(CollectorActions.class);
+        when(actionService.findActionBySidecar(SIDECAR_ID, true)).thenReturn(actions);
+
+        assertThat(registry.takePendingActions(SIDECAR_ID)).isSameAs(actions);
+        assertThat(registry.takePendingActions(SIDECAR_ID)).isSameAs(actions);
+
+        // sidecars with pending actions are never cached
+        verify(actionService, times(3)).findActionBySidecar(SIDECAR_ID, true);
+    }
+
+    @Test
+    public void retriesFailedFlushWithoutOverwritingNewerHeartbeats() {
+        registry.register(SIDECAR_ID, request("Linux", 10.0f), "1.0.0");
+        registry.register(SIDECAR_ID, request("Linux", 20.0f), "1.0.0");
+        registry.register("sidecar-2", request("Linux", 10.0f), "1.0.0");
+        registry.register("sidecar-2", request("Linux", 20.0f), "1.0.0");
+
+        // a newer heartbeat of the first sidecar arrives while the failing flush is running
+        doAnswer(invocation -> {
+            registry.register(SIDECAR_ID, request("Linux", 30.0f), "1.0.0");
+            throw new IllegalStateException("MongoDB is unavailable");
+        }).doAnswer(invocation -> {
+            final Collection<Sidecar> sidecars = invocation.getArgument(0);
+            flushedHeartbeats.add(new ArrayList<>(sidecars));
+            return sidecars.size();
+        }).when(sidecarService).updateLastSeen(anyCollection());
+
+        flush.run();
+        assertThat(flushedHeartbeats).isEmpty();
+
+        flush.run();
+        assertThat(flushedHeartbeats).hasSize(1);
+        assertThat(flushedHeartbeats.get(0))
+                .extracting(sidecar -> sidecar.nodeId() + ":" + sidecar.nodeDetails().metrics().cpuIdle())
+                .containsExactlyInAnyOrder(SIDECAR_ID + ":30.0", "sidecar-2:20.0");
+    }
+
+    @Test
+    public void clearsCachedSidecarsIfNotAllHeartbeatsWereWritten() {
+        registry.register(SIDECAR_ID, request("Linux", 10.0f), "1.0.0");
+        registry.register(SIDECAR_ID, request("Linux", 20.0f), "1.0.0");
+        // the sidecar has been removed in the meantime
+        doReturn(0).when(sidecarService).updateLastSeen(anyCollection());
+
+        flush.run();
+        registry.register(SIDECAR_ID, request("Linux", 30.0f), "1.0.0");
+
+        verify(sidecarService, times(2)).findByNodeId(SIDECAR_ID);
+        verify(sidecarService, times(2)).save(any(Sidecar.class));
+    }
+
+    @Test
+    public void postsInvalidationsToAllNodes() {
+        registry.invalidate(SIDECAR_ID);
+
+        verify(clusterEventBus).post(eq(SidecarCacheInvalidation.sidecarId(SIDECAR_ID)));
+    }
+
+    private RegistrationRequest request(String operatingSystem, float cpuIdle) {
+        return RegistrationRequest.create("node-name", nodeDetails(operatingSystem, cpuIdle));
+    }
+
+    private NodeDetails nodeDetails(String operatingSystem, float cpuIdle) {
+        return NodeDetails.create(operatingSystem, "127.0.0.1", NodeMetrics.create(null, cpuIdle, null), null, null);
+    }
+}
@@ -16,9 +16,11 @@
  */
 package org.graylog.plugins.sidecar.collectors;
 
+import com.google.common.collect.ImmutableList;
 import com.mongodb.client.MongoCollection;
 import org.bson.Document;
 import org.graylog.plugins.sidecar.rest.models.NodeDetails;
+import org.graylog.plugins.sidecar.rest.models.NodeMetrics;
 import org.graylog.plugins.sidecar.rest.models.Sidecar;
 import org.graylog.plugins.sidecar.services.CollectorService;
 import org.graylog.plugins.sidecar.services.ConfigurationService;
@@ -29,6 +31,8 @@ import org.graylog.testing.mongodb.MongoDBInstance;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.shared.bindings.ObjectMapperModule;
 import org.graylog2.shared.bindings.ValidatorModule;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.jukito.JukitoRunner;
 import org.jukito.UseModules;
 import org.junit.Before;
@@ -159,4 +163,29 @@ public class SidecarServiceImplTest {
         assertEquals(1, result);
         assertEquals(2, mongodb.mongoConnection().getMongoDatabase().getCollection(collectionName).count());
     }
+
+    @Test
+    @MongoDBFixtures("collectorsMultipleDocuments.json")
+    public void testUpdateLastSeen() throws Exception {
+        final DateTime lastSeen = new DateTime(2020, 1, 1, 12, 0, DateTimeZone.UTC);
+        final Sidecar sidecar = this.sidecarService.findByNodeId("uniqueid1");
+        final NodeDetails nodeDetails = NodeDetails.create(
+                sidecar.nodeDetails().operatingSystem(),
+                null,
+                NodeMetrics.create(ImmutableList.of("/var"), 42.0f, 0.5f),
+                null,
+                null);
+        final Sidecar heartbeat = sidecar.toBuilder().nodeDetails(nodeDetails).lastSeen(lastSeen).build();
+        final Sidecar removedSidecar = heartbeat.toBuilder().nodeId("nonexisting").build();
+
+        final int result = this.sidecarService.updateLastSeen(ImmutableList.of(heartbeat, removedSidecar));
+
+        assertEquals(1, result);
+        final Sidecar updatedSidecar = this.sidecarService.findByNodeId("uniqueid1");
+        assertEquals(lastSeen.getMillis(), updatedSidecar.lastSeen().getMillis());
+        assertEquals(nodeDetails.metrics(), updatedSidecar.nodeDetails().metrics());
+        assertEquals(sidecar.nodeName(), updatedSidecar.nodeName());
+        assertEquals(sidecar.nodeDetails().operatingSystem(), updatedSidecar.nodeDetails().operatingSystem());
+        assertNull(this.sidecarService.findByNodeId("nonexisting"));
+    }
 }
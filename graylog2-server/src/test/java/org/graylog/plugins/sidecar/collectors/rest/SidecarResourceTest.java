@@ -25,7 +25,7 @@ import org.graylog.plugins.sidecar.rest.models.Sidecar;
 import org.graylog.plugins.sidecar.rest.models.SidecarSummary;
 import org.graylog.plugins.sidecar.rest.requests.RegistrationRequest;
 import org.graylog.plugins.sidecar.rest.resources.SidecarResource;
-import org.graylog.plugins.sidecar.services.ActionService;
+import org.graylog.plugins.sidecar.services.SidecarRegistry;
 import org.graylog.plugins.sidecar.services.SidecarService;
 import org.graylog.plugins.sidecar.system.SidecarConfiguration;
 import org.graylog2.plugin.cluster.ClusterConfigService;
@@ -58,7 +58,7 @@ public class SidecarResourceTest extends RestResourceBaseTest {
     private SidecarService sidecarService;
 
     @Mock
-    private ActionService actionService;
+    private SidecarRegistry sidecarRegistry;
 
     @Mock
     private SidecarStatusMapper statusMapper;
@@ -76,7 +76,7 @@ public class SidecarResourceTest extends RestResourceBaseTest {
         when(sidecarConfiguration.sidecarUpdateInterval()).thenReturn(Period.seconds(30));
         this.resource = new SidecarResource(
                 sidecarService,
-                actionService,
+                sidecarRegistry,
                 clusterConfigService,
                 statusMapper);
     }
@@ -129,6 +129,8 @@ public class SidecarResourceTest extends RestResourceBaseTest {
                 )
         );
 
+        when(sidecarRegistry.register("sidecarId", input, "0.0.1")).thenReturn(mock(Sidecar.class));
+
         final Response response = this.resource.register("sidecarId", input, "0.0.1");
 
         assertThat(response).isSuccess();
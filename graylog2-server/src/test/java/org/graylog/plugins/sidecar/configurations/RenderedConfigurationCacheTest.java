@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.sidecar.configurations;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.EventBus;
+import org.graylog.plugins.sidecar.common.SidecarPluginConfiguration;
+import org.graylog.plugins.sidecar.rest.models.Configuration;
+import org.graylog.plugins.sidecar.rest.models.NodeDetails;
+import org.graylog.plugins.sidecar.rest.models.Sidecar;
+import org.graylog.plugins.sidecar.services.ConfigurationService;
+import org.graylog.plugins.sidecar.services.EtagCacheInvalidation;
+import org.graylog.plugins.sidecar.services.RenderedConfigurationCache;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RenderedConfigurationCacheTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private ConfigurationService configurationService;
+
+    private RenderedConfigurationCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new RenderedConfigurationCache(configurationService, new SidecarPluginConfiguration(), new MetricRegistry(), new EventBus());
+        when(configurationService.renderConfigurationForCollector(any(Sidecar.class), any(Configuration.class)))
+                .thenAnswer(invocation -> {
+                    final Sidecar sidecar = invocation.getArgument(0);
+                    final Configuration configuration = invocation.getArgument(1);
+                    return configuration.toBuilder().template("rendered for " + sidecar.nodeId()).build();
+                });
+    }
+
+    @Test
+    public void sharesRenderingBetweenSidecarsIfTemplateDoesNotUseTheirDetails() throws Exception {
+        final Configuration configuration = configuration("output: ${user.host}");
+
+        final Configuration first = cache.render(sidecar("sidecar-1", "Linux"), configuration);
+        final Configuration second = cache.render(sidecar("sidecar-2", "Linux"), configuration);
+
+        assertThat(second).isEqualTo(first);
+        verify(configurationService, times(1)).renderConfigurationForCollector(any(Sidecar.class), eq(configuration));
+    }
+
+    @Test
+    public void rendersForEachSidecarIfTemplateUsesItsDetails() throws Exception {
+        final Configuration configuration = configuration("name: ${sidecar.nodeId}");
+
+        assertThat(cache.render(sidecar("sidecar-1", "Linux"), configuration).template()).isEqualTo("rendered for sidecar-1");
+        assertThat(cache.render(sidecar("sidecar-2", "Linux"), configuration).template()).isEqualTo("rendered for sidecar-2");
+        assertThat(cache.render(sidecar("sidecar-1", "Windows"), configuration).template()).isEqualTo("rendered for sidecar-1");
+
+        verify(configurationService, times(2)).renderConfigurationForCollector(any(Sidecar.class), eq(configuration));
+    }
+
+    @Test
+    public void rendersForEachSidecarIfTemplateAccessesDetailsDynamically() throws Exception {
+        final String[] templates = {
+                "<#list sidecar as k, v>${k}: ${v}</#list>",
+                "<#assign s = sidecar>name: ${s.nodeId}",
+                "name: ${sidecar[\"nodeId\"]}",
+                "<#include \"5b3c7f4b8c2b4a0001a1b2c4\">"
+        };
+        for (String template : templates) {
+            final Configuration configuration = configuration(template);
+
+            assertThat(cache.render(sidecar("sidecar-1", "Linux"), configuration).template()).isEqualTo("rendered for sidecar-1");
+            assertThat(cache.render(sidecar("sidecar-2", "Linux"), configuration).template()).isEqualTo("rendered for sidecar-2");
+
+            verify(configurationService, times(2)).renderConfigurationForCollector(any(Sidecar.class), eq(configuration));
+        }
+    }
+
+    @Test
+    public void ignoresDetailsWhichAreOnlyMentionedOutsideOfSidecarReferences() throws Exception {
+        final Configuration configuration = configuration("nodeName: ${user.nodeName}\nname: ${sidecar.nodeName}");
+
+        cache.render(sidecar("sidecar-1", "Linux"), configuration);
+        cache.render(sidecar("sidecar-2", "Windows"), configuration);
+
+        verify(configurationService, times(1)).renderConfigurationForCollector(any(Sidecar.class), eq(configuration));
+    }
+
+    @Test
+    public void rendersAgainIfTemplateChanged() throws Exception {
+        cache.render(sidecar("sidecar-1", "Linux"), configuration("first"));
+        cache.render(sidecar("sidecar-1", "Linux"), configuration("second"));
+
+        verify(configurationService, times(2)).renderConfigurationForCollector(any(Sidecar.class), any(Configuration.class));
+    }
+
+    @Test
+    public void rendersAgainAfterInvalidation() throws Exception {
+        final Configuration configuration = configuration("output: ${user.host}");
+
+        cache.render(sidecar("sidecar-1", "Linux"), configuration);
+        cache.handleEtagInvalidation(EtagCacheInvalidation.etag(""));
+        cache.render(sidecar("sidecar-1", "Linux"), configuration);
+
+        verify(configurationService, times(2)).renderConfigurationForCollector(any(Sidecar.class), eq(configuration));
+    }
+
+    private Configuration configuration(String template) {
+        return Configuration.create("5b3c7f4b8c2b4a0001a1b2c3", "collector-id", "config", "#ffffff", template);
+    }
+
+    private Sidecar sidecar(String nodeId, String operatingSystem) {
+        return Sidecar.create(nodeId, "node-name", NodeDetails.create(operatingSystem, null, null, null, null), "1.0.0");
+    }
+}
@@ -24,6 +24,7 @@ import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.streams.StreamService;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -72,6 +73,22 @@ class IndexLookupTest {
         assertThat(result).containsExactly(matchingIndexRange.indexName());
     }
 
+    @Test
+    void returnsIndexRangesBelongingToStreamsInTimeRange() {
+        Set<String> streamIds = mockStreams("s-1");
+
+        final IndexRange first = mockIndexRange("index1", new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC));
+        final IndexRange second = mockIndexRange("index2", new DateTime(2020, 1, 3, 0, 0, DateTimeZone.UTC));
+        final IndexRange third = mockIndexRange("index3", new DateTime(2020, 1, 2, 0, 0, DateTimeZone.UTC));
+        when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(sortedSetOf(first, second, third));
+
+        sut.indexRangeContainsOneOfStreams = (i, s) -> !i.equals(third);
+
+        List<IndexRange> result = sut.indexRangesForStreamsInTimeRange(streamIds, someTimeRange());
+
+        assertThat(result).containsExactlyInAnyOrder(first, second);
+    }
+
     @Test
     void returnsEmptySetForEmptyStreamIds() {
         Set<String> result = sut.indexNamesForStreamsInTimeRange(emptySet(), someTimeRange());
@@ -122,6 +139,12 @@ class IndexLookupTest {
         return indexRange1;
     }
 
+    private IndexRange mockIndexRange(String name, DateTime end) {
+        final IndexRange indexRange = mockIndexRange(name);
+        when(indexRange.end()).thenReturn(end);
+        return indexRange;
+    }
+
     private Stream mockStream(String id) {
         final Stream s = mock(Stream.class, RETURNS_DEEP_STUBS);
         when(s.getId()).thenReturn(id);
@@ -70,7 +70,8 @@ class CommandFactoryTest {
                 () -> assertThat(command.streams()).isEqualTo(request.streams()),
                 () -> assertThat(command.fieldsInOrder()).isEqualTo(request.fieldsInOrder()),
                 () -> assertThat(command.limit()).isEqualTo(request.limit()),
-                () -> assertThat(command.chunkSize()).isEqualTo(request.chunkSize())
+                () -> assertThat(command.chunkSize()).isEqualTo(request.chunkSize()),
+                () -> assertThat(command.ordered()).isEqualTo(request.ordered())
         );
     }
 
@@ -35,6 +35,7 @@ class MessagesRequestTest {
                 () -> assertThat(defaultRequest.queryString()).isEqualTo(DEFAULT_QUERY),
                 () -> assertThat(defaultRequest.streams()).isEqualTo(DEFAULT_STREAMS),
                 () -> assertThat(defaultRequest.fieldsInOrder()).isEqualTo(DEFAULT_FIELDS),
-                () -> assertThat(defaultRequest.chunkSize()).isEqualTo(DEFAULT_CHUNK_SIZE));
+                () -> assertThat(defaultRequest.chunkSize()).isEqualTo(DEFAULT_CHUNK_SIZE),
+                () -> assertThat(defaultRequest.ordered()).isTrue());
     }
 }
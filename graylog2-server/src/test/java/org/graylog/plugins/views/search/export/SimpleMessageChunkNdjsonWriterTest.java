@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.export;
+
+import org.graylog2.rest.MoreMediaTypes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog.plugins.views.search.export.LinkedHashSetUtil.linkedHashSetOf;
+import static org.graylog.plugins.views.search.export.TestData.simpleMessage;
+
+class SimpleMessageChunkNdjsonWriterTest {
+    private SimpleMessageChunkNdjsonWriter sut;
+
+    @BeforeEach
+    void setUp() {
+        sut = new SimpleMessageChunkNdjsonWriter();
+    }
+
+    @Test
+    void isWritableForSimpleMessages() {
+        boolean isWritable = sut.isWriteable(SimpleMessageChunk.class, null, null, MoreMediaTypes.APPLICATION_NDJSON_TYPE);
+        assertThat(isWritable).isTrue();
+    }
+
+    @Test
+    void isNotWritableForCsv() {
+        boolean isWritable = sut.isWriteable(SimpleMessageChunk.class, null, null, MoreMediaTypes.TEXT_CSV_TYPE);
+        assertThat(isWritable).isFalse();
+    }
+
+    @Test
+    void writesOneJsonObjectPerLine() {
+        SimpleMessageChunk chunk = TestData.simpleMessageChunk("timestamp,source,message",
+                new Object[]{"2015-01-01 01:00:00.000", "source-1", "Behold the tap dancing chimp!"},
+                new Object[]{"2015-01-02 01:00:00.000", "source-2", "Behold the yodelling parrot!"});
+
+        String result = write(chunk);
+
+        assertThat(result.split("\n"))
+                .containsExactly(
+                        "{\"timestamp\":\"2015-01-01 01:00:00.000\",\"source\":\"source-1\",\"message\":\"Behold the tap dancing chimp!\"}",
+                        "{\"timestamp\":\"2015-01-02 01:00:00.000\",\"source\":\"source-2\",\"message\":\"Behold the yodelling parrot!\"}");
+    }
+
+    @Test
+    void omitsMissingFields() {
+        SimpleMessageChunk chunk = SimpleMessageChunk.from(
+                linkedHashSetOf("timestamp", "source", "message"),
+                simpleMessage("timestamp,message", new Object[]{"2015-01-02 01:00:00.000", "more text"}));
+
+        String result = write(chunk);
+
+        assertThat(result).isEqualTo("{\"timestamp\":\"2015-01-02 01:00:00.000\",\"message\":\"more text\"}\n");
+    }
+
+    @Test
+    void doesNotWriteHeaderForFirstChunk() {
+        SimpleMessageChunk chunk = TestData.simpleMessageChunk("source", new Object[]{"source-1"})
+                .toBuilder()
+                .isFirstChunk(true)
+                .build();
+
+        String result = write(chunk);
+
+        assertThat(result).isEqualTo("{\"source\":\"source-1\"}\n");
+    }
+
+    private String write(SimpleMessageChunk chunk) {
+        ByteArrayOutputStream entityStream = new ByteArrayOutputStream();
+        try {
+            sut.writeTo(chunk, SimpleMessageChunk.class, null, null, null, null, entityStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new String(entityStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
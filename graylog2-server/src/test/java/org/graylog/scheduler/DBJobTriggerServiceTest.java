@@ -20,8 +20,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.NamedType;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
 import org.graylog.events.JobSchedulerTestClock;
 import org.graylog.events.TestJobTriggerData;
+import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
+import org.graylog.scheduler.eventbus.JobTriggerUpdatedEvent;
 import org.graylog.scheduler.schedule.IntervalJobSchedule;
 import org.graylog.scheduler.schedule.OnceJobSchedule;
 import org.graylog.testing.mongodb.MongoDBFixtures;
@@ -50,6 +55,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DBJobTriggerServiceTest {
@@ -63,6 +70,8 @@ public class DBJobTriggerServiceTest {
 
     @Mock
     private NodeId nodeId;
+    @Mock
+    private JobSchedulerEventBus schedulerEventBus;
 
     private DBJobTriggerService dbJobTriggerService;
     private JobSchedulerTestClock clock = new JobSchedulerTestClock(DateTime.now(DateTimeZone.UTC));
@@ -79,7 +88,7 @@ public class DBJobTriggerServiceTest {
         objectMapper.registerSubtypes(new NamedType(TestJobTriggerData.class, TestJobTriggerData.TYPE_NAME));
 
         mapperProvider = new MongoJackObjectMapperProvider(objectMapper);
-        this.dbJobTriggerService = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock);
+        this.dbJobTriggerService = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerEventBus);
     }
 
     @Test
@@ -268,6 +277,53 @@ public class DBJobTriggerServiceTest {
                 .hasMessageContaining("must not have an ID");
     }
 
+    @Test
+    public void createAllTriggers() {
+        final JobTriggerDto.Builder builder = JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .schedule(OnceJobSchedule.create());
+
+        final List<JobTriggerDto> triggers = dbJobTriggerService.createAll(ImmutableList.of(
+                builder.build(),
+                builder.jobDefinitionId("def-456").build()));
+
+        assertThat(triggers).hasSize(2);
+        assertThat(triggers).allSatisfy(trigger -> {
+            assertThat(trigger.id()).isNotBlank();
+            assertThat(trigger.status()).isEqualTo(JobTriggerStatus.RUNNABLE);
+        });
+        assertThat(triggers).extracting(JobTriggerDto::jobDefinitionId).containsExactly("abc-123", "def-456");
+        assertThat(dbJobTriggerService.all()).hasSize(2);
+        // A single wakeup of the scheduler for the whole batch
+        verify(schedulerEventBus, times(1)).post(JobTriggerUpdatedEvent.INSTANCE);
+
+        assertThat(dbJobTriggerService.createAll(ImmutableList.of())).isEmpty();
+        assertThatThrownBy(() -> dbJobTriggerService.createAll(ImmutableList.of(builder.id("5b983c77d06b3f114bf130e2").build())))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("must not have an ID");
+    }
+
+    @Test
+    public void createAllTriggersDespiteFailingTriggers() {
+        // Only allow one trigger per job definition to make the second insert fail
+        final MongoCollection<Document> collection = mongodb.mongoConnection().getMongoDatabase()
+                .getCollection(DBJobTriggerService.COLLECTION_NAME);
+        collection.dropIndex(new Document(DBJobTriggerService.FIELD_JOB_DEFINITION_ID, 1));
+        collection.createIndex(new Document(DBJobTriggerService.FIELD_JOB_DEFINITION_ID, 1), new IndexOptions().unique(true));
+        final JobTriggerDto.Builder builder = JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .schedule(OnceJobSchedule.create());
+
+        final List<JobTriggerDto> triggers = dbJobTriggerService.createAll(ImmutableList.of(
+                builder.build(),
+                builder.build(),
+                builder.jobDefinitionId("def-456").build()));
+
+        assertThat(triggers).extracting(JobTriggerDto::jobDefinitionId).containsExactly("abc-123", "def-456");
+        assertThat(triggers).allSatisfy(trigger -> assertThat(trigger.id()).isNotBlank());
+        assertThat(dbJobTriggerService.all()).hasSize(2);
+    }
+
     @Test
     public void updateTrigger() {
         final JobTriggerDto originalTrigger = dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
@@ -499,12 +555,81 @@ public class DBJobTriggerServiceTest {
         assertThat(dbJobTriggerService.nextRunnableTrigger()).isEmpty();
     }
 
+    @Test
+    public void nextRunnableTriggers() {
+        // No triggers yet
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10)).isEmpty();
+
+        final JobTriggerDto trigger1 = dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .nextTime(clock.nowUTC().plusSeconds(11))
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build());
+
+        final JobTriggerDto trigger2 = dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .nextTime(clock.nowUTC().plusSeconds(10))
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build());
+
+        final JobTriggerDto trigger3 = dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .nextTime(clock.nowUTC().plusSeconds(12))
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build());
+
+        final JobTriggerDto trigger4 = dbJobTriggerService.create(JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .nextTime(clock.nowUTC().plusSeconds(30))
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build());
+
+        verify(schedulerEventBus, times(4)).post(JobTriggerUpdatedEvent.INSTANCE);
+
+        // The due times are known before any trigger is runnable
+        assertThat(dbJobTriggerService.nextDueTimes(2))
+                .containsExactly(trigger2.nextTime(), trigger1.nextTime());
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10)).isEmpty();
+
+        clock.plus(20, TimeUnit.SECONDS);
+
+        // Only two triggers are locked because of the limit, oldest next time first
+        assertThat(dbJobTriggerService.nextRunnableTriggers(2)).satisfies(triggers -> {
+            assertThat(triggers).extracting(JobTriggerDto::id).containsExactly(trigger2.id(), trigger1.id());
+            assertThat(triggers).allSatisfy(trigger -> {
+                assertThat(trigger.status()).isEqualTo(JobTriggerStatus.RUNNING);
+                assertThat(trigger.triggeredAt()).isPresent().get().isEqualTo(clock.nowUTC());
+                assertThat(trigger.lock().owner()).isEqualTo(NODE_ID);
+                assertThat(trigger.lock().lastLockTime()).isEqualTo(clock.nowUTC());
+            });
+        });
+
+        // Already locked triggers are not locked again
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10))
+                .extracting(JobTriggerDto::id)
+                .containsExactly(trigger3.id());
+        assertThat(dbJobTriggerService.nextRunnableTriggers(10)).isEmpty();
+        assertThat(dbJobTriggerService.nextDueTimes(10)).containsExactly(trigger4.nextTime());
+    }
+
     @Test
     @MongoDBFixtures("job-triggers.json")
     public void nextRunnableTriggerWithEndTime() {
         // Set clock to base date used in the fixture file
         final JobSchedulerTestClock clock = new JobSchedulerTestClock(DateTime.parse("2019-01-01T00:00:00.000Z"));
-        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock);
+        final DBJobTriggerService service = new DBJobTriggerService(mongodb.mongoConnection(), mapperProvider, nodeId, clock, schedulerEventBus);
 
         // No triggers yet because 54e3deadbeefdeadbeef0002 is already locked and RUNNING
         assertThat(service.nextRunnableTrigger()).isEmpty();
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.scheduler;
+
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JobTriggerDueQueueTest {
+    private final DateTime now = DateTime.parse("2020-01-01T10:00:00.000Z").withZone(DateTimeZone.UTC);
+
+    @Test
+    public void isStaleInitially() {
+        final JobTriggerDueQueue queue = new JobTriggerDueQueue(5000);
+
+        assertThat(queue.hasDueTriggers(now)).isTrue();
+    }
+
+    @Test
+    public void hasDueTriggersWhenHeadIsDue() {
+        final JobTriggerDueQueue queue = new JobTriggerDueQueue(5000);
+
+        queue.refresh(ImmutableList.of(now.plusSeconds(2), now.plusSeconds(1)), now, queue.changes());
+
+        assertThat(queue.hasDueTriggers(now)).isFalse();
+        assertThat(queue.hasDueTriggers(now.plusMillis(999))).isFalse();
+        assertThat(queue.hasDueTriggers(now.plusSeconds(1))).isTrue();
+    }
+
+    @Test
+    public void hasDueTriggersAfterMaxAge() {
+        final JobTriggerDueQueue queue = new JobTriggerDueQueue(5000);
+
+        queue.refresh(ImmutableList.of(), now, queue.changes());
+
+        assertThat(queue.hasDueTriggers(now.plusMillis(4999))).isFalse();
+        assertThat(queue.hasDueTriggers(now.plusSeconds(5))).isTrue();
+    }
+
+    @Test
+    public void staysStaleWhenChangedDuringRefresh() {
+        final JobTriggerDueQueue queue = new JobTriggerDueQueue(5000);
+
+        final long changes = queue.changes();
+        queue.markStale();
+        queue.refresh(ImmutableList.of(), now, changes);
+
+        assertThat(queue.hasDueTriggers(now)).isTrue();
+
+        queue.refresh(ImmutableList.of(), now, queue.changes());
+        assertThat(queue.hasDueTriggers(now)).isFalse();
+
+        queue.markStale();
+        assertThat(queue.hasDueTriggers(now)).isTrue();
+    }
+}
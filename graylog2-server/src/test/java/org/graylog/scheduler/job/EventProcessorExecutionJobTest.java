@@ -16,10 +16,12 @@
  */
 package org.graylog.scheduler.job;
 
+import com.codahale.metrics.MetricRegistry;
 import org.graylog.events.JobSchedulerTestClock;
 import org.graylog.events.TestEventProcessorParameters;
 import org.graylog.events.configuration.EventsConfiguration;
 import org.graylog.events.configuration.EventsConfigurationProvider;
+import org.graylog.events.processor.EventProcessorCatchUpLimiter;
 import org.graylog.events.processor.EventProcessorEngine;
 import org.graylog.events.processor.EventProcessorExecutionJob;
 import org.graylog.scheduler.JobDefinitionDto;
@@ -67,11 +69,13 @@ public class EventProcessorExecutionJobTest {
 
     private JobScheduleStrategies jobScheduleStrategies;
     private JobSchedulerTestClock clock;
+    private EventProcessorCatchUpLimiter catchUpLimiter;
 
     @Before
     public void setUp() {
         clock = new JobSchedulerTestClock(DateTime.parse("2019-01-01T00:00:00.000Z"));
         jobScheduleStrategies = new JobScheduleStrategies(clock);
+        catchUpLimiter = new EventProcessorCatchUpLimiter(1, new MetricRegistry());
         when(eventsConfigurationProvider.get()).thenReturn(EventsConfiguration.builder().build());
     }
 
@@ -98,7 +102,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -157,7 +161,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -226,7 +230,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -296,7 +300,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -361,7 +365,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -419,7 +423,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -495,7 +499,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -580,7 +584,7 @@ public class EventProcessorExecutionJobTest {
                         .build())
                 .build();
 
-        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, jobDefinition);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
 
         final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
                 .id("trigger-1")
@@ -626,6 +630,106 @@ public class EventProcessorExecutionJobTest {
         assertThat(triggerUpdate.status()).isNotPresent();
     }
 
+    @Test
+    public void executeWithCatchUpMergesCompleteWindowsOfSmallerBacklog() throws Exception {
+        final long processingWindowSize = Duration.standardSeconds(60).getMillis();
+        final DateTime to = clock.nowUTC();
+        final JobDefinitionDto jobDefinition = jobDefinition(to.minus(processingWindowSize), to, processingWindowSize);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
+
+        // Behind ten and a half windows, which is less than the default catch-up window
+        clock.plus(630, TimeUnit.SECONDS);
+
+        final JobTriggerUpdate triggerUpdate = job.execute(jobExecutionContext(jobDefinition, to));
+
+        // Only the ten complete windows are merged into the next timerange
+        assertThat(triggerUpdate.nextTime()).isPresent().get().isEqualTo(clock.nowUTC());
+        assertThat(triggerUpdate.data()).isPresent().get().isEqualTo(EventProcessorExecutionJob.Data.builder()
+                .timerangeFrom(to.plusMillis(1))
+                .timerangeTo(to.plus(processingWindowSize * 10))
+                .build());
+    }
+
+    @Test
+    public void executeThrottlesConcurrentCatchUps() throws Exception {
+        final long processingWindowSize = Duration.standardSeconds(60).getMillis();
+        final DateTime to = clock.nowUTC();
+        final TestEventProcessorParameters eventProcessorParameters = TestEventProcessorParameters.create(to.minus(processingWindowSize), to);
+        final JobDefinitionDto jobDefinition = jobDefinition(to.minus(processingWindowSize), to, processingWindowSize);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
+
+        clock.plus(1, TimeUnit.HOURS);
+
+        // Another event processor is already catching up
+        assertThat(catchUpLimiter.tryAcquire()).isTrue();
+
+        final JobTriggerUpdate throttledUpdate = job.execute(jobExecutionContext(jobDefinition, to));
+
+        verify(eventProcessorEngine, never()).execute(any(), any());
+        assertThat(throttledUpdate.nextTime()).isPresent().get().isEqualTo(clock.nowUTC().plusSeconds(5));
+        assertThat(throttledUpdate.data()).isNotPresent();
+
+        catchUpLimiter.release();
+
+        final JobTriggerUpdate triggerUpdate = job.execute(jobExecutionContext(jobDefinition, to));
+
+        verify(eventProcessorEngine, times(1)).execute("processor-1", eventProcessorParameters);
+        assertThat(triggerUpdate.data()).isPresent();
+
+        // The permit has been released after the execution
+        assertThat(catchUpLimiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void executeDoesNotThrottleUpToDateExecutions() throws Exception {
+        final long processingWindowSize = Duration.standardSeconds(60).getMillis();
+        final DateTime to = clock.nowUTC();
+        final TestEventProcessorParameters eventProcessorParameters = TestEventProcessorParameters.create(to.minus(processingWindowSize), to);
+        final JobDefinitionDto jobDefinition = jobDefinition(to.minus(processingWindowSize), to, processingWindowSize);
+        final EventProcessorExecutionJob job = new EventProcessorExecutionJob(jobScheduleStrategies, clock, eventProcessorEngine, eventsConfigurationProvider, catchUpLimiter, jobDefinition);
+
+        assertThat(catchUpLimiter.tryAcquire()).isTrue();
+
+        job.execute(jobExecutionContext(jobDefinition, to));
+
+        verify(eventProcessorEngine, times(1)).execute("processor-1", eventProcessorParameters);
+    }
+
+    private JobDefinitionDto jobDefinition(DateTime from, DateTime to, long processingWindowSize) {
+        return JobDefinitionDto.builder()
+                .id("job-1")
+                .title("Test")
+                .description("A test")
+                .config(EventProcessorExecutionJob.Config.builder()
+                        .eventDefinitionId("processor-1")
+                        .processingWindowSize(processingWindowSize)
+                        .processingHopSize(processingWindowSize)
+                        .parameters(TestEventProcessorParameters.create(from, to))
+                        .build())
+                .build();
+    }
+
+    private JobExecutionContext jobExecutionContext(JobDefinitionDto jobDefinition, DateTime nextTime) {
+        final JobTriggerDto trigger = JobTriggerDto.builderWithClock(clock)
+                .id("trigger-1")
+                .jobDefinitionId(jobDefinition.id())
+                .startTime(nextTime)
+                .nextTime(nextTime)
+                .status(JobTriggerStatus.RUNNABLE)
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(60)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build();
+
+        return JobExecutionContext.builder()
+                .definition(jobDefinition)
+                .trigger(trigger)
+                .isRunning(new AtomicBoolean(true))
+                .jobTriggerUpdates(new JobTriggerUpdates(clock, jobScheduleStrategies, trigger))
+                .build();
+    }
+
     @Test
     public void dataObject() {
         final DateTime now = DateTime.now(DateTimeZone.UTC);
@@ -17,9 +17,11 @@
 package org.graylog.security;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
 import org.graylog.grn.GRN;
 import org.graylog.grn.GRNRegistry;
 import org.graylog.grn.GRNTypes;
+import org.graylog.security.events.GrantsChangedEvent;
 import org.graylog.testing.mongodb.MongoDBFixtures;
 import org.graylog.testing.mongodb.MongoDBInstance;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
@@ -28,6 +30,7 @@ import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
@@ -38,6 +41,8 @@ import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DBGrantServiceTest {
@@ -47,13 +52,16 @@ public class DBGrantServiceTest {
     @Rule
     public final MockitoRule mockitoRule = MockitoJUnit.rule();
 
+    @Mock
+    private EventBus serverEventBus;
+
     private DBGrantService dbService;
     private GRNRegistry grnRegistry = GRNRegistry.createWithBuiltinTypes();
 
     @Before
     public void setUp() throws Exception {
         final MongoJackObjectMapperProvider mapper = new MongoJackObjectMapperProvider(new ObjectMapperProvider().get());
-        this.dbService = new DBGrantService(mongodb.mongoConnection(), mapper, grnRegistry);
+        this.dbService = new DBGrantService(mongodb.mongoConnection(), mapper, grnRegistry, serverEventBus);
     }
 
     @Test
@@ -248,4 +256,23 @@ public class DBGrantServiceTest {
         assertThat(grant.updatedBy()).isEqualTo("admin");
         assertThat(grant.updatedAt()).isBefore(ZonedDateTime.now(ZoneOffset.UTC));
     }
+
+    @Test
+    public void postsGrantsChangedEventOnSave() {
+        dbService.create(GRNTypes.USER.toGRN("jane"), Capability.MANAGE, GRNTypes.DASHBOARD.toGRN("54e3deadbeefdeadbeef0000"), "admin");
+
+        verify(serverEventBus).post(GrantsChangedEvent.create());
+    }
+
+    @Test
+    @MongoDBFixtures("grants.json")
+    public void postsGrantsChangedEventOnlyWhenGrantsWereDeleted() {
+        dbService.deleteForTarget(grnRegistry.parse("grn::::stream:54e3deadbeefdeadbeef9999"));
+
+        verify(serverEventBus, never()).post(GrantsChangedEvent.create());
+
+        assertThat(dbService.deleteForTarget(grnRegistry.parse("grn::::stream:54e3deadbeefdeadbeef0001"))).isEqualTo(3);
+
+        verify(serverEventBus).post(GrantsChangedEvent.create());
+    }
 }
@@ -17,6 +17,7 @@
 package org.graylog.security.entities;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
 import org.graylog.grn.GRN;
 import org.graylog.grn.GRNDescriptor;
 import org.graylog.grn.GRNDescriptorService;
@@ -64,7 +65,7 @@ class EntityDependencyResolverTest {
                MongoJackObjectMapperProvider objectMapperProvider) {
 
         this.grnRegistry = grnRegistry;
-        DBGrantService dbGrantService = new DBGrantService(mongodb.mongoConnection(), objectMapperProvider, this.grnRegistry);
+        DBGrantService dbGrantService = new DBGrantService(mongodb.mongoConnection(), objectMapperProvider, this.grnRegistry, new EventBus());
         this.contentPackService = contentPackService;
         this.grnDescriptorService = grnDescriptorService;
         entityDependencyResolver = new EntityDependencyResolver(contentPackService, grnRegistry, grnDescriptorService, dbGrantService);
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.security.permissions;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.AllPermission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.graylog.grn.GRNRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledPermissionsTest {
+    private final GRNRegistry grnRegistry = GRNRegistry.createWithBuiltinTypes();
+
+    @Test
+    void impliesLikeWildcardPermissions() {
+        final List<Permission> granted = ImmutableList.of(
+                new WildcardPermission("streams:read:stream-1,stream-2"),
+                new WildcardPermission("dashboards:*"),
+                new WildcardPermission("users:edit:*"),
+                new WildcardPermission("indices"),
+                new WildcardPermission("*:list"));
+        final CompiledPermissions compiled = CompiledPermissions.compile(granted);
+
+        final List<String> checked = ImmutableList.of(
+                "streams:read:stream-1", "streams:read:stream-2", "streams:read:stream-3", "streams:edit:stream-1",
+                "streams:read", "streams", "streams:read:stream-1,stream-2", "streams:read:stream-1,stream-3",
+                "dashboards", "dashboards:read", "dashboards:read:dashboard-1", "dashboards:*",
+                "users", "users:edit", "users:edit:admin", "users:read:admin",
+                "indices:read:graylog_0", "inputs:list", "inputs:list:input-1", "inputs:read", "*");
+
+        for (String permission : checked) {
+            final WildcardPermission wildcardPermission = new WildcardPermission(permission);
+            final boolean expected = granted.stream().anyMatch(p -> p.implies(wildcardPermission));
+            assertThat(compiled.implies(wildcardPermission)).as(permission).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void allPermissionImpliesEverything() {
+        final CompiledPermissions compiled = CompiledPermissions.compile(ImmutableList.of(new AllPermission()));
+
+        assertThat(compiled.implies(new WildcardPermission("streams:read:stream-1"))).isTrue();
+        assertThat(compiled.implies(GRNPermission.create("entity:own", grnRegistry.newGRN("stream", "stream-1")))).isTrue();
+    }
+
+    @Test
+    void impliesGrnPermissions() {
+        final CompiledPermissions compiled = CompiledPermissions.compile(ImmutableList.of(
+                GRNPermission.create("entity:own", grnRegistry.newGRN("stream", "stream-1")),
+                new WildcardPermission("streams:read:stream-1")));
+
+        assertThat(compiled.implies(GRNPermission.create("entity:own", grnRegistry.newGRN("stream", "stream-1")))).isTrue();
+        assertThat(compiled.implies(GRNPermission.create("entity:own", grnRegistry.newGRN("stream", "stream-2")))).isFalse();
+    }
+
+    @Test
+    void impliesNothingWithoutPermissions() {
+        final CompiledPermissions compiled = CompiledPermissions.compile(ImmutableList.of());
+
+        assertThat(compiled.implies(new WildcardPermission("streams:read:stream-1"))).isFalse();
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.graylog.security.shares;
 
+import com.google.common.eventbus.EventBus;
 import org.graylog.grn.GRN;
 import org.graylog.grn.GRNDescriptor;
 import org.graylog.grn.GRNDescriptorService;
@@ -61,7 +62,7 @@ class GranteeSharesServiceTest {
                @Mock GRNDescriptorService grnDescriptorService,
                @Mock GranteeService granteeService) {
         this.grnDescriptorService = grnDescriptorService;
-        final DBGrantService dbGrantService = new DBGrantService(mongodb.mongoConnection(), mongoJackObjectMapperProvider, grnRegistry);
+        final DBGrantService dbGrantService = new DBGrantService(mongodb.mongoConnection(), mongoJackObjectMapperProvider, grnRegistry, new EventBus());
         when(granteeService.getGranteeAliases(any(GRN.class))).thenAnswer(a -> Collections.singleton(a.getArgument(0)));
         this.granteeSharesService = new GranteeSharesService(dbGrantService, grnDescriptorService, granteeService);
     }
@@ -101,6 +101,28 @@ public class ConfigurationTest {
         assertThat(configuration.getPasswordSecret()).isEqualTo("abcdefghijklmnopqrstuvwxyz");
     }
 
+    @Test
+    public void testApproximatePivotSampleProbabilityIsTooLarge() throws ValidationException, RepositoryException {
+        validProperties.put("approximate_pivot_sample_probability", "1.5");
+
+        expectedException.expect(ValidationException.class);
+        expectedException.expectMessage("Parameter \"approximate_pivot_sample_probability\" must be greater than 0 and at most 1.");
+
+        Configuration configuration = new Configuration();
+        new JadConfig(new InMemoryRepository(validProperties), configuration).process();
+    }
+
+    @Test
+    public void testApproximatePivotSampleProbabilityIsZero() throws ValidationException, RepositoryException {
+        validProperties.put("approximate_pivot_sample_probability", "0");
+
+        expectedException.expect(ValidationException.class);
+        expectedException.expectMessage("Parameter \"approximate_pivot_sample_probability\" must be greater than 0 and at most 1.");
+
+        Configuration configuration = new Configuration();
+        new JadConfig(new InMemoryRepository(validProperties), configuration).process();
+    }
+
     @Test
     public void testNodeIdFilePermissions() throws IOException {
         final File nonEmptyNodeIdFile = temporaryFolder.newFile("non-empty-node-id");
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.Configuration;
+import org.graylog2.outputs.OutputRegistry;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.GlobalMetricNames;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.outputs.BatchMessageOutput;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.graylog2.streams.StreamService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OutputBufferProcessorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private ServerStatus serverStatus;
+    @Mock
+    private OutputRouter outputRouter;
+    @Mock
+    private OutputRegistry outputRegistry;
+    @Mock
+    private StreamService streamService;
+    @Mock
+    private BatchMessageOutput defaultOutput;
+    @Mock
+    private BatchMessageOutput streamOutput;
+
+    private MetricRegistry metricRegistry;
+    private OutputBatchDispatcher dispatcher;
+    private OutputBufferProcessor processor;
+
+    @Before
+    public void setUp() throws Exception {
+        final Configuration configuration = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 3;
+            }
+
+            @Override
+            public long getOutputModuleTimeout() {
+                return 100L;
+            }
+
+            @Override
+            public long getOutputFaultCountThreshold() {
+                return 1L;
+            }
+
+            @Override
+            public long getOutputFaultPenaltySeconds() {
+                return 1L;
+            }
+
+            @Override
+            public Path getOutputSpillDir() {
+                return temporaryFolder.getRoot().toPath();
+            }
+        };
+        metricRegistry = new MetricRegistry();
+        when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.NEVER);
+        when(defaultOutput.isRunning()).thenReturn(true);
+        when(streamOutput.isRunning()).thenReturn(true);
+
+        dispatcher = new OutputBatchDispatcher(configuration, metricRegistry, outputRegistry, streamService,
+                new ObjectMapperProvider().get());
+        processor = new OutputBufferProcessor(configuration, metricRegistry, serverStatus, outputRouter, defaultOutput, dispatcher);
+    }
+
+    @Test
+    public void writesBatchToDefaultOutputAtEndOfBatch() throws Exception {
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+
+        processor.onEvent(event(message1), 0L, false);
+        verify(defaultOutput, never()).write(anyList());
+
+        processor.onEvent(event(message2), 1L, true);
+        verify(defaultOutput).write(ImmutableList.of(message1, message2));
+        verify(defaultOutput, never()).write(any(Message.class));
+        assertThat(metricRegistry.counter(GlobalMetricNames.OUTPUT_THROUGHPUT).getCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void writesBatchOnceMaximumBatchSizeIsReached() throws Exception {
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+        final Message message3 = message("message3");
+        final Message message4 = message("message4");
+
+        processor.onEvent(event(message1), 0L, false);
+        processor.onEvent(event(message2), 1L, false);
+        processor.onEvent(event(message3), 2L, false);
+        verify(defaultOutput).write(ImmutableList.of(message1, message2, message3));
+
+        processor.onEvent(event(message4), 3L, true);
+        verify(defaultOutput).write(ImmutableList.of(message4));
+    }
+
+    @Test
+    public void clearsEventAfterAddingMessageToBatch() throws Exception {
+        final MessageEvent event = event(message("message1"));
+
+        processor.onEvent(event, 0L, false);
+
+        assertThat(event.getMessage()).isNull();
+    }
+
+    @Test
+    public void writesOnlyMatchingMessagesToStreamOutput() throws Exception {
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+        final Message message3 = message("message3");
+        routeToStreamOutput(message1, message3);
+
+        processor.onEvent(event(message1), 0L, false);
+        processor.onEvent(event(message2), 1L, false);
+        processor.onEvent(event(message3), 2L, true);
+
+        verify(defaultOutput).write(ImmutableList.of(message1, message2, message3));
+        verify(streamOutput, timeout(5000)).write(ImmutableList.of(message1, message3));
+    }
+
+    @Test
+    public void slowStreamOutputDoesNotBlockDefaultOutput() throws Exception {
+        final Message message = message("message1");
+        routeToStreamOutput(message);
+        doAnswer(invocation -> {
+            Thread.sleep(10_000L);
+            return null;
+        }).when(streamOutput).write(anyList());
+
+        // Fill up the queue of the stream output, the batches which don't fit are dropped because the output is
+        // unknown to the registry and has no spill queue
+        final int batches = OutputBatchDispatcher.STREAM_OUTPUT_QUEUE_CAPACITY + 3;
+        for (int i = 0; i < batches; i++) {
+            processor.onEvent(event(message), i, true);
+        }
+
+        verify(defaultOutput, timeout(5000).times(batches)).write(ImmutableList.of(message));
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                assertThat(metricRegistry.meter("org.graylog2.buffers.processors.OutputBatchDispatcher.droppedMessages").getCount())
+                        .isGreaterThanOrEqualTo(2L));
+    }
+
+    @Test
+    public void spillsBatchesOfFailingStreamOutputAndReplaysThemInOrder() throws Exception {
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+        routeToStreamOutput(message1, message2);
+        when(outputRegistry.getOutputId(streamOutput)).thenReturn("output-1");
+        final List<String> written = new CopyOnWriteArrayList<>();
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            if (failing.getAndSet(false)) {
+                throw new IOException("Connection refused");
+            }
+            invocation.<List<Message>>getArgument(0).forEach(message -> written.add(message.getMessage()));
+            return null;
+        }).when(streamOutput).write(anyList());
+
+        processor.onEvent(event(message1), 0L, true);
+        // The first write opens the circuit breaker, the failed batch is kept in memory
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(circuitState("output-1")).isEqualTo("OPEN"));
+        processor.onEvent(event(message2), 1L, true);
+
+        // The failed batch is retried once the breaker lets a probe through, the spilled one is replayed after it
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> assertThat(written).containsExactly("message1", "message2"));
+        assertThat(metricRegistry.meter("org.graylog2.buffers.processors.OutputBatchDispatcher.spilledMessages").getCount()).isEqualTo(1L);
+        assertThat(metricRegistry.meter("org.graylog2.buffers.processors.OutputBatchDispatcher.droppedMessages").getCount()).isEqualTo(0L);
+        verify(defaultOutput).write(ImmutableList.of(message1));
+        verify(defaultOutput).write(ImmutableList.of(message2));
+    }
+
+    @Test
+    public void replaysBatchesSpilledBeforeRestart() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-1");
+        when(streamService.load("stream-1")).thenReturn(stream);
+        final Message message1 = message("message1");
+        message1.addStream(stream);
+        final OutputSpillQueue spilled = new OutputSpillQueue(temporaryFolder.getRoot().toPath().resolve("output-1"),
+                Long.MAX_VALUE, new ObjectMapperProvider().get(), streamId -> Optional.empty());
+        spilled.append(ImmutableList.of(message1), 1000L);
+        spilled.close();
+        when(outputRegistry.getOutputForIdAndStream("output-1", stream)).thenReturn(streamOutput);
+        when(outputRegistry.getOutputId(streamOutput)).thenReturn("output-1");
+        final List<Message> written = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0));
+            return null;
+        }).when(streamOutput).write(anyList());
+
+        // Outputs without a stream can't be launched
+        dispatcher.replaySpilledBatches(ImmutableMap.of());
+        verify(outputRegistry, never()).getOutputForIdAndStream(any(), any());
+
+        dispatcher.replaySpilledBatches(ImmutableMap.of("output-1", stream));
+
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(written).hasSize(1));
+        assertThat(written.get(0).getMessage()).isEqualTo("message1");
+        assertThat(written.get(0).getStreams()).containsExactly(stream);
+        assertThat(metricRegistry.meter("org.graylog2.buffers.processors.OutputBatchDispatcher.replayedMessages").getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void skipsBatchWhichKeepsFailing() throws Exception {
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+        routeToStreamOutput(message1, message2);
+        when(outputRegistry.getOutputId(streamOutput)).thenReturn("output-1");
+        final List<String> written = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            final List<Message> messages = invocation.getArgument(0);
+            if (messages.contains(message1)) {
+                throw new IOException("Invalid message");
+            }
+            messages.forEach(message -> written.add(message.getMessage()));
+            return null;
+        }).when(streamOutput).write(anyList());
+
+        processor.onEvent(event(message1), 0L, true);
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(circuitState("output-1")).isEqualTo("OPEN"));
+        processor.onEvent(event(message2), 1L, true);
+
+        await().atMost(15, TimeUnit.SECONDS).untilAsserted(() -> assertThat(written).containsExactly("message2"));
+        verify(streamOutput, times(OutputBatchDispatcher.MAX_WRITE_ATTEMPTS)).write(ImmutableList.of(message1));
+        assertThat(metricRegistry.meter("org.graylog2.buffers.processors.OutputBatchDispatcher.droppedMessages").getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void writesSingleMessagesToOutputsWithoutBatchSupport() throws Exception {
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+        final MessageOutput singleMessageOutput = mock(MessageOutput.class);
+        when(singleMessageOutput.isRunning()).thenReturn(true);
+        doAnswer(invocation -> {
+            invocation.<Set<MessageOutput>>getArgument(1).add(singleMessageOutput);
+            return null;
+        }).when(outputRouter).addStreamOutputsForMessage(any(Message.class), any());
+
+        processor.onEvent(event(message1), 0L, false);
+        processor.onEvent(event(message2), 1L, true);
+
+        verify(singleMessageOutput, timeout(5000)).write(message1);
+        verify(singleMessageOutput, timeout(5000)).write(message2);
+        verify(singleMessageOutput, never()).write(anyList());
+        verify(defaultOutput).write(ImmutableList.of(message1, message2));
+    }
+
+    @Test
+    public void skipsStoppedDefaultOutput() throws Exception {
+        when(defaultOutput.isRunning()).thenReturn(false);
+
+        processor.onEvent(event(message("message1")), 0L, true);
+
+        verify(defaultOutput, never()).write(anyList());
+    }
+
+    private String circuitState(String outputId) {
+        final Gauge<?> gauge = metricRegistry.getGauges().get("org.graylog2.buffers.processors.OutputBatchDispatcher.outputs." + outputId + ".circuitState");
+        return gauge == null ? null : (String) gauge.getValue();
+    }
+
+    private void routeToStreamOutput(Message... messages) {
+        for (Message message : messages) {
+            doAnswer(invocation -> {
+                invocation.<Set<MessageOutput>>getArgument(1).add(streamOutput);
+                return null;
+            }).when(outputRouter).addStreamOutputsForMessage(eq(message), any());
+        }
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "source", Tools.nowUTC());
+    }
+
+    private static MessageEvent event(Message message) {
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+        return event;
+    }
+}
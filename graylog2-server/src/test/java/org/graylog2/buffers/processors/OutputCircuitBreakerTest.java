@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputCircuitBreakerTest {
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        final OutputCircuitBreaker circuitBreaker = new OutputCircuitBreaker(3, 1000L);
+
+        assertThat(circuitBreaker.recordFailure(0L)).isFalse();
+        assertThat(circuitBreaker.recordFailure(10L)).isFalse();
+        circuitBreaker.recordSuccess();
+        assertThat(circuitBreaker.recordFailure(20L)).isFalse();
+        assertThat(circuitBreaker.recordFailure(30L)).isFalse();
+        assertThat(circuitBreaker.allowsWrite(30L)).isTrue();
+
+        assertThat(circuitBreaker.recordFailure(40L)).isTrue();
+        assertThat(circuitBreaker.state()).isEqualTo(OutputCircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.allowsWrite(500L)).isFalse();
+        assertThat(circuitBreaker.remainingOpenMillis(500L)).isEqualTo(540L);
+    }
+
+    @Test
+    public void letsProbeThroughAfterOpenDuration() {
+        final OutputCircuitBreaker circuitBreaker = new OutputCircuitBreaker(1, 1000L);
+        circuitBreaker.recordFailure(0L);
+
+        assertThat(circuitBreaker.allowsWrite(1000L)).isTrue();
+        assertThat(circuitBreaker.state()).isEqualTo(OutputCircuitBreaker.State.HALF_OPEN);
+
+        circuitBreaker.recordSuccess();
+        assertThat(circuitBreaker.state()).isEqualTo(OutputCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void reopensIfProbeFails() {
+        final OutputCircuitBreaker circuitBreaker = new OutputCircuitBreaker(5, 1000L);
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.recordFailure(0L);
+        }
+        assertThat(circuitBreaker.allowsWrite(1500L)).isTrue();
+
+        assertThat(circuitBreaker.recordFailure(1500L)).isTrue();
+        assertThat(circuitBreaker.allowsWrite(2000L)).isFalse();
+        assertThat(circuitBreaker.remainingOpenMillis(2000L)).isEqualTo(500L);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.Message;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OutputSpillQueueTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new ObjectMapperProvider().get();
+    private Map<String, org.graylog2.plugin.streams.Stream> streams = ImmutableMap.of();
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder().toPath();
+    }
+
+    @Test
+    public void returnsBatchesInOrder() throws Exception {
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+
+        assertThat(queue.append(ImmutableList.of(message("message1"), message("message2")), 1000L)).isTrue();
+        assertThat(queue.append(ImmutableList.of(message("message3")), 2000L)).isTrue();
+
+        final OutputSpillQueue.SpilledBatch first = queue.peek();
+        assertThat(first).isNotNull();
+        assertThat(first.appendedAt()).isEqualTo(1000L);
+        assertThat(texts(first.messages())).containsExactly("message1", "message2");
+        assertThat(queue.peek()).isSameAs(first);
+
+        queue.remove();
+        final OutputSpillQueue.SpilledBatch second = queue.peek();
+        assertThat(second).isNotNull();
+        assertThat(texts(second.messages())).containsExactly("message3");
+
+        queue.remove();
+        assertThat(queue.peek()).isNull();
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.sizeInBytes()).isZero();
+        assertThat(segmentFiles()).isEmpty();
+    }
+
+    @Test
+    public void restoresMessageFields() throws Exception {
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        final Message message = message("message1");
+        message.addField("count", 42);
+
+        queue.append(ImmutableList.of(message), 1000L);
+
+        final Message restored = queue.peek().messages().get(0);
+        assertThat(restored.getId()).isEqualTo(message.getId());
+        assertThat(restored.getSource()).isEqualTo("source");
+        assertThat(restored.getTimestamp()).isEqualTo(message.getTimestamp());
+        assertThat(restored.getField("count")).isEqualTo(42);
+    }
+
+    @Test
+    public void restoresStreamAssignments() throws Exception {
+        final org.graylog2.plugin.streams.Stream stream = stream("stream-1");
+        final org.graylog2.plugin.streams.Stream deletedStream = stream("stream-2");
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        final Message message = message("message1");
+        message.addStream(stream);
+        message.addStream(deletedStream);
+
+        queue.append(ImmutableList.of(message, message("message2")), 1000L);
+        queue.close();
+        streams = ImmutableMap.of("stream-1", stream);
+
+        final OutputSpillQueue reopened = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        final List<Message> restored = reopened.peek().messages();
+        assertThat(restored.get(0).getStreams()).containsExactly(stream);
+        assertThat(restored.get(1).getStreams()).isEmpty();
+    }
+
+    @Test
+    public void detectsSpilledBatches() throws Exception {
+        assertThat(OutputSpillQueue.containsSpilledBatches(directory.resolve("missing"))).isFalse();
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        assertThat(OutputSpillQueue.containsSpilledBatches(directory)).isFalse();
+
+        queue.append(ImmutableList.of(message("message1")), 1000L);
+        assertThat(OutputSpillQueue.containsSpilledBatches(directory)).isTrue();
+
+        queue.peek();
+        queue.remove();
+        assertThat(OutputSpillQueue.containsSpilledBatches(directory)).isFalse();
+    }
+
+    @Test
+    public void replaysBatchesAfterReopening() throws Exception {
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        queue.append(ImmutableList.of(message("message1")), 1000L);
+        queue.append(ImmutableList.of(message("message2")), 2000L);
+        final long size = queue.sizeInBytes();
+        queue.close();
+
+        final OutputSpillQueue reopened = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+
+        assertThat(reopened.sizeInBytes()).isEqualTo(size);
+        assertThat(texts(reopened.peek().messages())).containsExactly("message1");
+        reopened.remove();
+        reopened.append(ImmutableList.of(message("message3")), 3000L);
+        assertThat(texts(reopened.peek().messages())).containsExactly("message2");
+        reopened.remove();
+        assertThat(texts(reopened.peek().messages())).containsExactly("message3");
+    }
+
+    @Test
+    public void rejectsBatchesExceedingMaximumSize() throws Exception {
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, 1024L, objectMapper, this::findStream);
+
+        assertThat(queue.append(ImmutableList.of(message("message1")), 1000L)).isTrue();
+        final long size = queue.sizeInBytes();
+        while (queue.append(ImmutableList.of(message("message2")), 1000L)) {
+            assertThat(queue.sizeInBytes()).isLessThanOrEqualTo(1024L);
+        }
+
+        assertThat(queue.sizeInBytes()).isGreaterThan(size).isLessThanOrEqualTo(1024L);
+    }
+
+    @Test
+    public void tracksOldestAppendedBatchInMemory() throws Exception {
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        assertThat(queue.oldestAppendedAt()).isEqualTo(0L);
+
+        queue.append(ImmutableList.of(message("message1")), 1000L);
+        queue.append(ImmutableList.of(message("message2")), 2000L);
+        assertThat(queue.oldestAppendedAt()).isEqualTo(1000L);
+
+        queue.peek();
+        queue.remove();
+        queue.peek();
+        assertThat(queue.oldestAppendedAt()).isEqualTo(2000L);
+
+        queue.remove();
+        assertThat(queue.oldestAppendedAt()).isEqualTo(0L);
+    }
+
+    @Test
+    public void rejectsAppendAfterClose() throws Exception {
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        queue.close();
+
+        assertThatThrownBy(() -> queue.append(ImmutableList.of(message("message1")), 1000L))
+                .isInstanceOf(IOException.class);
+        assertThat(segmentFiles()).isEmpty();
+    }
+
+    @Test
+    public void discardsTruncatedRecord() throws Exception {
+        final OutputSpillQueue queue = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+        queue.append(ImmutableList.of(message("message1")), 1000L);
+        queue.close();
+        final Path segment = segmentFiles().get(0);
+        Files.write(segment, new byte[]{0, 0, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        final OutputSpillQueue reopened = new OutputSpillQueue(directory, Long.MAX_VALUE, objectMapper, this::findStream);
+
+        assertThat(texts(reopened.peek().messages())).containsExactly("message1");
+        reopened.remove();
+        assertThat(reopened.peek()).isNull();
+        assertThat(reopened.isEmpty()).isTrue();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Optional<org.graylog2.plugin.streams.Stream> findStream(String streamId) {
+        return Optional.ofNullable(streams.get(streamId));
+    }
+
+    private static org.graylog2.plugin.streams.Stream stream(String id) {
+        final org.graylog2.plugin.streams.Stream stream = mock(org.graylog2.plugin.streams.Stream.class);
+        when(stream.getId()).thenReturn(id);
+        return stream;
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getMessage).collect(Collectors.toList());
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "source", new DateTime(2020, 10, 1, 12, 0, DateTimeZone.UTC));
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.graylog2.events;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.eventbus.DeadEvent;
@@ -91,7 +92,9 @@ public class ClusterEventPeriodicalTest {
                 nodeId,
                 new ChainingClassLoader(getClass().getClassLoader()),
                 serverEventBus,
-                clusterEventBus
+                clusterEventBus,
+                new MetricRegistry(),
+                false
         );
     }
 
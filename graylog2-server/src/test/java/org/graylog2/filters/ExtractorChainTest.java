@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.filters;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.inputs.Extractor;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExtractorChainTest {
+    @Test
+    public void runsExtractorsInOrder() throws Exception {
+        final ExtractorChain chain = ExtractorChain.compile(ImmutableList.of(
+                new CountingExtractor("second", 2, "message", "target", Extractor.ConditionType.NONE, null, "two"),
+                new CountingExtractor("first", 1, "message", "target", Extractor.ConditionType.NONE, null, "one")));
+
+        final Message message = message("hello world");
+        chain.run(message);
+
+        assertThat(chain.extractors()).extracting(Extractor::getId).containsExactly("first", "second");
+        assertThat(message.getField("target")).isEqualTo("two");
+    }
+
+    @Test
+    public void evaluatesSharedConditionOncePerFieldValue() throws Exception {
+        final CountingExtractor first = new CountingExtractor("first", 1, "message", "a", Extractor.ConditionType.REGEX, "^hello", "1");
+        final CountingExtractor second = new CountingExtractor("second", 2, "message", "b", Extractor.ConditionType.REGEX, "^hello", "2");
+        final CountingExtractor third = new CountingExtractor("third", 3, "other", "c", Extractor.ConditionType.REGEX, "^hello", "3");
+        final ExtractorChain chain = ExtractorChain.compile(ImmutableList.of(first, second, third));
+
+        final Message message = message("hello world");
+        message.addField("other", "hello other");
+        chain.run(message);
+
+        assertThat(chain.conditionCount()).isEqualTo(2);
+        assertThat(first.conditionEvaluations.get()).isEqualTo(1);
+        assertThat(second.conditionEvaluations.get()).isEqualTo(0);
+        assertThat(third.conditionEvaluations.get()).isEqualTo(1);
+        assertThat(message.getField("a")).isEqualTo("1");
+        assertThat(message.getField("b")).isEqualTo("2");
+        assertThat(message.getField("c")).isEqualTo("3");
+    }
+
+    @Test
+    public void evaluatesSharedConditionAgainIfFieldChanged() throws Exception {
+        final CountingExtractor first = new CountingExtractor("first", 1, "message", "message", Extractor.ConditionType.STRING, "hello", "hello again");
+        final CountingExtractor second = new CountingExtractor("second", 2, "message", "b", Extractor.ConditionType.STRING, "hello", "2");
+        final CountingExtractor third = new CountingExtractor("third", 3, "message", "message", Extractor.ConditionType.STRING, "hello", "bye");
+        final CountingExtractor fourth = new CountingExtractor("fourth", 4, "message", "d", Extractor.ConditionType.STRING, "hello", "4");
+        final ExtractorChain chain = ExtractorChain.compile(ImmutableList.of(first, second, third, fourth));
+
+        final Message message = message("hello world");
+        chain.run(message);
+
+        assertThat(first.conditionEvaluations.get()).isEqualTo(3);
+        assertThat(message.getField("b")).isEqualTo("2");
+        assertThat(message.getMessage()).isEqualTo("bye");
+        assertThat(message.getField("d")).isNull();
+    }
+
+    @Test
+    public void continuesAfterFailingExtractor() throws Exception {
+        final CountingExtractor failing = new CountingExtractor("failing", 1, "message", "a", Extractor.ConditionType.NONE, null, null) {
+            @Override
+            protected Result[] run(String field) {
+                throw new IllegalStateException("boom");
+            }
+        };
+        final ExtractorChain chain = ExtractorChain.compile(ImmutableList.of(
+                failing,
+                new CountingExtractor("second", 2, "message", "b", Extractor.ConditionType.NONE, null, "2")));
+
+        final Message message = message("hello world");
+        chain.run(message);
+
+        assertThat(failing.getExceptionCount()).isEqualTo(1);
+        assertThat(message.getField("b")).isEqualTo("2");
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "source", Tools.nowUTC());
+    }
+
+    private static class CountingExtractor extends Extractor {
+        private final AtomicInteger conditionEvaluations = new AtomicInteger();
+        private final String result;
+
+        CountingExtractor(String id, long order, String sourceField, String targetField,
+                          ConditionType conditionType, String conditionValue, String result) throws ReservedFieldException {
+            super(new LocalMetricRegistry(), id, id, order, Type.COPY_INPUT, CursorStrategy.COPY, sourceField, targetField,
+                    Collections.emptyMap(), "user", Collections.emptyList(), conditionType, conditionValue);
+            this.result = result;
+        }
+
+        @Override
+        public boolean matchesCondition(String field) {
+            conditionEvaluations.incrementAndGet();
+            return super.matchesCondition(field);
+        }
+
+        @Override
+        protected Result[] run(String field) {
+            return new Result[]{new Result(result, -1, -1)};
+        }
+    }
+}
@@ -117,6 +117,7 @@ public abstract class IndexFieldTypePollerIT extends ElasticsearchBaseTest {
                 FieldTypeDTO.create("gl2_receive_timestamp", "date"),
                 FieldTypeDTO.create("gl2_processing_timestamp", "date"),
                 FieldTypeDTO.create("gl2_accounted_message_size", "long"),
+                FieldTypeDTO.create("gl2_sample_key", "integer"),
                 FieldTypeDTO.create("streams", "keyword")
         );
     }
@@ -141,6 +142,7 @@ public abstract class IndexFieldTypePollerIT extends ElasticsearchBaseTest {
                 FieldTypeDTO.create("gl2_receive_timestamp", "date"),
                 FieldTypeDTO.create("gl2_processing_timestamp", "date"),
                 FieldTypeDTO.create("gl2_accounted_message_size", "long"),
+                FieldTypeDTO.create("gl2_sample_key", "integer"),
                 FieldTypeDTO.create("streams", "keyword")
         );
     }
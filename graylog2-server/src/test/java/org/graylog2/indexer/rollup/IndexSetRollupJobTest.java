@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import org.graylog.events.JobSchedulerTestClock;
+import org.graylog.scheduler.JobDefinitionDto;
+import org.graylog.scheduler.JobExecutionContext;
+import org.graylog.scheduler.JobTriggerUpdate;
+import org.graylog.scheduler.JobTriggerUpdates;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.indexer.indexset.IndexSetService;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.ranges.MongoIndexRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexSetRollupJobTest {
+    private static final String INDEX_SET_ID = "index-set-1";
+    private static final String ROLLUP_INDEX = "graylog-rollup";
+    private static final DateTime NOW = new DateTime(2020, 11, 10, 12, 3, DateTimeZone.UTC);
+    // The last complete interval which is older than the delay
+    private static final DateTime END = new DateTime(2020, 11, 10, 11, 0, DateTimeZone.UTC);
+    private static final DateTime OLDEST_INTERVAL = new DateTime(2020, 11, 9, 20, 0, DateTimeZone.UTC);
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private IndexSetService indexSetService;
+
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+
+    @Mock
+    private IndexRangeService indexRangeService;
+
+    @Mock
+    private DBRollupStateService stateService;
+
+    @Mock
+    private RollupAdapter rollupAdapter;
+
+    @Mock
+    private IndexSetConfig indexSetConfig;
+
+    @Mock
+    private IndexSet indexSet;
+
+    @Mock
+    private JobExecutionContext jobExecutionContext;
+
+    @Mock
+    private JobTriggerUpdates jobTriggerUpdates;
+
+    private final RollupConfig rollupConfig = RollupConfig.create(Duration.standardHours(1L), ImmutableSet.of("source"), ImmutableSet.of("took_ms"));
+    private final IndexRange oldIndexRange = indexRange("graylog_0", new DateTime(2020, 11, 9, 20, 30, DateTimeZone.UTC));
+    // The index range of the write index starts at the epoch
+    private final IndexRange writeIndexRange = indexRange("graylog_1", new DateTime(0L, DateTimeZone.UTC));
+    private final IndexRange otherIndexRange = indexRange("other_0", new DateTime(2020, 11, 1, 0, 0, DateTimeZone.UTC));
+
+    private JobSchedulerTestClock clock;
+    private IndexSetRollupJob job;
+
+    @Before
+    public void setUp() {
+        clock = new JobSchedulerTestClock(NOW);
+
+        when(indexSetConfig.id()).thenReturn(INDEX_SET_ID);
+        when(indexSetConfig.title()).thenReturn("Test");
+        when(indexSetConfig.indexPrefix()).thenReturn("graylog");
+        when(indexSetConfig.rollup()).thenReturn(rollupConfig);
+        when(indexSetConfig.shards()).thenReturn(1);
+        when(indexSetConfig.replicas()).thenReturn(0);
+        when(indexSetService.findAll()).thenReturn(ImmutableList.of(indexSetConfig));
+        when(indexSetRegistry.get(INDEX_SET_ID)).thenReturn(Optional.of(indexSet));
+        when(indexSet.isManagedIndex(anyString())).thenAnswer(invocation -> invocation.<String>getArgument(0).startsWith("graylog_"));
+        when(indexRangeService.findAll()).thenReturn(indexRanges(oldIndexRange, writeIndexRange, otherIndexRange));
+        when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(indexRanges(oldIndexRange, writeIndexRange, otherIndexRange));
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.empty());
+        when(jobExecutionContext.jobTriggerUpdates()).thenReturn(jobTriggerUpdates);
+
+        final JobDefinitionDto jobDefinition = JobDefinitionDto.builder()
+                .id("job-1")
+                .title("Index set rollups")
+                .description("A test")
+                .config(IndexSetRollupJob.Config.builder()
+                        .delay(Duration.standardMinutes(5L))
+                        .maxRangePerRun(Duration.standardHours(6L))
+                        .lateMessageWindow(Duration.standardHours(1L))
+                        .build())
+                .build();
+
+        job = new IndexSetRollupJob(clock, indexSetService, indexSetRegistry, indexRangeService, stateService, () -> rollupAdapter, jobDefinition);
+    }
+
+    @Test
+    public void startsWithOldestMessageAndCatchesUpInSteps() {
+        final DateTime to = OLDEST_INTERVAL.plusHours(6);
+
+        final JobTriggerUpdate triggerUpdate = job.execute(jobExecutionContext);
+
+        verify(rollupAdapter).ensureRollupIndex(ROLLUP_INDEX, rollupConfig, 1, 0);
+        verify(rollupAdapter).rollup(rollupConfig, ImmutableSet.of("graylog_0", "graylog_1"), ROLLUP_INDEX, OLDEST_INTERVAL, to);
+        verify(stateService).setState(state(OLDEST_INTERVAL, to));
+
+        // There are more complete intervals, so the job continues right away
+        assertThat(triggerUpdate.nextTime()).contains(NOW);
+        verify(jobTriggerUpdates, never()).scheduleNextExecution();
+    }
+
+    @Test
+    public void continuesAtLastRolledUpIntervalAndKeepsStart() {
+        final DateTime rolledUpUntil = END.minusHours(3);
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(OLDEST_INTERVAL, rolledUpUntil)));
+        final JobTriggerUpdate nextExecution = JobTriggerUpdate.withNextTime(NOW.plusMinutes(1));
+        when(jobTriggerUpdates.scheduleNextExecution()).thenReturn(nextExecution);
+
+        final JobTriggerUpdate triggerUpdate = job.execute(jobExecutionContext);
+
+        // The intervals within the late message window are rolled up again
+        verify(indexRangeService).find(rolledUpUntil.minusHours(1), END);
+        verify(rollupAdapter).rollup(rollupConfig, ImmutableSet.of("graylog_0", "graylog_1"), ROLLUP_INDEX, rolledUpUntil.minusHours(1), END);
+        verify(stateService).setState(state(OLDEST_INTERVAL, END));
+
+        assertThat(triggerUpdate).isEqualTo(nextExecution);
+    }
+
+    @Test
+    public void doesNotRollUpAgainBeforeRolledUpStart() {
+        // Rollups started with the interval of the oldest message
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(END.minusHours(1), END.minusHours(1))));
+        when(indexRangeService.findAll()).thenReturn(indexRanges(indexRange("graylog_0", END.minusMinutes(30)), writeIndexRange));
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter).rollup(rollupConfig, ImmutableSet.of("graylog_0", "graylog_1"), ROLLUP_INDEX, END.minusHours(1), END);
+        verify(stateService).setState(state(END.minusHours(1), END));
+    }
+
+    @Test
+    public void deletesRolledUpIntervalsBeforeOldestMessage() {
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(OLDEST_INTERVAL.minusDays(1), END)));
+        when(rollupAdapter.deleteRolledUpBefore(ROLLUP_INDEX, OLDEST_INTERVAL)).thenReturn(42L);
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter).deleteRolledUpBefore(ROLLUP_INDEX, OLDEST_INTERVAL);
+        verify(stateService).setState(state(OLDEST_INTERVAL, END));
+        verify(rollupAdapter, never()).rollup(any(RollupConfig.class), anySet(), anyString(), any(DateTime.class), any(DateTime.class));
+    }
+
+    @Test
+    public void keepsRolledUpIntervalsWithoutRawMessages() {
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(OLDEST_INTERVAL.minusDays(1), END)));
+        when(indexRangeService.findAll()).thenReturn(indexRanges(writeIndexRange, otherIndexRange));
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter, never()).deleteRolledUpBefore(anyString(), any(DateTime.class));
+        verify(stateService, never()).setState(any(RollupStateDto.class));
+    }
+
+    @Test
+    public void doesNotRollUpIncompleteIntervals() {
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(OLDEST_INTERVAL, END)));
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter, never()).ensureRollupIndex(anyString(), any(RollupConfig.class), anyInt(), anyInt());
+        verify(rollupAdapter, never()).rollup(any(RollupConfig.class), anySet(), anyString(), any(DateTime.class), any(DateTime.class));
+        verify(stateService, never()).setState(any(RollupStateDto.class));
+    }
+
+    @Test
+    public void startsWithCurrentIntervalIfThereAreNoMessages() {
+        when(indexRangeService.findAll()).thenReturn(indexRanges(writeIndexRange, otherIndexRange));
+
+        job.execute(jobExecutionContext);
+
+        verify(stateService).setState(state(END, END));
+        verify(rollupAdapter, never()).ensureRollupIndex(anyString(), any(RollupConfig.class), anyInt(), anyInt());
+        verify(rollupAdapter, never()).rollup(any(RollupConfig.class), anySet(), anyString(), any(DateTime.class), any(DateTime.class));
+    }
+
+    @Test
+    public void advancesStateWithoutSourceIndices() {
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(OLDEST_INTERVAL, END.minusHours(1))));
+        when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(indexRanges(otherIndexRange));
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter).ensureRollupIndex(ROLLUP_INDEX, rollupConfig, 1, 0);
+        verify(rollupAdapter, never()).rollup(any(RollupConfig.class), anySet(), anyString(), any(DateTime.class), any(DateTime.class));
+        verify(stateService).setState(state(OLDEST_INTERVAL, END));
+    }
+
+    @Test
+    public void rebuildsRollupIfConfigurationChanged() {
+        final RollupConfig oldConfig = RollupConfig.create(Duration.standardMinutes(5L), ImmutableSet.of("source"), ImmutableSet.of("took_ms"));
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(OLDEST_INTERVAL, END).toBuilder().rollupConfig(oldConfig).build()));
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter).deleteRollupIndex(ROLLUP_INDEX);
+        verify(stateService).deleteByIndexSetId(INDEX_SET_ID);
+        verify(rollupAdapter).rollup(rollupConfig, ImmutableSet.of("graylog_0", "graylog_1"), ROLLUP_INDEX, OLDEST_INTERVAL, OLDEST_INTERVAL.plusHours(6));
+        verify(stateService).setState(state(OLDEST_INTERVAL, OLDEST_INTERVAL.plusHours(6)));
+    }
+
+    @Test
+    public void deletesRollupIfRollupsWereDisabled() {
+        when(indexSetConfig.rollup()).thenReturn(null);
+        when(stateService.findByIndexSetId(INDEX_SET_ID)).thenReturn(Optional.of(state(OLDEST_INTERVAL, END)));
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter).deleteRollupIndex(ROLLUP_INDEX);
+        verify(stateService).deleteByIndexSetId(INDEX_SET_ID);
+        verify(rollupAdapter, never()).rollup(any(RollupConfig.class), anySet(), anyString(), any(DateTime.class), any(DateTime.class));
+        verify(stateService, never()).setState(any(RollupStateDto.class));
+    }
+
+    @Test
+    public void continuesWithOtherIndexSetsIfRollupFails() {
+        final IndexSetConfig failingIndexSetConfig = mock(IndexSetConfig.class);
+        when(failingIndexSetConfig.id()).thenReturn("index-set-2");
+        when(failingIndexSetConfig.indexPrefix()).thenReturn("failing");
+        when(stateService.findByIndexSetId("index-set-2")).thenThrow(new IllegalStateException("BOOM"));
+        when(indexSetService.findAll()).thenReturn(ImmutableList.of(failingIndexSetConfig, indexSetConfig));
+
+        job.execute(jobExecutionContext);
+
+        verify(rollupAdapter).rollup(any(RollupConfig.class), anySet(), anyString(), any(DateTime.class), any(DateTime.class));
+        verify(stateService).setState(state(OLDEST_INTERVAL, OLDEST_INTERVAL.plusHours(6)));
+    }
+
+    @Test
+    public void alignDown() {
+        final Duration interval = Duration.standardMinutes(15L);
+
+        assertThat(IndexSetRollupJob.alignDown(new DateTime(2020, 11, 10, 12, 14, 59, 999, DateTimeZone.UTC), interval))
+                .isEqualTo(new DateTime(2020, 11, 10, 12, 0, DateTimeZone.UTC));
+        assertThat(IndexSetRollupJob.alignDown(new DateTime(2020, 11, 10, 12, 15, DateTimeZone.UTC), interval))
+                .isEqualTo(new DateTime(2020, 11, 10, 12, 15, DateTimeZone.UTC));
+    }
+
+    private RollupStateDto state(DateTime rolledUpFrom, DateTime rolledUpUntil) {
+        return RollupStateDto.builder()
+                .indexSetId(INDEX_SET_ID)
+                .rollupConfig(rollupConfig)
+                .rolledUpFrom(rolledUpFrom)
+                .rolledUpUntil(rolledUpUntil)
+                .build();
+    }
+
+    private static IndexRange indexRange(String indexName, DateTime begin) {
+        return MongoIndexRange.create(indexName, begin, begin.plusDays(1), begin, 0);
+    }
+
+    private static ImmutableSortedSet<IndexRange> indexRanges(IndexRange... indexRanges) {
+        return ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR).add(indexRanges).build();
+    }
+}
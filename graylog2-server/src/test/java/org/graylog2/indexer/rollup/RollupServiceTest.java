@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.rollup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RollupServiceTest {
+    private static final DateTime FROM = new DateTime(2020, 11, 10, 8, 0, DateTimeZone.UTC);
+    private static final DateTime UNTIL = new DateTime(2020, 11, 10, 12, 0, DateTimeZone.UTC);
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private StreamService streamService;
+
+    @Mock
+    private DBRollupStateService stateService;
+
+    private final RollupConfig rollupConfig = RollupConfig.create(Duration.standardHours(1L),
+            ImmutableSet.of("source", "action"), ImmutableSet.of("took_ms", "bytes"));
+
+    private RollupService rollupService;
+
+    @Before
+    public void setUp() {
+        rollupService = new RollupService(streamService, stateService);
+    }
+
+    @Test
+    public void noCoverageWithoutStreams() {
+        assertThat(rollupService.coverageFor(Collections.emptySet())).isEmpty();
+
+        verify(streamService, never()).loadByIds(any());
+    }
+
+    @Test
+    public void coversRollupOfSingleIndexSet() {
+        final IndexSetConfig indexSet = indexSet("index-set-1", "graylog", rollupConfig);
+        // Both streams write into the same index set
+        final Set<Stream> streams = ImmutableSet.of(stream(indexSet), stream(indexSet));
+        when(streamService.loadByIds(ImmutableSet.of("stream-1", "stream-2"))).thenReturn(streams);
+        when(stateService.findByIndexSetIds(ImmutableSet.of("index-set-1"))).thenReturn(ImmutableList.of(state("index-set-1", rollupConfig, FROM, UNTIL)));
+
+        final Optional<RollupCoverage> coverage = rollupService.coverageFor(ImmutableSet.of("stream-1", "stream-2"));
+
+        assertThat(coverage).contains(RollupCoverage.create(ImmutableSet.of("graylog-rollup"), Duration.standardHours(1L),
+                ImmutableSet.of("source", "action"), ImmutableSet.of("took_ms", "bytes"), FROM, UNTIL));
+    }
+
+    @Test
+    public void coversFieldsAndTimeRangeOfAllRollups() {
+        final RollupConfig otherRollupConfig = RollupConfig.create(Duration.standardHours(1L),
+                ImmutableSet.of("source", "http_method"), ImmutableSet.of("took_ms"));
+        final IndexSetConfig indexSet1 = indexSet("index-set-1", "graylog", rollupConfig);
+        final IndexSetConfig indexSet2 = indexSet("index-set-2", "other", otherRollupConfig);
+        final Set<Stream> streams = ImmutableSet.of(stream(indexSet1), stream(indexSet2));
+        when(streamService.loadByIds(anySet())).thenReturn(streams);
+        when(stateService.findByIndexSetIds(ImmutableSet.of("index-set-1", "index-set-2"))).thenReturn(ImmutableList.of(
+                state("index-set-1", rollupConfig, FROM, UNTIL),
+                state("index-set-2", otherRollupConfig, FROM.plusHours(2), UNTIL.plusHours(1))));
+
+        final Optional<RollupCoverage> coverage = rollupService.coverageFor(ImmutableSet.of("stream-1", "stream-2"));
+
+        assertThat(coverage).contains(RollupCoverage.create(ImmutableSet.of("graylog-rollup", "other-rollup"), Duration.standardHours(1L),
+                ImmutableSet.of("source"), ImmutableSet.of("took_ms"), FROM.plusHours(2), UNTIL));
+    }
+
+    @Test
+    public void noCoverageIfIndexSetHasNoRollup() {
+        final IndexSetConfig indexSet1 = indexSet("index-set-1", "graylog", rollupConfig);
+        final IndexSetConfig indexSet2 = indexSet("index-set-2", "other", null);
+        final Set<Stream> streams = ImmutableSet.of(stream(indexSet1), stream(indexSet2));
+        when(streamService.loadByIds(anySet())).thenReturn(streams);
+
+        assertThat(rollupService.coverageFor(ImmutableSet.of("stream-1", "stream-2"))).isEmpty();
+
+        verify(stateService, never()).findByIndexSetIds(anySet());
+    }
+
+    @Test
+    public void noCoverageIfRollupHasNoState() {
+        final IndexSetConfig indexSet1 = indexSet("index-set-1", "graylog", rollupConfig);
+        final IndexSetConfig indexSet2 = indexSet("index-set-2", "other", rollupConfig);
+        final Set<Stream> streams = ImmutableSet.of(stream(indexSet1), stream(indexSet2));
+        when(streamService.loadByIds(anySet())).thenReturn(streams);
+        when(stateService.findByIndexSetIds(anySet())).thenReturn(ImmutableList.of(state("index-set-1", rollupConfig, FROM, UNTIL)));
+
+        assertThat(rollupService.coverageFor(ImmutableSet.of("stream-1", "stream-2"))).isEmpty();
+    }
+
+    @Test
+    public void noCoverageIfRollupWasBuiltWithOutdatedConfig() {
+        final RollupConfig outdatedRollupConfig = RollupConfig.create(Duration.standardHours(1L),
+                ImmutableSet.of("source"), ImmutableSet.of("took_ms", "bytes"));
+        final IndexSetConfig indexSet = indexSet("index-set-1", "graylog", rollupConfig);
+        final Set<Stream> streams = ImmutableSet.of(stream(indexSet));
+        when(streamService.loadByIds(anySet())).thenReturn(streams);
+        when(stateService.findByIndexSetIds(anySet())).thenReturn(ImmutableList.of(state("index-set-1", outdatedRollupConfig, FROM, UNTIL)));
+
+        assertThat(rollupService.coverageFor(ImmutableSet.of("stream-1"))).isEmpty();
+    }
+
+    @Test
+    public void noCoverageIfIntervalsDiffer() {
+        final RollupConfig otherRollupConfig = RollupConfig.create(Duration.standardMinutes(5L),
+                ImmutableSet.of("source", "action"), ImmutableSet.of("took_ms", "bytes"));
+        final IndexSetConfig indexSet1 = indexSet("index-set-1", "graylog", rollupConfig);
+        final IndexSetConfig indexSet2 = indexSet("index-set-2", "other", otherRollupConfig);
+        final Set<Stream> streams = ImmutableSet.of(stream(indexSet1), stream(indexSet2));
+        when(streamService.loadByIds(anySet())).thenReturn(streams);
+        when(stateService.findByIndexSetIds(anySet())).thenReturn(ImmutableList.of(
+                state("index-set-1", rollupConfig, FROM, UNTIL),
+                state("index-set-2", otherRollupConfig, FROM, UNTIL)));
+
+        assertThat(rollupService.coverageFor(ImmutableSet.of("stream-1", "stream-2"))).isEmpty();
+    }
+
+    @Test
+    public void noCoverageIfRolledUpTimeRangesDontOverlap() {
+        final IndexSetConfig indexSet1 = indexSet("index-set-1", "graylog", rollupConfig);
+        final IndexSetConfig indexSet2 = indexSet("index-set-2", "other", rollupConfig);
+        final Set<Stream> streams = ImmutableSet.of(stream(indexSet1), stream(indexSet2));
+        when(streamService.loadByIds(anySet())).thenReturn(streams);
+        when(stateService.findByIndexSetIds(anySet())).thenReturn(ImmutableList.of(
+                state("index-set-1", rollupConfig, FROM, UNTIL),
+                // Nothing has been rolled up yet
+                state("index-set-2", rollupConfig, UNTIL, UNTIL)));
+
+        assertThat(rollupService.coverageFor(ImmutableSet.of("stream-1", "stream-2"))).isEmpty();
+    }
+
+    private static IndexSetConfig indexSet(String id, String indexPrefix, RollupConfig rollupConfig) {
+        final IndexSetConfig indexSetConfig = mock(IndexSetConfig.class);
+        when(indexSetConfig.id()).thenReturn(id);
+        when(indexSetConfig.indexPrefix()).thenReturn(indexPrefix);
+        when(indexSetConfig.rollup()).thenReturn(rollupConfig);
+        return indexSetConfig;
+    }
+
+    private static Stream stream(IndexSetConfig indexSetConfig) {
+        final IndexSet indexSet = mock(IndexSet.class);
+        when(indexSet.getConfig()).thenReturn(indexSetConfig);
+        final Stream stream = mock(Stream.class);
+        when(stream.getIndexSet()).thenReturn(indexSet);
+        return stream;
+    }
+
+    private static RollupStateDto state(String indexSetId, RollupConfig rollupConfig, DateTime rolledUpFrom, DateTime rolledUpUntil) {
+        return RollupStateDto.builder()
+                .indexSetId(indexSetId)
+                .rollupConfig(rollupConfig)
+                .rolledUpFrom(rolledUpFrom)
+                .rolledUpUntil(rolledUpUntil)
+                .build();
+    }
+}
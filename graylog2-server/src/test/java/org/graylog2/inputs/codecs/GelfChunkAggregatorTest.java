@@ -23,6 +23,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.graylog2.plugin.InstantMillisProvider;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.graylog2.shared.inputs.ExpirationTimer;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
@@ -31,11 +32,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.graylog2.inputs.codecs.GelfChunkAggregator.CHUNK_COUNTER;
@@ -50,7 +51,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 public class GelfChunkAggregatorTest {
     private static final byte[] CHUNK_MAGIC_BYTES = new byte[]{0x1e, 0x0f};
@@ -58,21 +61,21 @@ public class GelfChunkAggregatorTest {
     @Rule
     public final MockitoRule mockitoRule = MockitoJUnit.rule();
 
-    private ScheduledThreadPoolExecutor poolExecutor;
     private GelfChunkAggregator aggregator;
     private MetricRegistry metricRegistry;
+    private ExpirationTimer expirationTimer;
 
     @Before
     public void before() {
-        poolExecutor = new ScheduledThreadPoolExecutor(1);
         metricRegistry = new MetricRegistry();
-        aggregator = new GelfChunkAggregator(poolExecutor, metricRegistry);
+        expirationTimer = new ExpirationTimer(metricRegistry);
+        aggregator = new GelfChunkAggregator(expirationTimer, metricRegistry);
     }
 
     @After
     public void after() {
-        poolExecutor.shutdown();
         DateTimeUtils.setCurrentMillisSystem();
+        expirationTimer.stop();
     }
 
     @Test
@@ -147,11 +150,10 @@ public class GelfChunkAggregatorTest {
         final InstantMillisProvider clock = new InstantMillisProvider(initialTime);
         DateTimeUtils.setCurrentMillisProvider(clock);
 
-        // we don't want the clean up task to run automatically
-        poolExecutor = mock(ScheduledThreadPoolExecutor.class);
+        // we don't want the expiration to run automatically
+        final ExpirationTimer expirationTimer = mock(ExpirationTimer.class);
         final MetricRegistry metricRegistry = new MetricRegistry();
-        aggregator = new GelfChunkAggregator(poolExecutor, metricRegistry);
-        final GelfChunkAggregator.ChunkEvictionTask evictionTask = aggregator.new ChunkEvictionTask();
+        aggregator = new GelfChunkAggregator(expirationTimer, metricRegistry);
 
         final ByteBuf[] chunks = createChunkedMessage(4096 + 512, 1024); // creates 5 chunks
 
@@ -169,7 +171,9 @@ public class GelfChunkAggregatorTest {
         // move clock forward enough to evict all of the chunks
         clock.tick(Period.seconds(10));
 
-        evictionTask.run();
+        final ArgumentCaptor<Runnable> expiration = ArgumentCaptor.forClass(Runnable.class);
+        verify(expirationTimer).expireAfter(eq((long) GelfChunkAggregator.VALIDITY_PERIOD), eq(TimeUnit.MILLISECONDS), expiration.capture());
+        expiration.getValue().run();
 
         final CodecAggregator.Result result = aggregator.addChunk(chunks[0]);
 
@@ -258,27 +262,6 @@ public class GelfChunkAggregatorTest {
         assertEquals(1, counterValueNamed(metricRegistry, DUPLICATE_CHUNKS));
     }
 
-    @Test
-    public void testChunkEntryCompareTo() throws Exception {
-        // Test if the ChunkEntry#compareTo() method can handle ChunkEntry objects which have the same timestamp.
-        // See: https://github.com/Graylog2/graylog2-server/issues/1462
-
-        final ConcurrentSkipListSet<GelfChunkAggregator.ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
-        final long currentTime = System.currentTimeMillis();
-
-        for (int i = 0; i < 10; i++) {
-            sortedEvictionSet.add(new GelfChunkAggregator.ChunkEntry(1, currentTime, "a" + i));
-        }
-
-        final int size = sortedEvictionSet.size();
-
-        for (int i = 0; i < size; i++) {
-            sortedEvictionSet.remove(sortedEvictionSet.first());
-        }
-
-        assertTrue("eviction set should be empty", sortedEvictionSet.isEmpty());
-    }
-
     @Test
     public void testChunkEntryEquals() throws Exception {
         final GelfChunkAggregator.ChunkEntry entry = new ChunkEntry(1, 0L, "id");
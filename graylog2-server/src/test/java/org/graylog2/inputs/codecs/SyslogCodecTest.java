@@ -437,6 +437,33 @@ public class SyslogCodecTest {
         assertThat(message.getField("facility_num")).isEqualTo(5);
     }
 
+    @Test
+    public void testDecodeWithSinglePassParser() throws Exception {
+        when(configuration.getString(SyslogCodec.CK_PARSER, SyslogCodec.PARSER_SYSLOG4J)).thenReturn(SyslogCodec.PARSER_SINGLE_PASS);
+        when(configuration.getBoolean(SyslogCodec.CK_EXPAND_STRUCTURED_DATA)).thenReturn(true);
+        final SyslogCodec codec = new SyslogCodec(configuration, metricRegistry);
+
+        final Message structured = codec.decode(buildRawMessage(STRUCTURED_ISSUE_845));
+        assertNotNull(structured);
+        assertEquals("User page 13 requested", structured.getMessage());
+        assertEquals(new DateTime("2015-01-06T20:56:33.287Z", DateTimeZone.UTC), ((DateTime) structured.getField("timestamp")).withZone(DateTimeZone.UTC));
+        assertEquals("app-1", structured.getField("source"));
+        assertEquals(6, structured.getField("level"));
+        assertEquals("local7", structured.getField("facility"));
+        assertEquals("4ot7", structured.getField("mdc@18060_session"));
+        assertEquals("app", structured.getField("application_name"));
+
+        final Message unstructured = codec.decode(buildRawMessage(UNSTRUCTURED));
+        assertNotNull(unstructured);
+        assertEquals("c4dc57ba1ebb syslog-ng[7208]: syslog-ng starting up; version='3.5.3'", unstructured.getMessage());
+        assertEquals("c4dc57ba1ebb", unstructured.getField("source"));
+        assertEquals(5, unstructured.getField("level"));
+
+        final Message cisco = codec.decode(buildRawMessage("<186>1541800: Feb 27 06:08:59.485: %HARDWARE-2-FAN_ERROR: Fan Failure"));
+        assertNotNull(cisco);
+        assertEquals(1541800, cisco.getField("sequence_number"));
+    }
+
     private RawMessage buildRawMessage(String message) {
         return new RawMessage(message.getBytes(StandardCharsets.UTF_8), new InetSocketAddress("127.0.0.1", 5140));
     }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SyslogMessageParserTest {
+    private final SyslogMessageParser parser = new SyslogMessageParser();
+
+    @Test
+    public void parsesStructuredMessage() {
+        final SyslogMessageParser.Result result = parse("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"][examplePriority@32473 class=\"high\"] An application event log entry...");
+
+        assertThat(result).isNotNull();
+        assertThat(result.facility()).isEqualTo(20);
+        assertThat(result.level()).isEqualTo(5);
+        assertThat(result.timestamp()).isEqualTo(new DateTime(2003, 10, 11, 22, 14, 15, 3, DateTimeZone.UTC).withZone(DateTimeZone.getDefault()));
+        assertThat(result.host()).isEqualTo("mymachine.example.com");
+        assertThat(result.applicationName()).isEqualTo("evntslog");
+        assertThat(result.processId()).isNull();
+        assertThat(result.message()).isEqualTo("An application event log entry...");
+        assertThat(result.structuredData()).containsOnlyKeys("exampleSDID@32473", "examplePriority@32473");
+        assertThat(result.structuredData().get("exampleSDID@32473"))
+                .containsEntry("iut", "3")
+                .containsEntry("eventSource", "Application")
+                .containsEntry("eventID", "1011");
+        assertThat(result.structuredData().get("examplePriority@32473")).containsEntry("class", "high");
+    }
+
+    @Test
+    public void parsesStructuredMessageWithoutStructuredData() {
+        final SyslogMessageParser.Result result = parse("<165>1 2003-08-24T05:14:15.000003-07:00 192.0.2.1 myproc 8710 - - %% It's time to make the do-nuts.");
+
+        assertThat(result).isNotNull();
+        assertThat(result.timestamp()).isEqualTo(new DateTime(2003, 8, 24, 5, 14, 15, DateTimeZone.forOffsetHours(-7)).withZone(DateTimeZone.getDefault()));
+        assertThat(result.host()).isEqualTo("192.0.2.1");
+        assertThat(result.applicationName()).isEqualTo("myproc");
+        assertThat(result.processId()).isEqualTo("8710");
+        assertThat(result.message()).isEqualTo("%% It's time to make the do-nuts.");
+        assertThat(result.structuredData()).isEmpty();
+    }
+
+    @Test
+    public void handlesEscapedParameterValuesAndByteOrderMark() {
+        final byte[] prefix = "<14>1 2014-05-01T08:26:51.179Z fw01 app - - [id@1 a=\"x\\\"y\\]z\\\\\"] ".getBytes(StandardCharsets.UTF_8);
+        final byte[] message = "Grüße".getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = new byte[prefix.length + 3 + message.length];
+        System.arraycopy(prefix, 0, payload, 0, prefix.length);
+        payload[prefix.length] = (byte) 0xEF;
+        payload[prefix.length + 1] = (byte) 0xBB;
+        payload[prefix.length + 2] = (byte) 0xBF;
+        System.arraycopy(message, 0, payload, prefix.length + 3, message.length);
+
+        final SyslogMessageParser.Result result = parser.parse(payload, 2020);
+
+        assertThat(result).isNotNull();
+        assertThat(result.structuredData().get("id@1")).containsEntry("a", "x\"y]z\\");
+        assertThat(result.message()).isEqualTo("Grüße");
+    }
+
+    @Test
+    public void usesHeaderAsMessageIfMessageIsMissing() {
+        final SyslogMessageParser.Result result = parse("<14>1 2014-05-01T08:26:51.179Z fw01 RT_FLOW - RT_FLOW_SESSION_DENY [junos@2636 source-port=\"56639\"]");
+
+        assertThat(result).isNotNull();
+        assertThat(result.message()).isEqualTo("RT_FLOW_SESSION_DENY [junos@2636 source-port=\"56639\"]");
+        assertThat(result.structuredData().get("junos@2636")).containsEntry("source-port", "56639");
+    }
+
+    @Test
+    public void parsesNilValues() {
+        final SyslogMessageParser.Result result = parse("<6>0 - - - - - -  test 4");
+
+        assertThat(result).isNotNull();
+        assertThat(result.timestamp()).isNull();
+        assertThat(result.host()).isNull();
+        assertThat(result.applicationName()).isNull();
+        assertThat(result.message()).isEqualTo("test 4");
+    }
+
+    @Test
+    public void reusesCachedMinuteOnlyForSameMinuteAndZone() {
+        final SyslogMessageParser.Result first = parse("<14>1 2020-01-01T10:00:01Z host app - - - first");
+        final SyslogMessageParser.Result second = parse("<14>1 2020-01-01T10:00:59.5Z host app - - - second");
+        final SyslogMessageParser.Result third = parse("<14>1 2020-01-01T10:00:59.5+01:00 host app - - - third");
+
+        assertThat(first.timestamp().getMillis()).isEqualTo(new DateTime(2020, 1, 1, 10, 0, 1, DateTimeZone.UTC).getMillis());
+        assertThat(second.timestamp().getMillis()).isEqualTo(new DateTime(2020, 1, 1, 10, 0, 59, 500, DateTimeZone.UTC).getMillis());
+        assertThat(third.timestamp().getMillis()).isEqualTo(new DateTime(2020, 1, 1, 9, 0, 59, 500, DateTimeZone.UTC).getMillis());
+    }
+
+    @Test
+    public void parsesBsdMessage() {
+        final SyslogMessageParser.Result first = parse("<13>Feb  5 17:32:18 10.0.0.99 Use the BFG!");
+        final SyslogMessageParser.Result second = parse("<34>Feb  5 17:32:41 mymachine su: 'su root' failed");
+
+        assertThat(first).isNotNull();
+        assertThat(first.facility()).isEqualTo(1);
+        assertThat(first.level()).isEqualTo(5);
+        assertThat(first.timestamp()).isEqualTo(new DateTime(2020, 2, 5, 17, 32, 18));
+        assertThat(first.host()).isEqualTo("10.0.0.99");
+        assertThat(first.message()).isEqualTo("10.0.0.99 Use the BFG!");
+        assertThat(second).isNotNull();
+        assertThat(second.timestamp()).isEqualTo(new DateTime(2020, 2, 5, 17, 32, 41));
+        assertThat(second.host()).isEqualTo("mymachine");
+    }
+
+    @Test
+    public void parsesBsdMessageWithIsoTimestamp() {
+        final SyslogMessageParser.Result result = parse("<6>2016-10-12T14:10:18Z hostname testmsg[20]: Test");
+
+        assertThat(result).isNotNull();
+        assertThat(result.timestamp().getMillis()).isEqualTo(new DateTime(2016, 10, 12, 14, 10, 18, DateTimeZone.UTC).getMillis());
+        assertThat(result.host()).isEqualTo("hostname");
+        assertThat(result.message()).isEqualTo("hostname testmsg[20]: Test");
+    }
+
+    @Test
+    public void parsesFortiGateMessage() {
+        final SyslogMessageParser.Result result = parse("<45>date=2017-03-06 time=12:53:10 devname=DEVICENAME logid=0000000013 level=notice app=\"SSL_TLSv1.2\" attack=\"SSL\"");
+
+        assertThat(result).isNotNull();
+        assertThat(result.level()).isEqualTo(5);
+        assertThat(result.timestamp().getMillis()).isEqualTo(new DateTime(2017, 3, 6, 12, 53, 10, DateTimeZone.UTC).getMillis());
+        assertThat(result.host()).isEqualTo("DEVICENAME");
+        assertThat(result.message()).startsWith("date=2017-03-06");
+        assertThat(result.fields())
+                .containsEntry("logid", "0000000013")
+                .containsEntry("level", "notice")
+                .containsEntry("app", "SSL_TLSv1.2")
+                .containsEntry("attack", "SSL");
+    }
+
+    @Test
+    public void leavesUnsupportedMessagesToSyslog4j() {
+        assertThat(parse("<186>1541800: Feb 27 06:08:59.485: %HARDWARE-2-FAN_ERROR: Fan Failure")).isNull();
+        assertThat(parse("<190>: 2017 Mar 06 09:22:34 CET: %AUTHPRIV-6-SYSTEM_MSG: START")).isNull();
+        assertThat(parse("<34>Yesterday mymachine su: failed")).isNull();
+        assertThat(parse("<14>1 2020-01-01T10:00:01Z host app - - [broken")).isNull();
+        assertThat(parse("<14>1 2020-13-01T10:00:01Z host app - - - invalid month")).isNull();
+        assertThat(parse("<999>1 2020-01-01T10:00:01Z host app - - - invalid priority")).isNull();
+        assertThat(parse("no priority")).isNull();
+    }
+
+    private SyslogMessageParser.Result parse(String message) {
+        return parser.parse(message.getBytes(StandardCharsets.UTF_8), 2020);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class KafkaRecordDispatcherTest {
+    private static final TopicPartition PARTITION_0 = new TopicPartition("logs", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("logs", 1);
+
+    private MessageInput input;
+    private MetricRegistry metricRegistry;
+    private AtomicLong bytesRead;
+    private KafkaRecordDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        input = mock(MessageInput.class);
+        metricRegistry = new MetricRegistry();
+        bytesRead = new AtomicLong();
+        dispatcher = new KafkaRecordDispatcher(input, metricRegistry, bytesRead::addAndGet);
+    }
+
+    @Test
+    void dispatchesOneOrderedBatchPerPartition() {
+        final ConsumerRecords<byte[], byte[]> records = new ConsumerRecords<>(ImmutableMap.of(
+                PARTITION_0, ImmutableList.of(record(PARTITION_0, 10, "a"), record(PARTITION_0, 11, "b")),
+                PARTITION_1, ImmutableList.of(record(PARTITION_1, 5, "c"))));
+
+        assertThat(dispatcher.dispatch(records, () -> true)).isTrue();
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Collection<RawMessage>> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(input, times(2)).processRawMessages(batches.capture());
+        final List<String> payloads = new ArrayList<>();
+        for (Collection<RawMessage> batch : batches.getAllValues()) {
+            batch.forEach(rawMessage -> payloads.add(new String(rawMessage.getPayload(), StandardCharsets.UTF_8)));
+        }
+        assertThat(payloads).containsSubsequence("a", "b").contains("c");
+        assertThat(bytesRead.get()).isEqualTo(3);
+    }
+
+    @Test
+    void committedOffsetsPointAfterLastDispatchedRecord() {
+        dispatcher.dispatch(new ConsumerRecords<>(ImmutableMap.of(
+                PARTITION_0, ImmutableList.of(record(PARTITION_0, 10, "a"), record(PARTITION_0, 11, null)))), () -> true);
+
+        assertThat(dispatcher.hasUncommittedOffsets()).isTrue();
+        assertThat(dispatcher.offsetsToCommit()).containsEntry(PARTITION_0, new OffsetAndMetadata(12));
+        assertThat(dispatcher.hasUncommittedOffsets()).isFalse();
+
+        dispatcher.dispatch(new ConsumerRecords<>(ImmutableMap.of(
+                PARTITION_1, ImmutableList.of(record(PARTITION_1, 3, "b")))), () -> true);
+
+        // offsets of all assigned partitions are committed again, in case a previous commit failed
+        assertThat(dispatcher.offsetsToCommit())
+                .containsEntry(PARTITION_0, new OffsetAndMetadata(12))
+                .containsEntry(PARTITION_1, new OffsetAndMetadata(4));
+    }
+
+    @Test
+    void doesNotTrackOffsetsOfRecordsWhichHaveNotBeenDispatched() {
+        final ConsumerRecords<byte[], byte[]> records = new ConsumerRecords<>(ImmutableMap.of(
+                PARTITION_0, ImmutableList.of(record(PARTITION_0, 10, "a"))));
+
+        assertThat(dispatcher.dispatch(records, () -> false)).isFalse();
+
+        verify(input, never()).processRawMessages(any());
+        assertThat(dispatcher.hasUncommittedOffsets()).isFalse();
+        assertThat(dispatcher.offsetsToCommit()).isEmpty();
+    }
+
+    @Test
+    void forgetsOffsetsAndMetricsOfRevokedPartitions() {
+        dispatcher.dispatch(new ConsumerRecords<>(ImmutableMap.of(
+                PARTITION_0, ImmutableList.of(record(PARTITION_0, 10, "a")),
+                PARTITION_1, ImmutableList.of(record(PARTITION_1, 3, "b")))), () -> true);
+
+        assertThat(metricRegistry.getGauges().get("partition.logs-0.offset").getValue()).isEqualTo(11L);
+
+        dispatcher.revoke(Collections.singleton(PARTITION_0));
+
+        assertThat(dispatcher.offsetsToCommit()).containsOnlyKeys(PARTITION_1);
+        assertThat(metricRegistry.getNames()).noneMatch(name -> name.startsWith("partition.logs-0."));
+        assertThat(metricRegistry.getNames()).anyMatch(name -> name.startsWith("partition.logs-1."));
+    }
+
+    private ConsumerRecord<byte[], byte[]> record(TopicPartition partition, long offset, String value) {
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, null,
+                value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+}
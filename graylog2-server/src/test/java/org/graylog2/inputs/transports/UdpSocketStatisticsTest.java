@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UdpSocketStatisticsTest {
+    private static final List<String> PROC_NET_UDP = ImmutableList.of(
+            "   sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops",
+            "  42: 00000000:0202 00000000:0000 07 00000000:00000300 00:00000000 00000000  1000        0 31337 2 0000000000000000 17",
+            "  43: 00000000:0202 00000000:0000 07 00000000:00000100 00:00000000 00000000  1000        0 31338 2 0000000000000000 3",
+            "  44: 0100007F:0035 00000000:0000 07 00000000:00000000 00:00000000 00000000   101        0 12345 2 0000000000000000 0");
+
+    @Test
+    public void sumsUpAllSocketsBoundToPort() {
+        final UdpSocketStatistics.Statistics statistics = UdpSocketStatistics.parse(PROC_NET_UDP, 514);
+
+        assertThat(statistics.receiveQueueBytes).isEqualTo(0x300 + 0x100);
+        assertThat(statistics.drops).isEqualTo(20);
+    }
+
+    @Test
+    public void ignoresSocketsBoundToOtherPorts() {
+        final UdpSocketStatistics.Statistics statistics = UdpSocketStatistics.parse(PROC_NET_UDP, 12201);
+
+        assertThat(statistics.receiveQueueBytes).isZero();
+        assertThat(statistics.drops).isZero();
+    }
+
+    @Test
+    public void skipsInvalidLines() {
+        final UdpSocketStatistics.Statistics statistics = UdpSocketStatistics.parse(ImmutableList.of(
+                "garbage",
+                "  42: 00000000:XXXX 00000000:0000 07 00000000:00000300 00:00000000 00000000  1000        0 31337 2 0000000000000000 17",
+                PROC_NET_UDP.get(1)), 514);
+
+        assertThat(statistics.receiveQueueBytes).isEqualTo(0x300);
+        assertThat(statistics.drops).isEqualTo(17);
+    }
+}
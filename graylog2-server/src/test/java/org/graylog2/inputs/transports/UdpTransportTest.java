@@ -28,6 +28,8 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.FixedRecvByteBufAllocator;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.ReferenceCountUtil;
@@ -186,6 +188,40 @@ public class UdpTransportTest {
         assertThat(recvByteBufAllocator.newHandle().guess()).isEqualTo(RECV_BUFFER_SIZE);
     }
 
+    @Test
+    public void batchReceiveUsesRecvmmsgWithEpoll() {
+        assumeTrue("Skipping test intended for systems supporting epoll", Epoll.isAvailable());
+
+        final NettyTransportConfiguration epollConfiguration = new NettyTransportConfiguration("epoll", "jdk", 1);
+        final Configuration configuration = new Configuration(ImmutableMap.<String, Object>builder()
+                .putAll(CONFIG_SOURCE)
+                .put(UdpTransport.CK_BATCH_RECEIVE_DATAGRAMS, 16)
+                .put(UdpTransport.CK_MAX_DATAGRAM_SIZE, 2048)
+                .build());
+        final UdpTransport transport = new UdpTransport(configuration, new EventLoopGroupFactory(epollConfiguration),
+                epollConfiguration, throughputCounter, localMetricRegistry);
+
+        final Map<ChannelOption<?>, Object> options = transport.getBootstrap(mock(MessageInput.class)).config().options();
+        assertThat(options.get(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE)).isEqualTo(2048);
+        assertThat(((FixedRecvByteBufAllocator) options.get(ChannelOption.RCVBUF_ALLOCATOR)).newHandle().guess()).isEqualTo(16 * 2048);
+        transport.stop();
+    }
+
+    @Test
+    public void batchReceiveIsIgnoredWithoutEpoll() {
+        final Configuration configuration = new Configuration(ImmutableMap.<String, Object>builder()
+                .putAll(CONFIG_SOURCE)
+                .put(UdpTransport.CK_BATCH_RECEIVE_DATAGRAMS, 16)
+                .build());
+        final UdpTransport transport = new UdpTransport(configuration, eventLoopGroupFactory, nettyTransportConfiguration,
+                throughputCounter, localMetricRegistry);
+
+        final Map<ChannelOption<?>, Object> options = transport.getBootstrap(mock(MessageInput.class)).config().options();
+        assertThat(options).doesNotContainKey(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE);
+        assertThat(((FixedRecvByteBufAllocator) options.get(ChannelOption.RCVBUF_ALLOCATOR)).newHandle().guess()).isEqualTo(RECV_BUFFER_SIZE);
+        transport.stop();
+    }
+
     @Test
     public void getMetricSetReturnsLocalMetricRegistry() {
         assertThat(udpTransport.getMetricSet()).isSameAs(localMetricRegistry);
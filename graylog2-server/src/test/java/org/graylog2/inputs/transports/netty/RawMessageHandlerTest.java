@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports.netty;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RawMessageHandlerTest {
+    private MessageInput input;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        input = mock(MessageInput.class);
+        channel = new EmbeddedChannel(new RawMessageHandler(input));
+    }
+
+    @Test
+    public void processesMessagesOfOneReadCycleAsBatch() {
+        channel.writeInbound(
+                Unpooled.copiedBuffer("message-1", StandardCharsets.UTF_8),
+                Unpooled.copiedBuffer("message-2", StandardCharsets.UTF_8),
+                Unpooled.copiedBuffer("message-3", StandardCharsets.UTF_8));
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Collection<RawMessage>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(input, times(1)).processRawMessages(batch.capture());
+        verify(input, never()).processRawMessage(any());
+        assertThat(batch.getValue())
+                .extracting(rawMessage -> new String(rawMessage.getPayload(), StandardCharsets.UTF_8))
+                .containsExactly("message-1", "message-2", "message-3");
+    }
+
+    @Test
+    public void processesEveryReadCycleSeparately() {
+        channel.writeInbound(Unpooled.copiedBuffer("message-1", StandardCharsets.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("message-2", StandardCharsets.UTF_8));
+
+        verify(input, times(2)).processRawMessages(any());
+    }
+
+    @Test
+    public void doesNotProcessEmptyReadCycles() {
+        channel.pipeline().fireChannelReadComplete();
+
+        verify(input, never()).processRawMessages(any());
+    }
+}
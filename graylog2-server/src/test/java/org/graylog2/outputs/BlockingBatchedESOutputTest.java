@@ -24,6 +24,7 @@ import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.messages.Messages;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.journal.NoopJournal;
 import org.junit.Before;
 import org.junit.Rule;
@@ -34,11 +35,13 @@ import org.mockito.junit.MockitoRule;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class BlockingBatchedESOutputTest {
     @Rule
@@ -92,6 +95,29 @@ public class BlockingBatchedESOutputTest {
         verify(messages, times(1)).bulkIndex(eq(messageList));
     }
 
+    @Test
+    public void writeListFlushesFullBatches() throws Exception {
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, config, journal);
+
+        final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(config.getOutputBatchSize() + 1);
+        final List<Message> batch = messageList.stream()
+                .map(entry -> {
+                    final Stream stream = mock(Stream.class);
+                    when(stream.getIndexSet()).thenReturn(entry.getKey());
+                    entry.getValue().addStream(stream);
+                    return entry.getValue();
+                })
+                .collect(Collectors.toList());
+
+        output.write(batch);
+
+        verify(messages, times(1)).bulkIndex(eq(messageList.subList(0, config.getOutputBatchSize())));
+
+        output.forceFlushIfTimedout();
+
+        verify(messages, times(1)).bulkIndex(eq(messageList.subList(config.getOutputBatchSize(), messageList.size())));
+    }
+
     private List<Map.Entry<IndexSet, Message>> buildMessages(final int count) {
         final ImmutableList.Builder<Map.Entry<IndexSet, Message>> builder = ImmutableList.builder();
         for (int i = 0; i < count; i++) {
@@ -29,10 +29,12 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -173,4 +175,31 @@ public class OutputRouterTest {
         assertTrue(result.contains(defaultMessageOutput));
         assertTrue(result.contains(messageOutput));
     }
+
+    @Test
+    public void testAddStreamOutputsForMessageToExistingSet() throws Exception {
+        final Stream stream1 = mock(Stream.class);
+        final Stream stream2 = mock(Stream.class);
+        final Output output1 = mock(Output.class);
+        final Output output2 = mock(Output.class);
+        final MessageOutput messageOutput = mock(MessageOutput.class);
+        final MessageOutput otherMessageOutput = mock(MessageOutput.class);
+        when(output1.getId()).thenReturn("foo");
+        when(output2.getId()).thenReturn("bar");
+        when(stream1.getOutputs()).thenReturn(ImmutableSet.of(output1));
+        when(stream2.getOutputs()).thenReturn(ImmutableSet.of(output1, output2));
+        when(outputRegistry.getOutputForIdAndStream(eq("foo"), any(Stream.class))).thenReturn(messageOutput);
+        when(outputRegistry.getOutputForIdAndStream(eq("bar"), eq(stream2))).thenReturn(null);
+        final Message message = mock(Message.class);
+        when(message.getStreams()).thenReturn(ImmutableSet.of(stream1, stream2));
+        final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
+
+        final Set<MessageOutput> result = new HashSet<>();
+        result.add(otherMessageOutput);
+        outputRouter.addStreamOutputsForMessage(message, result);
+
+        assertEquals(2, result.size());
+        assertTrue(result.contains(messageOutput));
+        assertTrue(result.contains(otherMessageOutput));
+    }
 }
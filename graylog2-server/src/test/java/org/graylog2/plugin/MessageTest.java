@@ -459,6 +459,27 @@ public class MessageTest {
                 .isEqualTo(43L);
     }
 
+    @Test
+    public void testToElasticsearchObjectAddsSampleKey() {
+        final Message message = new Message("message", "source", Tools.nowUTC());
+
+        assertThat(message.toElasticSearchObject(objectMapper, invalidTimestampMeter).get("gl2_sample_key"))
+                .isEqualTo(Message.sampleKey(message.getId()));
+    }
+
+    @Test
+    public void sampleKeysAreUniformlyDistributed() {
+        final int buckets = 10;
+        final int[] counts = new int[buckets];
+        for (int i = 0; i < 100000; i++) {
+            counts[Message.sampleKey(new UUID().toString()) * buckets / Message.SAMPLE_KEY_RANGE]++;
+        }
+
+        for (int count : counts) {
+            assertThat(count).isBetween(9500, 10500);
+        }
+    }
+
     @Test
     public void messageSizes() {
         final Message message = new Message("1234567890", "12345", Tools.nowUTC());
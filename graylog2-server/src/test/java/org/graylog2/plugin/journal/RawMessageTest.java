@@ -16,6 +16,7 @@
  */
 package org.graylog2.plugin.journal;
 
+import com.google.common.collect.ImmutableMap;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.system.NodeId;
 import org.junit.Test;
@@ -27,6 +28,7 @@ import java.nio.charset.StandardCharsets;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 public class RawMessageTest {
     @Test
@@ -44,4 +46,27 @@ public class RawMessageTest {
         assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
         assertEquals("raw", decodedMsg.getCodecName());
     }
+
+    @Test
+    public void decodedMessagesShareCodecConfiguration() throws IOException {
+        final Configuration codecConfig = new Configuration(ImmutableMap.of("override_source", "example.org", "port", 12201));
+        final NodeId nodeId = new NodeId(File.createTempFile("node", "test").getAbsolutePath());
+
+        final RawMessage first = RawMessage.decode(rawMessage("first", codecConfig, nodeId).encode(), 1);
+        final RawMessage second = RawMessage.decode(rawMessage("second", codecConfig, nodeId).encode(), 2);
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertSame(first.getCodecConfig(), second.getCodecConfig());
+        assertEquals("example.org", first.getCodecConfig().getString("override_source"));
+        assertEquals(12201, first.getCodecConfig().getInt("port"));
+    }
+
+    private RawMessage rawMessage(String payload, Configuration codecConfig, NodeId nodeId) {
+        final RawMessage rawMessage = new RawMessage(payload.getBytes(StandardCharsets.UTF_8));
+        rawMessage.addSourceNode("inputid", nodeId);
+        rawMessage.setCodecName("gelf");
+        rawMessage.setCodecConfig(codecConfig);
+        return rawMessage;
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.journal.Journal;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DecodingProcessorTest {
+    private final Configuration codecConfig = new Configuration(Collections.emptyMap());
+    private MetricRegistry metricRegistry;
+    private Codec codec;
+    private NodeId nodeId;
+    private DecodingProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        metricRegistry = spy(new MetricRegistry());
+        nodeId = mock(NodeId.class);
+        when(nodeId.toString()).thenReturn("node-1");
+
+        codec = mock(Codec.class);
+        when(codec.getConfiguration()).thenReturn(codecConfig);
+        when(codec.decode(any(RawMessage.class))).thenAnswer(invocation ->
+                new Message("message", "source", new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC)));
+
+        @SuppressWarnings("unchecked")
+        final Codec.Factory<Codec> codecFactory = mock(Codec.Factory.class);
+        when(codecFactory.create(any())).thenReturn(codec);
+
+        final ServerStatus serverStatus = mock(ServerStatus.class);
+        when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.NEVER);
+
+        processor = new DecodingProcessor(ImmutableMap.of("test", codecFactory), serverStatus, metricRegistry,
+                mock(Journal.class), new Timer(), new Timer());
+    }
+
+    @Test
+    void resolvesInputMetricsOnlyOnce() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            final MessageEvent event = messageEvent("input-1");
+            processor.onEvent(event, i, false);
+            assertThat(event.getMessage()).isNotNull();
+            assertThat(event.getMessage().getSourceInputId()).isEqualTo("input-1");
+        }
+
+        final String baseMetricName = MetricRegistry.name(codec.getClass(), "input-1");
+        verify(metricRegistry, times(1)).meter(MetricRegistry.name(baseMetricName, "processedMessages"));
+        verify(metricRegistry, times(1)).timer(MetricRegistry.name(baseMetricName, "parseTime"));
+        verify(metricRegistry, times(3)).meter(anyString());
+        verify(metricRegistry, times(1)).timer(anyString());
+        assertThat(metricRegistry.meter(MetricRegistry.name(baseMetricName, "processedMessages")).getCount()).isEqualTo(100);
+        assertThat(metricRegistry.timer(MetricRegistry.name(baseMetricName, "parseTime")).getCount()).isEqualTo(100);
+    }
+
+    @Test
+    void keepsSeparateMetricsPerInput() throws Exception {
+        processor.onEvent(messageEvent("input-1"), 0, false);
+        processor.onEvent(messageEvent("input-2"), 1, false);
+        processor.onEvent(messageEvent("input-1"), 2, false);
+
+        assertThat(metricRegistry.meter(MetricRegistry.name(codec.getClass(), "input-1", "processedMessages")).getCount()).isEqualTo(2);
+        assertThat(metricRegistry.meter(MetricRegistry.name(codec.getClass(), "input-2", "processedMessages")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void marksIncompleteMessages() throws Exception {
+        when(codec.decode(any(RawMessage.class))).thenAnswer(invocation ->
+                new Message("", "source", new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC)));
+
+        final MessageEvent event = messageEvent("input-1");
+        processor.onEvent(event, 0, false);
+
+        assertThat(event.getMessage()).isNull();
+        assertThat(metricRegistry.meter(MetricRegistry.name(codec.getClass(), "input-1", "incomplete")).getCount()).isEqualTo(1);
+    }
+
+    private MessageEvent messageEvent(String inputId) {
+        final RawMessage raw = new RawMessage("payload".getBytes(StandardCharsets.UTF_8));
+        raw.setCodecName("test");
+        raw.setCodecConfig(codecConfig);
+        raw.addSourceNode(inputId, nodeId);
+
+        final MessageEvent event = new MessageEvent();
+        event.setRaw(raw);
+        return event;
+    }
+}
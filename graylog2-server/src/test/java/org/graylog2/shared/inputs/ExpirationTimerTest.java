@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.inputs;
+
+import com.codahale.metrics.MetricRegistry;
+import io.netty.util.Timeout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+public class ExpirationTimerTest {
+    private MetricRegistry metricRegistry;
+    private ExpirationTimer expirationTimer;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        expirationTimer = new ExpirationTimer(metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        expirationTimer.stop();
+    }
+
+    @Test
+    public void runsCallbackAfterDelay() {
+        final AtomicInteger expired = new AtomicInteger();
+
+        expirationTimer.expireAfter(10, TimeUnit.MILLISECONDS, expired::incrementAndGet);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> expired.get() == 1);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> expirationTimer.pendingEntries() == 0);
+        assertThat(metricRegistry.getTimers().get("org.graylog2.shared.inputs.ExpirationTimer.lag").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void doesNotRunCancelledCallback() throws Exception {
+        final AtomicInteger expired = new AtomicInteger();
+
+        final Timeout timeout = expirationTimer.expireAfter(ExpirationTimer.TICK_DURATION_MILLIS, TimeUnit.MILLISECONDS, expired::incrementAndGet);
+        timeout.cancel();
+        Thread.sleep(ExpirationTimer.TICK_DURATION_MILLIS * 3);
+
+        assertThat(expired.get()).isEqualTo(0);
+        assertThat(expirationTimer.pendingEntries()).isEqualTo(0);
+    }
+
+    @Test
+    public void survivesFailingCallback() {
+        final AtomicInteger expired = new AtomicInteger();
+
+        expirationTimer.expireAfter(10, TimeUnit.MILLISECONDS, () -> {
+            throw new IllegalStateException("boom");
+        });
+        expirationTimer.expireAfter(20, TimeUnit.MILLISECONDS, expired::incrementAndGet);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> expired.get() == 1);
+    }
+}